@@ -16,10 +16,13 @@
 package com.google.idea.blaze.base.lang.buildfile.completion;
 
 import com.google.common.collect.Lists;
+import com.google.idea.blaze.base.lang.buildfile.index.BuildFileSummary;
+import com.google.idea.blaze.base.lang.buildfile.index.BuildFileSummaryIndex;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
 import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
 import com.google.idea.blaze.base.lang.buildfile.references.LabelUtils;
 import com.google.idea.blaze.base.lang.buildfile.references.QuoteType;
+import icons.BlazeIcons;
 import java.util.List;
 import java.util.Objects;
 import javax.annotation.Nullable;
@@ -36,7 +39,21 @@ public class LabelRuleLookupElement extends BuildLookupElement {
 
     String ruleFragment = LabelUtils.getRuleComponent(originalLabel);
 
+    String lookupPrefix =
+        originalLabel.substring(0, originalLabel.length() - ruleFragment.length());
     List<BuildLookupElement> lookups = Lists.newArrayList();
+    BuildFileSummary summary = BuildFileSummaryIndex.getIfTreeNotLoaded(file);
+    if (summary != null) {
+      for (BuildFileSummary.Rule rule : summary.getRules()) {
+        if (rule.kind() != null
+            && !rule.name().equals(excluded)
+            && rule.name().startsWith(ruleFragment)) {
+          lookups.add(
+              new LabelRuleLookupElement(lookupPrefix, rule.name(), rule.kind(), quoteType));
+        }
+      }
+      return toArray(lookups);
+    }
     for (FuncallExpression target : file.findChildrenByClass(FuncallExpression.class)) {
       String targetName = target.getName();
       if (targetName == null
@@ -48,29 +65,23 @@ public class LabelRuleLookupElement extends BuildLookupElement {
       if (ruleType == null) {
         continue;
       }
-      String lookupPrefix =
-          originalLabel.substring(0, originalLabel.length() - ruleFragment.length());
-
-      lookups.add(
-          new LabelRuleLookupElement(lookupPrefix, target, targetName, ruleType, quoteType));
+      lookups.add(new LabelRuleLookupElement(lookupPrefix, targetName, ruleType, quoteType));
     }
+    return toArray(lookups);
+  }
+
+  private static BuildLookupElement[] toArray(List<BuildLookupElement> lookups) {
     return lookups.isEmpty()
         ? BuildLookupElement.EMPTY_ARRAY
         : lookups.toArray(BuildLookupElement.EMPTY_ARRAY);
   }
 
-  private final FuncallExpression target;
   private final String targetName;
   private final String ruleType;
 
   private LabelRuleLookupElement(
-      String namePrefix,
-      FuncallExpression target,
-      String targetName,
-      String ruleType,
-      QuoteType quoteType) {
+      String namePrefix, String targetName, String ruleType, QuoteType quoteType) {
     super(namePrefix + targetName, quoteType);
-    this.target = target;
     this.targetName = targetName;
     this.ruleType = ruleType;
 
@@ -79,7 +90,7 @@ public class LabelRuleLookupElement extends BuildLookupElement {
 
   @Override
   public Icon getIcon() {
-    return target.getIcon(0);
+    return BlazeIcons.BuildRule;
   }
 
   @Override
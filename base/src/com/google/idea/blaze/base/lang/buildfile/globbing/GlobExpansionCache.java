@@ -0,0 +1,142 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import com.google.common.collect.ImmutableList;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the files matched by each glob in a blaze package, so that resolving a glob doesn't walk
+ * the file system again every time PSI changes.
+ *
+ * <p>All expansions for a package are dropped when the VFS reports a file being created, deleted,
+ * moved or renamed anywhere under the package directory. Content changes don't affect glob results
+ * and are ignored.
+ */
+public final class GlobExpansionCache implements Disposable {
+
+  public static GlobExpansionCache getInstance(Project project) {
+    return project.getService(GlobExpansionCache.class);
+  }
+
+  private record Key(
+      ImmutableList<String> includes, ImmutableList<String> excludes, boolean excludeDirectories) {}
+
+  private final Map<File, Map<Key, ImmutableList<File>>> expansions = new ConcurrentHashMap<>();
+
+  public GlobExpansionCache(Project project) {
+    project
+        .getMessageBus()
+        .connect(this)
+        .subscribe(VirtualFileManager.VFS_CHANGES, new InvalidatingListener());
+  }
+
+  /**
+   * Returns the sorted files under {@code packageDir} matched by the given glob, only walking the
+   * file system if it has changed since the glob was last evaluated.
+   *
+   * <p>{@code directoryFilter} must only depend on the file system, since it isn't part of the
+   * cache key.
+   */
+  public ImmutableList<File> glob(
+      File packageDir,
+      List<String> includes,
+      List<String> excludes,
+      boolean excludeDirectories,
+      Predicate<File> directoryFilter)
+      throws IOException, InterruptedException {
+    Key key =
+        new Key(ImmutableList.copyOf(includes), ImmutableList.copyOf(excludes), excludeDirectories);
+    Map<Key, ImmutableList<File>> packageExpansions =
+        expansions.computeIfAbsent(packageDir, dir -> new ConcurrentHashMap<>());
+    ImmutableList<File> files = packageExpansions.get(key);
+    if (files != null) {
+      return files;
+    }
+    files =
+        ImmutableList.copyOf(
+            UnixGlob.forPath(packageDir)
+                .addPatterns(includes)
+                .addExcludes(excludes)
+                .setExcludeDirectories(excludeDirectories)
+                .setDirectoryFilter(directoryFilter)
+                .glob());
+    // Only cache the result if the package wasn't invalidated while globbing.
+    if (expansions.get(packageDir) == packageExpansions) {
+      packageExpansions.put(key, files);
+    }
+    return files;
+  }
+
+  /**
+   * Drops the expansions of every package containing {@code path} and, if {@code removed} is true,
+   * of any package under it.
+   */
+  private void invalidate(@Nullable String path, boolean removed) {
+    if (path == null || expansions.isEmpty()) {
+      return;
+    }
+    File file = new File(path);
+    for (File dir = file.getParentFile(); dir != null; dir = dir.getParentFile()) {
+      expansions.remove(dir);
+    }
+    if (removed) {
+      String prefix = file.getPath() + File.separator;
+      expansions.keySet().removeIf(dir -> dir.equals(file) || dir.getPath().startsWith(prefix));
+    }
+  }
+
+  @Override
+  public void dispose() {
+    expansions.clear();
+  }
+
+  private class InvalidatingListener implements BulkFileListener {
+    @Override
+    public void after(List<? extends VFileEvent> events) {
+      for (VFileEvent event : events) {
+        if (event instanceof VFileContentChangeEvent) {
+          continue;
+        }
+        if (event instanceof VFilePropertyChangeEvent) {
+          VFilePropertyChangeEvent propertyChange = (VFilePropertyChangeEvent) event;
+          if (!propertyChange.isRename()) {
+            continue;
+          }
+          invalidate(propertyChange.getOldPath(), true);
+        } else if (event instanceof VFileMoveEvent) {
+          invalidate(((VFileMoveEvent) event).getOldPath(), true);
+        }
+        invalidate(event.getPath(), event instanceof VFileDeleteEvent);
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.lang.buildfile.validation.GlobPatternValidator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A set of glob patterns compiled into a single automaton over path segments, for matching
+ * package-relative paths without touching the file system.
+ *
+ * <p>Patterns are stored as a trie of segments, so patterns with a common prefix (e.g. {@code
+ * src/main/**&#47;*.java} and {@code src/main/**&#47;*.kt}) share states. Literal segments are
+ * looked up by hash, wildcard segments are matched with a predicate compiled once per segment, and
+ * <code>**</code> segments are states which stay active on any further segment. A path matches if
+ * an accepting state is active once all of its segments are consumed.
+ *
+ * <p>Segments are matched as {@link UnixGlob} matches them while globbing, so a path matches iff
+ * {@link UnixGlob.Builder#glob} would return it (ignoring directory filters). Invalid patterns
+ * never match anything.
+ */
+public final class GlobMatcher {
+
+  private static final Splitter SEGMENT_SPLITTER = Splitter.on('/');
+
+  private static final class Node {
+    /** Whether this state was reached by a <code>**</code> segment, and so matches any segment. */
+    final boolean recursive;
+
+    boolean accepting;
+    Node recursiveChild;
+    final Map<String, Node> literalChildren = new HashMap<>();
+    final Map<String, Node> wildcardChildren = new LinkedHashMap<>();
+    final List<Predicate<String>> wildcardMatchers = new ArrayList<>();
+
+    Node(boolean recursive) {
+      this.recursive = recursive;
+    }
+
+    Node child(String segment) {
+      if (segment.equals("**")) {
+        if (recursiveChild == null) {
+          recursiveChild = new Node(true);
+        }
+        return recursiveChild;
+      }
+      if (segment.indexOf('*') < 0 && segment.indexOf('?') < 0) {
+        return literalChildren.computeIfAbsent(segment, s -> new Node(false));
+      }
+      Node child = wildcardChildren.get(segment);
+      if (child == null) {
+        child = new Node(false);
+        wildcardChildren.put(segment, child);
+        wildcardMatchers.add(UnixGlob.segmentMatcher(segment));
+      }
+      return child;
+    }
+  }
+
+  private static final GlobMatcher EMPTY = new GlobMatcher(new Node(false));
+
+  /** Recently used matchers, as the same few pattern lists are matched against many paths. */
+  private static final LoadingCache<ImmutableList<String>, GlobMatcher> cache =
+      CacheBuilder.newBuilder().maximumSize(1000).build(CacheLoader.from(GlobMatcher::compile));
+
+  private final Node root;
+
+  private GlobMatcher(Node root) {
+    this.root = root;
+  }
+
+  /** Returns a matcher which matches a path if any of the given patterns do. */
+  public static GlobMatcher create(Collection<String> patterns) {
+    if (patterns.isEmpty()) {
+      return EMPTY;
+    }
+    return cache.getUnchecked(ImmutableList.copyOf(patterns));
+  }
+
+  private static GlobMatcher compile(ImmutableList<String> patterns) {
+    Node root = new Node(false);
+    for (String pattern : patterns) {
+      if (GlobPatternValidator.validate(pattern) != null) {
+        continue;
+      }
+      Node node = root;
+      for (String segment : SEGMENT_SPLITTER.split(pattern)) {
+        node = node.child(segment);
+      }
+      node.accepting = true;
+    }
+    return new GlobMatcher(root);
+  }
+
+  /** Returns true if any of the patterns matches the given package-relative path. */
+  public boolean matches(String packageRelativePath) {
+    if (packageRelativePath.isEmpty() || this == EMPTY) {
+      return false;
+    }
+    List<Node> active = new ArrayList<>();
+    addWithClosure(active, root);
+    List<Node> next = new ArrayList<>();
+    for (String segment : SEGMENT_SPLITTER.split(packageRelativePath)) {
+      for (Node node : active) {
+        if (node.recursive) {
+          addWithClosure(next, node);
+        }
+        Node literal = node.literalChildren.get(segment);
+        if (literal != null) {
+          addWithClosure(next, literal);
+        }
+        int i = 0;
+        for (Node wildcard : node.wildcardChildren.values()) {
+          if (node.wildcardMatchers.get(i++).test(segment)) {
+            addWithClosure(next, wildcard);
+          }
+        }
+      }
+      if (next.isEmpty()) {
+        return false;
+      }
+      List<Node> swap = active;
+      active = next;
+      next = swap;
+      next.clear();
+    }
+    for (Node node : active) {
+      if (node.accepting) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Adds a state, and the <code>**</code> states reachable from it without consuming segments. */
+  private static void addWithClosure(List<Node> states, Node node) {
+    while (node != null && !containsIdentical(states, node)) {
+      states.add(node);
+      node = node.recursiveChild;
+    }
+  }
+
+  private static boolean containsIdentical(List<Node> states, Node node) {
+    for (Node state : states) {
+      if (state == node) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
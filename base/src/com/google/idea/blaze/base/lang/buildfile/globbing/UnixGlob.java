@@ -152,6 +152,40 @@ public final class UnixGlob {
     return regex.matcher(str).matches();
   }
 
+  /**
+   * Returns a predicate equivalent to {@code matches(pattern, str)}, doing any regular expression
+   * compilation up front. Used to match single path segments in {@link GlobMatcher}.
+   */
+  static Predicate<String> segmentMatcher(String pattern) {
+    if (pattern.isEmpty()) {
+      return str -> false;
+    }
+    if (pattern.equals("**") || pattern.equals("*")) {
+      return str -> !str.isEmpty();
+    }
+    Predicate<String> matcher;
+    int lastIndex = pattern.length() - 1;
+    if (pattern.charAt(0) == '*' && pattern.lastIndexOf('*') == 0) {
+      String suffix = pattern.substring(1);
+      matcher = str -> str.endsWith(suffix);
+    } else if (pattern.charAt(lastIndex) == '*' && pattern.indexOf('*') == lastIndex) {
+      String prefix = pattern.substring(0, lastIndex);
+      matcher = str -> str.startsWith(prefix);
+    } else if (pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0) {
+      matcher = pattern::equals;
+    } else {
+      try {
+        Pattern regex = makePatternFromWildcard(pattern);
+        matcher = str -> regex.matcher(str).matches();
+      } catch (PatternSyntaxException e) {
+        return str -> false;
+      }
+    }
+    // If a filename starts with '.', this char must be matched explicitly.
+    boolean leadingDot = pattern.charAt(0) == '.';
+    return str -> !str.isEmpty() && (leadingDot || str.charAt(0) != '.') && matcher.test(str);
+  }
+
   /**
    * Returns a regular expression implementing a matcher for "pattern", in which "*" and "?" are
    * wildcards.
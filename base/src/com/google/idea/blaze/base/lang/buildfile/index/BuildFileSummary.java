@@ -0,0 +1,310 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.index;
+
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.lang.buildfile.globbing.GlobMatcher;
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
+import com.google.idea.blaze.base.lang.buildfile.psi.Expression;
+import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.google.idea.blaze.base.lang.buildfile.psi.FunctionStatement;
+import com.google.idea.blaze.base.lang.buildfile.psi.GlobExpression;
+import com.google.idea.blaze.base.lang.buildfile.psi.ListLiteral;
+import com.google.idea.blaze.base.lang.buildfile.psi.LoadStatement;
+import com.google.idea.blaze.base.lang.buildfile.psi.LoadedSymbol;
+import com.google.idea.blaze.base.lang.buildfile.psi.StringLiteral;
+import com.google.idea.blaze.base.lang.buildfile.psi.util.PsiUtils;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.IOUtil;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * The top-level declarations of a BUILD or Starlark file: its named rules, function definitions,
+ * loaded symbols and globs. This is what most cross-file queries need from a BUILD file, and is
+ * stored in {@link BuildFileSummaryIndex} so that those queries don't have to parse the file.
+ */
+public final class BuildFileSummary {
+
+  /**
+   * A top-level rule call with a name. The kind is null if the called function isn't a plain
+   * reference, e.g. if it's the result of another call.
+   */
+  public record Rule(String name, @Nullable String kind, int offset) {}
+
+  /**
+   * A glob expression. The include and exclude patterns are null if they aren't given directly as
+   * a list literal, in which case whether the glob matches a path can only be decided using PSI.
+   */
+  public record Glob(
+      int offset,
+      @Nullable ImmutableList<String> includes,
+      @Nullable ImmutableList<String> excludes,
+      boolean directoriesExcluded) {
+
+    /**
+     * Returns whether this glob matches the given package-relative path, or null if that can't be
+     * decided without resolving references. Matches {@link GlobExpression#matches}.
+     */
+    @Nullable
+    public Boolean matches(String packageRelativePath, boolean isDirectory) {
+      if (isDirectory && directoriesExcluded) {
+        return false;
+      }
+      if (includes == null) {
+        return null;
+      }
+      if (!GlobMatcher.create(includes).matches(packageRelativePath)) {
+        return false;
+      }
+      if (excludes == null) {
+        return null;
+      }
+      return !GlobMatcher.create(excludes).matches(packageRelativePath);
+    }
+  }
+
+  static final DataExternalizer<BuildFileSummary> EXTERNALIZER = new Externalizer();
+
+  /** Rules by name. Only the first rule with a given name is kept, as in {@link BuildFile}. */
+  private final ImmutableMap<String, Rule> rules;
+
+  /** The offsets of top-level function definitions, by name. */
+  private final ImmutableMap<String, Integer> functions;
+
+  /** The names under which symbols are loaded into this file. */
+  private final ImmutableSet<String> loadedSymbols;
+
+  private final ImmutableList<Glob> globs;
+
+  BuildFileSummary(
+      ImmutableMap<String, Rule> rules,
+      ImmutableMap<String, Integer> functions,
+      ImmutableSet<String> loadedSymbols,
+      ImmutableList<Glob> globs) {
+    this.rules = rules;
+    this.functions = functions;
+    this.loadedSymbols = loadedSymbols;
+    this.globs = globs;
+  }
+
+  /** Summarizes a file. Doesn't resolve any references, so is safe to call while indexing. */
+  static BuildFileSummary compute(BuildFile file) {
+    Map<String, Rule> rules = new LinkedHashMap<>();
+    for (FuncallExpression funcall : file.childrenOfClass(FuncallExpression.class)) {
+      String name = funcall.getNameArgumentValue();
+      if (name != null) {
+        rules.putIfAbsent(
+            name,
+            new Rule(name, funcall.getFunctionName(), funcall.getTextRange().getStartOffset()));
+      }
+    }
+    Map<String, Integer> functions = new LinkedHashMap<>();
+    for (FunctionStatement function : file.getFunctionDeclarations()) {
+      String name = function.getName();
+      if (name != null) {
+        functions.putIfAbsent(name, function.getTextRange().getStartOffset());
+      }
+    }
+    ImmutableSet.Builder<String> loadedSymbols = ImmutableSet.builder();
+    for (LoadStatement load : file.childrenOfClass(LoadStatement.class)) {
+      for (LoadedSymbol symbol : load.getImportedSymbolElements()) {
+        String name = symbol.getSymbolString();
+        if (name != null) {
+          loadedSymbols.add(name);
+        }
+      }
+    }
+    ImmutableList.Builder<Glob> globs = ImmutableList.builder();
+    List<GlobExpression> globExpressions =
+        PsiUtils.findAllChildrenOfClassRecursive(file, GlobExpression.class);
+    for (GlobExpression glob : globExpressions) {
+      globs.add(
+          new Glob(
+              glob.getTextRange().getStartOffset(),
+              listContents(glob.getIncludes()),
+              listContents(glob.getExcludes()),
+              glob.areDirectoriesExcluded()));
+    }
+    return new BuildFileSummary(
+        ImmutableMap.copyOf(rules),
+        ImmutableMap.copyOf(functions),
+        loadedSymbols.build(),
+        globs.build());
+  }
+
+  /**
+   * The string literals in a list, or null if the expression isn't a list literal (and so would
+   * need to be resolved).
+   */
+  @Nullable
+  private static ImmutableList<String> listContents(@Nullable Expression expr) {
+    if (expr == null) {
+      return ImmutableList.of();
+    }
+    if (!(expr instanceof ListLiteral)) {
+      return null;
+    }
+    ImmutableList.Builder<String> strings = ImmutableList.builder();
+    for (Expression child : ((ListLiteral) expr).getElements()) {
+      if (child instanceof StringLiteral) {
+        strings.add(((StringLiteral) child).getStringContents());
+      }
+    }
+    return strings.build();
+  }
+
+  @Nullable
+  public Rule getRule(String name) {
+    return rules.get(name);
+  }
+
+  public ImmutableCollection<Rule> getRules() {
+    return rules.values();
+  }
+
+  /** Returns the start offset of the top-level function with the given name, or -1. */
+  public int getFunctionOffset(String name) {
+    Integer offset = functions.get(name);
+    return offset != null ? offset : -1;
+  }
+
+  public boolean loadsSymbol(String name) {
+    return loadedSymbols.contains(name);
+  }
+
+  public ImmutableList<Glob> getGlobs() {
+    return globs;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof BuildFileSummary)) {
+      return false;
+    }
+    BuildFileSummary that = (BuildFileSummary) o;
+    return rules.equals(that.rules)
+        && functions.equals(that.functions)
+        && loadedSymbols.equals(that.loadedSymbols)
+        && globs.equals(that.globs);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(rules, functions, loadedSymbols, globs);
+  }
+
+  private static class Externalizer implements DataExternalizer<BuildFileSummary> {
+
+    @Override
+    public void save(DataOutput out, BuildFileSummary value) throws IOException {
+      out.writeInt(value.rules.size());
+      for (Rule rule : value.rules.values()) {
+        IOUtil.writeUTF(out, rule.name());
+        writeNullable(out, rule.kind());
+        out.writeInt(rule.offset());
+      }
+      out.writeInt(value.functions.size());
+      for (Map.Entry<String, Integer> function : value.functions.entrySet()) {
+        IOUtil.writeUTF(out, function.getKey());
+        out.writeInt(function.getValue());
+      }
+      out.writeInt(value.loadedSymbols.size());
+      for (String symbol : value.loadedSymbols) {
+        IOUtil.writeUTF(out, symbol);
+      }
+      out.writeInt(value.globs.size());
+      for (Glob glob : value.globs) {
+        out.writeInt(glob.offset());
+        writeList(out, glob.includes());
+        writeList(out, glob.excludes());
+        out.writeBoolean(glob.directoriesExcluded());
+      }
+    }
+
+    @Override
+    public BuildFileSummary read(DataInput in) throws IOException {
+      ImmutableMap.Builder<String, Rule> rules = ImmutableMap.builder();
+      for (int i = in.readInt(); i > 0; i--) {
+        Rule rule = new Rule(IOUtil.readUTF(in), readNullable(in), in.readInt());
+        rules.put(rule.name(), rule);
+      }
+      ImmutableMap.Builder<String, Integer> functions = ImmutableMap.builder();
+      for (int i = in.readInt(); i > 0; i--) {
+        functions.put(IOUtil.readUTF(in), in.readInt());
+      }
+      ImmutableSet.Builder<String> loadedSymbols = ImmutableSet.builder();
+      for (int i = in.readInt(); i > 0; i--) {
+        loadedSymbols.add(IOUtil.readUTF(in));
+      }
+      ImmutableList.Builder<Glob> globs = ImmutableList.builder();
+      for (int i = in.readInt(); i > 0; i--) {
+        globs.add(new Glob(in.readInt(), readList(in), readList(in), in.readBoolean()));
+      }
+      return new BuildFileSummary(
+          rules.buildOrThrow(), functions.buildOrThrow(), loadedSymbols.build(), globs.build());
+    }
+
+    private static void writeNullable(DataOutput out, @Nullable String s) throws IOException {
+      out.writeBoolean(s != null);
+      if (s != null) {
+        IOUtil.writeUTF(out, s);
+      }
+    }
+
+    @Nullable
+    private static String readNullable(DataInput in) throws IOException {
+      return in.readBoolean() ? IOUtil.readUTF(in) : null;
+    }
+
+    private static void writeList(DataOutput out, @Nullable ImmutableList<String> list)
+        throws IOException {
+      if (list == null) {
+        out.writeInt(-1);
+        return;
+      }
+      out.writeInt(list.size());
+      for (String s : list) {
+        IOUtil.writeUTF(out, s);
+      }
+    }
+
+    @Nullable
+    private static ImmutableList<String> readList(DataInput in) throws IOException {
+      int size = in.readInt();
+      if (size < 0) {
+        return null;
+      }
+      ImmutableList.Builder<String> list = ImmutableList.builderWithExpectedSize(size);
+      for (int i = 0; i < size; i++) {
+        list.add(IOUtil.readUTF(in));
+      }
+      return list.build();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.index;
+
+import com.google.idea.blaze.base.lang.buildfile.language.BuildFileType;
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.indexing.PsiDependentIndex;
+import com.intellij.util.indexing.SingleEntryFileBasedIndexExtension;
+import com.intellij.util.indexing.SingleEntryIndexer;
+import com.intellij.util.io.DataExternalizer;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Indexes the {@link BuildFileSummary} of each BUILD and Starlark file, so that looking up labels,
+ * loaded symbols and glob references which a file doesn't declare doesn't need its syntax tree.
+ * Declarations which it does have are found by their indexed offset, which loads the tree.
+ *
+ * <p>The BUILD PSI isn't stub-based, so this plays the role a stub index would: the summary is
+ * computed once per file version, and then read from disk until the file changes.
+ */
+public class BuildFileSummaryIndex extends SingleEntryFileBasedIndexExtension<BuildFileSummary>
+    implements PsiDependentIndex {
+
+  static final ID<Integer, BuildFileSummary> NAME = ID.create("BuildFileSummaryIndex");
+
+  private static final int VERSION = 1;
+
+  @Override
+  public ID<Integer, BuildFileSummary> getName() {
+    return NAME;
+  }
+
+  @Override
+  public SingleEntryIndexer<BuildFileSummary> getIndexer() {
+    return new SingleEntryIndexer<BuildFileSummary>(false) {
+      @Nullable
+      @Override
+      protected BuildFileSummary computeValue(FileContent inputData) {
+        PsiFile file = inputData.getPsiFile();
+        return file instanceof BuildFile ? BuildFileSummary.compute((BuildFile) file) : null;
+      }
+    };
+  }
+
+  @Override
+  public DataExternalizer<BuildFileSummary> getValueExternalizer() {
+    return BuildFileSummary.EXTERNALIZER;
+  }
+
+  @Override
+  public FileBasedIndex.InputFilter getInputFilter() {
+    return new DefaultFileTypeSpecificInputFilter(BuildFileType.INSTANCE);
+  }
+
+  @Override
+  public int getVersion() {
+    return VERSION;
+  }
+
+  /**
+   * Returns the indexed summary of a file whose syntax tree isn't loaded, or null if the summary
+   * isn't available or the file's PSI is already loaded (and so is at least as cheap to use).
+   */
+  @Nullable
+  public static BuildFileSummary getIfTreeNotLoaded(BuildFile file) {
+    if (file.getTreeElement() != null) {
+      return null;
+    }
+    VirtualFile vf = file.getVirtualFile();
+    Project project = file.getProject();
+    if (vf == null || DumbService.isDumb(project)) {
+      return null;
+    }
+    Map<Integer, BuildFileSummary> data =
+        FileBasedIndex.getInstance().getFileData(NAME, vf, project);
+    return data.isEmpty() ? null : data.values().iterator().next();
+  }
+}
@@ -17,10 +17,16 @@ package com.google.idea.blaze.base.lang.buildfile.lexer;
 
 import com.google.idea.blaze.base.lang.buildfile.lexer.BuildLexerBase.LexerMode;
 import com.intellij.lexer.LexerBase;
-import java.util.Iterator;
-import java.util.List;
+import javax.annotation.Nullable;
 
-/** Implementation of LexerBase using BuildLexerBase to tokenize the input. */
+/**
+ * Implementation of LexerBase using BuildLexerBase to tokenize the input.
+ *
+ * <p>The input is tokenized lazily as the lexer advances, and the state of each token is the paren
+ * depth at its start, from which lexing can be restarted. Top-level tokens have state 0, so when a
+ * file is edited the editor highlighter only needs to re-lex from the start of the enclosing
+ * top-level statement until the tokens match those it already had, rather than the whole file.
+ */
 public class BuildLexer extends LexerBase {
 
   private final LexerMode mode;
@@ -28,9 +34,9 @@ public class BuildLexer extends LexerBase {
   private int offsetEnd;
   private int offsetStart;
   private CharSequence buffer;
-  private Iterator<Token> tokens;
-  private Token currentToken;
-  private int currentState;
+  private BuildLexerBase lexer;
+  private int tokenIndex;
+  private boolean hasToken;
 
   public BuildLexer(LexerMode mode) {
     this.mode = mode;
@@ -42,77 +48,75 @@ public class BuildLexer extends LexerBase {
     this.offsetEnd = endOffset;
     this.offsetStart = startOffset;
 
-    BuildLexerBase lexer =
-        new BuildLexerBase(charSequence.subSequence(startOffset, endOffset), initialState, mode);
-    checkNoCharactersMissing(
-        charSequence.subSequence(startOffset, endOffset).length(), lexer.getTokens());
-    tokens = lexer.getTokens().iterator();
-    currentToken = null;
-    if (tokens.hasNext()) {
-      currentToken = tokens.next();
+    lexer =
+        new BuildLexerBase(
+            charSequence.subSequence(startOffset, endOffset), initialState, mode, /* lazy= */ true);
+    tokenIndex = 0;
+    hasToken = lexer.ensureTokens(1);
+    if (!hasToken) {
+      checkNoCharactersMissing();
     }
-    currentState = lexer.getOpenParenStackDepth();
   }
 
-  /** Temporary debugging code. We need to tokenize every character in the input string. */
-  private void checkNoCharactersMissing(int totalLength, List<Token> tokens) {
-    if (!tokens.isEmpty() && tokens.get(tokens.size() - 1).right != totalLength) {
+  /**
+   * Temporary debugging code. We need to tokenize every character in the input string. Called once
+   * the input is exhausted, to check that the last token ends at the end of the input.
+   */
+  private void checkNoCharactersMissing() {
+    int totalLength = offsetEnd - offsetStart;
+    if (tokenIndex > 0 && lexer.getTokenEnd(tokenIndex - 1) != totalLength) {
       String error =
           String.format(
               "Lengths don't match: %s instead of %s",
-              tokens.get(tokens.size() - 1).right, totalLength);
+              lexer.getTokenEnd(tokenIndex - 1), totalLength);
       throw new RuntimeException(error);
     }
-    int start = 0;
-    for (int i = 0; i < tokens.size(); i++) {
-      Token token = tokens.get(i);
-      if (token.left != start) {
-        throw new RuntimeException("Gap/inconsistency at: " + start);
-      }
-      start = token.right;
-    }
   }
 
   @Override
   public int getState() {
-    return currentState;
+    return hasToken ? lexer.getTokenParenDepth(tokenIndex) : lexer.getOpenParenStackDepth();
   }
 
   @Override
   public BuildToken getTokenType() {
-    if (currentToken != null) {
-      return BuildToken.fromKind(currentToken.kind);
+    if (hasToken) {
+      return BuildToken.fromKind(lexer.getTokenKind(tokenIndex));
     }
     return null;
   }
 
   @Override
   public int getTokenStart() {
-    if (currentToken == null) {
+    if (!hasToken) {
       return 0;
     }
-    return currentToken.left + offsetStart;
+    return lexer.getTokenStart(tokenIndex) + offsetStart;
   }
 
   @Override
   public int getTokenEnd() {
-    if (currentToken == null) {
+    if (!hasToken) {
       return 0;
     }
-    return currentToken.right + offsetStart;
+    return lexer.getTokenEnd(tokenIndex) + offsetStart;
   }
 
   @Override
   public void advance() {
-    if (tokens.hasNext()) {
-      currentToken = tokens.next();
-    } else {
-      currentToken = null;
+    if (!hasToken) {
+      return;
+    }
+    tokenIndex++;
+    hasToken = lexer.ensureTokens(tokenIndex + 1);
+    if (!hasToken) {
+      checkNoCharactersMissing();
     }
   }
 
+  @Nullable
   public TokenKind getTokenKind() {
-    return currentToken.kind;
+    return hasToken ? lexer.getTokenKind(tokenIndex) : null;
   }
 
   @Override
@@ -17,6 +17,7 @@ package com.google.idea.blaze.base.lang.buildfile.lexer;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Stack;
 import java.util.function.Predicate;
@@ -56,13 +57,23 @@ public class BuildLexerBase {
           .put('%', TokenKind.PERCENT_EQUALS)
           .build();
 
+  private static final TokenKind[] TOKEN_KINDS = TokenKind.values();
+
   private final LexerMode mode;
 
   // Input buffer and position
-  private final char[] buffer;
+  private final CharSequence buffer;
   private int pos;
 
-  private final List<Token> tokens;
+  // The tokens generated so far, packed into parallel arrays: token i has kind
+  // TOKEN_KINDS[tokenKinds[i]], covers [tokenStarts[i], tokenEnds[i]), has value tokenValues[i]
+  // (possibly null), and starts at paren depth tokenParenDepths[i].
+  private int tokenCount;
+  private byte[] tokenKinds;
+  private int[] tokenStarts;
+  private int[] tokenEnds;
+  private Object[] tokenValues;
+  private int[] tokenParenDepths;
 
   // The number of unclosed open-parens ("(", '{', '[') at the current point in
   // the stream. Whitespace is handled differently when this is nonzero.
@@ -79,19 +90,72 @@ public class BuildLexerBase {
    * lexing are reported on "handler".
    */
   public BuildLexerBase(CharSequence input, int initialStackDepth, LexerMode mode) {
-    this.buffer = input.toString().toCharArray();
+    this(input, initialStackDepth, mode, /* lazy= */ false);
+  }
+
+  /**
+   * Constructs a lexer for the given input. If {@code lazy} is true, the input is only tokenized as
+   * far as is needed to answer {@link #ensureTokens}, so that a caller restarting lexing part way
+   * through a large file only pays for the tokens it actually reads.
+   */
+  BuildLexerBase(CharSequence input, int initialStackDepth, LexerMode mode, boolean lazy) {
+    this.buffer = input;
     // Empirical measurements show roughly 1 token per 8 characters in buffer.
-    this.tokens = Lists.newArrayListWithExpectedSize(buffer.length / 8);
+    int capacity = Math.max(16, buffer.length() / 8);
+    this.tokenKinds = new byte[capacity];
+    this.tokenStarts = new int[capacity];
+    this.tokenEnds = new int[capacity];
+    this.tokenValues = new Object[capacity];
+    this.tokenParenDepths = new int[capacity];
     this.pos = 0;
     this.openParenStackDepth = initialStackDepth;
     this.mode = mode;
 
     indentStack.push(0);
-    tokenize();
+    if (!lazy) {
+      tokenize();
+    }
+  }
+
+  /**
+   * Tokenizes more of the input, until at least {@code count} tokens are available or the input is
+   * exhausted. Returns true if there are at least {@code count} tokens.
+   */
+  boolean ensureTokens(int count) {
+    while (tokenCount < count && pos < buffer.length()) {
+      tokenizeNext();
+    }
+    return tokenCount >= count;
+  }
+
+  /** The number of tokens generated so far. */
+  int getTokenCount() {
+    return tokenCount;
+  }
+
+  TokenKind getTokenKind(int index) {
+    return TOKEN_KINDS[tokenKinds[index]];
+  }
+
+  int getTokenStart(int index) {
+    return tokenStarts[index];
+  }
+
+  int getTokenEnd(int index) {
+    return tokenEnds[index];
+  }
+
+  /**
+   * The number of unclosed open-parens at the start of the given token. Lexing can be restarted at
+   * that token with this as the initial stack depth.
+   */
+  int getTokenParenDepth(int index) {
+    return tokenParenDepths[index];
   }
 
   /** The number of unclosed open-parens ("(", '{', '[') at the end of this string. */
   public int getOpenParenStackDepth() {
+    tokenize();
     return openParenStackDepth;
   }
 
@@ -101,11 +165,20 @@ public class BuildLexerBase {
    * of scanning if this flag is set.
    */
   public boolean containsErrors() {
+    tokenize();
     return containsErrors;
   }
 
-  /** Returns the (mutable) list of tokens generated by the BuildLexerBase. */
+  /**
+   * Returns the (mutable) list of tokens generated by the BuildLexerBase. This allocates a {@link
+   * Token} per token, so performance-sensitive callers should read the packed token data instead.
+   */
   public List<Token> getTokens() {
+    tokenize();
+    List<Token> tokens = Lists.newArrayListWithCapacity(tokenCount);
+    for (int i = 0; i < tokenCount; i++) {
+      tokens.add(new Token(getTokenKind(i), tokenStarts[i], tokenEnds[i], tokenValues[i]));
+    }
     return tokens;
   }
 
@@ -131,7 +204,20 @@ public class BuildLexerBase {
   }
 
   private void addToken(TokenKind kind, int left, int right, @Nullable Object value) {
-    tokens.add(new Token(kind, left, right, value));
+    if (tokenCount == tokenKinds.length) {
+      int capacity = tokenCount * 2;
+      tokenKinds = Arrays.copyOf(tokenKinds, capacity);
+      tokenStarts = Arrays.copyOf(tokenStarts, capacity);
+      tokenEnds = Arrays.copyOf(tokenEnds, capacity);
+      tokenValues = Arrays.copyOf(tokenValues, capacity);
+      tokenParenDepths = Arrays.copyOf(tokenParenDepths, capacity);
+    }
+    tokenKinds[tokenCount] = (byte) kind.ordinal();
+    tokenStarts[tokenCount] = left;
+    tokenEnds[tokenCount] = right;
+    tokenValues[tokenCount] = value;
+    tokenParenDepths[tokenCount] = openParenStackDepth;
+    tokenCount++;
   }
 
   /**
@@ -156,8 +242,8 @@ public class BuildLexerBase {
 
   private void newlineInsideExpression() {
     int oldPos = pos - 1;
-    while (pos < buffer.length) {
-      switch (buffer[pos]) {
+    while (pos < buffer.length()) {
+      switch (buffer.charAt(pos)) {
         case ' ':
         case '\t':
         case '\r':
@@ -188,8 +274,8 @@ public class BuildLexerBase {
 
     // we're in a stmt: suck up space at beginning of next line
     int indentLen = 0;
-    while (pos < buffer.length) {
-      char c = buffer[pos];
+    while (pos < buffer.length()) {
+      char c = buffer.charAt(pos);
       if (c == ' ') {
         indentLen++;
         pos++;
@@ -204,8 +290,8 @@ public class BuildLexerBase {
           addToken(TokenKind.WHITESPACE, oldPos, pos);
           oldPos = pos;
         }
-        while (pos < buffer.length && c != '\n') {
-          c = buffer[pos++];
+        while (pos < buffer.length() && c != '\n') {
+          c = buffer.charAt(pos++);
         }
         addToken(TokenKind.COMMENT, oldPos, pos - 1, bufferSlice(oldPos, pos - 1));
         oldPos = pos - 1;
@@ -218,7 +304,7 @@ public class BuildLexerBase {
     if (oldPos != pos) {
       addToken(TokenKind.WHITESPACE, oldPos, pos);
     }
-    if (pos == buffer.length) {
+    if (pos == buffer.length()) {
       indentLen = 0;
     } // trailing space on last line
 
@@ -243,8 +329,8 @@ public class BuildLexerBase {
   /** Collapse adjacent whitespace characters into a single token */
   private void addWhitespace() {
     int oldPos = pos - 1;
-    while (pos < buffer.length) {
-      switch (buffer[pos]) {
+    while (pos < buffer.length()) {
+      switch (buffer.charAt(pos)) {
         case ' ':
         case '\t':
         case '\r':
@@ -263,7 +349,7 @@ public class BuildLexerBase {
    * advances 'pos' by two if so.
    */
   private boolean skipTripleQuote(char quot) {
-    if (pos + 1 < buffer.length && buffer[pos] == quot && buffer[pos + 1] == quot) {
+    if (pos + 1 < buffer.length() && buffer.charAt(pos) == quot && buffer.charAt(pos + 1) == quot) {
       pos += 2;
       return true;
     } else {
@@ -283,8 +369,8 @@ public class BuildLexerBase {
 
     // more expensive second choice that expands escaped into a buffer
     StringBuilder literal = new StringBuilder();
-    while (pos < buffer.length) {
-      char c = buffer[pos];
+    while (pos < buffer.length()) {
+      char c = buffer.charAt(pos);
       pos++;
       switch (c) {
         case '\n':
@@ -298,7 +384,7 @@ public class BuildLexerBase {
             return;
           }
         case '\\':
-          if (pos == buffer.length) {
+          if (pos == buffer.length()) {
             error("unterminated string literal at eof", oldPos, pos);
             addToken(TokenKind.STRING, oldPos, pos - 1, literal.toString());
             return;
@@ -307,11 +393,11 @@ public class BuildLexerBase {
             // Insert \ and the following character.
             // As in Python, it means that a raw string can never end with a single \.
             literal.append('\\');
-            literal.append(buffer[pos]);
+            literal.append(buffer.charAt(pos));
             pos++;
             break;
           }
-          c = buffer[pos];
+          c = buffer.charAt(pos);
           pos++;
           switch (c) {
             case '\n':
@@ -345,13 +431,13 @@ public class BuildLexerBase {
             case '7':
               { // octal escape
                 int octal = c - '0';
-                if (pos < buffer.length) {
-                  c = buffer[pos];
+                if (pos < buffer.length()) {
+                  c = buffer.charAt(pos);
                   if (c >= '0' && c <= '7') {
                     pos++;
                     octal = (octal << 3) | (c - '0');
-                    if (pos < buffer.length) {
-                      c = buffer[pos];
+                    if (pos < buffer.length()) {
+                      c = buffer.charAt(pos);
                       if (c >= '0' && c <= '7') {
                         pos++;
                         octal = (octal << 3) | (c - '0');
@@ -422,8 +508,8 @@ public class BuildLexerBase {
     }
 
     // first quick optimistic scan for a simple non-escaped string
-    while (pos < buffer.length) {
-      char c = buffer[pos++];
+    while (pos < buffer.length()) {
+      char c = buffer.charAt(pos++);
       switch (c) {
         case '\n':
           error("unterminated string literal at eol", oldPos, pos);
@@ -471,8 +557,8 @@ public class BuildLexerBase {
 
   private String scanIdentifier() {
     int oldPos = pos - 1;
-    while (pos < buffer.length) {
-      switch (buffer[pos]) {
+    while (pos < buffer.length()) {
+      switch (buffer.charAt(pos)) {
         case '_':
         case 'a':
         case 'b':
@@ -562,8 +648,8 @@ public class BuildLexerBase {
 
   private String scanDecimal() {
     int oldPos = pos;
-    while (pos < buffer.length) {
-      char c = buffer[pos];
+    while (pos < buffer.length()) {
+      char c = buffer.charAt(pos);
       switch (c) {
         case '0':
         case '1':
@@ -586,8 +672,8 @@ public class BuildLexerBase {
 
   private String scanInteger() {
     int oldPos = pos;
-    while (pos < buffer.length) {
-      char c = buffer[pos];
+    while (pos < buffer.length()) {
+      char c = buffer.charAt(pos);
       switch (c) {
         case 'X':
         case 'x': // for hexadecimal prefix
@@ -707,11 +793,11 @@ public class BuildLexerBase {
    * @return true if it tokenized an operator
    */
   private boolean tokenizeTwoChars() {
-    if (pos + 2 >= buffer.length) {
+    if (pos + 2 >= buffer.length()) {
       return false;
     }
-    char c1 = buffer[pos];
-    char c2 = buffer[pos + 1];
+    char c1 = buffer.charAt(pos);
+    char c2 = buffer.charAt(pos + 1);
     TokenKind tok = null;
     if (c2 == '=') {
       tok = EQUAL_TOKENS.get(c1);
@@ -727,152 +813,160 @@ public class BuildLexerBase {
 
   /** Test if the character at pos+p is c. */
   private boolean lookaheadIs(int p, char c) {
-    return pos + p < buffer.length && buffer[pos + p] == c;
+    return pos + p < buffer.length() && buffer.charAt(pos + p) == c;
   }
 
   private boolean lookaheadMatches(int p, Predicate<Character> pred) {
-    return pos + p < buffer.length && pred.test(buffer[pos + p]);
+    return pos + p < buffer.length() && pred.test(buffer.charAt(pos + p));
   }
 
-  /** Performs tokenization of the character buffer of file contents provided to the constructor. */
+  /**
+   * Performs tokenization of the rest of the character buffer of file contents provided to the
+   * constructor.
+   */
   private void tokenize() {
-    while (pos < buffer.length) {
-      if (tokenizeTwoChars()) {
-        pos += 2;
-        continue;
-      }
-      char c = buffer[pos];
-      pos++;
-      switch (c) {
-        case '{':
-          addToken(TokenKind.LBRACE, pos - 1, pos);
-          openParenStackDepth++;
-          break;
-        case '}':
-          addToken(TokenKind.RBRACE, pos - 1, pos);
-          popParen();
-          break;
-        case '(':
-          addToken(TokenKind.LPAREN, pos - 1, pos);
-          openParenStackDepth++;
-          break;
-        case ')':
-          addToken(TokenKind.RPAREN, pos - 1, pos);
-          popParen();
-          break;
-        case '[':
-          addToken(TokenKind.LBRACKET, pos - 1, pos);
-          openParenStackDepth++;
-          break;
-        case ']':
-          addToken(TokenKind.RBRACKET, pos - 1, pos);
-          popParen();
-          break;
-        case '>':
-          addToken(TokenKind.GREATER, pos - 1, pos);
-          break;
-        case '<':
-          addToken(TokenKind.LESS, pos - 1, pos);
-          break;
-        case ':':
-          addToken(TokenKind.COLON, pos - 1, pos);
-          break;
-        case ',':
-          addToken(TokenKind.COMMA, pos - 1, pos);
-          break;
-        case '+':
-          addToken(TokenKind.PLUS, pos - 1, pos);
-          break;
-        case '-':
-          addToken(TokenKind.MINUS, pos - 1, pos);
-          break;
-        case '|':
-          addToken(TokenKind.PIPE, pos - 1, pos);
-          break;
-        case '=':
-          addToken(TokenKind.EQUALS, pos - 1, pos);
-          break;
-        case '%':
-          addToken(TokenKind.PERCENT, pos - 1, pos);
-          break;
-        case '/':
-          if (lookaheadIs(0, '/') && lookaheadIs(1, '=')) {
-            addToken(TokenKind.SLASH_SLASH_EQUALS, pos - 1, pos + 2);
-            pos += 2;
-          } else if (lookaheadIs(0, '/')) {
-            addToken(TokenKind.SLASH_SLASH, pos - 1, pos + 1);
-            pos++;
+    while (pos < buffer.length()) {
+      tokenizeNext();
+    }
+  }
+
+  /** Tokenizes the next lexeme, which may add zero or more tokens. */
+  private void tokenizeNext() {
+    if (tokenizeTwoChars()) {
+      pos += 2;
+      return;
+    }
+    char c = buffer.charAt(pos);
+    pos++;
+    switch (c) {
+      case '{':
+        addToken(TokenKind.LBRACE, pos - 1, pos);
+        openParenStackDepth++;
+        break;
+      case '}':
+        addToken(TokenKind.RBRACE, pos - 1, pos);
+        popParen();
+        break;
+      case '(':
+        addToken(TokenKind.LPAREN, pos - 1, pos);
+        openParenStackDepth++;
+        break;
+      case ')':
+        addToken(TokenKind.RPAREN, pos - 1, pos);
+        popParen();
+        break;
+      case '[':
+        addToken(TokenKind.LBRACKET, pos - 1, pos);
+        openParenStackDepth++;
+        break;
+      case ']':
+        addToken(TokenKind.RBRACKET, pos - 1, pos);
+        popParen();
+        break;
+      case '>':
+        addToken(TokenKind.GREATER, pos - 1, pos);
+        break;
+      case '<':
+        addToken(TokenKind.LESS, pos - 1, pos);
+        break;
+      case ':':
+        addToken(TokenKind.COLON, pos - 1, pos);
+        break;
+      case ',':
+        addToken(TokenKind.COMMA, pos - 1, pos);
+        break;
+      case '+':
+        addToken(TokenKind.PLUS, pos - 1, pos);
+        break;
+      case '-':
+        addToken(TokenKind.MINUS, pos - 1, pos);
+        break;
+      case '|':
+        addToken(TokenKind.PIPE, pos - 1, pos);
+        break;
+      case '=':
+        addToken(TokenKind.EQUALS, pos - 1, pos);
+        break;
+      case '%':
+        addToken(TokenKind.PERCENT, pos - 1, pos);
+        break;
+      case '/':
+        if (lookaheadIs(0, '/') && lookaheadIs(1, '=')) {
+          addToken(TokenKind.SLASH_SLASH_EQUALS, pos - 1, pos + 2);
+          pos += 2;
+        } else if (lookaheadIs(0, '/')) {
+          addToken(TokenKind.SLASH_SLASH, pos - 1, pos + 1);
+          pos++;
+        } else {
+          // /= is handled by tokenizeTwoChars.
+          addToken(TokenKind.SLASH, pos - 1, pos);
+        }
+        break;
+      case ';':
+        addToken(TokenKind.SEMI, pos - 1, pos);
+        break;
+      case '*':
+        addToken(TokenKind.STAR, pos - 1, pos);
+        break;
+      case ' ':
+      case '\t':
+      case '\r':
+        addWhitespace();
+        break;
+      case '\\':
+        // Backslash character is valid only at the end of a line (or in a string)
+        if (lookaheadIs(0, '\n')) {
+          // treat end of line backslash and newline char as whitespace
+          // (they're ignored by the parser)
+          pos++;
+          addToken(TokenKind.WHITESPACE, pos - 2, pos, Character.toString(c));
+        } else {
+          addToken(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c));
+        }
+        break;
+      case '\n':
+        newline();
+        break;
+      case '#':
+        int oldPos = pos - 1;
+        while (pos < buffer.length()) {
+          c = buffer.charAt(pos);
+          if (c == '\n') {
+            break;
           } else {
-            // /= is handled by tokenizeTwoChars.
-            addToken(TokenKind.SLASH, pos - 1, pos);
-          }
-          break;
-        case ';':
-          addToken(TokenKind.SEMI, pos - 1, pos);
-          break;
-        case '*':
-          addToken(TokenKind.STAR, pos - 1, pos);
-          break;
-        case ' ':
-        case '\t':
-        case '\r':
-          addWhitespace();
-          break;
-        case '\\':
-          // Backslash character is valid only at the end of a line (or in a string)
-          if (lookaheadIs(0, '\n')) {
-            // treat end of line backslash and newline char as whitespace
-            // (they're ignored by the parser)
             pos++;
-            addToken(TokenKind.WHITESPACE, pos - 2, pos, Character.toString(c));
-          } else {
-            addToken(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c));
           }
+        }
+        addToken(TokenKind.COMMENT, oldPos, pos, bufferSlice(oldPos, pos));
+        break;
+      case '\'':
+      case '\"':
+        addStringLiteral(c, false);
+        break;
+      default:
+        // detect raw strings, e.g. r"str"
+        if (c == 'r' && (lookaheadIs(0, '\'') || lookaheadIs(0, '\"'))) {
+          c = buffer.charAt(pos);
+          pos++;
+          addStringLiteral(c, true);
           break;
-        case '\n':
-          newline();
-          break;
-        case '#':
-          int oldPos = pos - 1;
-          while (pos < buffer.length) {
-            c = buffer[pos];
-            if (c == '\n') {
-              break;
-            } else {
-              pos++;
-            }
-          }
-          addToken(TokenKind.COMMENT, oldPos, pos, bufferSlice(oldPos, pos));
-          break;
-        case '\'':
-        case '\"':
-          addStringLiteral(c, false);
-          break;
-        default:
-          // detect raw strings, e.g. r"str"
-          if (c == 'r' && (lookaheadIs(0, '\'') || lookaheadIs(0, '\"'))) {
-            c = buffer[pos];
-            pos++;
-            addStringLiteral(c, true);
-            break;
-          }
+        }
 
-          // Distinguish dot vs. start of a float.
-          if (c == '.' && !lookaheadMatches(0, Character::isDigit)) {
-            addToken(TokenKind.DOT, pos - 1, pos);
-          } else if (Character.isDigit(c) || c == '.') {
-            pos--;
-            addNumber();
-          } else if (Character.isJavaIdentifierStart(c) && c != '$') {
-            addIdentifierOrKeyword();
-          } else {
-            // Some characters in Python are not recognized in Blaze syntax (e.g. '!')
-            addToken(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c));
-            error("invalid character: '" + c + "'");
-          }
-          break;
-      } // switch
-    } // while
+        // Distinguish dot vs. start of a float.
+        if (c == '.' && !lookaheadMatches(0, Character::isDigit)) {
+          addToken(TokenKind.DOT, pos - 1, pos);
+        } else if (Character.isDigit(c) || c == '.') {
+          pos--;
+          addNumber();
+        } else if (Character.isJavaIdentifierStart(c) && c != '$') {
+          addIdentifierOrKeyword();
+        } else {
+          // Some characters in Python are not recognized in Blaze syntax (e.g. '!')
+          addToken(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c));
+          error("invalid character: '" + c + "'");
+        }
+        break;
+    } // switch
   }
 
   /**
@@ -883,6 +977,6 @@ public class BuildLexerBase {
    * @return the text at offset start with length end - start
    */
   private String bufferSlice(int start, int end) {
-    return new String(this.buffer, start, end - start);
+    return buffer.subSequence(start, end).toString();
   }
 }
@@ -15,6 +15,8 @@
  */
 package com.google.idea.blaze.base.lang.buildfile.psi;
 
+import com.google.idea.blaze.base.lang.buildfile.index.BuildFileSummary;
+import com.google.idea.blaze.base.lang.buildfile.index.BuildFileSummaryIndex;
 import com.google.idea.blaze.base.lang.buildfile.language.BuildFileType;
 import com.google.idea.blaze.base.lang.buildfile.references.QuoteType;
 import com.google.idea.blaze.base.lang.buildfile.search.BlazePackage;
@@ -27,6 +29,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.psi.FileViewProvider;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiNamedElement;
+import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.PathUtil;
 import com.intellij.util.Processor;
 import icons.BlazeIcons;
@@ -143,9 +146,25 @@ public class BuildFile extends PsiFileBase implements BuildElement, DocStringOwn
         : null;
   }
 
-  /** Finds a top-level rule with a "name" keyword argument with the given value. */
+  /**
+   * Finds a top-level rule with a "name" keyword argument with the given value.
+   *
+   * <p>If the syntax tree isn't loaded, the file's {@link BuildFileSummary} is used to answer
+   * without loading it when there is no such rule. Finding a rule loads the syntax tree.
+   */
   @Nullable
   public FuncallExpression findRule(String name) {
+    BuildFileSummary summary = BuildFileSummaryIndex.getIfTreeNotLoaded(this);
+    if (summary != null) {
+      BuildFileSummary.Rule rule = summary.getRule(name);
+      if (rule == null) {
+        return null;
+      }
+      FuncallExpression expr = elementStartingAt(rule.offset(), FuncallExpression.class);
+      if (expr != null && name.equals(expr.getNameArgumentValue())) {
+        return expr;
+      }
+    }
     for (FuncallExpression expr : findChildrenByClass(FuncallExpression.class)) {
       String ruleName = expr.getNameArgumentValue();
       if (name.equals(ruleName)) {
@@ -157,6 +176,17 @@ public class BuildFile extends PsiFileBase implements BuildElement, DocStringOwn
 
   @Nullable
   public FunctionStatement findDeclaredFunction(String name) {
+    BuildFileSummary summary = BuildFileSummaryIndex.getIfTreeNotLoaded(this);
+    if (summary != null) {
+      int offset = summary.getFunctionOffset(name);
+      if (offset < 0) {
+        return null;
+      }
+      FunctionStatement fn = elementStartingAt(offset, FunctionStatement.class);
+      if (fn != null && name.equals(fn.getName())) {
+        return fn;
+      }
+    }
     for (FunctionStatement fn : getFunctionDeclarations()) {
       if (name.equals(fn.getName())) {
         return fn;
@@ -167,6 +197,10 @@ public class BuildFile extends PsiFileBase implements BuildElement, DocStringOwn
 
   @Nullable
   public FunctionStatement findLoadedFunction(String name) {
+    BuildFileSummary summary = BuildFileSummaryIndex.getIfTreeNotLoaded(this);
+    if (summary != null && !summary.loadsSymbol(name)) {
+      return null;
+    }
     for (LoadStatement loadStatement : findChildrenByClass(LoadStatement.class)) {
       for (LoadedSymbol loadedSymbol : loadStatement.getImportedSymbolElements()) {
         if (name.equals(loadedSymbol.getSymbolString())) {
@@ -248,6 +282,17 @@ public class BuildFile extends PsiFileBase implements BuildElement, DocStringOwn
     return findChildrenByClass(FunctionStatement.class);
   }
 
+  /**
+   * Returns the element of the given type starting at an offset taken from {@link
+   * BuildFileSummary}, or null if the summary is out of date. This loads the syntax tree, but not
+   * the PSI of the other top-level statements.
+   */
+  @Nullable
+  private <T extends PsiElement> T elementStartingAt(int offset, Class<T> psiClass) {
+    T element = PsiTreeUtil.getParentOfType(findElementAt(offset), psiClass, false);
+    return element != null && element.getTextRange().getStartOffset() == offset ? element : null;
+  }
+
   @Override
   public Icon getIcon(int flags) {
     return BlazeIcons.BuildFile;
@@ -18,6 +18,8 @@ package com.google.idea.blaze.base.lang.buildfile.references;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.lang.buildfile.globbing.GlobExpansionCache;
+import com.google.idea.blaze.base.lang.buildfile.globbing.GlobMatcher;
 import com.google.idea.blaze.base.lang.buildfile.globbing.UnixGlob;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
 import com.google.idea.blaze.base.lang.buildfile.psi.Expression;
@@ -61,17 +63,12 @@ public class GlobReference extends PsiPolyVariantCachingReference {
     if (isDirectory && element.areDirectoriesExcluded()) {
       return false;
     }
-    for (String exclude : resolveListContents(element.getExcludes())) {
-      if (UnixGlob.matches(exclude, packageRelativePath)) {
-        return false;
-      }
-    }
-    for (String include : resolveListContents(element.getIncludes())) {
-      if (UnixGlob.matches(include, packageRelativePath)) {
-        return true;
-      }
+    GlobMatcher includes = GlobMatcher.create(resolveListContents(element.getIncludes()));
+    if (!includes.matches(packageRelativePath)) {
+      return false;
     }
-    return false;
+    GlobMatcher excludes = GlobMatcher.create(resolveListContents(element.getExcludes()));
+    return !excludes.matches(packageRelativePath);
   }
 
   /**
@@ -82,10 +79,9 @@ public class GlobReference extends PsiPolyVariantCachingReference {
     if (isDirectory && element.areDirectoriesExcluded()) {
       return false;
     }
-    for (String exclude : resolveListContents(element.getExcludes())) {
-      if (UnixGlob.matches(exclude, packageRelativePath)) {
-        return false;
-      }
+    GlobMatcher excludes = GlobMatcher.create(resolveListContents(element.getExcludes()));
+    if (excludes.matches(packageRelativePath)) {
+      return false;
     }
     for (String include : resolveListContents(element.getIncludes())) {
       if (!hasWildcard(include) && UnixGlob.matches(include, packageRelativePath)) {
@@ -114,12 +110,13 @@ public class GlobReference extends PsiPolyVariantCachingReference {
     Project project = element.getProject();
     try {
       List<File> files =
-          UnixGlob.forPath(containingDirectory)
-              .addPatterns(includes)
-              .addExcludes(excludes)
-              .setExcludeDirectories(directoriesExcluded)
-              .setDirectoryFilter(directoryFilter(project, containingDirectory.getPath()))
-              .glob();
+          GlobExpansionCache.getInstance(project)
+              .glob(
+                  containingDirectory,
+                  includes,
+                  excludes,
+                  directoriesExcluded,
+                  directoryFilter(project, containingDirectory.getPath()));
 
       List<ResolveResult> results = Lists.newArrayListWithCapacity(files.size());
       for (File file : files) {
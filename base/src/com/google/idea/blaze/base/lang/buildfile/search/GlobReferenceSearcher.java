@@ -15,6 +15,8 @@
  */
 package com.google.idea.blaze.base.lang.buildfile.search;
 
+import com.google.idea.blaze.base.lang.buildfile.index.BuildFileSummary;
+import com.google.idea.blaze.base.lang.buildfile.index.BuildFileSummaryIndex;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
 import com.google.idea.blaze.base.lang.buildfile.psi.GlobExpression;
 import com.google.idea.blaze.base.lang.buildfile.psi.util.PsiUtils;
@@ -64,6 +66,9 @@ public class GlobReferenceSearcher extends QueryExecutorBase<PsiReference, Searc
       return;
     }
 
+    if (!mightBeInGlob(containingPackage.buildFile, relativePath, file.isDirectory())) {
+      return;
+    }
     List<GlobExpression> globs =
         PsiUtils.findAllChildrenOfClassRecursive(containingPackage.buildFile, GlobExpression.class);
     for (GlobExpression glob : globs) {
@@ -73,6 +78,23 @@ public class GlobReferenceSearcher extends QueryExecutorBase<PsiReference, Searc
     }
   }
 
+  /**
+   * Uses the indexed summary of the BUILD file, if its syntax tree isn't already loaded, to avoid
+   * parsing it when no glob could match.
+   */
+  private static boolean mightBeInGlob(BuildFile buildFile, String relativePath, boolean isDir) {
+    BuildFileSummary summary = BuildFileSummaryIndex.getIfTreeNotLoaded(buildFile);
+    if (summary == null) {
+      return true;
+    }
+    for (BuildFileSummary.Glob glob : summary.getGlobs()) {
+      if (!Boolean.FALSE.equals(glob.matches(relativePath, isDir))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private static PsiReference globReference(GlobExpression glob, PsiFileSystemItem file) {
     return new PsiReferenceBase.Immediate<GlobExpression>(
         glob, glob.getReferenceTextRange(), file) {
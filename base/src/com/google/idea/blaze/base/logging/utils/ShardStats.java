@@ -41,6 +41,7 @@ public abstract class ShardStats {
     PARTITION_WITHOUT_EXPANDING,
     BUILD_TARGET_BATCHING_SERVICE,
     LEXICOGRAPHIC_TARGET_SHARDER,
+    DEPENDENCY_AWARE_TARGET_SHARDER,
     ERROR
   }
 }
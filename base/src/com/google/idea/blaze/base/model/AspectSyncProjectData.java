@@ -16,13 +16,22 @@
 package com.google.idea.blaze.base.model;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.devtools.intellij.model.ProjectData;
+import com.google.devtools.intellij.model.ProjectData.TargetData;
 import com.google.idea.blaze.base.command.info.BlazeInfo;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
+import com.google.idea.blaze.base.ideinfo.ProtoWrapper;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.model.ProjectDataFile.Section;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.settings.BuildSystemName;
 import com.google.idea.blaze.base.sync.aspects.BlazeIdeInterfaceState;
@@ -30,23 +39,29 @@ import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoderImpl;
 import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolver;
+import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
+import com.google.idea.blaze.base.targetmaps.SourceToTargetIndex;
+import com.google.idea.blaze.base.targetmaps.TransitiveDependencyIndex;
 import com.google.idea.blaze.common.BuildTarget;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 import javax.annotation.concurrent.Immutable;
 import org.jetbrains.annotations.Nullable;
 
 /** The top-level object serialized to cache. */
 @Immutable
 public final class AspectSyncProjectData implements BlazeProjectData {
-  private final ProjectTargetData targetData;
+  /** The target data, which may still be being loaded in the background. */
+  private final ListenableFuture<ProjectTargetData> targetData;
+
+  private final RemoteOutputArtifacts remoteOutputs;
   private final BlazeInfo blazeInfo;
   private final BlazeVersionData blazeVersionData;
   private final WorkspacePathResolver workspacePathResolver;
@@ -55,6 +70,13 @@ public final class AspectSyncProjectData implements BlazeProjectData {
   private final ExternalWorkspaceData externalWorkspaceData;
   private final SyncState syncState;
 
+  /** Indexes of the target map. Not serialized; they're rebuilt in the background on load. */
+  private final Supplier<ReverseDependencyMap> reverseDependencyMap;
+
+  private final Supplier<SourceToTargetIndex> sourceToTargetIndex;
+
+  private final Supplier<TransitiveDependencyIndex> transitiveDependencyIndex;
+
   public AspectSyncProjectData(
       ProjectTargetData targetData,
       BlazeInfo blazeInfo,
@@ -64,7 +86,74 @@ public final class AspectSyncProjectData implements BlazeProjectData {
       WorkspaceLanguageSettings workspaceLanguageSettings,
       ExternalWorkspaceData externalWorkspaceData,
       SyncState syncState) {
+    this(
+        Futures.immediateFuture(targetData),
+        targetData.remoteOutputs,
+        blazeInfo,
+        blazeVersionData,
+        workspacePathResolver,
+        artifactLocationDecoder,
+        workspaceLanguageSettings,
+        externalWorkspaceData,
+        syncState,
+        Suppliers.memoize(() -> ReverseDependencyMap.create(targetData.targetMap())),
+        Suppliers.memoize(
+            () -> SourceToTargetIndex.create(targetData.targetMap(), artifactLocationDecoder)),
+        Suppliers.memoize(() -> TransitiveDependencyIndex.create(targetData.targetMap())));
+  }
+
+  /**
+   * Creates the project data at the end of a sync, updating the target map indexes of the previous
+   * project data for the targets which changed.
+   */
+  public AspectSyncProjectData(
+      ProjectTargetData targetData,
+      BlazeInfo blazeInfo,
+      BlazeVersionData blazeVersionData,
+      WorkspacePathResolver workspacePathResolver,
+      ArtifactLocationDecoder artifactLocationDecoder,
+      WorkspaceLanguageSettings workspaceLanguageSettings,
+      ExternalWorkspaceData externalWorkspaceData,
+      SyncState syncState,
+      @Nullable AspectSyncProjectData oldProjectData) {
+    this(
+        Futures.immediateFuture(targetData),
+        targetData.remoteOutputs,
+        blazeInfo,
+        blazeVersionData,
+        workspacePathResolver,
+        artifactLocationDecoder,
+        workspaceLanguageSettings,
+        externalWorkspaceData,
+        syncState,
+        Suppliers.ofInstance(
+            oldProjectData != null
+                ? oldProjectData.getReverseDependencyMap().update(targetData.targetMap())
+                : ReverseDependencyMap.create(targetData.targetMap())),
+        Suppliers.ofInstance(
+            oldProjectData != null
+                ? oldProjectData
+                    .getSourceToTargetIndex()
+                    .update(targetData.targetMap(), artifactLocationDecoder)
+                : SourceToTargetIndex.create(targetData.targetMap(), artifactLocationDecoder)),
+        Suppliers.ofInstance(TransitiveDependencyIndex.create(targetData.targetMap())));
+  }
+
+  private AspectSyncProjectData(
+      ListenableFuture<ProjectTargetData> targetData,
+      RemoteOutputArtifacts remoteOutputs,
+      BlazeInfo blazeInfo,
+      BlazeVersionData blazeVersionData,
+      WorkspacePathResolver workspacePathResolver,
+      ArtifactLocationDecoder artifactLocationDecoder,
+      WorkspaceLanguageSettings workspaceLanguageSettings,
+      ExternalWorkspaceData externalWorkspaceData,
+      SyncState syncState,
+      Supplier<ReverseDependencyMap> reverseDependencyMap,
+      Supplier<SourceToTargetIndex> sourceToTargetIndex,
+      Supplier<TransitiveDependencyIndex> transitiveDependencyIndex) {
     this.targetData = targetData;
+    this.remoteOutputs = remoteOutputs;
     this.blazeInfo = blazeInfo;
     this.blazeVersionData = blazeVersionData;
     this.workspacePathResolver = workspacePathResolver;
@@ -72,6 +161,9 @@ public final class AspectSyncProjectData implements BlazeProjectData {
     this.workspaceLanguageSettings = workspaceLanguageSettings;
     this.externalWorkspaceData = externalWorkspaceData;
     this.syncState = syncState;
+    this.reverseDependencyMap = reverseDependencyMap;
+    this.sourceToTargetIndex = sourceToTargetIndex;
+    this.transitiveDependencyIndex = transitiveDependencyIndex;
   }
 
   @VisibleForTesting
@@ -110,7 +202,7 @@ public final class AspectSyncProjectData implements BlazeProjectData {
   @VisibleForTesting
   public ProjectData.BlazeProjectData toProto() {
     return ProjectData.BlazeProjectData.newBuilder()
-        .setTargetData(targetData.toProto())
+        .setTargetData(getTargetData().toProto())
         .setBlazeInfo(blazeInfo.toProto())
         .setBlazeVersionData(blazeVersionData.toProto())
         .setWorkspacePathResolver(workspacePathResolver.toProto())
@@ -153,13 +245,58 @@ public final class AspectSyncProjectData implements BlazeProjectData {
         .collect(ImmutableList.toImmutableList());
   }
 
+  /**
+   * Returns the target data, waiting for it to be loaded if the project data was loaded from disk
+   * recently.
+   *
+   * <p>If the target data could not be decoded, returns empty target data instead. The project data
+   * is discarded in that case, see {@link #awaitTargetData}.
+   */
   public ProjectTargetData getTargetData() {
+    try {
+      return Futures.getUnchecked(targetData);
+    } catch (UncheckedExecutionException e) {
+      return new ProjectTargetData(emptyTargetMap(), /* ideInterfaceState= */ null, remoteOutputs);
+    }
+  }
+
+  private static TargetMap emptyTargetMap() {
+    return new TargetMap(ImmutableMap.of());
+  }
+
+  /**
+   * Waits for the target data to be loaded, returning false if it could not be decoded. Project
+   * data for which this returns false is unusable and should be discarded.
+   */
+  public boolean awaitTargetData() {
+    try {
+      Futures.getUnchecked(targetData);
+      return true;
+    } catch (UncheckedExecutionException e) {
+      return false;
+    }
+  }
+
+  /** Returns a future which completes once the target data has been loaded. */
+  public ListenableFuture<ProjectTargetData> getTargetDataFuture() {
     return targetData;
   }
 
   @Override
   public TargetMap getTargetMap() {
-    return targetData.targetMap();
+    return getTargetData().targetMap();
+  }
+
+  public ReverseDependencyMap getReverseDependencyMap() {
+    return reverseDependencyMap.get();
+  }
+
+  public SourceToTargetIndex getSourceToTargetIndex() {
+    return sourceToTargetIndex.get();
+  }
+
+  public TransitiveDependencyIndex getTransitiveDependencyIndex() {
+    return transitiveDependencyIndex.get();
   }
 
   @Override
@@ -189,7 +326,7 @@ public final class AspectSyncProjectData implements BlazeProjectData {
 
   @Override
   public RemoteOutputArtifacts getRemoteOutputs() {
-    return targetData.remoteOutputs;
+    return remoteOutputs;
   }
 
   @Override
@@ -209,16 +346,123 @@ public final class AspectSyncProjectData implements BlazeProjectData {
 
   public static AspectSyncProjectData loadFromDisk(BuildSystemName buildSystemName, File file)
       throws IOException {
-    try (InputStream stream = new GZIPInputStream(new FileInputStream(file))) {
-      return fromProto(buildSystemName, ProjectData.BlazeProjectData.parseFrom(stream));
+    return loadFromDisk(buildSystemName, file, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Loads project data saved by {@link #saveToDisk}.
+   *
+   * <p>Only the sections needed to set up the project structure are decoded before this returns.
+   * The target map and aspect state, which make up most of the data, are decoded on {@code
+   * executor}, and calls needing them block until they are available. If these sections fail to
+   * decode, the target map is empty; callers which need to know should check {@link
+   * #awaitTargetData}.
+   */
+  public static AspectSyncProjectData loadFromDisk(
+      BuildSystemName buildSystemName, File file, Executor executor) throws IOException {
+    if (!ProjectDataFile.isProjectDataFile(file.toPath())) {
+      // written by an earlier version
+      try (InputStream stream = new GZIPInputStream(new FileInputStream(file))) {
+        return fromProto(buildSystemName, ProjectData.BlazeProjectData.parseFrom(stream));
+      }
     }
+    ProjectDataFile dataFile = ProjectDataFile.read(file.toPath());
+    ListenableFuture<ProjectData.BlazeProjectData> targets =
+        Futures.submit(
+            () -> dataFile.decode(Section.IDE_INTERFACE_STATE, Section.TARGET_MAP), executor);
+    ProjectData.BlazeProjectData proto =
+        dataFile.decode(Section.PROJECT, Section.SYNC_STATE, Section.REMOTE_OUTPUTS);
+
+    BlazeInfo blazeInfo = BlazeInfo.fromProto(buildSystemName, proto.getBlazeInfo());
+    WorkspacePathResolver workspacePathResolver =
+        WorkspacePathResolver.fromProto(proto.getWorkspacePathResolver());
+    RemoteOutputArtifacts remoteOutputs =
+        RemoteOutputArtifacts.fromProto(buildSystemName, proto.getTargetData().getRemoteOutputs());
+    ListenableFuture<ProjectTargetData> targetData =
+        Futures.transform(
+            targets,
+            p ->
+                new ProjectTargetData(
+                    TargetMap.fromProto(p.getTargetData().getTargetMap()),
+                    p.getTargetData().hasIdeInterfaceState()
+                        ? BlazeIdeInterfaceState.fromProto(p.getTargetData().getIdeInterfaceState())
+                        : null,
+                    remoteOutputs),
+            executor);
+    ArtifactLocationDecoder decoder =
+        new ArtifactLocationDecoderImpl(blazeInfo, workspacePathResolver, remoteOutputs);
+    // build the indexes as soon as the target map is available, rather than on first use. If it
+    // can't be decoded they index an empty target map, like getTargetMap() then returns.
+    ListenableFuture<TargetMap> targetMap =
+        Futures.catching(
+            Futures.transform(
+                targetData, ProjectTargetData::targetMap, MoreExecutors.directExecutor()),
+            Exception.class,
+            e -> emptyTargetMap(),
+            MoreExecutors.directExecutor());
+    ListenableFuture<ReverseDependencyMap> reverseDependencyMap =
+        Futures.transform(targetMap, ReverseDependencyMap::create, executor);
+    ListenableFuture<SourceToTargetIndex> sourceToTargetIndex =
+        Futures.transform(targetMap, t -> SourceToTargetIndex.create(t, decoder), executor);
+    ListenableFuture<TransitiveDependencyIndex> transitiveDependencyIndex =
+        Futures.transform(targetMap, TransitiveDependencyIndex::create, executor);
+    return new AspectSyncProjectData(
+        targetData,
+        remoteOutputs,
+        blazeInfo,
+        BlazeVersionData.fromProto(proto.getBlazeVersionData()),
+        workspacePathResolver,
+        decoder,
+        WorkspaceLanguageSettings.fromProto(proto.getWorkspaceLanguageSettings()),
+        ExternalWorkspaceData.fromProto(proto.getExternalWorkspaceData()),
+        SyncState.fromProto(proto.getSyncState()),
+        () -> Futures.getUnchecked(reverseDependencyMap),
+        () -> Futures.getUnchecked(sourceToTargetIndex),
+        () -> Futures.getUnchecked(transitiveDependencyIndex));
   }
 
   public void saveToDisk(File file) throws IOException {
-    ProjectData.BlazeProjectData proto = toProto();
-    try (OutputStream stream = new GZIPOutputStream(new FileOutputStream(file))) {
-      proto.writeTo(stream);
-    }
+    saveToDisk(file, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Saves this project data to {@code file}, serializing and compressing its sections in parallel
+   * on {@code executor}.
+   */
+  public void saveToDisk(File file, Executor executor) throws IOException {
+    ProjectTargetData targetData = getTargetData();
+    ImmutableMap<Section, Callable<ProjectData.BlazeProjectData>> sections =
+        ImmutableMap.of(
+            Section.PROJECT,
+            () ->
+                ProjectData.BlazeProjectData.newBuilder()
+                    .setBlazeInfo(blazeInfo.toProto())
+                    .setBlazeVersionData(blazeVersionData.toProto())
+                    .setWorkspacePathResolver(workspacePathResolver.toProto())
+                    .setWorkspaceLanguageSettings(workspaceLanguageSettings.toProto())
+                    .setExternalWorkspaceData(externalWorkspaceData.toProto())
+                    .build(),
+            Section.SYNC_STATE,
+            () ->
+                ProjectData.BlazeProjectData.newBuilder().setSyncState(syncState.toProto()).build(),
+            Section.REMOTE_OUTPUTS,
+            () -> withTargetData(TargetData.newBuilder().setRemoteOutputs(remoteOutputs.toProto())),
+            Section.IDE_INTERFACE_STATE,
+            () -> {
+              TargetData.Builder builder = TargetData.newBuilder();
+              ProtoWrapper.unwrapAndSetIfNotNull(
+                  builder::setIdeInterfaceState, targetData.ideInterfaceState);
+              return withTargetData(builder);
+            },
+            Section.TARGET_MAP,
+            () ->
+                withTargetData(
+                    TargetData.newBuilder().setTargetMap(targetData.targetMap().toProto())));
+    ProjectDataFile.write(file.toPath(), sections, executor);
+  }
+
+  private static ProjectData.BlazeProjectData withTargetData(TargetData.Builder targetData) {
+    return ProjectData.BlazeProjectData.newBuilder().setTargetData(targetData).build();
   }
 
   @Override
@@ -230,20 +474,22 @@ public final class AspectSyncProjectData implements BlazeProjectData {
       return false;
     }
     AspectSyncProjectData other = (AspectSyncProjectData) o;
-    return Objects.equals(targetData, other.targetData)
-        && Objects.equals(blazeInfo, other.blazeInfo)
+    // compare the target data last, since it may have to wait for it to be loaded
+    return Objects.equals(blazeInfo, other.blazeInfo)
         && Objects.equals(externalWorkspaceData, other.externalWorkspaceData)
         && Objects.equals(blazeVersionData, other.blazeVersionData)
         && Objects.equals(workspacePathResolver, other.workspacePathResolver)
         && Objects.equals(artifactLocationDecoder, other.artifactLocationDecoder)
         && Objects.equals(workspaceLanguageSettings, other.workspaceLanguageSettings)
-        && Objects.equals(syncState, other.syncState);
+        && Objects.equals(syncState, other.syncState)
+        && (targetData == other.targetData
+            || Objects.equals(getTargetData(), other.getTargetData()));
   }
 
   @Override
   public int hashCode() {
+    // the target data is left out, so that this doesn't wait for it to be loaded
     return Objects.hash(
-        targetData,
         blazeInfo,
         blazeVersionData,
         workspaceLanguageSettings,
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.common.AtomicFileWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads and writes {@link ProjectData.BlazeProjectData} as a set of independently compressed
+ * sections.
+ *
+ * <p>The file starts with a table of contents giving the name, compressed length and checksum of
+ * each section, followed by the sections themselves. Each section is a {@link
+ * ProjectData.BlazeProjectData} with only some of its fields set, so that merging any subset of
+ * them gives the corresponding part of the project data. This lets sections be compressed and
+ * decompressed in parallel, and the large ones be decoded only when they are needed. Sections are
+ * compressed with the fastest deflate level, since the file is written after every sync.
+ */
+final class ProjectDataFile {
+
+  private static final int MAGIC = 0x42505244;
+  private static final int VERSION = 1;
+
+  /** The sections of a project data file. */
+  enum Section {
+    /** Build system info, workspace path resolver, language settings and external workspace. */
+    PROJECT,
+    SYNC_STATE,
+    REMOTE_OUTPUTS,
+    IDE_INTERFACE_STATE,
+    TARGET_MAP,
+  }
+
+  /** The compressed sections read from a file, with their checksums verified. */
+  private final ImmutableMap<Section, byte[]> sections;
+
+  private ProjectDataFile(ImmutableMap<Section, byte[]> sections) {
+    this.sections = sections;
+  }
+
+  /** Returns true if {@code file} is in this format, rather than a single gzipped proto. */
+  static boolean isProjectDataFile(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+      return in.readInt() == MAGIC;
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes the given sections to {@code file}, creating and compressing each one on {@code
+   * executor}.
+   */
+  static void write(
+      Path file, Map<Section, Callable<ProjectData.BlazeProjectData>> sections, Executor executor)
+      throws IOException {
+    Map<Section, ListenableFuture<byte[]>> compressed = new EnumMap<>(Section.class);
+    sections.forEach(
+        (section, proto) ->
+            compressed.put(section, Futures.submit(() -> compress(proto.call()), executor)));
+
+    try (AtomicFileWriter writer = AtomicFileWriter.create(file)) {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(writer.getOutputStream()));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(compressed.size());
+      Map<Section, byte[]> data = new EnumMap<>(Section.class);
+      for (Map.Entry<Section, ListenableFuture<byte[]>> entry : compressed.entrySet()) {
+        byte[] bytes = waitFor(entry.getValue());
+        data.put(entry.getKey(), bytes);
+        out.writeUTF(entry.getKey().name());
+        out.writeInt(bytes.length);
+        out.writeLong(checksum(bytes));
+      }
+      for (byte[] bytes : data.values()) {
+        out.write(bytes);
+      }
+      out.flush();
+      writer.onWriteComplete();
+    } finally {
+      compressed.values().forEach(f -> f.cancel(true));
+    }
+  }
+
+  /** Reads the sections of {@code file} into memory, without decompressing them. */
+  static ProjectDataFile read(Path file) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a project data file: " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported project data file version " + version);
+      }
+      int count = in.readInt();
+      String[] names = new String[count];
+      int[] lengths = new int[count];
+      long[] checksums = new long[count];
+      for (int i = 0; i < count; i++) {
+        names[i] = in.readUTF();
+        lengths[i] = in.readInt();
+        checksums[i] = in.readLong();
+      }
+      ImmutableMap.Builder<Section, byte[]> sections = ImmutableMap.builder();
+      for (int i = 0; i < count; i++) {
+        byte[] bytes = new byte[lengths[i]];
+        in.readFully(bytes);
+        if (checksum(bytes) != checksums[i]) {
+          throw new IOException("Corrupt project data section " + names[i]);
+        }
+        sections.put(Section.valueOf(names[i]), bytes);
+      }
+      return new ProjectDataFile(sections.buildOrThrow());
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Unknown project data section in " + file, e);
+    }
+  }
+
+  /** Decompresses the given sections, and merges them into a single proto. */
+  ProjectData.BlazeProjectData decode(Section... toDecode) throws IOException {
+    ProjectData.BlazeProjectData.Builder builder = ProjectData.BlazeProjectData.newBuilder();
+    for (Section section : toDecode) {
+      byte[] bytes = sections.get(section);
+      if (bytes != null) {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+          builder.mergeFrom(in);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  private static byte[] compress(ProjectData.BlazeProjectData proto) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater, 64 * 1024)) {
+      proto.writeTo(out);
+    } finally {
+      deflater.end();
+    }
+    return bytes.toByteArray();
+  }
+
+  private static long checksum(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return crc.getValue();
+  }
+
+  private static <T> T waitFor(ListenableFuture<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+}
@@ -61,6 +61,7 @@ import com.google.idea.blaze.qsync.deps.ArtifactDirectories;
 import com.google.idea.blaze.qsync.deps.ArtifactTracker;
 import com.google.idea.blaze.qsync.deps.NewArtifactTracker;
 import com.google.idea.blaze.qsync.java.JavaArtifactMetadata;
+import com.google.idea.blaze.qsync.java.PackageCache;
 import com.google.idea.blaze.qsync.java.PackageStatementParser;
 import com.google.idea.blaze.qsync.java.ParallelPackageReader;
 import com.google.idea.blaze.qsync.project.ProjectDefinition;
@@ -210,7 +211,8 @@ public class ProjectLoader {
     SnapshotBuilder snapshotBuilder =
         new SnapshotBuilder(
             executor,
-            createWorkspaceRelativePackageReader(),
+            createWorkspaceRelativePackageReader(
+                BlazeDataStorage.getProjectDataDir(importSettings).toPath()),
             workspaceRoot.path(),
             handledRules,
             QuerySync.USE_NEW_RES_DIR_LOGIC::getValue,
@@ -266,8 +268,11 @@ public class ProjectLoader {
     return querySyncProject;
   }
 
-  private ParallelPackageReader createWorkspaceRelativePackageReader() {
-    return new ParallelPackageReader(executor, new PackageStatementParser());
+  private ParallelPackageReader createWorkspaceRelativePackageReader(Path projectDataDir) {
+    return new ParallelPackageReader(
+        executor,
+        new PackageStatementParser(),
+        Optional.of(PackageCache.load(projectDataDir.resolve("java_packages.gz"))));
   }
 
   private ProjectQuerierImpl createProjectQuerier(
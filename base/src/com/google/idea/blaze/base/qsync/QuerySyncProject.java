@@ -260,11 +260,24 @@ public class QuerySyncProject {
   }
 
   private void syncWithCurrentSnapshot(BlazeContext context) throws BuildException {
-    sync(context, snapshotHolder.getCurrent().map(QuerySyncProjectSnapshot::queryData));
+    Optional<QuerySyncProjectSnapshot> current = snapshotHolder.getCurrent();
+    sync(context, current.map(QuerySyncProjectSnapshot::queryData), current);
   }
 
   public void sync(BlazeContext parentContext, Optional<PostQuerySyncData> lastQuery)
       throws BuildException {
+    sync(parentContext, lastQuery, Optional.empty());
+  }
+
+  /**
+   * @param lastSnapshot the snapshot that {@code lastQuery} belongs to, if any. Its build graph is
+   *     patched rather than re-derived from scratch when the query is updated incrementally.
+   */
+  private void sync(
+      BlazeContext parentContext,
+      Optional<PostQuerySyncData> lastQuery,
+      Optional<QuerySyncProjectSnapshot> lastSnapshot)
+      throws BuildException {
     try (BlazeContext context = BlazeContext.create(parentContext)) {
       context.push(new SyncQueryStatsScope());
       try {
@@ -282,7 +295,8 @@ public class QuerySyncProject {
                 context,
                 postQuerySyncData,
                 artifactTracker.getStateSnapshot(),
-                projectProtoTransforms.getComposedTransform());
+                projectProtoTransforms.getComposedTransform(),
+                lastSnapshot);
         onNewSnapshot(context, newSnapshot);
 
         // TODO: Revisit SyncListeners once we switch fully to qsync
@@ -358,12 +372,14 @@ public class QuerySyncProject {
     } catch (IOException e) {
       throw new BuildException("Failed to clear dependency info", e);
     }
+    QuerySyncProjectSnapshot current = snapshotHolder.getCurrent().orElseThrow();
     QuerySyncProjectSnapshot newSnapshot =
         snapshotBuilder.createBlazeProjectSnapshot(
             context,
-            snapshotHolder.getCurrent().orElseThrow().queryData(),
+            current.queryData(),
             artifactTracker.getStateSnapshot(),
-            projectProtoTransforms.getComposedTransform());
+            projectProtoTransforms.getComposedTransform(),
+            Optional.of(current));
     onNewSnapshot(context, newSnapshot);
   }
 
@@ -381,12 +397,14 @@ public class QuerySyncProject {
     try (BlazeContext context = BlazeContext.create(parentContext)) {
       context.push(new BuildDepsStatsScope());
       if (getDependencyTracker().buildDependenciesForTargets(context, request)) {
+        QuerySyncProjectSnapshot current = snapshotHolder.getCurrent().orElseThrow();
         QuerySyncProjectSnapshot newSnapshot =
             snapshotBuilder.createBlazeProjectSnapshot(
                 context,
-                snapshotHolder.getCurrent().orElseThrow().queryData(),
+                current.queryData(),
                 artifactTracker.getStateSnapshot(),
-                projectProtoTransforms.getComposedTransform());
+                projectProtoTransforms.getComposedTransform(),
+                Optional.of(current));
         onNewSnapshot(context, newSnapshot);
       }
     }
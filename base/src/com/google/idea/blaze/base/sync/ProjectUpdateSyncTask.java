@@ -134,7 +134,7 @@ final class ProjectUpdateSyncTask {
   private final SyncProjectState projectState;
   private final ProjectTargetData targetData;
   private final BlazeInfo blazeInfo;
-  @Nullable private final BlazeProjectData oldProjectData;
+  @Nullable private final AspectSyncProjectData oldProjectData;
 
   private ProjectUpdateSyncTask(
       Project project,
@@ -228,7 +228,8 @@ final class ProjectUpdateSyncTask {
             artifactLocationDecoder,
             projectState.getLanguageSettings(),
             projectState.getExternalWorkspaceData(),
-            syncStateBuilder.build());
+            syncStateBuilder.build(),
+            oldProjectData);
 
     FileCaches.onSync(
         project,
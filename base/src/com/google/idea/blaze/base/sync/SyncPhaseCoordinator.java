@@ -332,6 +332,10 @@ public final class SyncPhaseCoordinator {
 
     BlazeProjectData data =
         BlazeProjectDataManager.getInstance(project).loadProject(importSettings);
+    if (data instanceof AspectSyncProjectData aspectSyncData && !aspectSyncData.awaitTargetData()) {
+      // the target map of the cached data could not be decoded
+      data = null;
+    }
     if (data == null && mode != SyncMode.NO_BUILD) {
       context.output(
           new StatusOutput(
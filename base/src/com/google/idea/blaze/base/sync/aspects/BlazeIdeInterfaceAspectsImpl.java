@@ -18,12 +18,12 @@ package com.google.idea.blaze.base.sync.aspects;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
@@ -110,8 +110,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -121,6 +123,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -139,6 +142,12 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
   private static final BoolExperiment noFakeStampExperiment =
       new BoolExperiment("blaze.sync.nofake.stamp.data", true);
 
+  /** The maximum number of aspect files read ahead of merging them into the target map. */
+  private static final int MAX_PENDING_ASPECT_FILES = 4096;
+
+  /** How often to report progress while updating the target map, in aspect files. */
+  private static final int PROGRESS_INTERVAL = 10000;
+
   @Override
   @Nullable
   public ProjectTargetData updateTargetData(
@@ -368,54 +377,62 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
               Set<LanguageClass> ignoredLanguages = Sets.newConcurrentHashSet();
 
               ListeningExecutorService executor = BlazeExecutor.getInstance().getExecutor();
-
-              // Read protos from any new files
-              List<ListenableFuture<TargetFilePair>> futures = Lists.newArrayList();
-              for (OutputArtifactWithoutDigest file : fileState.getUpdatedOutputs()) {
-                futures.add(
-                    executor.submit(
-                        () -> {
-                          totalSizeLoaded.addAndGet(file.getLength());
-                          IntellijIdeInfo.TargetIdeInfo message =
-                              aspectStrategy.readAspectFile(file);
-                          TargetIdeInfo target =
-                              protoToTarget(
-                                  languageSettings,
-                                  importRoots,
-                                  message,
-                                  ignoredLanguages,
-                                  syncTime);
-                          return new TargetFilePair(file, target);
-                        }));
-              }
+              ImmutableList<OutputArtifactWithoutDigest> updatedFiles =
+                  fileState.getUpdatedOutputs();
+              AtomicInteger filesRead = new AtomicInteger();
 
               Set<TargetKey> newTargets = new HashSet<>();
               Set<String> configurations = new LinkedHashSet<>();
               configurations.add(configHandler.defaultConfigurationPathComponent);
 
-              // Update state with result from proto files
-              int duplicateTargetLabels = 0;
+              // Read protos from any new files, and merge each into the target map as soon as it
+              // and all files before it have been read, so that reading and merging overlap. Files
+              // are merged in order, since that decides which of several targets with the same
+              // key is kept.
+              AtomicInteger duplicateTargetLabels = new AtomicInteger();
               try {
-                for (TargetFilePair targetFilePair : Futures.allAsList(futures).get()) {
-                  if (targetFilePair.target != null) {
-                    OutputArtifactWithoutDigest file = targetFilePair.file;
-                    String config = file.getConfigurationMnemonic();
-                    configurations.add(config);
-                    TargetKey key = targetFilePair.target.getKey();
-                    if (targetMap.putIfAbsent(key, targetFilePair.target) == null) {
-                      state.ideInfoToTargetKey.forcePut(file.getBazelOutRelativePath(), key);
-                    } else {
-                      if (!newTargets.add(key)) {
-                        duplicateTargetLabels++;
+                readInOrder(
+                    executor,
+                    updatedFiles,
+                    MAX_PENDING_ASPECT_FILES,
+                    file -> {
+                      totalSizeLoaded.addAndGet(file.getLength());
+                      IntellijIdeInfo.TargetIdeInfo message = aspectStrategy.readAspectFile(file);
+                      TargetIdeInfo target =
+                          protoToTarget(
+                              languageSettings, importRoots, message, ignoredLanguages, syncTime);
+                      filesRead.incrementAndGet();
+                      return new TargetFilePair(file, target);
+                    },
+                    (merged, targetFilePair) -> {
+                      if (merged > 0 && merged % PROGRESS_INTERVAL == 0) {
+                        context.output(
+                            new StatusOutput(
+                                String.format(
+                                    "Updating target map: read %d, merged %d of %d aspect files...",
+                                    filesRead.get(), merged, updatedFiles.size())));
+                      }
+                      if (targetFilePair.target == null) {
+                        return;
                       }
-                      // prioritize the default configuration over build order
-                      if (Objects.equals(config, configHandler.defaultConfigurationPathComponent)) {
-                        targetMap.put(key, targetFilePair.target);
+                      OutputArtifactWithoutDigest file = targetFilePair.file;
+                      String config = file.getConfigurationMnemonic();
+                      configurations.add(config);
+                      TargetKey key = targetFilePair.target.getKey();
+                      if (targetMap.putIfAbsent(key, targetFilePair.target) == null) {
                         state.ideInfoToTargetKey.forcePut(file.getBazelOutRelativePath(), key);
+                      } else {
+                        if (!newTargets.add(key)) {
+                          duplicateTargetLabels.incrementAndGet();
+                        }
+                        // prioritize the default configuration over build order
+                        if (Objects.equals(
+                            config, configHandler.defaultConfigurationPathComponent)) {
+                          targetMap.put(key, targetFilePair.target);
+                          state.ideInfoToTargetKey.forcePut(file.getBazelOutRelativePath(), key);
+                        }
                       }
-                    }
-                  }
-                }
+                    });
               } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 return Result.error(null);
@@ -428,15 +445,15 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
                       String.format(
                           "Loaded %d aspect files, total size %dkB",
                           fileState.getUpdatedOutputs().size(), totalSizeLoaded.get() / 1024)));
-              if (duplicateTargetLabels > 0) {
+              if (duplicateTargetLabels.get() > 0) {
                 context.output(
                     new PerformanceWarning(
                         String.format(
                             "There were %d duplicate rules, built with the following "
                                 + "configurations: %s.\nYour IDE sync is slowed down by ~%d%%.",
-                            duplicateTargetLabels,
+                            duplicateTargetLabels.get(),
                             configurations,
-                            (100 * duplicateTargetLabels / targetMap.size()))));
+                            (100 * duplicateTargetLabels.get() / targetMap.size()))));
               }
 
               // remove previously synced targets which are now unsupported
@@ -587,6 +604,47 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
     }
   }
 
+  /** Reads a single input for {@link #readInOrder}. */
+  @VisibleForTesting
+  interface Reader<I, O> {
+    O read(I input) throws Exception;
+  }
+
+  /** Merges the result of reading a single input for {@link #readInOrder}. */
+  @VisibleForTesting
+  interface Merger<O> {
+    void merge(int index, O result);
+  }
+
+  /**
+   * Reads each of {@code inputs} on {@code executor}, and passes the results to {@code merger} in
+   * input order, each as soon as it and all results before it have been read. Reads are submitted
+   * at most {@code maxPending} ahead of the merge. Reads that are still pending when this returns
+   * or throws, including when {@code merger} throws, are cancelled.
+   */
+  @VisibleForTesting
+  static <I, O> void readInOrder(
+      ListeningExecutorService executor,
+      List<I> inputs,
+      int maxPending,
+      Reader<I, O> reader,
+      Merger<O> merger)
+      throws InterruptedException, ExecutionException {
+    Deque<ListenableFuture<O>> pending = new ArrayDeque<>();
+    int submitted = 0;
+    try {
+      for (int merged = 0; merged < inputs.size(); merged++) {
+        while (submitted < inputs.size() && pending.size() < maxPending) {
+          I input = inputs.get(submitted++);
+          pending.add(executor.submit(() -> reader.read(input)));
+        }
+        merger.merge(merged, pending.remove().get());
+      }
+    } finally {
+      pending.forEach(f -> f.cancel(true));
+    }
+  }
+
   @Override
   public BlazeBuildOutputs build(
       Project project,
@@ -16,14 +16,18 @@
 package com.google.idea.blaze.base.sync.data;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.async.executor.ProgressiveTaskWithProgressIndicator;
 import com.google.idea.blaze.base.buildview.BuildViewMigration;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.logging.EventLoggingService;
 import com.google.idea.blaze.base.model.AspectSyncProjectData;
 import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.ProjectTargetData;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.common.util.ConcurrencyUtil;
 import com.intellij.openapi.application.ApplicationManager;
@@ -34,6 +38,7 @@ import com.intellij.openapi.util.Disposer;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import javax.annotation.Nullable;
@@ -67,16 +72,48 @@ public class AspectSyncProjectDataManager implements BlazeProjectDataManager {
     }
     try {
       File file = getCacheFile(project, importSettings);
-      projectData = AspectSyncProjectData.loadFromDisk(importSettings.getBuildSystem(), file);
+      // the target map is decoded in the background, and waited for when first needed
+      AspectSyncProjectData loaded =
+          AspectSyncProjectData.loadFromDisk(
+              importSettings.getBuildSystem(), file, BlazeExecutor.getInstance().getExecutor());
+      Futures.addCallback(
+          loaded.getTargetDataFuture(),
+          new FutureCallback<ProjectTargetData>() {
+            @Override
+            public void onSuccess(ProjectTargetData result) {}
+
+            @Override
+            public void onFailure(Throwable t) {
+              discardProjectData(loaded, file, t);
+            }
+          },
+          MoreExecutors.directExecutor());
+      projectData = loaded;
       return projectData;
     } catch (Throwable e) {
-      if (!(e instanceof FileNotFoundException)) {
+      if (!(e instanceof FileNotFoundException || e instanceof NoSuchFileException)) {
         logger.warn(e);
       }
       return null;
     }
   }
 
+  /**
+   * Forgets project data whose target map could not be decoded, and deletes the file it was loaded
+   * from, so that the next sync starts from scratch as if there was no cached data.
+   */
+  private synchronized void discardProjectData(
+      AspectSyncProjectData data, File file, Throwable error) {
+    logger.warn("Failed to decode cached project data, a full sync will be needed", error);
+    if (projectData != data) {
+      return;
+    }
+    projectData = null;
+    if (!file.delete()) {
+      logger.warn("Failed to delete cached project data " + file);
+    }
+  }
+
   @Override
   @Nullable
   public BlazeProjectData getBlazeProjectData() {
@@ -102,7 +139,8 @@ public class AspectSyncProjectDataManager implements BlazeProjectDataManager {
                       file.getParentFile().mkdirs();
                     }
                     synchronized (this) {
-                      this.projectData.saveToDisk(file);
+                      this.projectData.saveToDisk(
+                          file, BlazeExecutor.getInstance().getExecutor());
                     }
                     logFileSize(projectData, file);
 
@@ -50,6 +50,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /** Utility methods for sharding blaze build invocations. */
 public class BlazeBuildTargetSharder {
@@ -151,7 +152,10 @@ public class BlazeBuildTargetSharder {
 
         return new ShardedTargetsResult(
             shardSingleTargets(
-                expandedTargets.singleTargets, parallelStrategy, getTargetShardSize(viewSet)),
+                project,
+                expandedTargets.singleTargets,
+                parallelStrategy,
+                getTargetShardSize(viewSet)),
             expandedTargets.buildResult);
       default:
         throw new IllegalStateException("Unhandled sharding approach: " + approach);
@@ -230,8 +234,16 @@ public class BlazeBuildTargetSharder {
   @VisibleForTesting
   static ShardedTargetList shardSingleTargets(
       List<TargetExpression> targets, SyncStrategy syncStrategy, int shardSize) {
+    return shardSingleTargets(null, targets, syncStrategy, shardSize);
+  }
+
+  private static ShardedTargetList shardSingleTargets(
+      @Nullable Project project,
+      List<TargetExpression> targets,
+      SyncStrategy syncStrategy,
+      int shardSize) {
     return BuildBatchingService.batchTargets(
-        canonicalizeSingleTargets(targets), syncStrategy, shardSize);
+        project, canonicalizeSingleTargets(targets), syncStrategy, shardSize);
   }
 
   /**
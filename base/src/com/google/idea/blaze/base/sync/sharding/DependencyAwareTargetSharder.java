@@ -0,0 +1,369 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.sharding;
+
+import static com.google.idea.blaze.base.sync.sharding.ShardedTargetList.remoteConcurrentSyncs;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.bazel.BuildSystem.SyncStrategy;
+import com.google.idea.blaze.base.ideinfo.Dependency;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.logging.utils.ShardStats.ShardingApproach;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.google.idea.common.experiments.IntExperiment;
+import com.intellij.openapi.project.Project;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * A target batcher which keeps targets with shared dependencies in the same shard, using the target
+ * map from the previous sync.
+ *
+ * <p>Targets are ordered by a walk of the dependency graph which visits targets sharing
+ * dependencies one after the other. This order is then cut into shards of similar estimated cost.
+ * The cost of a shard is the total weight of the union of the dependency closures of its targets,
+ * since blaze builds and runs the aspect on each of them once per shard. The weight of a target is
+ * an estimate of that work, based on its number of sources.
+ *
+ * <p>Falls back to the next {@link BuildBatchingService} when there is no previous sync, or when it
+ * does not know about most of the targets.
+ */
+public class DependencyAwareTargetSharder implements BuildBatchingService {
+
+  @VisibleForTesting
+  static final BoolExperiment enabled =
+      new BoolExperiment("dependency.aware.sharder.enabled", false);
+
+  /** The number of shards to emit. If zero, derived from the suggested shard size. */
+  @VisibleForTesting
+  static final IntExperiment shardCount = new IntExperiment("dependency.aware.sharder.shards", 0);
+
+  /** The fraction of targets which must be in the previous target map, in percent. */
+  private static final int MIN_KNOWN_TARGETS_PERCENT = 50;
+
+  @Nullable
+  @Override
+  public ImmutableList<ImmutableList<Label>> calculateTargetBatches(
+      Set<Label> targets, SyncStrategy syncStrategy, int suggestedShardSize) {
+    // needs the previous sync
+    return null;
+  }
+
+  @Nullable
+  @Override
+  public ImmutableList<ImmutableList<Label>> calculateTargetBatches(
+      @Nullable Project project,
+      Set<Label> targets,
+      SyncStrategy syncStrategy,
+      int suggestedShardSize) {
+    if (project == null || !enabled.getValue() || targets.isEmpty()) {
+      return null;
+    }
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    if (projectData == null || projectData.isQuerySync()) {
+      return null;
+    }
+    int maxShardSize = suggestedShardSize;
+    if (syncStrategy != SyncStrategy.SERIAL) {
+      maxShardSize =
+          LexicographicTargetSharder.computeParallelShardSize(
+              targets.size(),
+              LexicographicTargetSharder.parallelThreshold.getValue(),
+              remoteConcurrentSyncs.getValue(),
+              LexicographicTargetSharder.minimumRemoteShardSize.getValue(),
+              LexicographicTargetSharder.maximumRemoteShardSize.getValue(),
+              suggestedShardSize);
+    }
+    int numShards =
+        shardCount.getValue() > 0
+            ? shardCount.getValue()
+            : (targets.size() + maxShardSize - 1) / maxShardSize;
+    return shardTargets(projectData.getTargetMap(), targets, numShards, maxShardSize);
+  }
+
+  /**
+   * Splits {@code targets} into about {@code numShards} shards of similar cost, with at most {@code
+   * maxShardSize} targets each. Returns null if too few of the targets are in {@code targetMap}.
+   */
+  @VisibleForTesting
+  @Nullable
+  static ImmutableList<ImmutableList<Label>> shardTargets(
+      TargetMap targetMap, Set<Label> targets, int numShards, int maxShardSize) {
+    Graph graph = Graph.create(targetMap, targets);
+    if (graph.knownTargets * 100L < targets.size() * (long) MIN_KNOWN_TARGETS_PERCENT) {
+      return null;
+    }
+    int[] order = graph.order(maxShardSize);
+
+    // The work left to do if each target were only built once, to spread over the remaining
+    // shards.
+    BitSet all = new BitSet(graph.size());
+    long remainingCost = 0;
+    for (int target : order) {
+      remainingCost += graph.cover(target, all);
+    }
+
+    ImmutableList.Builder<ImmutableList<Label>> shards = ImmutableList.builder();
+    BitSet built = new BitSet(graph.size());
+    BitSet shardCovered = new BitSet(graph.size());
+    List<Label> shard = new ArrayList<>();
+    long shardCost = 0;
+    int shardsLeft = Math.max(numShards, 1);
+    long budget = divideRoundingUp(remainingCost, shardsLeft);
+    for (int target : order) {
+      shard.add(graph.labels[target]);
+      shardCost += graph.cover(target, shardCovered);
+      if (shard.size() >= maxShardSize || (shardsLeft > 1 && shardCost >= budget)) {
+        shards.add(ImmutableList.copyOf(shard));
+        shard.clear();
+        shardCost = 0;
+        remainingCost -= newlyBuiltCost(graph, shardCovered, built);
+        shardCovered.clear();
+        shardsLeft = Math.max(shardsLeft - 1, 1);
+        budget = divideRoundingUp(remainingCost, shardsLeft);
+      }
+    }
+    if (!shard.isEmpty()) {
+      shards.add(ImmutableList.copyOf(shard));
+    }
+    return shards.build();
+  }
+
+  /** Adds the nodes of a finished shard to {@code built}, returning the weight of the new ones. */
+  private static long newlyBuiltCost(Graph graph, BitSet shardCovered, BitSet built) {
+    long cost = 0;
+    for (int i = shardCovered.nextSetBit(0); i >= 0; i = shardCovered.nextSetBit(i + 1)) {
+      if (!built.get(i)) {
+        built.set(i);
+        cost += graph.weights[i];
+      }
+    }
+    return cost;
+  }
+
+  private static long divideRoundingUp(long a, int b) {
+    return Math.max((a + b - 1) / b, 1);
+  }
+
+  /** The dependency graph of the targets in a target map, with dense integer ids. */
+  private static class Graph {
+    final Label[] labels;
+    final int[] weights;
+    final int[][] deps;
+
+    /** The ids of the targets to shard, sorted by label. */
+    final int[] roots;
+
+    final int knownTargets;
+
+    private Graph(Label[] labels, int[] weights, int[][] deps, int[] roots, int knownTargets) {
+      this.labels = labels;
+      this.weights = weights;
+      this.deps = deps;
+      this.roots = roots;
+      this.knownTargets = knownTargets;
+    }
+
+    static Graph create(TargetMap targetMap, Set<Label> targets) {
+      Map<Label, Integer> ids = new HashMap<>();
+      List<Label> labels = new ArrayList<>();
+      List<TargetIdeInfo> infos = new ArrayList<>();
+      for (TargetIdeInfo target : targetMap.targets()) {
+        Label label = target.getKey().getLabel();
+        // targets built with aspects share a label; only one of them is needed for the graph
+        if (ids.putIfAbsent(label, labels.size()) == null) {
+          labels.add(label);
+          infos.add(target);
+        }
+      }
+      int knownTargets = 0;
+      ImmutableList<Label> sorted =
+          ImmutableList.sortedCopyOf(Comparator.comparing(Label::toString), targets);
+      int[] roots = new int[sorted.size()];
+      for (int i = 0; i < roots.length; i++) {
+        Integer id = ids.get(sorted.get(i));
+        if (id != null) {
+          knownTargets++;
+        } else {
+          id = labels.size();
+          ids.put(sorted.get(i), id);
+          labels.add(sorted.get(i));
+        }
+        roots[i] = id;
+      }
+
+      int[] weights = new int[labels.size()];
+      int[][] deps = new int[labels.size()][];
+      for (int i = 0; i < labels.size(); i++) {
+        if (i >= infos.size()) {
+          // not in the target map
+          weights[i] = 1;
+          deps[i] = new int[0];
+          continue;
+        }
+        TargetIdeInfo target = infos.get(i);
+        weights[i] = 1 + target.getSources().size();
+        int[] targetDeps = new int[target.getDependencies().size()];
+        int count = 0;
+        for (Dependency dep : target.getDependencies()) {
+          Integer depId = ids.get(dep.getTargetKey().getLabel());
+          if (depId != null) {
+            targetDeps[count++] = depId;
+          }
+        }
+        deps[i] = Arrays.copyOf(targetDeps, count);
+      }
+      return new Graph(labels.toArray(new Label[0]), weights, deps, roots, knownTargets);
+    }
+
+    int size() {
+      return labels.length;
+    }
+
+    /**
+     * Returns the targets to shard, ordered so that targets with shared dependencies are close
+     * together.
+     *
+     * <p>This is the post order of a depth first walk of the dependencies of each target, in label
+     * order. Whenever the walk finishes a target, it continues with the targets that depend on it,
+     * so that targets are ordered by their shared dependencies rather than by label. Targets with
+     * more than {@code maxFanOut} dependents are too widely used for that to be useful, so their
+     * dependents aren't followed.
+     */
+    int[] order(int maxFanOut) {
+      int[][] rdeps = reverseDeps();
+      BitSet isRoot = new BitSet(size());
+      for (int root : roots) {
+        isRoot.set(root);
+      }
+      BitSet visited = new BitSet(size());
+      int[] order = new int[roots.length];
+      int count = 0;
+      int[] stack = new int[16];
+      int[] nextDep = new int[16];
+      ArrayDeque<Integer> pending = new ArrayDeque<>();
+      for (int root : roots) {
+        pending.push(root);
+        while (!pending.isEmpty()) {
+          int start = pending.pop();
+          if (visited.get(start)) {
+            continue;
+          }
+          visited.set(start);
+          int depth = 0;
+          stack[0] = start;
+          nextDep[0] = 0;
+          while (depth >= 0) {
+            int node = stack[depth];
+            if (nextDep[depth] < deps[node].length) {
+              int dep = deps[node][nextDep[depth]++];
+              if (!visited.get(dep)) {
+                visited.set(dep);
+                if (++depth == stack.length) {
+                  stack = Arrays.copyOf(stack, depth * 2);
+                  nextDep = Arrays.copyOf(nextDep, depth * 2);
+                }
+                stack[depth] = dep;
+                nextDep[depth] = 0;
+              }
+              continue;
+            }
+            if (isRoot.get(node)) {
+              order[count++] = node;
+            }
+            if (rdeps[node].length <= maxFanOut) {
+              for (int rdep : rdeps[node]) {
+                if (!visited.get(rdep)) {
+                  pending.push(rdep);
+                }
+              }
+            }
+            depth--;
+          }
+        }
+      }
+      return Arrays.copyOf(order, count);
+    }
+
+    private int[][] reverseDeps() {
+      int[] counts = new int[size()];
+      for (int[] nodeDeps : deps) {
+        for (int dep : nodeDeps) {
+          counts[dep]++;
+        }
+      }
+      int[][] rdeps = new int[size()][];
+      for (int i = 0; i < size(); i++) {
+        rdeps[i] = new int[counts[i]];
+        counts[i] = 0;
+      }
+      for (int i = 0; i < size(); i++) {
+        for (int dep : deps[i]) {
+          rdeps[dep][counts[dep]++] = i;
+        }
+      }
+      return rdeps;
+    }
+
+    /**
+     * Adds the dependency closure of {@code target}, including itself, to {@code covered}, and
+     * returns the total weight of the targets which were not already in it.
+     */
+    long cover(int target, BitSet covered) {
+      if (covered.get(target)) {
+        return 0;
+      }
+      long cost = 0;
+      int[] stack = new int[16];
+      int size = 0;
+      covered.set(target);
+      stack[size++] = target;
+      while (size > 0) {
+        int node = stack[--size];
+        cost += weights[node];
+        for (int dep : deps[node]) {
+          if (!covered.get(dep)) {
+            covered.set(dep);
+            if (size == stack.length) {
+              stack = Arrays.copyOf(stack, size * 2);
+            }
+            stack[size++] = dep;
+          }
+        }
+      }
+      return cost;
+    }
+  }
+
+  @Override
+  public ShardingApproach getShardingApproach() {
+    return ShardingApproach.DEPENDENCY_AWARE_TARGET_SHARDER;
+  }
+}
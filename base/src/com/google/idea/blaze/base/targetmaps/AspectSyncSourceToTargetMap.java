@@ -19,19 +19,15 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMultimap;
-import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.model.AspectSyncProjectData;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Label;
-import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
-import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.intellij.openapi.project.Project;
 import java.io.File;
 import java.util.Objects;
-import javax.annotation.Nullable;
 
 /** Maps source files to their respective targets */
 public class AspectSyncSourceToTargetMap implements SourceToTargetMap {
@@ -61,35 +57,11 @@ public class AspectSyncSourceToTargetMap implements SourceToTargetMap {
 
   @Override
   public ImmutableCollection<TargetKey> getRulesForSourceFile(File sourceFile) {
-    ImmutableMultimap<File, TargetKey> sourceToTargetMap = getSourceToTargetMap();
-    if (sourceToTargetMap == null) {
-      return ImmutableList.of();
-    }
-    return sourceToTargetMap.get(sourceFile);
-  }
-
-  @Nullable
-  private synchronized ImmutableMultimap<File, TargetKey> getSourceToTargetMap() {
-    return SyncCache.getInstance(project)
-        .get(
-            AspectSyncSourceToTargetMap.class,
-            AspectSyncSourceToTargetMap::computeSourceToTargetMap);
-  }
-
-  @SuppressWarnings("unused")
-  private static ImmutableMultimap<File, TargetKey> computeSourceToTargetMap(
-      Project project, BlazeProjectData blazeProjectData) {
-    ArtifactLocationDecoder decoder = blazeProjectData.getArtifactLocationDecoder();
-    ImmutableMultimap.Builder<File, TargetKey> sourceToTargetMap = ImmutableMultimap.builder();
-    for (TargetIdeInfo target : blazeProjectData.getTargetMap().targets()) {
-      TargetKey key = target.getKey();
-      for (ArtifactLocation sourceArtifact : target.getSources()) {
-        File file = decoder.resolveSource(sourceArtifact);
-        if (file != null) {
-          sourceToTargetMap.put(file, key);
-        }
-      }
+    BlazeProjectData blazeProjectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    if (blazeProjectData instanceof AspectSyncProjectData) {
+      return ((AspectSyncProjectData) blazeProjectData).getSourceToTargetIndex().get(sourceFile);
     }
-    return sourceToTargetMap.build();
+    return ImmutableList.of();
   }
 }
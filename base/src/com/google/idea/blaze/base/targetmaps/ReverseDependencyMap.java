@@ -15,39 +15,122 @@
  */
 package com.google.idea.blaze.base.targetmaps;
 
-import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.ideinfo.Dependency;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.model.AspectSyncProjectData;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.sync.SyncCache;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.project.Project;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.concurrent.Immutable;
 
-/** Handy class to create an reverse dep map of all targets */
-public class ReverseDependencyMap {
-  public static ImmutableMultimap<TargetKey, TargetKey> get(Project project) {
-    ImmutableMultimap<TargetKey, TargetKey> map =
+/**
+ * The reverse dependencies of all targets in a {@link TargetMap}.
+ *
+ * <p>For aspect syncs, this is kept with the project data and updated during sync, rather than
+ * being rebuilt on first use after each sync.
+ */
+@Immutable
+public final class ReverseDependencyMap {
+
+  private static final ReverseDependencyMap EMPTY =
+      new ReverseDependencyMap(new TargetMap(ImmutableMap.of()), ImmutableMap.of());
+
+  private final TargetMap targetMap;
+
+  /**
+   * The targets depending on each dependency key, including keys which aren't in the target map.
+   * Those are kept so that the map can be updated without looking at unchanged targets.
+   */
+  private final ImmutableMap<TargetKey, ImmutableSet<TargetKey>> rdeps;
+
+  private ReverseDependencyMap(
+      TargetMap targetMap, ImmutableMap<TargetKey, ImmutableSet<TargetKey>> rdeps) {
+    this.targetMap = targetMap;
+    this.rdeps = rdeps;
+  }
+
+  public static ReverseDependencyMap get(Project project) {
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    if (projectData instanceof AspectSyncProjectData) {
+      return ((AspectSyncProjectData) projectData).getReverseDependencyMap();
+    }
+    ReverseDependencyMap map =
         SyncCache.getInstance(project)
-            .get(ReverseDependencyMap.class, ReverseDependencyMap::createRdepsMap);
-    return map != null ? map : ImmutableMultimap.of();
+            .get(ReverseDependencyMap.class, (p, data) -> create(data.getTargetMap()));
+    return map != null ? map : EMPTY;
+  }
+
+  /** Returns the targets in the target map which directly depend on {@code key}. */
+  public ImmutableSet<TargetKey> get(TargetKey key) {
+    if (!targetMap.contains(key)) {
+      return ImmutableSet.of();
+    }
+    return rdeps.getOrDefault(key, ImmutableSet.of());
   }
 
-  @VisibleForTesting
-  static ImmutableMultimap<TargetKey, TargetKey> createRdepsMap(
-      Project project, BlazeProjectData projectData) {
-    TargetMap targetMap = projectData.getTargetMap();
-    ImmutableMultimap.Builder<TargetKey, TargetKey> builder = ImmutableMultimap.builder();
-    for (TargetIdeInfo target : targetMap.targets()) {
-      TargetKey key = target.getKey();
-      for (Dependency dep : target.getDependencies()) {
-        TargetKey depKey = dep.getTargetKey();
-        if (targetMap.contains(depKey)) {
-          builder.put(depKey, key);
-        }
+  public static ReverseDependencyMap create(TargetMap targetMap) {
+    return EMPTY.update(targetMap);
+  }
+
+  /**
+   * Returns the reverse dependency map of {@code newTargetMap}, only looking at the targets which
+   * were added, removed, or whose dependencies changed since this map was created.
+   */
+  public ReverseDependencyMap update(TargetMap newTargetMap) {
+    ImmutableMap<TargetKey, TargetIdeInfo> oldTargets = targetMap.map();
+    ImmutableMap<TargetKey, TargetIdeInfo> newTargets = newTargetMap.map();
+    // the changes to make to the rdeps of each dependency key
+    Map<TargetKey, Set<TargetKey>> added = new HashMap<>();
+    Map<TargetKey, Set<TargetKey>> removed = new HashMap<>();
+    for (Map.Entry<TargetKey, TargetIdeInfo> entry : newTargets.entrySet()) {
+      TargetIdeInfo oldTarget = oldTargets.get(entry.getKey());
+      List<Dependency> newDeps = entry.getValue().getDependencies();
+      List<Dependency> oldDeps = oldTarget != null ? oldTarget.getDependencies() : List.of();
+      if (newDeps != oldDeps && !newDeps.equals(oldDeps)) {
+        addChanges(entry.getKey(), oldDeps, removed);
+        addChanges(entry.getKey(), newDeps, added);
+      }
+    }
+    for (Map.Entry<TargetKey, TargetIdeInfo> entry : oldTargets.entrySet()) {
+      if (!newTargets.containsKey(entry.getKey())) {
+        addChanges(entry.getKey(), entry.getValue().getDependencies(), removed);
       }
     }
-    return builder.build();
+    if (added.isEmpty() && removed.isEmpty()) {
+      return new ReverseDependencyMap(newTargetMap, rdeps);
+    }
+
+    Map<TargetKey, ImmutableSet<TargetKey>> newRdeps = new HashMap<>(rdeps);
+    Set<TargetKey> changedKeys = new HashSet<>(added.keySet());
+    changedKeys.addAll(removed.keySet());
+    for (TargetKey key : changedKeys) {
+      Set<TargetKey> targets = new HashSet<>(rdeps.getOrDefault(key, ImmutableSet.of()));
+      targets.removeAll(removed.getOrDefault(key, ImmutableSet.of()));
+      targets.addAll(added.getOrDefault(key, ImmutableSet.of()));
+      if (targets.isEmpty()) {
+        newRdeps.remove(key);
+      } else {
+        newRdeps.put(key, ImmutableSet.copyOf(targets));
+      }
+    }
+    return new ReverseDependencyMap(newTargetMap, ImmutableMap.copyOf(newRdeps));
+  }
+
+  private static void addChanges(
+      TargetKey target, List<Dependency> deps, Map<TargetKey, Set<TargetKey>> changes) {
+    for (Dependency dep : deps) {
+      changes.computeIfAbsent(dep.getTargetKey(), k -> new HashSet<>()).add(target);
+    }
   }
 }
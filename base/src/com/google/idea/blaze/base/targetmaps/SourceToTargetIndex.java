@@ -0,0 +1,169 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The targets in a {@link TargetMap} which have each source file as a source, used by {@link
+ * AspectSyncSourceToTargetMap}.
+ *
+ * <p>This is kept with the aspect sync project data and updated during sync. Unchanged files keep
+ * the {@link File} key of the previous index, so each file is only stored once however many syncs
+ * and targets refer to it.
+ *
+ * <p>External sources are resolved through the execution root's symlinks, which may point somewhere
+ * else after a sync. They are kept separately, and resolved again for all targets on each update.
+ */
+@Immutable
+public final class SourceToTargetIndex {
+
+  private final TargetMap targetMap;
+  @Nullable private final ArtifactLocationDecoder decoder;
+  private final ImmutableMap<File, ImmutableSet<TargetKey>> sourceToTargets;
+  private final ImmutableMap<File, ImmutableSet<TargetKey>> externalSourceToTargets;
+
+  private SourceToTargetIndex(
+      TargetMap targetMap,
+      @Nullable ArtifactLocationDecoder decoder,
+      ImmutableMap<File, ImmutableSet<TargetKey>> sourceToTargets,
+      ImmutableMap<File, ImmutableSet<TargetKey>> externalSourceToTargets) {
+    this.targetMap = targetMap;
+    this.decoder = decoder;
+    this.sourceToTargets = sourceToTargets;
+    this.externalSourceToTargets = externalSourceToTargets;
+  }
+
+  /** Returns the targets with {@code sourceFile} as a source. */
+  public ImmutableSet<TargetKey> get(File sourceFile) {
+    ImmutableSet<TargetKey> targets = sourceToTargets.getOrDefault(sourceFile, ImmutableSet.of());
+    ImmutableSet<TargetKey> externalTargets = externalSourceToTargets.get(sourceFile);
+    if (externalTargets == null) {
+      return targets;
+    }
+    return targets.isEmpty()
+        ? externalTargets
+        : ImmutableSet.<TargetKey>builder().addAll(targets).addAll(externalTargets).build();
+  }
+
+  public static SourceToTargetIndex create(TargetMap targetMap, ArtifactLocationDecoder decoder) {
+    return new SourceToTargetIndex(
+            new TargetMap(ImmutableMap.of()), null, ImmutableMap.of(), ImmutableMap.of())
+        .update(targetMap, decoder);
+  }
+
+  /**
+   * Returns the index of {@code newTargetMap}, only resolving the main workspace sources of the
+   * targets which were added, removed, or whose sources changed since this index was created. If
+   * source files are resolved differently than before, the whole index is rebuilt.
+   */
+  public SourceToTargetIndex update(TargetMap newTargetMap, ArtifactLocationDecoder decoder) {
+    if (this.decoder != null && !Objects.equals(this.decoder, decoder)) {
+      return create(newTargetMap, decoder);
+    }
+    ImmutableMap<File, ImmutableSet<TargetKey>> externalSources =
+        resolveExternalSources(newTargetMap, decoder);
+    ImmutableMap<TargetKey, TargetIdeInfo> oldTargets = targetMap.map();
+    ImmutableMap<TargetKey, TargetIdeInfo> newTargets = newTargetMap.map();
+    Map<File, Set<TargetKey>> added = new HashMap<>();
+    Map<File, Set<TargetKey>> removed = new HashMap<>();
+    for (Map.Entry<TargetKey, TargetIdeInfo> entry : newTargets.entrySet()) {
+      TargetIdeInfo oldTarget = oldTargets.get(entry.getKey());
+      Collection<ArtifactLocation> newSources = entry.getValue().getSources();
+      Collection<ArtifactLocation> oldSources =
+          oldTarget != null ? oldTarget.getSources() : ImmutableSet.of();
+      if (newSources != oldSources && !newSources.equals(oldSources)) {
+        addChanges(entry.getKey(), oldSources, decoder, removed);
+        addChanges(entry.getKey(), newSources, decoder, added);
+      }
+    }
+    for (Map.Entry<TargetKey, TargetIdeInfo> entry : oldTargets.entrySet()) {
+      if (!newTargets.containsKey(entry.getKey())) {
+        addChanges(entry.getKey(), entry.getValue().getSources(), decoder, removed);
+      }
+    }
+    if (added.isEmpty() && removed.isEmpty()) {
+      return new SourceToTargetIndex(newTargetMap, decoder, sourceToTargets, externalSources);
+    }
+
+    // HashMap keeps the existing key when an equal one is put, so files already in the index
+    // keep their File instance.
+    Map<File, ImmutableSet<TargetKey>> newSourceToTargets = new HashMap<>(sourceToTargets);
+    Set<File> changedFiles = new HashSet<>(added.keySet());
+    changedFiles.addAll(removed.keySet());
+    for (File file : changedFiles) {
+      Set<TargetKey> targets = new HashSet<>(sourceToTargets.getOrDefault(file, ImmutableSet.of()));
+      targets.removeAll(removed.getOrDefault(file, ImmutableSet.of()));
+      targets.addAll(added.getOrDefault(file, ImmutableSet.of()));
+      if (targets.isEmpty()) {
+        newSourceToTargets.remove(file);
+      } else {
+        newSourceToTargets.put(file, ImmutableSet.copyOf(targets));
+      }
+    }
+    return new SourceToTargetIndex(
+        newTargetMap, decoder, ImmutableMap.copyOf(newSourceToTargets), externalSources);
+  }
+
+  private static ImmutableMap<File, ImmutableSet<TargetKey>> resolveExternalSources(
+      TargetMap targetMap, ArtifactLocationDecoder decoder) {
+    Map<File, ImmutableSet.Builder<TargetKey>> sources = new HashMap<>();
+    for (TargetIdeInfo target : targetMap.targets()) {
+      for (ArtifactLocation source : target.getSources()) {
+        if (!source.isExternal()) {
+          continue;
+        }
+        File file = decoder.resolveSource(source);
+        if (file != null) {
+          sources.computeIfAbsent(file, f -> ImmutableSet.builder()).add(target.getKey());
+        }
+      }
+    }
+    return ImmutableMap.copyOf(Maps.transformValues(sources, ImmutableSet.Builder::build));
+  }
+
+  private static void addChanges(
+      TargetKey target,
+      Collection<ArtifactLocation> sources,
+      ArtifactLocationDecoder decoder,
+      Map<File, Set<TargetKey>> changes) {
+    for (ArtifactLocation source : sources) {
+      if (source.isExternal()) {
+        continue;
+      }
+      File file = decoder.resolveSource(source);
+      if (file != null) {
+        changes.computeIfAbsent(file, f -> new HashSet<>()).add(target);
+      }
+    }
+  }
+}
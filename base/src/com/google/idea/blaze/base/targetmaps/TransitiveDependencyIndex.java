@@ -0,0 +1,179 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.ideinfo.Dependency;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The dependency graph of a {@link TargetMap}, indexed for transitive dependency queries.
+ *
+ * <p>Targets and their dependencies are assigned dense integer ids, and the dependencies of each
+ * target are stored in a single array. The transitive closure of a target is computed as a bit set
+ * the first time it is needed and cached, and is reused when computing the closures of targets that
+ * depend on it, so that subgraphs shared by many targets are only walked once. Closures are evicted
+ * once they take more than {@link #MAX_CACHED_CLOSURE_BYTES} in total.
+ *
+ * <p>Like {@link TransitiveDependencyMap#getTransitiveDependenciesStream}, dependencies are
+ * followed by label, ignoring any aspects in their keys.
+ *
+ * <p>For aspect syncs, this is built with the project data during sync, rather than on first use
+ * after each sync.
+ */
+public final class TransitiveDependencyIndex {
+
+  private static final long MAX_CACHED_CLOSURE_BYTES = 32L << 20;
+
+  /** Target keys, by id. The targets of the target map come first. */
+  private final ImmutableList<TargetKey> keys;
+
+  private final Map<TargetKey, Integer> ids;
+
+  /** The dependencies of target {@code i} are {@code deps[depsStart[i]..depsStart[i + 1]]}. */
+  private final int[] depsStart;
+
+  private final int[] deps;
+
+  private final Cache<Integer, BitSet> closures =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_CLOSURE_BYTES)
+          .<Integer, BitSet>weigher((id, closure) -> closure.size() / Byte.SIZE)
+          .build();
+
+  private TransitiveDependencyIndex(
+      ImmutableList<TargetKey> keys, Map<TargetKey, Integer> ids, int[] depsStart, int[] deps) {
+    this.keys = keys;
+    this.ids = ids;
+    this.depsStart = depsStart;
+    this.deps = deps;
+  }
+
+  public static TransitiveDependencyIndex create(TargetMap targetMap) {
+    ImmutableList.Builder<TargetKey> keys = ImmutableList.builder();
+    Map<TargetKey, Integer> ids = new HashMap<>();
+    for (TargetKey key : targetMap.map().keySet()) {
+      ids.put(key, ids.size());
+      keys.add(key);
+    }
+    int numTargets = ids.size();
+    int[] depsStart = new int[numTargets + 1];
+    int[] deps = new int[numTargets * 4];
+    int numDeps = 0;
+    ImmutableList<TargetIdeInfo> targets = ImmutableList.copyOf(targetMap.map().values());
+    for (int i = 0; i < numTargets; i++) {
+      depsStart[i] = numDeps;
+      for (Dependency dependency : targets.get(i).getDependencies()) {
+        TargetKey depKey = TargetKey.forPlainTarget(dependency.getTargetKey().getLabel());
+        Integer depId = ids.get(depKey);
+        if (depId == null) {
+          depId = ids.size();
+          ids.put(depKey, depId);
+          keys.add(depKey);
+        }
+        if (numDeps == deps.length) {
+          deps = Arrays.copyOf(deps, deps.length * 2 + 1);
+        }
+        deps[numDeps++] = depId;
+      }
+    }
+    depsStart[numTargets] = numDeps;
+    return new TransitiveDependencyIndex(
+        keys.build(), ids, depsStart, Arrays.copyOf(deps, numDeps));
+  }
+
+  boolean hasTransitiveDependency(TargetKey possibleDependent, TargetKey possibleDependency) {
+    Integer dependent = ids.get(possibleDependent);
+    Integer dependency = ids.get(possibleDependency);
+    return dependent != null && dependency != null && closure(dependent).get(dependency);
+  }
+
+  ImmutableSet<TargetKey> filterPossibleTransitiveDeps(
+      TargetKey possibleDependent, Collection<TargetKey> possibleDependencies) {
+    Integer dependent = ids.get(possibleDependent);
+    if (dependent == null) {
+      return ImmutableSet.of();
+    }
+    BitSet closure = closure(dependent);
+    ImmutableSet.Builder<TargetKey> result = ImmutableSet.builder();
+    for (TargetKey key : possibleDependencies) {
+      Integer id = ids.get(key);
+      if (id != null && closure.get(id)) {
+        result.add(key);
+      }
+    }
+    return result.build();
+  }
+
+  ImmutableSet<TargetKey> getTransitiveDependencies(TargetKey targetKey) {
+    Integer id = ids.get(targetKey);
+    if (id == null) {
+      return ImmutableSet.of();
+    }
+    return closure(id).stream().mapToObj(keys::get).collect(ImmutableSet.toImmutableSet());
+  }
+
+  /** Returns the ids of all transitive dependencies of target {@code id}. Must not be modified. */
+  private BitSet closure(int id) {
+    BitSet cached = closures.getIfPresent(id);
+    if (cached != null) {
+      return cached;
+    }
+    if (id >= depsStart.length - 1 || depsStart[id] == depsStart[id + 1]) {
+      // Not a target, or a target without dependencies; not worth caching.
+      return new BitSet();
+    }
+    // Depth first search, using the result as the visited set. When a target whose closure is
+    // already known is reached, its closure is added to the result without walking it again.
+    BitSet result = new BitSet(keys.size());
+    int[] stack = new int[16];
+    int size = 0;
+    stack[size++] = id;
+    while (size > 0) {
+      int node = stack[--size];
+      BitSet known = closures.getIfPresent(node);
+      if (known != null) {
+        result.or(known);
+        continue;
+      }
+      if (node >= depsStart.length - 1) {
+        continue;
+      }
+      for (int i = depsStart[node]; i < depsStart[node + 1]; i++) {
+        int dep = deps[i];
+        if (!result.get(dep)) {
+          result.set(dep);
+          if (size == stack.length) {
+            stack = Arrays.copyOf(stack, size * 2);
+          }
+          stack[size++] = dep;
+        }
+      }
+    }
+    closures.put(id, result);
+    return result;
+  }
+}
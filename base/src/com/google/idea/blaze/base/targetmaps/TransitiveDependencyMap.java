@@ -23,7 +23,9 @@ import com.google.idea.blaze.base.ideinfo.Dependency;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.model.AspectSyncProjectData;
 import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.project.Project;
 import java.util.Collection;
@@ -33,6 +35,7 @@ import java.util.LinkedHashSet;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /** Handy class to find all transitive dependencies of a given target */
 public class TransitiveDependencyMap {
@@ -46,21 +49,31 @@ public class TransitiveDependencyMap {
     this.project = project;
   }
 
+  /**
+   * Returns the dependency index of the project's target map, or null if the project has not been
+   * synced. For aspect syncs the index is built during sync and kept with the project data.
+   */
+  @Nullable
+  private TransitiveDependencyIndex getIndex() {
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    if (projectData instanceof AspectSyncProjectData) {
+      return ((AspectSyncProjectData) projectData).getTransitiveDependencyIndex();
+    }
+    return SyncCache.getInstance(project)
+        .get(
+            TransitiveDependencyIndex.class,
+            (p, projectData) -> TransitiveDependencyIndex.create(projectData.getTargetMap()));
+  }
+
   /**
    * Returns true if {@code possibleDependent} transitively depends on {@code possibleDependency}
    * according to the project's target map.
    */
   public boolean hasTransitiveDependency(
       TargetKey possibleDependent, TargetKey possibleDependency) {
-
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
-      return false;
-    }
-
-    return getTransitiveDependenciesStream(possibleDependent, blazeProjectData.getTargetMap())
-        .anyMatch(possibleDependency::equals);
+    TransitiveDependencyIndex index = getIndex();
+    return index != null && index.hasTransitiveDependency(possibleDependent, possibleDependency);
   }
 
   /**
@@ -72,27 +85,19 @@ public class TransitiveDependencyMap {
    */
   public ImmutableSet<TargetKey> filterPossibleTransitiveDeps(
       TargetKey possibleDependent, Collection<TargetKey> possibleDependencies) {
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
+    TransitiveDependencyIndex index = getIndex();
+    if (index == null) {
       return ImmutableSet.of();
     }
-    ImmutableSet<TargetKey> possibleDepsSet = ImmutableSet.copyOf(possibleDependencies);
-    return getTransitiveDependenciesStream(possibleDependent, blazeProjectData.getTargetMap())
-        .filter(possibleDepsSet::contains)
-        .distinct()
-        .limit(possibleDepsSet.size())
-        .collect(ImmutableSet.toImmutableSet());
+    return index.filterPossibleTransitiveDeps(possibleDependent, possibleDependencies);
   }
 
   public ImmutableCollection<TargetKey> getTransitiveDependencies(TargetKey targetKey) {
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
+    TransitiveDependencyIndex index = getIndex();
+    if (index == null) {
       return ImmutableSet.of();
     }
-    // TODO: see if we need caching.
-    return getTransitiveDependencies(targetKey, blazeProjectData.getTargetMap());
+    return index.getTransitiveDependencies(targetKey);
   }
 
   public static ImmutableCollection<TargetKey> getTransitiveDependencies(
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.lexer;
+
+import com.google.idea.blaze.base.lang.buildfile.lexer.BuildLexerBase.LexerMode;
+
+/**
+ * Measures lexing a large synthetic BUILD file, as the editor does it.
+ *
+ * <p>Reports the time to lex the whole file into {@link Token} objects and through {@link
+ * BuildLexer}, which reads the packed token arrays, and then the time to re-lex after an edit in
+ * the middle of the file. For the latter, lexing restarts at the start of the enclosing top-level
+ * statement and stops a fixed number of tokens past the edit, which is roughly what the editor
+ * highlighter needs before the new tokens match the old ones again.
+ *
+ * <p>Run with {@code bazel run //base:BuildLexerBenchmark -- [numRules] [iterations]}. Defaults to
+ * 2000 rules, which is about 30k lines.
+ */
+public class BuildLexerBenchmark {
+
+  private static final int TOKENS_PAST_EDIT = 200;
+
+  public static void main(String[] args) {
+    int numRules = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+    String text = generate(numRules);
+    System.out.printf(
+        "%,d rules, %,d lines, %,d chars%n",
+        numRules, text.chars().filter(c -> c == '\n').count(), text.length());
+
+    for (LexerMode mode : LexerMode.values()) {
+      long tokenObjects =
+          time(iterations, () -> new BuildLexerBase(text, 0, mode).getTokens().size());
+      long fullPass = time(iterations, () -> lexRange(mode, text, 0, 0, Integer.MAX_VALUE));
+
+      int editOffset = text.length() / 2;
+      BuildLexer lexer = new BuildLexer(mode);
+      lexer.start(text);
+      int restartOffset = 0;
+      int restartState = 0;
+      while (lexer.getTokenType() != null && lexer.getTokenStart() < editOffset) {
+        if (lexer.getState() == 0) {
+          restartOffset = lexer.getTokenStart();
+          restartState = lexer.getState();
+        }
+        lexer.advance();
+      }
+      int offset = restartOffset;
+      int state = restartState;
+      long toEnd = time(iterations, () -> lexRange(mode, text, offset, state, Integer.MAX_VALUE));
+      long incremental = time(iterations, () -> lexRange(mode, text, offset, state, editOffset));
+
+      System.out.printf("%s mode:%n", mode);
+      System.out.printf("  Whole file, Token objects:   %,8d us%n", tokenObjects);
+      System.out.printf("  Whole file, BuildLexer:      %,8d us%n", fullPass);
+      System.out.printf("  After edit, re-lex to end:   %,8d us%n", toEnd);
+      System.out.printf("  After edit, re-lex locally:  %,8d us%n", incremental);
+    }
+  }
+
+  /**
+   * Lexes from {@code startOffset} until {@link #TOKENS_PAST_EDIT} tokens after {@code
+   * editOffset}, or the end of the text. Returns the number of tokens read.
+   */
+  private static int lexRange(
+      LexerMode mode, String text, int startOffset, int initialState, int editOffset) {
+    BuildLexer lexer = new BuildLexer(mode);
+    lexer.start(text, startOffset, text.length(), initialState);
+    int count = 0;
+    int pastEdit = 0;
+    while (lexer.getTokenType() != null && pastEdit < TOKENS_PAST_EDIT) {
+      if (lexer.getTokenStart() >= editOffset) {
+        pastEdit++;
+      }
+      count++;
+      lexer.advance();
+    }
+    return count;
+  }
+
+  /** Returns the mean time of the given task in microseconds, after warming it up. */
+  private static long time(int iterations, Task task) {
+    int blackhole = 0;
+    for (int i = 0; i < iterations; i++) {
+      blackhole += task.run();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      blackhole += task.run();
+    }
+    long elapsed = System.nanoTime() - start;
+    if (blackhole == 42) {
+      System.out.println();
+    }
+    return elapsed / iterations / 1000;
+  }
+
+  private interface Task {
+    int run();
+  }
+
+  private static String generate(int numRules) {
+    StringBuilder text = new StringBuilder();
+    text.append("load(\"//tools/build_defs:defs.bzl\", \"generated_library\")\n\n");
+    for (int i = 0; i < numRules; i++) {
+      text.append("generated_library(\n");
+      text.append("    name = \"target").append(i).append("\",\n");
+      text.append("    srcs = [\n");
+      for (int s = 0; s < 5; s++) {
+        text.append("        \"src/Target").append(i).append('_').append(s).append(".java\",\n");
+      }
+      text.append("    ],\n");
+      text.append("    deps = [\n");
+      for (int d = 1; d <= 4; d++) {
+        text.append("        \":target").append(Math.floorMod(i - d * 7, numRules)).append("\",\n");
+      }
+      text.append("    ],\n");
+      text.append("    visibility = [\"//visibility:public\"],  # generated\n");
+      text.append(")\n\n");
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.index;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.base.lang.buildfile.BuildFileIntegrationTestCase;
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
+import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.google.idea.blaze.base.lang.buildfile.psi.FunctionStatement;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link BuildFileSummary}. */
+@RunWith(JUnit4.class)
+public class BuildFileSummaryTest extends BuildFileIntegrationTestCase {
+
+  @Test
+  public void testTopLevelDeclarationsSummarized() {
+    BuildFile file =
+        createBuildFile(
+            new WorkspacePath("java/com/google/BUILD"),
+            "load(':macros.bzl', 'my_macro', alias = 'other')",
+            "def helper():",
+            "  pass",
+            "java_library(name = 'lib', srcs = glob(['**/*.java'], exclude = ['Test*.java']))",
+            "my_macro(name = 'macro_target')",
+            "java_library(name = 'lib')",
+            "cc_library(srcs = ['a.cc'])");
+
+    BuildFileSummary summary = BuildFileSummary.compute(file);
+
+    assertThat(summary.getRules().stream().map(BuildFileSummary.Rule::name))
+        .containsExactly("lib", "macro_target")
+        .inOrder();
+    BuildFileSummary.Rule lib = summary.getRule("lib");
+    assertThat(lib.kind()).isEqualTo("java_library");
+    assertThat(file.findElementAt(lib.offset()).getText()).isEqualTo("java_library");
+    assertThat(summary.getFunctionOffset("helper")).isAtLeast(0);
+    assertThat(summary.getFunctionOffset("my_macro")).isEqualTo(-1);
+    assertThat(summary.loadsSymbol("my_macro")).isTrue();
+    assertThat(summary.loadsSymbol("alias")).isTrue();
+    assertThat(summary.loadsSymbol("helper")).isFalse();
+  }
+
+  @Test
+  public void testRuleWithoutFunctionNameSummarized() {
+    BuildFile file =
+        createBuildFile(
+            new WorkspacePath("java/com/google/BUILD"), "make_rule()(name = 'dynamic')");
+
+    BuildFileSummary summary = BuildFileSummary.compute(file);
+
+    BuildFileSummary.Rule rule = summary.getRule("dynamic");
+    assertThat(rule).isNotNull();
+    assertThat(rule.kind()).isNull();
+  }
+
+  @Test
+  public void testGlobMatching() {
+    BuildFile file =
+        createBuildFile(
+            new WorkspacePath("java/com/google/BUILD"),
+            "SRCS = ['*.kt']",
+            "java_library(",
+            "    name = 'lib',",
+            "    srcs = glob(['**/*.java'], exclude = ['Test*.java']),",
+            "    data = glob(SRCS),",
+            ")");
+
+    BuildFileSummary summary = BuildFileSummary.compute(file);
+
+    BuildFileSummary.Glob literal = summary.getGlobs().get(0);
+    assertThat(literal.matches("foo/Bar.java", false)).isTrue();
+    assertThat(literal.matches("TestBar.java", false)).isFalse();
+    assertThat(literal.matches("Bar.kt", false)).isFalse();
+    assertThat(literal.matches("foo", true)).isFalse();
+    BuildFileSummary.Glob reference = summary.getGlobs().get(1);
+    assertThat(reference.matches("Bar.kt", false)).isNull();
+  }
+
+  @Test
+  public void testExternalizerRoundTrip() throws Exception {
+    BuildFile file =
+        createBuildFile(
+            new WorkspacePath("java/com/google/BUILD"),
+            "load(':macros.bzl', 'my_macro')",
+            "def helper():",
+            "  pass",
+            "SRCS = ['*.kt']",
+            "java_library(name = 'lib', srcs = glob(['**/*.java'], exclude = SRCS))");
+    BuildFileSummary summary = BuildFileSummary.compute(file);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BuildFileSummary.EXTERNALIZER.save(new DataOutputStream(bytes), summary);
+    BuildFileSummary read =
+        BuildFileSummary.EXTERNALIZER.read(
+            new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertThat(read).isEqualTo(summary);
+  }
+
+  @Test
+  public void testIndexAnswersMissingDeclarationsWithoutLoadingTree() {
+    BuildFile file =
+        createBuildFileWithoutTree(
+            new WorkspacePath("java/com/google/BUILD"),
+            "load(':macros.bzl', 'my_macro')",
+            "def helper():",
+            "  pass",
+            "java_library(name = 'lib')");
+
+    assertThat(BuildFileSummaryIndex.getIfTreeNotLoaded(file)).isNotNull();
+    assertThat(file.findRule("other")).isNull();
+    assertThat(file.findDeclaredFunction("other")).isNull();
+    assertThat(file.findLoadedFunction("other")).isNull();
+    assertThat(file.getTreeElement()).isNull();
+  }
+
+  @Test
+  public void testFindDeclarationsFromIndex() {
+    workspace.createPsiFile(
+        new WorkspacePath("java/com/google/macros.bzl"), "def my_macro(name):", "  pass");
+    BuildFile file =
+        createBuildFileWithoutTree(
+            new WorkspacePath("java/com/google/BUILD"), "java_library(name = 'lib')");
+
+    FuncallExpression rule = file.findRule("lib");
+    assertThat(rule).isNotNull();
+    assertThat(rule.getFunctionName()).isEqualTo("java_library");
+
+    file =
+        createBuildFileWithoutTree(
+            new WorkspacePath("java/com/google/a/BUILD"), "def helper():", "  pass");
+    assertThat(file.findDeclaredFunction("helper")).isNotNull();
+
+    file =
+        createBuildFileWithoutTree(
+            new WorkspacePath("java/com/google/b/BUILD"),
+            "load('//java/com/google:macros.bzl', 'my_macro')");
+    FunctionStatement loaded = file.findLoadedFunction("my_macro");
+    assertThat(loaded).isNotNull();
+    assertThat(loaded.getName()).isEqualTo("my_macro");
+  }
+
+  @Test
+  public void testFindRuleFromIndexLoadsTreeOnlyOnHit() {
+    BuildFile file =
+        createBuildFileWithoutTree(
+            new WorkspacePath("java/com/google/BUILD"),
+            "java_library(name = 'first')",
+            "java_library(name = 'second')");
+
+    assertThat(file.findRule("third")).isNull();
+    assertThat(file.getTreeElement()).isNull();
+
+    FuncallExpression rule = file.findRule("second");
+
+    // the result is PSI, so a hit loads the tree, and later lookups use it rather than the index
+    assertThat(rule.getNameArgumentValue()).isEqualTo("second");
+    assertThat(file.getTreeElement()).isNotNull();
+    assertThat(BuildFileSummaryIndex.getIfTreeNotLoaded(file)).isNull();
+    assertThat(file.findRule("second")).isSameInstanceAs(rule);
+  }
+
+  @Test
+  public void testFindRuleWithoutFunctionNameFromIndex() {
+    BuildFile file =
+        createBuildFileWithoutTree(
+            new WorkspacePath("java/com/google/BUILD"), "make_rule()(name = 'dynamic')");
+
+    FuncallExpression rule = file.findRule("dynamic");
+
+    assertThat(rule).isNotNull();
+    assertThat(rule.getNameArgumentValue()).isEqualTo("dynamic");
+  }
+
+  @Test
+  public void testFindRuleUsesLoadedTree() {
+    BuildFile file =
+        createBuildFile(
+            new WorkspacePath("java/com/google/BUILD"),
+            "java_library(name = 'first')",
+            "java_library(name = 'second')");
+
+    FuncallExpression rule = file.findRule("second");
+
+    assertThat(rule).isNotNull();
+    assertThat(rule.getNameArgumentValue()).isEqualTo("second");
+    assertThat(file.findRule("third")).isNull();
+  }
+
+  /** Creates a BUILD file, and returns its PSI without loading the syntax tree. */
+  private BuildFile createBuildFileWithoutTree(
+      WorkspacePath workspacePath, String... contentLines) {
+    VirtualFile vf = workspace.createFile(workspacePath, contentLines);
+    PsiFile file = PsiManager.getInstance(getProject()).findFile(vf);
+    assertThat(file).isInstanceOf(BuildFile.class);
+    assertThat(((BuildFile) file).getTreeElement()).isNull();
+    return (BuildFile) file;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link GlobMatcher}. */
+@RunWith(JUnit4.class)
+public class GlobMatcherTest {
+
+  @Test
+  public void testWildcardsDontCrossDirectories() {
+    GlobMatcher matcher = GlobMatcher.create(ImmutableList.of("*.java"));
+    assertThat(matcher.matches("Foo.java")).isTrue();
+    assertThat(matcher.matches("sub/Foo.java")).isFalse();
+    assertThat(matcher.matches("Foo.kt")).isFalse();
+  }
+
+  @Test
+  public void testRecursiveWildcard() {
+    GlobMatcher matcher = GlobMatcher.create(ImmutableList.of("**/*.java"));
+    assertThat(matcher.matches("Foo.java")).isTrue();
+    assertThat(matcher.matches("a/b/c/Foo.java")).isTrue();
+    assertThat(matcher.matches("a/b/c/Foo.kt")).isFalse();
+  }
+
+  @Test
+  public void testRecursiveWildcardInMiddleMatchesNothing() {
+    GlobMatcher matcher = GlobMatcher.create(ImmutableList.of("src/**/test/*.py"));
+    assertThat(matcher.matches("src/test/a.py")).isTrue();
+    assertThat(matcher.matches("src/x/y/test/a.py")).isTrue();
+    assertThat(matcher.matches("src/x/y/a.py")).isFalse();
+    assertThat(matcher.matches("other/test/a.py")).isFalse();
+  }
+
+  @Test
+  public void testTrailingRecursiveWildcardMatchesDirectoryItself() {
+    GlobMatcher matcher = GlobMatcher.create(ImmutableList.of("data/**"));
+    assertThat(matcher.matches("data")).isTrue();
+    assertThat(matcher.matches("data/a/b.txt")).isTrue();
+    assertThat(matcher.matches("other/b.txt")).isFalse();
+  }
+
+  @Test
+  public void testSharedPrefixes() {
+    GlobMatcher matcher =
+        GlobMatcher.create(
+            ImmutableList.of("src/main/**/*.java", "src/main/**/*.kt", "src/test/Foo?.java"));
+    assertThat(matcher.matches("src/main/a/A.java")).isTrue();
+    assertThat(matcher.matches("src/main/a/A.kt")).isTrue();
+    assertThat(matcher.matches("src/test/Foo1.java")).isTrue();
+    assertThat(matcher.matches("src/test/Foo12.java")).isFalse();
+    assertThat(matcher.matches("src/test/A.kt")).isFalse();
+  }
+
+  @Test
+  public void testHiddenFilesMustBeMatchedExplicitly() {
+    assertThat(GlobMatcher.create(ImmutableList.of("*.txt")).matches(".a.txt")).isFalse();
+    assertThat(GlobMatcher.create(ImmutableList.of(".*.txt")).matches(".a.txt")).isTrue();
+    assertThat(GlobMatcher.create(ImmutableList.of("*")).matches(".a.txt")).isTrue();
+  }
+
+  @Test
+  public void testInvalidAndEmptyPatternsNeverMatch() {
+    assertThat(GlobMatcher.create(ImmutableList.of()).matches("a")).isFalse();
+    assertThat(GlobMatcher.create(ImmutableList.of("a**/b")).matches("a/b")).isFalse();
+    assertThat(GlobMatcher.create(ImmutableList.of("../a")).matches("a")).isFalse();
+  }
+}
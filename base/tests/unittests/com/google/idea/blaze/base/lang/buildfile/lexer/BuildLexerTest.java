@@ -0,0 +1,116 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.lexer;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.lang.buildfile.lexer.BuildLexerBase.LexerMode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests of restarting {@link BuildLexer} part way through its input, as the editor does. */
+@RunWith(JUnit4.class)
+public class BuildLexerTest {
+
+  private record LexedToken(TokenKind kind, int start, int end, int state) {}
+
+  private static final String TEXT =
+      String.join(
+          "\n",
+          "load(':defs.bzl', 'macro')",
+          "java_library(",
+          "    name = 'lib',",
+          "    srcs = ['A.java', ('B.java')],",
+          ")",
+          "macro(name = 'm')",
+          "");
+
+  @Test
+  public void testStateIsParenDepthAtTokenStart() {
+    ImmutableList<LexedToken> tokens = lex("foo(a, [b])\nbar", 0, 0);
+
+    assertThat(tokens.stream().map(LexedToken::kind))
+        .containsExactly(
+            TokenKind.IDENTIFIER,
+            TokenKind.LPAREN,
+            TokenKind.IDENTIFIER,
+            TokenKind.COMMA,
+            TokenKind.WHITESPACE,
+            TokenKind.LBRACKET,
+            TokenKind.IDENTIFIER,
+            TokenKind.RBRACKET,
+            TokenKind.RPAREN,
+            TokenKind.NEWLINE,
+            TokenKind.IDENTIFIER)
+        .inOrder();
+    assertThat(tokens.stream().map(LexedToken::state))
+        .containsExactly(0, 0, 1, 1, 1, 1, 2, 2, 1, 0, 0)
+        .inOrder();
+  }
+
+  @Test
+  public void testRestartAtAnyTokenMatchesFullLex() {
+    ImmutableList<LexedToken> full = lex(TEXT, 0, 0);
+
+    for (int i = 0; i < full.size(); i++) {
+      LexedToken restartAt = full.get(i);
+      assertThat(lex(TEXT, restartAt.start(), restartAt.state()))
+          .containsExactlyElementsIn(full.subList(i, full.size()))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void testRelexAfterEditFromEnclosingStatement() {
+    String edited = TEXT.replace("'A.java', ", "'A.java', glob(['*.kt']), ");
+    int editOffset = TEXT.indexOf("('B.java')");
+
+    // restart at the last top-level token before the edit, as the editor highlighter does
+    LexedToken restartAt = null;
+    for (LexedToken token : lex(TEXT, 0, 0)) {
+      if (token.start() >= editOffset) {
+        break;
+      }
+      if (token.state() == 0) {
+        restartAt = token;
+      }
+    }
+    assertThat(restartAt).isNotNull();
+    // the opening paren of the enclosing java_library call is the last token at depth 0
+    assertThat(edited.substring(restartAt.start())).startsWith("(\n    name = 'lib',");
+
+    ImmutableList<LexedToken> relexed = lex(edited, restartAt.start(), restartAt.state());
+    ImmutableList<LexedToken> full = lex(edited, 0, 0);
+    assertThat(relexed)
+        .containsExactlyElementsIn(full.subList(full.size() - relexed.size(), full.size()))
+        .inOrder();
+  }
+
+  private static ImmutableList<LexedToken> lex(CharSequence text, int startOffset, int state) {
+    BuildLexer lexer = new BuildLexer(LexerMode.SyntaxHighlighting);
+    lexer.start(text, startOffset, text.length(), state);
+    ImmutableList.Builder<LexedToken> tokens = ImmutableList.builder();
+    while (lexer.getTokenKind() != null) {
+      tokens.add(
+          new LexedToken(
+              lexer.getTokenKind(), lexer.getTokenStart(), lexer.getTokenEnd(), lexer.getState()));
+      lexer.advance();
+    }
+    return tokens.build();
+  }
+}
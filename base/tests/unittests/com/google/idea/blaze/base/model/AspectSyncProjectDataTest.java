@@ -0,0 +1,161 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.devtools.intellij.model.ProjectData;
+import com.google.devtools.intellij.model.ProjectData.TargetData;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.ProjectDataFile.Section;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Kind.Provider;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.qsync.settings.QuerySyncSettings;
+import com.google.idea.blaze.base.settings.BuildSystemName;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for saving and loading {@link AspectSyncProjectData}. */
+@RunWith(JUnit4.class)
+public class AspectSyncProjectDataTest extends BlazeTestCase {
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Override
+  protected void initTest(
+      @NotNull Container applicationServices, @NotNull Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Provider> kindProvider =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    kindProvider.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+    applicationServices.register(QuerySyncSettings.class, new QuerySyncSettings());
+  }
+
+  @Test
+  public void saveToDisk_thenLoadFromDisk_returnsEqualData() throws Exception {
+    AspectSyncProjectData projectData = createProjectData();
+    File file = tmpFolder.newFile("cache.dat.gz");
+
+    projectData.saveToDisk(file);
+    AspectSyncProjectData loaded =
+        AspectSyncProjectData.loadFromDisk(
+            BuildSystemName.Bazel, file, MoreExecutors.directExecutor());
+
+    assertThat(loaded.awaitTargetData()).isTrue();
+    assertThat(loaded).isEqualTo(projectData);
+    assertThat(loaded.getTargetMap()).isEqualTo(projectData.getTargetMap());
+    assertThat(loaded.toProto()).isEqualTo(projectData.toProto());
+  }
+
+  @Test
+  public void loadFromDisk_decodesTargetMapInBackground() throws Exception {
+    AspectSyncProjectData projectData = createProjectData();
+    File file = tmpFolder.newFile("cache.dat.gz");
+    projectData.saveToDisk(file);
+    Queue<Runnable> tasks = new ArrayDeque<>();
+
+    AspectSyncProjectData loaded =
+        AspectSyncProjectData.loadFromDisk(BuildSystemName.Bazel, file, tasks::add);
+
+    assertThat(loaded.getTargetDataFuture().isDone()).isFalse();
+    assertThat(loaded.getBlazeInfo()).isEqualTo(projectData.getBlazeInfo());
+    // must not wait for the target map
+    assertThat(loaded.hashCode()).isEqualTo(projectData.hashCode());
+
+    while (!tasks.isEmpty()) {
+      tasks.remove().run();
+    }
+    assertThat(loaded.getTargetDataFuture().isDone()).isTrue();
+    assertThat(loaded.getTargetMap()).isEqualTo(projectData.getTargetMap());
+  }
+
+  @Test
+  public void loadFromDisk_targetMapFailsToDecode_returnsEmptyTargetMap() throws Exception {
+    ProjectData.BlazeProjectData proto = createProjectData().toProto();
+    ProjectData.TargetMap targets = proto.getTargetData().getTargetMap();
+    File file = tmpFolder.newFile("cache.dat.gz");
+    // the same targets twice, which can't be decoded into a target map
+    ProjectDataFile.write(
+        file.toPath(),
+        ImmutableMap.of(
+            Section.PROJECT,
+            () -> proto.toBuilder().clearTargetData().clearSyncState().build(),
+            Section.SYNC_STATE,
+            () ->
+                ProjectData.BlazeProjectData.newBuilder()
+                    .setSyncState(proto.getSyncState())
+                    .build(),
+            Section.TARGET_MAP,
+            () ->
+                ProjectData.BlazeProjectData.newBuilder()
+                    .setTargetData(
+                        TargetData.newBuilder()
+                            .setTargetMap(
+                                targets.toBuilder().addAllTargets(targets.getTargetsList())))
+                    .build()),
+        MoreExecutors.directExecutor());
+
+    AspectSyncProjectData loaded =
+        AspectSyncProjectData.loadFromDisk(
+            BuildSystemName.Bazel, file, MoreExecutors.directExecutor());
+
+    assertThat(loaded.awaitTargetData()).isFalse();
+    assertThat(loaded.getTargetMap().targets()).isEmpty();
+    TargetKey key = TargetKey.forPlainTarget(Label.create("//l:l2"));
+    assertThat(loaded.getReverseDependencyMap().get(key)).isEmpty();
+  }
+
+  private static AspectSyncProjectData createProjectData() {
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("l/BUILD"))
+                    .setLabel("//l:l1")
+                    .setKind("proto_library")
+                    .addDependency("//l:l2"))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("l/BUILD"))
+                    .setLabel("//l:l2")
+                    .setKind("proto_library"))
+            .build();
+    return (AspectSyncProjectData)
+        MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build();
+  }
+
+  private static ArtifactLocation sourceRoot(String relativePath) {
+    return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
+  }
+}
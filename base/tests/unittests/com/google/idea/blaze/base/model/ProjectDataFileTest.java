@@ -0,0 +1,122 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.model;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo;
+import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.base.model.ProjectDataFile.Section;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ProjectDataFile}. */
+@RunWith(JUnit4.class)
+public class ProjectDataFileTest {
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static final ProjectData.BlazeProjectData PROJECT =
+      ProjectData.BlazeProjectData.newBuilder()
+          .setBlazeVersionData(ProjectData.BlazeVersionData.newBuilder().setClientCl(42))
+          .setWorkspacePathResolver(
+              ProjectData.WorkspacePathResolver.newBuilder().setWorkspaceRoot("/workspace"))
+          .build();
+
+  private static final ProjectData.BlazeProjectData REMOTE_OUTPUTS =
+      ProjectData.BlazeProjectData.newBuilder()
+          .setTargetData(
+              ProjectData.TargetData.newBuilder()
+                  .setRemoteOutputs(
+                      ProjectData.RemoteOutputArtifacts.newBuilder()
+                          .addArtifacts(ProjectData.OutputArtifact.newBuilder().setId("out"))))
+          .build();
+
+  private static final ProjectData.BlazeProjectData TARGET_MAP =
+      ProjectData.BlazeProjectData.newBuilder()
+          .setTargetData(
+              ProjectData.TargetData.newBuilder()
+                  .setTargetMap(
+                      ProjectData.TargetMap.newBuilder()
+                          .addTargets(
+                              IntellijIdeInfo.TargetIdeInfo.newBuilder()
+                                  .setKindString("java_library"))))
+          .build();
+
+  @Test
+  public void write_thenRead_decodesSections() throws Exception {
+    Path file = tmpFolder.getRoot().toPath().resolve("project.data");
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      ProjectDataFile.write(
+          file,
+          ImmutableMap.of(
+              Section.PROJECT, () -> PROJECT,
+              Section.REMOTE_OUTPUTS, () -> REMOTE_OUTPUTS,
+              Section.TARGET_MAP, () -> TARGET_MAP),
+          executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(ProjectDataFile.isProjectDataFile(file)).isTrue();
+    ProjectDataFile dataFile = ProjectDataFile.read(file);
+    assertThat(dataFile.decode(Section.PROJECT)).isEqualTo(PROJECT);
+    assertThat(dataFile.decode(Section.SYNC_STATE))
+        .isEqualTo(ProjectData.BlazeProjectData.getDefaultInstance());
+    assertThat(dataFile.decode(Section.PROJECT, Section.REMOTE_OUTPUTS, Section.TARGET_MAP))
+        .isEqualTo(
+            PROJECT.toBuilder()
+                .mergeFrom(REMOTE_OUTPUTS)
+                .mergeFrom(TARGET_MAP)
+                .build());
+  }
+
+  @Test
+  public void isProjectDataFile_gzippedProto_returnsFalse() throws Exception {
+    Path file = tmpFolder.getRoot().toPath().resolve("project.data");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+      PROJECT.writeTo(out);
+    }
+
+    assertThat(ProjectDataFile.isProjectDataFile(file)).isFalse();
+  }
+
+  @Test
+  public void read_corruptSection_throws() throws Exception {
+    Path file = tmpFolder.getRoot().toPath().resolve("project.data");
+    ProjectDataFile.write(
+        file, ImmutableMap.of(Section.PROJECT, () -> PROJECT), MoreExecutors.directExecutor());
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length - 1] ^= 1;
+    Files.write(file, bytes);
+
+    assertThrows(IOException.class, () -> ProjectDataFile.read(file));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for the overlapped reading and merging in {@link BlazeIdeInterfaceAspectsImpl}. */
+@RunWith(JUnit4.class)
+public class BlazeIdeInterfaceAspectsImplTest {
+
+  private final ListeningExecutorService executor =
+      MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+
+  @After
+  public void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void readInOrder_mergesInSameOrderAsSequentialRead() throws Exception {
+    ImmutableList<Integer> inputs = IntStream.range(0, 1000).boxed().collect(toImmutableList());
+    List<String> merged = new ArrayList<>();
+
+    BlazeIdeInterfaceAspectsImpl.readInOrder(
+        executor,
+        inputs,
+        16,
+        i -> {
+          // Let later reads overtake earlier ones.
+          Thread.sleep(i % 3);
+          return read(i);
+        },
+        (index, result) -> {
+          assertThat(index).isEqualTo(merged.size());
+          merged.add(result);
+        });
+
+    List<String> sequential = new ArrayList<>();
+    for (int i : inputs) {
+      sequential.add(read(i));
+    }
+    assertThat(merged).containsExactlyElementsIn(sequential).inOrder();
+  }
+
+  @Test
+  public void readInOrder_failingRead_mergesEarlierResultsAndCancelsPendingReads()
+      throws Exception {
+    ImmutableList<Integer> inputs = IntStream.range(0, 100).boxed().collect(toImmutableList());
+    CountDownLatch neverReleased = new CountDownLatch(1);
+    AtomicInteger reads = new AtomicInteger();
+    List<String> merged = new ArrayList<>();
+
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                BlazeIdeInterfaceAspectsImpl.readInOrder(
+                    executor,
+                    inputs,
+                    4,
+                    i -> {
+                      reads.incrementAndGet();
+                      if (i == 5) {
+                        throw new IOException("Failed to read " + i);
+                      }
+                      if (i > 5) {
+                        neverReleased.await();
+                      }
+                      return read(i);
+                    },
+                    (index, result) -> merged.add(result)));
+
+    assertThat(e).hasCauseThat().isInstanceOf(IOException.class);
+    assertThat(merged).containsExactly(read(0), read(1), read(2), read(3), read(4)).inOrder();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, SECONDS)).isTrue();
+    assertThat(reads.get()).isAtMost(9);
+  }
+
+  @Test
+  public void readInOrder_failingMerge_cancelsPendingReads() throws Exception {
+    ImmutableList<Integer> inputs = IntStream.range(0, 100).boxed().collect(toImmutableList());
+    CountDownLatch neverReleased = new CountDownLatch(1);
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            BlazeIdeInterfaceAspectsImpl.readInOrder(
+                executor,
+                inputs,
+                4,
+                i -> {
+                  if (i > 0) {
+                    neverReleased.await();
+                  }
+                  return read(i);
+                },
+                (index, result) -> {
+                  throw new IllegalStateException("Failed to merge " + result);
+                }));
+
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, SECONDS)).isTrue();
+  }
+
+  private static String read(int i) {
+    return "target" + i;
+  }
+}
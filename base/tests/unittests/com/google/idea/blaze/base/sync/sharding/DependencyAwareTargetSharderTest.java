@@ -0,0 +1,152 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.sharding;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DependencyAwareTargetSharder}. */
+@RunWith(JUnit4.class)
+public class DependencyAwareTargetSharderTest extends BlazeTestCase {
+
+  private static final Label BIG_ONE = Label.create("//lib:big_one");
+  private static final Label BIG_TWO = Label.create("//lib:big_two");
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Kind.Provider> ep =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    ep.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void testTargetsWithSharedDependenciesInSameShard() {
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(target(BIG_ONE, 20))
+            .addTarget(target(BIG_TWO, 20))
+            .addTarget(target(Label.create("//p:a1"), 1).addDependency(BIG_ONE))
+            .addTarget(target(Label.create("//p:a2"), 1).addDependency(BIG_TWO))
+            .addTarget(target(Label.create("//p:a3"), 1).addDependency(BIG_ONE))
+            .addTarget(target(Label.create("//p:a4"), 1).addDependency(BIG_TWO))
+            .build();
+
+    ImmutableList<ImmutableList<Label>> shards =
+        DependencyAwareTargetSharder.shardTargets(
+            targetMap, labels("//p:a1", "//p:a2", "//p:a3", "//p:a4"), 2, 100);
+
+    assertThat(shards)
+        .containsExactly(
+            ImmutableList.of(Label.create("//p:a1"), Label.create("//p:a3")),
+            ImmutableList.of(Label.create("//p:a2"), Label.create("//p:a4")));
+  }
+
+  @Test
+  public void testShardsBalancedByCost() {
+    TargetMapBuilder builder =
+        TargetMapBuilder.builder().addTarget(target(Label.create("//big:target"), 99));
+    for (int i = 0; i < 10; i++) {
+      builder.addTarget(target(Label.create("//small:target" + i), 9));
+    }
+
+    ImmutableList<ImmutableList<Label>> shards =
+        DependencyAwareTargetSharder.shardTargets(
+            builder.build(),
+            labels(
+                "//big:target",
+                "//small:target0",
+                "//small:target1",
+                "//small:target2",
+                "//small:target3",
+                "//small:target4",
+                "//small:target5",
+                "//small:target6",
+                "//small:target7",
+                "//small:target8",
+                "//small:target9"),
+            2,
+            100);
+
+    assertThat(shards).hasSize(2);
+    assertThat(shards.get(0)).containsExactly(Label.create("//big:target"));
+    assertThat(shards.get(1)).hasSize(10);
+  }
+
+  @Test
+  public void testMaxShardSizeRespected() {
+    TargetMapBuilder builder = TargetMapBuilder.builder();
+    for (int i = 0; i < 10; i++) {
+      builder.addTarget(target(Label.create("//p:target" + i), 1));
+    }
+    ImmutableSet.Builder<Label> targets = ImmutableSet.builder();
+    for (int i = 0; i < 10; i++) {
+      targets.add(Label.create("//p:target" + i));
+    }
+
+    ImmutableList<ImmutableList<Label>> shards =
+        DependencyAwareTargetSharder.shardTargets(builder.build(), targets.build(), 1, 3);
+
+    assertThat(shards).hasSize(4);
+    assertThat(shards.stream().mapToInt(ImmutableList::size).max().getAsInt()).isEqualTo(3);
+  }
+
+  @Test
+  public void testMostTargetsUnknown_returnsNull() {
+    TargetMap targetMap =
+        TargetMapBuilder.builder().addTarget(target(Label.create("//p:known"), 1)).build();
+
+    assertThat(
+            DependencyAwareTargetSharder.shardTargets(
+                targetMap, labels("//p:known", "//p:new1", "//p:new2"), 2, 100))
+        .isNull();
+  }
+
+  private static ImmutableSet<Label> labels(String... labels) {
+    ImmutableSet.Builder<Label> builder = ImmutableSet.builder();
+    for (String label : labels) {
+      builder.add(Label.create(label));
+    }
+    return builder.build();
+  }
+
+  private static TargetIdeInfo.Builder target(Label label, int numSources) {
+    TargetIdeInfo.Builder builder =
+        TargetIdeInfo.builder().setKind("proto_library").setLabel(label);
+    for (int i = 0; i < numSources; i++) {
+      builder.addSource(
+          ArtifactLocation.builder()
+              .setRelativePath(label.blazePackage() + "/src" + i + ".proto")
+              .setIsSource(true));
+    }
+    return builder;
+  }
+}
@@ -17,14 +17,12 @@ package com.google.idea.blaze.base.targetmaps;
 
 import static com.google.common.truth.Truth.assertThat;
 
-import com.google.common.collect.ImmutableMultimap;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
-import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
 import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
 import com.google.idea.blaze.base.model.primitives.Kind;
 import com.google.idea.blaze.base.model.primitives.Kind.Provider;
@@ -68,13 +66,9 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
                     .setKind("proto_library"))
             .build();
 
-    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies =
-        ReverseDependencyMap.createRdepsMap(
-            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build());
-    assertThat(reverseDependencies)
-        .containsEntry(
-            TargetKey.forPlainTarget(Label.create("//l:l2")),
-            TargetKey.forPlainTarget(Label.create("//l:l1")));
+    ReverseDependencyMap reverseDependencies = ReverseDependencyMap.create(targetMap);
+    assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l2"))))
+        .contains(TargetKey.forPlainTarget(Label.create("//l:l1")));
   }
 
   @Test
@@ -101,17 +95,11 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
                     .setKind("proto_library"))
             .build();
 
-    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies =
-        ReverseDependencyMap.createRdepsMap(
-            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build());
-    assertThat(reverseDependencies)
-        .containsEntry(
-            TargetKey.forPlainTarget(Label.create("//l:l2")),
-            TargetKey.forPlainTarget(Label.create("//l:l1")));
-    assertThat(reverseDependencies)
-        .containsEntry(
-            TargetKey.forPlainTarget(Label.create("//l:l3")),
-            TargetKey.forPlainTarget(Label.create("//l:l1")));
+    ReverseDependencyMap reverseDependencies = ReverseDependencyMap.create(targetMap);
+    assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l2"))))
+        .contains(TargetKey.forPlainTarget(Label.create("//l:l1")));
+    assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l3"))))
+        .contains(TargetKey.forPlainTarget(Label.create("//l:l1")));
   }
 
   @Test
@@ -138,17 +126,11 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
                     .setKind("proto_library"))
             .build();
 
-    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies =
-        ReverseDependencyMap.createRdepsMap(
-            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build());
-    assertThat(reverseDependencies)
-        .containsEntry(
-            TargetKey.forPlainTarget(Label.create("//l:l3")),
-            TargetKey.forPlainTarget(Label.create("//l:l1")));
-    assertThat(reverseDependencies)
-        .containsEntry(
-            TargetKey.forPlainTarget(Label.create("//l:l3")),
-            TargetKey.forPlainTarget(Label.create("//l:l2")));
+    ReverseDependencyMap reverseDependencies = ReverseDependencyMap.create(targetMap);
+    assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l3"))))
+        .contains(TargetKey.forPlainTarget(Label.create("//l:l1")));
+    assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l3"))))
+        .contains(TargetKey.forPlainTarget(Label.create("//l:l2")));
   }
 
   @Test
@@ -187,25 +169,57 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
                     .setKind("proto_library"))
             .build();
 
-    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies =
-        ReverseDependencyMap.createRdepsMap(
-            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build());
-    assertThat(reverseDependencies)
-        .containsEntry(
-            TargetKey.forPlainTarget(Label.create("//l:l3")),
-            TargetKey.forPlainTarget(Label.create("//l:l1")));
-    assertThat(reverseDependencies)
-        .containsEntry(
-            TargetKey.forPlainTarget(Label.create("//l:l3")),
-            TargetKey.forPlainTarget(Label.create("//l:l2")));
-    assertThat(reverseDependencies)
-        .containsEntry(
-            TargetKey.forPlainTarget(Label.create("//l:l3")),
-            TargetKey.forPlainTarget(Label.create("//l:l4")));
-    assertThat(reverseDependencies)
-        .containsEntry(
-            TargetKey.forPlainTarget(Label.create("//l:l4")),
-            TargetKey.forPlainTarget(Label.create("//l:l5")));
+    ReverseDependencyMap reverseDependencies = ReverseDependencyMap.create(targetMap);
+    assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l3"))))
+        .contains(TargetKey.forPlainTarget(Label.create("//l:l1")));
+    assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l3"))))
+        .contains(TargetKey.forPlainTarget(Label.create("//l:l2")));
+    assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l3"))))
+        .contains(TargetKey.forPlainTarget(Label.create("//l:l4")));
+    assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l4"))))
+        .contains(TargetKey.forPlainTarget(Label.create("//l:l5")));
+  }
+
+  @Test
+  public void testUpdate_matchesCreate() {
+    TargetMap oldTargetMap =
+        TargetMapBuilder.builder()
+            .addTarget(target("//l:l1").addDependency("//l:l3"))
+            .addTarget(target("//l:l2").addDependency("//l:l3"))
+            .addTarget(target("//l:l3"))
+            .addTarget(target("//l:l5").addDependency("//l:l4"))
+            .build();
+    TargetMap newTargetMap =
+        TargetMapBuilder.builder()
+            .addTarget(target("//l:l1").addDependency("//l:l3"))
+            .addTarget(target("//l:l2").addDependency("//l:l4"))
+            .addTarget(target("//l:l3"))
+            .addTarget(target("//l:l4"))
+            .addTarget(target("//l:l5").addDependency("//l:l4"))
+            .build();
+
+    ReverseDependencyMap oldMap = ReverseDependencyMap.create(oldTargetMap);
+    ReverseDependencyMap updated = oldMap.update(newTargetMap);
+    ReverseDependencyMap created = ReverseDependencyMap.create(newTargetMap);
+
+    assertThat(oldMap.get(key("//l:l3"))).containsExactly(key("//l:l1"), key("//l:l2"));
+    assertThat(oldMap.get(key("//l:l4"))).isEmpty();
+    for (String label : new String[] {"//l:l1", "//l:l2", "//l:l3", "//l:l4", "//l:l5"}) {
+      assertThat(updated.get(key(label))).isEqualTo(created.get(key(label)));
+    }
+    assertThat(updated.get(key("//l:l3"))).containsExactly(key("//l:l1"));
+    assertThat(updated.get(key("//l:l4"))).containsExactly(key("//l:l2"), key("//l:l5"));
+  }
+
+  private static TargetIdeInfo.Builder target(String label) {
+    return TargetIdeInfo.builder()
+        .setBuildFile(sourceRoot("test/BUILD"))
+        .setLabel(label)
+        .setKind("proto_library");
+  }
+
+  private static TargetKey key(String label) {
+    return TargetKey.forPlainTarget(Label.create(label));
   }
 
   private static ArtifactLocation sourceRoot(String relativePath) {
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.blaze.base.sync.workspace.MockArtifactLocationDecoder;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SourceToTargetIndex}. */
+@RunWith(JUnit4.class)
+public class SourceToTargetIndexTest extends BlazeTestCase {
+
+  private static final File WORKSPACE = new File("/workspace");
+
+  private final ArtifactLocationDecoder decoder = new MockArtifactLocationDecoder(WORKSPACE, false);
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Kind.Provider> ep =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    ep.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void testCreate() {
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(
+                target("//a:a").addSource(source("a/A.proto")).addSource(source("a/B.proto")))
+            .addTarget(target("//a:b").addSource(source("a/B.proto")))
+            .build();
+
+    SourceToTargetIndex index = SourceToTargetIndex.create(targetMap, decoder);
+
+    assertThat(index.get(file("a/A.proto"))).containsExactly(key("//a:a"));
+    assertThat(index.get(file("a/B.proto"))).containsExactly(key("//a:a"), key("//a:b"));
+    assertThat(index.get(file("a/C.proto"))).isEmpty();
+  }
+
+  @Test
+  public void testUpdate_onlyChangedTargets() {
+    TargetMap oldTargetMap =
+        TargetMapBuilder.builder()
+            .addTarget(target("//a:a").addSource(source("a/A.proto")))
+            .addTarget(target("//a:b").addSource(source("a/B.proto")))
+            .addTarget(target("//a:c").addSource(source("a/C.proto")))
+            .build();
+    TargetMap newTargetMap =
+        TargetMapBuilder.builder()
+            .addTarget(target("//a:a").addSource(source("a/A.proto")))
+            .addTarget(target("//a:b").addSource(source("a/B2.proto")))
+            .addTarget(target("//a:d").addSource(source("a/A.proto")))
+            .build();
+
+    SourceToTargetIndex index =
+        SourceToTargetIndex.create(oldTargetMap, decoder).update(newTargetMap, decoder);
+
+    assertThat(index.get(file("a/A.proto"))).containsExactly(key("//a:a"), key("//a:d"));
+    assertThat(index.get(file("a/B.proto"))).isEmpty();
+    assertThat(index.get(file("a/B2.proto"))).containsExactly(key("//a:b"));
+    assertThat(index.get(file("a/C.proto"))).isEmpty();
+  }
+
+  @Test
+  public void testUpdate_resolvesExternalSourcesAgain() {
+    ArtifactLocation external =
+        ArtifactLocation.builder()
+            .setRelativePath("ext/E.proto")
+            .setRootExecutionPathFragment("external/repo")
+            .setIsSource(true)
+            .setIsExternal(true)
+            .build();
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(target("//a:a").addSource(source("a/A.proto")).addSource(external))
+            .build();
+    Map<ArtifactLocation, File> externalFiles = new HashMap<>();
+    externalFiles.put(external, file("old/E.proto"));
+    ArtifactLocationDecoder decoder =
+        new MockArtifactLocationDecoder(WORKSPACE, false) {
+          @Override
+          public File resolveSource(ArtifactLocation artifact) {
+            return artifact.isExternal()
+                ? externalFiles.get(artifact)
+                : super.resolveSource(artifact);
+          }
+        };
+    SourceToTargetIndex index = SourceToTargetIndex.create(targetMap, decoder);
+    assertThat(index.get(file("old/E.proto"))).containsExactly(key("//a:a"));
+
+    // the symlink to the external source now points somewhere else
+    externalFiles.put(external, file("new/E.proto"));
+    index = index.update(targetMap, decoder);
+
+    assertThat(index.get(file("a/A.proto"))).containsExactly(key("//a:a"));
+    assertThat(index.get(file("old/E.proto"))).isEmpty();
+    assertThat(index.get(file("new/E.proto"))).containsExactly(key("//a:a"));
+  }
+
+  private static TargetIdeInfo.Builder target(String label) {
+    return TargetIdeInfo.builder().setLabel(label).setKind("proto_library");
+  }
+
+  private static ArtifactLocation source(String relativePath) {
+    return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
+  }
+
+  private static File file(String relativePath) {
+    return new File(WORKSPACE, relativePath);
+  }
+
+  private static TargetKey key(String label) {
+    return TargetKey.forPlainTarget(Label.create(label));
+  }
+}
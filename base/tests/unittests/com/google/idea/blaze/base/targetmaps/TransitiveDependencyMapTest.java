@@ -30,6 +30,7 @@ import com.google.idea.blaze.base.model.primitives.Kind;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.qsync.settings.QuerySyncSettings;
+import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
 import java.io.File;
@@ -62,6 +63,7 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
         BlazeProjectDataManager.class,
         new MockBlazeProjectDataManager(
             MockBlazeProjectDataBuilder.builder(workspaceRoot).setTargetMap(targetMap).build()));
+    projectServices.register(SyncCache.class, new SyncCache(project));
     projectServices.register(TransitiveDependencyMap.class, new TransitiveDependencyMap(project));
     transitiveDependencyMap = TransitiveDependencyMap.getInstance(project);
   }
@@ -101,6 +103,29 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
     }
   }
 
+  @Test
+  public void testGetTransitiveDependenciesMatchesTraversal() {
+    for (TargetKey key : targetMap.map().keySet()) {
+      assertThat(transitiveDependencyMap.getTransitiveDependencies(key))
+          .containsExactlyElementsIn(
+              TransitiveDependencyMap.getTransitiveDependencies(key, targetMap));
+    }
+  }
+
+  @Test
+  public void testFilterPossibleTransitiveDeps() {
+    TargetKey diamondBB = TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:bb"));
+    TargetKey diamondC = TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:c"));
+    TargetKey diamondCCC =
+        TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:ccc"));
+    TargetKey bogus = TargetKey.forPlainTarget(Label.create("//com/google/fake:target"));
+
+    assertThat(
+            transitiveDependencyMap.filterPossibleTransitiveDeps(
+                diamondBB, ImmutableSet.of(diamondBB, diamondC, diamondCCC, bogus)))
+        .containsExactly(diamondC);
+  }
+
   @Test
   public void testGetSimpleDependency() {
     TargetKey simpleA = TargetKey.forPlainTarget(Label.create("//com/google/example/simple:a"));
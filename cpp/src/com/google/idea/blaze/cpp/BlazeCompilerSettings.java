@@ -29,6 +29,7 @@ import com.jetbrains.cidr.lang.workspace.compiler.OCCompilerKind;
 import com.jetbrains.cidr.lang.workspace.compiler.UnknownCompilerKind;
 import java.io.File;
 import java.util.List;
+import java.util.Objects;
 import javax.annotation.Nullable;
 
 public final class BlazeCompilerSettings {
@@ -111,4 +112,34 @@ public final class BlazeCompilerSettings {
   public ImmutableList<ExecutionRootPath> getBuiltInIncludes() {
     return builtInIncludes;
   }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof BlazeCompilerSettings)) {
+      return false;
+    }
+    BlazeCompilerSettings otherSettings = (BlazeCompilerSettings) other;
+    return Objects.equals(cCompiler, otherSettings.cCompiler)
+        && Objects.equals(cppCompiler, otherSettings.cppCompiler)
+        && cCompilerSwitches.equals(otherSettings.cCompilerSwitches)
+        && cppCompilerSwitches.equals(otherSettings.cppCompilerSwitches)
+        && compilerVersion.equals(otherSettings.compilerVersion)
+        && compilerEnvironment.equals(otherSettings.compilerEnvironment)
+        && builtInIncludes.equals(otherSettings.builtInIncludes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        cCompiler,
+        cppCompiler,
+        cCompilerSwitches,
+        cppCompilerSwitches,
+        compilerVersion,
+        compilerEnvironment,
+        builtInIncludes);
+  }
 }
@@ -116,11 +116,22 @@ final class BlazeConfigurationResolver {
         getTargetFilter(projectViewFilter, project, blazeProjectData.getWorkspacePathResolver());
     BlazeConfigurationResolverResult.Builder builder = BlazeConfigurationResolverResult.builder();
     buildBlazeConfigurationData(
-        context, blazeProjectData, toolchainLookupMap, compilerSettings, targetFilter, builder);
+        context,
+        blazeProjectData,
+        toolchainLookupMap,
+        compilerSettings,
+        targetFilter,
+        oldResult,
+        builder);
     builder.setCompilerSettings(compilerSettings);
     ImmutableSet<File> validHeaderRoots =
         HeaderRootTrimmer.getValidRoots(
-            context, blazeProjectData, toolchainLookupMap, targetFilter, executionRootPathResolver);
+            context,
+            project,
+            blazeProjectData,
+            toolchainLookupMap,
+            targetFilter,
+            executionRootPathResolver);
     builder.setValidHeaderRoots(validHeaderRoots);
     builder.setXcodeSettings(xcodeSettings);
 
@@ -182,7 +193,10 @@ final class BlazeConfigurationResolver {
       ImmutableMap<TargetKey, CToolchainIdeInfo> toolchainLookupMap,
       ImmutableMap<CToolchainIdeInfo, BlazeCompilerSettings> compilerSettings,
       Predicate<TargetIdeInfo> targetFilter,
+      BlazeConfigurationResolverResult oldResult,
       BlazeConfigurationResolverResult.Builder builder) {
+    ImmutableMap<TargetKey, BlazeResolveConfigurationData> oldTargetToData =
+        getTargetToData(oldResult);
     // Type specification needed to avoid incorrect type inference during command line build.
     Scope.push(
         parentContext,
@@ -203,7 +217,12 @@ final class BlazeConfigurationResolver {
                                         createResolveConfiguration(
                                             target, toolchainLookupMap, compilerSettings);
                                     if (data != null) {
-                                      targetToData.put(target.getKey(), data);
+                                      // Share the previous sync's instance where possible, so
+                                      // that grouping the targets mostly compares identities.
+                                      BlazeResolveConfigurationData oldData =
+                                          oldTargetToData.get(target.getKey());
+                                      targetToData.put(
+                                          target.getKey(), data.equals(oldData) ? oldData : data);
                                     }
                                     return null;
                                   }))
@@ -219,8 +238,29 @@ final class BlazeConfigurationResolver {
                 logger.error("Could not build C resolve configurations", e);
                 return;
               }
-              findEquivalenceClasses(context, project, blazeProjectData, targetToData, builder);
+              findEquivalenceClasses(
+                  context,
+                  project,
+                  blazeProjectData,
+                  targetToData,
+                  oldResult.getConfigurationMap(),
+                  builder);
+            });
+  }
+
+  private static ImmutableMap<TargetKey, BlazeResolveConfigurationData> getTargetToData(
+      BlazeConfigurationResolverResult result) {
+    ImmutableMap.Builder<TargetKey, BlazeResolveConfigurationData> targetToData =
+        ImmutableMap.builder();
+    result
+        .getConfigurationMap()
+        .forEach(
+            (data, configuration) -> {
+              for (TargetKey target : configuration.getTargets()) {
+                targetToData.put(target, data);
+              }
             });
+    return targetToData.build();
   }
 
   private static void findEquivalenceClasses(
@@ -228,6 +268,7 @@ final class BlazeConfigurationResolver {
       Project project,
       BlazeProjectData blazeProjectData,
       Map<TargetKey, BlazeResolveConfigurationData> targetToData,
+      ImmutableMap<BlazeResolveConfigurationData, BlazeResolveConfiguration> oldConfigurations,
       BlazeConfigurationResolverResult.Builder builder) {
     Multimap<BlazeResolveConfigurationData, TargetKey> dataEquivalenceClasses =
         ArrayListMultimap.create();
@@ -239,19 +280,26 @@ final class BlazeConfigurationResolver {
 
     ImmutableMap.Builder<BlazeResolveConfigurationData, BlazeResolveConfiguration>
         dataToConfiguration = ImmutableMap.builder();
+    int reused = 0;
     for (Map.Entry<BlazeResolveConfigurationData, Collection<TargetKey>> entry :
         dataEquivalenceClasses.asMap().entrySet()) {
       BlazeResolveConfigurationData data = entry.getKey();
       Collection<TargetKey> targets = entry.getValue();
-      dataToConfiguration.put(
-          data,
-          BlazeResolveConfiguration.createForTargets(project, blazeProjectData, data, targets));
+      // Only equivalence classes whose data or targets changed need to be computed again.
+      BlazeResolveConfiguration configuration = oldConfigurations.get(data);
+      if (configuration != null && configuration.isUpToDate(blazeProjectData, targets)) {
+        reused++;
+      } else {
+        configuration =
+            BlazeResolveConfiguration.createForTargets(project, blazeProjectData, data, targets);
+      }
+      dataToConfiguration.put(data, configuration);
     }
     context.output(
         PrintOutput.log(
             String.format(
-                "%s unique C configurations, %s C targets",
-                dataEquivalenceClasses.keySet().size(), dataEquivalenceClasses.size())));
+                "%s unique C configurations (%s unchanged), %s C targets",
+                dataEquivalenceClasses.keySet().size(), reused, dataEquivalenceClasses.size())));
     builder.setUniqueConfigurations(dataToConfiguration.build());
   }
 
@@ -27,6 +27,7 @@ import com.google.idea.blaze.base.io.VirtualFileSystemProvider;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.jetbrains.cidr.lang.CLanguageKind;
 import com.jetbrains.cidr.lang.OCFileTypeHelpers;
@@ -93,12 +94,54 @@ final class BlazeResolveConfiguration {
   }
 
   boolean isEquivalentConfigurations(BlazeResolveConfiguration other) {
+    if (this == other) {
+      return true;
+    }
     return configurationData.equals(other.configurationData)
         && displayNameIdentifier.equals(other.displayNameIdentifier)
         && targets.equals(other.targets)
         && targetSources.equals(other.targetSources);
   }
 
+  /**
+   * Returns true if creating this configuration again for the given targets would produce an
+   * equivalent configuration, i.e. the targets are the same and all their source files are still
+   * found at the same locations. Doesn't compare the configuration data.
+   */
+  boolean isUpToDate(BlazeProjectData blazeProjectData, Collection<TargetKey> targets) {
+    if (targets.size() != targetSources.size() || !targetSources.keySet().containsAll(targets)) {
+      return false;
+    }
+    for (TargetKey targetKey : targets) {
+      TargetIdeInfo targetIdeInfo = blazeProjectData.getTargetMap().get(targetKey);
+      if (targetIdeInfo == null || targetIdeInfo.getcIdeInfo() == null) {
+        return false;
+      }
+      // Any source which wasn't found in the VFS last time might exist now, so compare against
+      // every source file the target lists.
+      ImmutableList<VirtualFile> sources = targetSources.get(targetKey);
+      int i = 0;
+      for (ArtifactLocation sourceArtifact : targetIdeInfo.getSources()) {
+        File file = blazeProjectData.getArtifactLocationDecoder().decode(sourceArtifact);
+        if (!OCFileTypeHelpers.isSourceFile(file.getName())) {
+          continue;
+        }
+        if (i >= sources.size()) {
+          return false;
+        }
+        VirtualFile vf = sources.get(i++);
+        if (!vf.isValid()
+            || !FileUtil.toSystemIndependentName(file.getPath()).equals(vf.getPath())) {
+          return false;
+        }
+      }
+      if (i != sources.size()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Nullable
   OCLanguageKind getDeclaredLanguageKind(VirtualFile sourceOrHeaderFile) {
     String fileName = sourceOrHeaderFile.getName();
@@ -37,6 +37,9 @@ final class BlazeResolveConfigurationData {
   private final ImmutableList<String> transitiveDefines;
   final ImmutableList<ExecutionRootPath> transitiveSystemIncludeDirectories;
 
+  // Data is hashed and compared for every C target on each sync, so only hash the lists once.
+  private final int hashCode;
+
   static BlazeResolveConfigurationData create(
       CIdeInfo cIdeInfo,
       CToolchainIdeInfo toolchainIdeInfo,
@@ -56,6 +59,15 @@ final class BlazeResolveConfigurationData {
     this.transitiveQuoteIncludeDirectories = cIdeInfo.getTransitiveQuoteIncludeDirectories();
     this.transitiveDefines = cIdeInfo.getTransitiveDefines();
     this.localCopts = cIdeInfo.getLocalCopts();
+    this.hashCode =
+        Objects.hash(
+            transitiveIncludeDirectories,
+            transitiveSystemIncludeDirectories,
+            transitiveQuoteIncludeDirectories,
+            localCopts,
+            transitiveDefines,
+            toolchainIdeInfo,
+            compilerSettings);
   }
 
   @Override
@@ -67,7 +79,8 @@ final class BlazeResolveConfigurationData {
       return false;
     }
     BlazeResolveConfigurationData otherData = (BlazeResolveConfigurationData) other;
-    return this.transitiveIncludeDirectories.equals(otherData.transitiveIncludeDirectories)
+    return this.hashCode == otherData.hashCode
+        && this.transitiveIncludeDirectories.equals(otherData.transitiveIncludeDirectories)
         && this.transitiveSystemIncludeDirectories.equals(
             otherData.transitiveSystemIncludeDirectories)
         && this.transitiveQuoteIncludeDirectories.equals(
@@ -75,20 +88,12 @@ final class BlazeResolveConfigurationData {
         && this.localCopts.equals(otherData.localCopts)
         && this.transitiveDefines.equals(otherData.transitiveDefines)
         && this.toolchainIdeInfo.equals(otherData.toolchainIdeInfo)
-        && this.compilerSettings.getCompilerVersion().equals(
-            otherData.compilerSettings.getCompilerVersion());
+        && this.compilerSettings.equals(otherData.compilerSettings);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(
-        transitiveIncludeDirectories,
-        transitiveSystemIncludeDirectories,
-        transitiveQuoteIncludeDirectories,
-        localCopts,
-        transitiveDefines,
-        toolchainIdeInfo,
-        compilerSettings.getCompilerVersion());
+    return hashCode;
   }
 
   CToolchainIdeInfo getCToolchainIdeInfo() {
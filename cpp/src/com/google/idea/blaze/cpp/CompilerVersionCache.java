@@ -0,0 +1,222 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.idea.blaze.common.AtomicFileWriter;
+import com.google.idea.blaze.cpp.CompilerVersionChecker.VersionCheckException;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Remembers the version string reported by each compiler executable across syncs, projects and IDE
+ * restarts, so that the compiler doesn't have to be launched again until it changes.
+ *
+ * <p>Entries are keyed by the executable's absolute and resolved paths and the environment it was
+ * checked with. A cached version is reused while the executable's size and modification time are
+ * unchanged, or, if those changed, while its content hash is. The executable is often a wrapper
+ * script around the real compiler, which can be upgraded without the wrapper changing, so the
+ * compiler is probed again once {@link #MAX_CHECK_AGE} has passed regardless. Entries which
+ * haven't been used for {@link #MAX_UNUSED_AGE} are dropped.
+ */
+public final class CompilerVersionCache {
+
+  private static final Logger logger = Logger.getInstance(CompilerVersionCache.class);
+
+  private static final int FORMAT_VERSION = 2;
+  private static final int MAX_ENTRIES = 256;
+  @VisibleForTesting static final Duration MAX_CHECK_AGE = Duration.ofDays(1);
+  @VisibleForTesting static final Duration MAX_UNUSED_AGE = Duration.ofDays(30);
+
+  public static CompilerVersionCache getInstance() {
+    return ApplicationManager.getApplication().getService(CompilerVersionCache.class);
+  }
+
+  /** Launches the compiler to find its version. */
+  interface VersionProbe {
+    String run() throws VersionCheckException;
+  }
+
+  private record Entry(
+      long size, long lastModified, String hash, String version, long checked, long lastUsed) {
+    Entry withStat(long size, long lastModified, long lastUsed) {
+      return new Entry(size, lastModified, hash, version, checked, lastUsed);
+    }
+  }
+
+  private final File cacheFile;
+  private final LongSupplier clock;
+  private final Map<String, Entry> entries;
+
+  public CompilerVersionCache() {
+    this(
+        new File(PathManager.getSystemPath(), "blaze/compiler_versions.dat"),
+        System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  CompilerVersionCache(File cacheFile, LongSupplier clock) {
+    this.cacheFile = cacheFile;
+    this.clock = clock;
+    this.entries = read(cacheFile);
+  }
+
+  /**
+   * Returns the cached version of {@code executable} if it hasn't changed since it was last
+   * checked with the same environment, less than {@link #MAX_CHECK_AGE} ago, otherwise runs {@code
+   * probe} and caches its result. Failures aren't cached.
+   */
+  String getVersion(File executable, ImmutableMap<String, String> env, VersionProbe probe)
+      throws VersionCheckException {
+    String key = key(executable, env);
+    long size = executable.length();
+    long lastModified = executable.lastModified();
+    long now = clock.getAsLong();
+
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry != null && now - entry.checked() > MAX_CHECK_AGE.toMillis()) {
+        entry = null;
+      }
+      if (entry != null && entry.size() == size && entry.lastModified() == lastModified) {
+        // Only write out the new last-used time occasionally, it just needs to prevent expiry.
+        if (now - entry.lastUsed() > Duration.ofDays(1).toMillis()) {
+          update(key, entry.withStat(size, lastModified, now));
+        }
+        return entry.version();
+      }
+    }
+
+    String hash = hash(executable);
+    if (entry != null && hash != null && entry.hash().equals(hash)) {
+      update(key, entry.withStat(size, lastModified, now));
+      return entry.version();
+    }
+
+    String version = probe.run();
+    if (hash != null) {
+      update(key, new Entry(size, lastModified, hash, version, now, now));
+    }
+    return version;
+  }
+
+  private static String key(File executable, ImmutableMap<String, String> env) {
+    StringBuilder key = new StringBuilder(executable.getAbsolutePath());
+    try {
+      // Symlinks such as /usr/bin/cc are commonly repointed when switching compilers.
+      key.append('\0').append(executable.toPath().toRealPath());
+    } catch (IOException e) {
+      // Keep the unresolved path only, hashing will report the problem if there is one.
+    }
+    new TreeMap<>(env)
+        .forEach((name, value) -> key.append('\0').append(name).append('=').append(value));
+    return key.toString();
+  }
+
+  @Nullable
+  private static String hash(File executable) {
+    try {
+      return Files.asByteSource(executable).hash(Hashing.sha256()).toString();
+    } catch (IOException e) {
+      logger.warn("Failed to hash compiler executable " + executable, e);
+      return null;
+    }
+  }
+
+  private synchronized void update(String key, Entry entry) {
+    entries.put(key, entry);
+    long oldest = entry.lastUsed() - MAX_UNUSED_AGE.toMillis();
+    entries.values().removeIf(e -> e.lastUsed() < oldest);
+    while (entries.size() > MAX_ENTRIES) {
+      entries.entrySet().stream()
+          .min(Comparator.comparingLong(e -> e.getValue().lastUsed()))
+          .ifPresent(e -> entries.remove(e.getKey()));
+    }
+    write(cacheFile, entries);
+  }
+
+  private static Map<String, Entry> read(File file) {
+    Map<String, Entry> entries = new LinkedHashMap<>();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        return entries;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String key = in.readUTF();
+        entries.put(
+            key,
+            new Entry(
+                in.readLong(),
+                in.readLong(),
+                in.readUTF(),
+                in.readUTF(),
+                in.readLong(),
+                in.readLong()));
+      }
+    } catch (FileNotFoundException e) {
+      // Nothing cached yet.
+    } catch (IOException e) {
+      logger.warn("Failed to read compiler version cache " + file, e);
+      entries.clear();
+    }
+    return entries;
+  }
+
+  private static void write(File file, Map<String, Entry> entries) {
+    try (AtomicFileWriter writer = AtomicFileWriter.create(file.toPath())) {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(writer.getOutputStream()));
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(entries.size());
+      for (Map.Entry<String, Entry> e : entries.entrySet()) {
+        Entry entry = e.getValue();
+        out.writeUTF(e.getKey());
+        out.writeLong(entry.size());
+        out.writeLong(entry.lastModified());
+        out.writeUTF(entry.hash());
+        out.writeUTF(entry.version());
+        out.writeLong(entry.checked());
+        out.writeLong(entry.lastUsed());
+      }
+      out.flush();
+      writer.onWriteComplete();
+    } catch (IOException e) {
+      logger.warn("Failed to write compiler version cache " + file, e);
+    }
+  }
+}
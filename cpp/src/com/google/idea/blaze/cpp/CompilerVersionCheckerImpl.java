@@ -35,6 +35,16 @@ public class CompilerVersionCheckerImpl implements CompilerVersionChecker {
     if (!cppExecutable.exists()) {
       throw new VersionCheckException(IssueKind.MISSING_COMPILER, "");
     }
+    return CompilerVersionCache.getInstance()
+        .getVersion(
+            cppExecutable,
+            checkerEnv,
+            () -> runVersionCheck(executionRoot, cppExecutable, checkerEnv));
+  }
+
+  private String runVersionCheck(
+      File executionRoot, File cppExecutable, ImmutableMap<String, String> checkerEnv)
+      throws VersionCheckException {
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
     ByteArrayOutputStream errStream = new ByteArrayOutputStream();
     int result =
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
+import com.google.idea.blaze.common.AtomicFileWriter;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtilRt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Remembers which generated header search roots may contain headers, so that unchanged roots
+ * aren't searched again on every sync.
+ *
+ * <p>A root is searched breadth first, listing at most {@link #SEARCH_LIMIT} directories. The
+ * result only depends on the listings of those directories, so it is reused for as long as none of
+ * their modification times changed. Results are kept in the project's cache directory between IDE
+ * restarts. Roots which weren't looked up by the last {@link #save} are forgotten.
+ */
+public final class GenHeaderRootCache {
+
+  private static final Logger logger = Logger.getInstance(GenHeaderRootCache.class);
+
+  private static final String CACHE_FILE_NAME = "gen_header_roots.dat";
+  private static final int FORMAT_VERSION = 1;
+
+  // Don't recursively check too many directories, in case the root is just too big.
+  // Sometimes genfiles/java is considered a header search root.
+  @VisibleForTesting static final int SEARCH_LIMIT = 50;
+
+  static GenHeaderRootCache getInstance(Project project) {
+    return project.getService(GenHeaderRootCache.class);
+  }
+
+  /** A directory listed while searching a root, relative to the root. */
+  private record ListedDirectory(String relativePath, long lastModified) {}
+
+  private record Entry(boolean mayContainHeaders, ImmutableList<ListedDirectory> listed) {}
+
+  @Nullable private final File cacheFile;
+  @Nullable private Map<File, Entry> previous;
+  private final Map<File, Entry> current = new ConcurrentHashMap<>();
+
+  public GenHeaderRootCache(Project project) {
+    this(getCacheFile(project));
+  }
+
+  @VisibleForTesting
+  GenHeaderRootCache(@Nullable File cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  /** Returns a cache which isn't persisted. */
+  @VisibleForTesting
+  static GenHeaderRootCache createInMemory() {
+    return new GenHeaderRootCache((File) null);
+  }
+
+  @Nullable
+  private static File getCacheFile(Project project) {
+    BlazeImportSettings importSettings =
+        BlazeImportSettingsManager.getInstance(project).getImportSettings();
+    if (importSettings == null) {
+      return null;
+    }
+    return new File(BlazeDataStorage.getProjectCacheDir(project, importSettings), CACHE_FILE_NAME);
+  }
+
+  /**
+   * Returns false if the given directory contains no headers, only other generated files (like .s,
+   * .cc, or module maps) or aspect outputs. Errs on the side of returning true.
+   */
+  boolean mayContainHeaders(File root) {
+    Entry entry = getPrevious().get(root);
+    if (entry == null || !isUpToDate(root.toPath(), entry)) {
+      try {
+        entry = search(root.toPath());
+      } catch (IOException e) {
+        logger.info(String.format("Couldn't search header root %s: %s", root, e));
+        return true;
+      }
+    }
+    current.put(root, entry);
+    return entry.mayContainHeaders();
+  }
+
+  private static boolean isUpToDate(Path root, Entry entry) {
+    try {
+      for (ListedDirectory dir : entry.listed()) {
+        Path path = dir.relativePath().isEmpty() ? root : root.resolve(dir.relativePath());
+        if (Files.getLastModifiedTime(path).toMillis() != dir.lastModified()) {
+          return false;
+        }
+      }
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static Entry search(Path root) throws IOException {
+    ImmutableList.Builder<ListedDirectory> listed = ImmutableList.builder();
+    int listedCount = 0;
+    Queue<Path> worklist = new ArrayDeque<>();
+    worklist.add(root);
+    while (!worklist.isEmpty()) {
+      if (listedCount >= SEARCH_LIMIT) {
+        return new Entry(true, listed.build());
+      }
+      Path dir = worklist.poll();
+      // Read the modification time first, so that changes made while listing aren't missed.
+      listed.add(
+          new ListedDirectory(
+              root.relativize(dir).toString(), Files.getLastModifiedTime(dir).toMillis()));
+      listedCount++;
+      try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+        for (Path child : children) {
+          if (Files.isDirectory(child)) {
+            worklist.add(child);
+            continue;
+          }
+          String fileExtension = FileUtilRt.getExtension(child.getFileName().toString());
+          if (Strings.isNullOrEmpty(fileExtension)) {
+            // Conservatively allow extension-less headers (though hopefully rare for generated
+            // srcs vs the standard library). Could count extension-less binaries in bin/ directory.
+            return new Entry(true, listed.build());
+          }
+          if (CFileExtensions.HEADER_EXTENSIONS.contains(fileExtension)) {
+            return new Entry(true, listed.build());
+          }
+        }
+      }
+    }
+    return new Entry(false, listed.build());
+  }
+
+  /** Persists the results of every root looked up since the last call. */
+  synchronized void save() {
+    previous = new HashMap<>(current);
+    current.clear();
+    if (cacheFile == null) {
+      return;
+    }
+    try (AtomicFileWriter writer = AtomicFileWriter.create(cacheFile.toPath())) {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(writer.getOutputStream()));
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(previous.size());
+      for (Map.Entry<File, Entry> e : previous.entrySet()) {
+        out.writeUTF(e.getKey().getPath());
+        out.writeBoolean(e.getValue().mayContainHeaders());
+        out.writeInt(e.getValue().listed().size());
+        for (ListedDirectory dir : e.getValue().listed()) {
+          out.writeUTF(dir.relativePath());
+          out.writeLong(dir.lastModified());
+        }
+      }
+      out.flush();
+      writer.onWriteComplete();
+    } catch (IOException e) {
+      logger.warn("Failed to write header root cache " + cacheFile, e);
+    }
+  }
+
+  private synchronized Map<File, Entry> getPrevious() {
+    if (previous == null) {
+      previous = cacheFile != null ? read(cacheFile) : new HashMap<>();
+    }
+    return previous;
+  }
+
+  private static Map<File, Entry> read(File file) {
+    Map<File, Entry> entries = new HashMap<>();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        return entries;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        File root = new File(in.readUTF());
+        boolean mayContainHeaders = in.readBoolean();
+        int listedCount = in.readInt();
+        ImmutableList.Builder<ListedDirectory> listed = ImmutableList.builder();
+        for (int j = 0; j < listedCount; j++) {
+          listed.add(new ListedDirectory(in.readUTF(), in.readLong()));
+        }
+        entries.put(root, new Entry(mayContainHeaders, listed.build()));
+      }
+    } catch (NoSuchFileException e) {
+      // Nothing cached yet.
+    } catch (IOException e) {
+      logger.warn("Failed to read header root cache " + file, e);
+      entries.clear();
+    }
+    return entries;
+  }
+}
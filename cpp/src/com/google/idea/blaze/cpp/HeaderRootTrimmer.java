@@ -15,7 +15,6 @@
  */
 package com.google.idea.blaze.cpp;
 
-import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -41,12 +40,11 @@ import com.google.idea.blaze.base.scope.scopes.TimingScope;
 import com.google.idea.blaze.base.scope.scopes.TimingScope.EventType;
 import com.google.idea.blaze.base.sync.workspace.ExecutionRootPathResolver;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.File;
-import java.util.ArrayDeque;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -64,12 +62,10 @@ import java.util.function.Predicate;
 final class HeaderRootTrimmer {
 
   private static final Logger logger = Logger.getInstance(HeaderRootTrimmer.class);
-  // Don't recursively check too many directories, in case the root is just too big.
-  // Sometimes genfiles/java is considered a header search root.
-  private static final int GEN_HEADER_ROOT_SEARCH_LIMIT = 50;
 
   static ImmutableSet<File> getValidRoots(
       BlazeContext parentContext,
+      Project project,
       BlazeProjectData blazeProjectData,
       ImmutableMap<TargetKey, CToolchainIdeInfo> toolchainLookupMap,
       Predicate<TargetIdeInfo> targetFilter,
@@ -84,7 +80,11 @@ final class HeaderRootTrimmer {
                   collectExecutionRootPaths(
                       blazeProjectData.getTargetMap(), targetFilter, toolchainLookupMap);
               return doCollectHeaderRoots(
-                  context, blazeProjectData, paths, executionRootPathResolver);
+                  context,
+                  blazeProjectData,
+                  paths,
+                  executionRootPathResolver,
+                  GenHeaderRootCache.getInstance(project));
             });
   }
 
@@ -92,7 +92,8 @@ final class HeaderRootTrimmer {
       BlazeContext context,
       BlazeProjectData projectData,
       Set<ExecutionRootPath> rootPaths,
-      ExecutionRootPathResolver pathResolver) {
+      ExecutionRootPathResolver pathResolver,
+      GenHeaderRootCache genRootCache) {
     Set<File> validRoots = Sets.newConcurrentHashSet();
     List<ListenableFuture<File>> futures = Lists.newArrayListWithCapacity(rootPaths.size());
     AtomicInteger genRootsWithHeaders = new AtomicInteger();
@@ -115,7 +116,7 @@ final class HeaderRootTrimmer {
                     // just aspect files.
                     if (!isOutputArtifact(projectData.getBlazeInfo(), path)) {
                       validRoots.add(file);
-                    } else if (genRootMayContainHeaders(vf)) {
+                    } else if (genRootCache.mayContainHeaders(file)) {
                       genRootsWithHeaders.incrementAndGet();
                       validRoots.add(file);
                     } else {
@@ -132,6 +133,7 @@ final class HeaderRootTrimmer {
     }
     try {
       Futures.allAsList(futures).get();
+      genRootCache.save();
       ImmutableSet<File> result = ImmutableSet.copyOf(validRoots);
       logger.info(
           String.format(
@@ -148,35 +150,6 @@ final class HeaderRootTrimmer {
     return ImmutableSet.of();
   }
 
-  private static boolean genRootMayContainHeaders(VirtualFile directory) {
-    int totalDirectoriesChecked = 0;
-    Queue<VirtualFile> worklist = new ArrayDeque<>();
-    worklist.add(directory);
-    while (!worklist.isEmpty()) {
-      totalDirectoriesChecked++;
-      if (totalDirectoriesChecked > GEN_HEADER_ROOT_SEARCH_LIMIT) {
-        return true;
-      }
-      VirtualFile dir = worklist.poll();
-      for (VirtualFile child : dir.getChildren()) {
-        if (child.isDirectory()) {
-          worklist.add(child);
-          continue;
-        }
-        String fileExtension = child.getExtension();
-        if (Strings.isNullOrEmpty(fileExtension)) {
-          // Conservatively allow extension-less headers (though hopefully rare for generated srcs
-          // vs the standard library). Could count extension-less binaries in bin/ directory.
-          return true;
-        }
-        if (CFileExtensions.HEADER_EXTENSIONS.contains(fileExtension)) {
-          return true;
-        }
-      }
-    }
-    return false;
-  }
-
   private static boolean isOutputArtifact(BlazeInfo blazeInfo, ExecutionRootPath path) {
     return ExecutionRootPath.isAncestor(blazeInfo.getBlazeGenfiles(), path, false)
         || ExecutionRootPath.isAncestor(blazeInfo.getBlazeBin(), path, false);
@@ -27,6 +27,7 @@ import com.intellij.mock.MockProject;
 import org.mockito.MockedStatic;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.async.executor.MockBlazeExecutor;
@@ -113,6 +114,7 @@ public class BlazeConfigurationResolverTest extends BlazeTestCase {
     applicationServices.register(CompilerWrapperProvider.class, new CompilerWrapperProviderImpl());
     xcodeSettingsProvider = new MockXcodeSettingsProvider();
     projectServices.register(XcodeCompilerSettingsProvider.class, xcodeSettingsProvider);
+    projectServices.register(GenHeaderRootCache.class, GenHeaderRootCache.createInMemory());
     applicationServices.register(VirtualFileManager.class, mock(VirtualFileManager.class));
     spyFileOperationProvider = spy(FileOperationProvider.class);
     applicationServices.register(FileOperationProvider.class, spyFileOperationProvider);
@@ -557,6 +559,62 @@ public class BlazeConfigurationResolverTest extends BlazeTestCase {
     assertThat(resolverResult.isEquivalentConfigurations(oldResult)).isTrue();
   }
 
+  @Test
+  public void identicalTargets_testConfigurationInstancesReused() {
+    ProjectView projectView = projectView(directories("foo/bar"), targets("//foo/bar:*"));
+    TargetMapBuilder targetMapBuilder =
+        TargetMapBuilder.builder()
+            .addTarget(createCcToolchain())
+            .addTarget(
+                createCcTarget(
+                    "//foo/bar:binary",
+                    CppBlazeRules.RuleTypes.CC_BINARY.getKind(),
+                    ImmutableList.of(src("foo/bar/binary.cc")),
+                    "//:toolchain"));
+    createVirtualFile("/root/foo/bar/binary.cc");
+    createVirtualFile("/root/foo/bar/library.cc");
+
+    assertThatResolving(projectView, targetMapBuilder.build())
+        .producesConfigurationsFor("//foo/bar:binary");
+    BlazeResolveConfiguration initialConfiguration =
+        Iterables.getOnlyElement(resolverResult.getAllConfigurations());
+
+    targetMapBuilder.addTarget(
+        createCcTarget(
+            "//foo/bar:library",
+            CppBlazeRules.RuleTypes.CC_LIBRARY.getKind(),
+            ImmutableList.of(src("foo/bar/library.cc")),
+            ImmutableList.of("-DOTHER=1"),
+            "//:toolchain"));
+
+    assertThatResolving(projectView, targetMapBuilder.build())
+        .producesConfigurationsFor("//foo/bar:binary", "//foo/bar:library");
+    assertThat(resolverResult.getAllConfigurations()).contains(initialConfiguration);
+  }
+
+  @Test
+  public void identicalTargets_missingSourceCreated_testNotReused() {
+    ProjectView projectView = projectView(directories("foo/bar"), targets("//foo/bar:*"));
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(createCcToolchain())
+            .addTarget(
+                createCcTarget(
+                    "//foo/bar:binary",
+                    CppBlazeRules.RuleTypes.CC_BINARY.getKind(),
+                    ImmutableList.of(src("foo/bar/binary.cc")),
+                    "//:toolchain"))
+            .build();
+
+    assertThatResolving(projectView, targetMap).producesConfigurationsFor("//foo/bar:binary");
+    BlazeConfigurationResolverResult oldResult = resolverResult;
+    createVirtualFile("/root/foo/bar/binary.cc");
+
+    assertThatResolving(projectView, targetMap)
+        .reusedConfigurations(ImmutableList.of(), "//foo/bar:binary");
+    assertThat(resolverResult.isEquivalentConfigurations(oldResult)).isFalse();
+  }
+
   @Test
   public void identicalTargets_addedSources_testNotIncremental() {
     ProjectView projectView = projectView(directories("foo/bar"), targets("//foo/bar:*"));
@@ -716,6 +774,37 @@ public class BlazeConfigurationResolverTest extends BlazeTestCase {
     assertThat(resolverResult.isEquivalentConfigurations(oldResult)).isFalse();
   }
 
+  @Test
+  public void changeCompilerEnvironment_testIncrementalUpdateNoReuse() {
+    ProjectView projectView = projectView(directories("foo/bar"), targets("//foo/bar:binary"));
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(createCcToolchain())
+            .addTarget(
+                createCcTarget(
+                    "//foo/bar:binary",
+                    CppBlazeRules.RuleTypes.CC_BINARY.getKind(),
+                    ImmutableList.of(src("foo/bar/binary.cc")),
+                    "//:toolchain"))
+            .build();
+    createVirtualFile("/root/foo/bar/binary.cc");
+
+    xcodeSettingsProvider.setXcodeSettings(
+        XcodeCompilerSettings.create(Path.of("/tmp/dev_dir"), Path.of("/tmp/dev_dir/sdk")));
+    assertThatResolving(projectView, targetMap).producesConfigurationsFor("//foo/bar:binary");
+    BlazeConfigurationResolverResult oldResult = resolverResult;
+
+    xcodeSettingsProvider.setXcodeSettings(
+        XcodeCompilerSettings.create(Path.of("/tmp/new_dev_dir"), Path.of("/tmp/new_dev_dir/sdk")));
+    assertThatResolving(projectView, targetMap)
+        .reusedConfigurations(ImmutableList.of(), "//foo/bar:binary");
+    assertThat(resolverResult.isEquivalentConfigurations(oldResult)).isFalse();
+    BlazeResolveConfiguration configuration =
+        Iterables.getOnlyElement(resolverResult.getAllConfigurations());
+    assertThat(configuration.getCompilerSettings().getCompilerEnvironment("DEVELOPER_DIR"))
+        .isEqualTo("/tmp/new_dev_dir");
+  }
+
   @Test
   public void brokenCompiler_collectsIssues() {
     ProjectView projectView = projectView(directories("foo/bar"), targets("//foo/bar:*"));
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.google.idea.blaze.cpp.CompilerVersionChecker.VersionCheckException;
+import com.google.idea.blaze.cpp.CompilerVersionChecker.VersionCheckException.IssueKind;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link CompilerVersionCache}. */
+@RunWith(JUnit4.class)
+public class CompilerVersionCacheTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File cacheFile;
+  private File compiler;
+  private int probes;
+  private long now = 1_000_000_000L;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheFile = new File(folder.getRoot(), "cache/compiler_versions.dat");
+    compiler = folder.newFile("gcc");
+    Files.asCharSink(compiler, UTF_8).write("gcc 12");
+  }
+
+  private CompilerVersionCache newCache() {
+    return new CompilerVersionCache(cacheFile, () -> now);
+  }
+
+  private String getVersion(CompilerVersionCache cache, ImmutableMap<String, String> env)
+      throws VersionCheckException {
+    return cache.getVersion(
+        compiler,
+        env,
+        () -> {
+          probes++;
+          return "version " + probes;
+        });
+  }
+
+  @Test
+  public void testUnchangedCompilerNotProbedAgain() throws Exception {
+    CompilerVersionCache cache = newCache();
+
+    assertThat(getVersion(cache, ImmutableMap.of())).isEqualTo("version 1");
+    assertThat(getVersion(cache, ImmutableMap.of())).isEqualTo("version 1");
+    assertThat(probes).isEqualTo(1);
+  }
+
+  @Test
+  public void testCachePersisted() throws Exception {
+    getVersion(newCache(), ImmutableMap.of());
+
+    assertThat(getVersion(newCache(), ImmutableMap.of()))
+        .isEqualTo("version 1");
+    assertThat(probes).isEqualTo(1);
+  }
+
+  @Test
+  public void testDifferentEnvironmentProbedSeparately() throws Exception {
+    CompilerVersionCache cache = newCache();
+
+    getVersion(cache, ImmutableMap.of("DEVELOPER_DIR", "/a"));
+    assertThat(getVersion(cache, ImmutableMap.of("DEVELOPER_DIR", "/b"))).isEqualTo("version 2");
+    assertThat(getVersion(cache, ImmutableMap.of("DEVELOPER_DIR", "/a"))).isEqualTo("version 1");
+  }
+
+  @Test
+  public void testChangedCompilerProbedAgain() throws Exception {
+    CompilerVersionCache cache = newCache();
+    getVersion(cache, ImmutableMap.of());
+
+    long lastModified = compiler.lastModified();
+    Files.asCharSink(compiler, UTF_8).write("gcc 13");
+    assertThat(compiler.setLastModified(lastModified + 60_000)).isTrue();
+
+    assertThat(getVersion(cache, ImmutableMap.of())).isEqualTo("version 2");
+  }
+
+  @Test
+  public void testTouchedCompilerWithSameContentNotProbedAgain() throws Exception {
+    CompilerVersionCache cache = newCache();
+    getVersion(cache, ImmutableMap.of());
+
+    assertThat(compiler.setLastModified(compiler.lastModified() - 60_000)).isTrue();
+
+    assertThat(getVersion(cache, ImmutableMap.of())).isEqualTo("version 1");
+    assertThat(probes).isEqualTo(1);
+  }
+
+  @Test
+  public void testUnchangedCompilerProbedAgainAfterMaxCheckAge() throws Exception {
+    CompilerVersionCache cache = newCache();
+    getVersion(cache, ImmutableMap.of());
+
+    now += CompilerVersionCache.MAX_CHECK_AGE.toMillis() / 2;
+    assertThat(getVersion(cache, ImmutableMap.of())).isEqualTo("version 1");
+
+    now += CompilerVersionCache.MAX_CHECK_AGE.toMillis();
+    assertThat(getVersion(cache, ImmutableMap.of())).isEqualTo("version 2");
+    assertThat(getVersion(cache, ImmutableMap.of())).isEqualTo("version 2");
+    assertThat(probes).isEqualTo(2);
+  }
+
+  @Test
+  public void testRepointedSymlinkProbedAgain() throws Exception {
+    File other = folder.newFile("clang");
+    Files.asCharSink(other, UTF_8).write("gcc 12");
+    File link = new File(folder.getRoot(), "cc");
+    java.nio.file.Files.createSymbolicLink(link.toPath(), compiler.toPath());
+    compiler = link;
+    CompilerVersionCache cache = newCache();
+    getVersion(cache, ImmutableMap.of());
+
+    java.nio.file.Files.delete(link.toPath());
+    java.nio.file.Files.createSymbolicLink(link.toPath(), other.toPath());
+
+    assertThat(getVersion(cache, ImmutableMap.of())).isEqualTo("version 2");
+  }
+
+  @Test
+  public void testFailuresNotCached() throws Exception {
+    CompilerVersionCache cache = newCache();
+
+    assertThrows(
+        VersionCheckException.class,
+        () ->
+            cache.getVersion(
+                compiler,
+                ImmutableMap.of(),
+                () -> {
+                  throw new VersionCheckException(IssueKind.GENERIC_FAILURE, "failed");
+                }));
+
+    assertThat(getVersion(cache, ImmutableMap.of())).isEqualTo("version 1");
+  }
+}
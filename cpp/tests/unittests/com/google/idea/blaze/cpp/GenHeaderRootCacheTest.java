@@ -0,0 +1,114 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link GenHeaderRootCache}. */
+@RunWith(JUnit4.class)
+public class GenHeaderRootCacheTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File cacheFile;
+  private File root;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheFile = new File(folder.getRoot(), "cache/gen_header_roots.dat");
+    root = folder.newFolder("genfiles");
+  }
+
+  @Test
+  public void testRootWithoutHeaders() throws IOException {
+    new File(root, "foo").mkdir();
+    new File(root, "foo/module.cppmap").createNewFile();
+    new File(root, "foo/gen.cc").createNewFile();
+
+    assertThat(new GenHeaderRootCache(cacheFile).mayContainHeaders(root)).isFalse();
+  }
+
+  @Test
+  public void testRootWithNestedHeader() throws IOException {
+    new File(root, "foo/bar").mkdirs();
+    new File(root, "foo/bar/gen.h").createNewFile();
+
+    assertThat(new GenHeaderRootCache(cacheFile).mayContainHeaders(root)).isTrue();
+  }
+
+  @Test
+  public void testRootWithExtensionlessFile() throws IOException {
+    new File(root, "vector").createNewFile();
+
+    assertThat(new GenHeaderRootCache(cacheFile).mayContainHeaders(root)).isTrue();
+  }
+
+  @Test
+  public void testLargeRootAssumedToContainHeaders() {
+    for (int i = 0; i < GenHeaderRootCache.SEARCH_LIMIT; i++) {
+      new File(root, "dir" + i).mkdir();
+    }
+
+    assertThat(new GenHeaderRootCache(cacheFile).mayContainHeaders(root)).isTrue();
+  }
+
+  @Test
+  public void testMissingRootAssumedToContainHeaders() {
+    assertThat(new GenHeaderRootCache(cacheFile).mayContainHeaders(new File(root, "missing")))
+        .isTrue();
+  }
+
+  @Test
+  public void testUnchangedRootNotSearchedAgain() throws IOException {
+    File dir = new File(root, "foo");
+    dir.mkdir();
+    GenHeaderRootCache cache = new GenHeaderRootCache(cacheFile);
+    assertThat(cache.mayContainHeaders(root)).isFalse();
+    cache.save();
+
+    // A header appearing without the directory's modification time changing can only be missed
+    // if the cached result is used.
+    long lastModified = dir.lastModified();
+    new File(dir, "gen.h").createNewFile();
+    assertThat(dir.setLastModified(lastModified)).isTrue();
+
+    assertThat(new GenHeaderRootCache(cacheFile).mayContainHeaders(root)).isFalse();
+  }
+
+  @Test
+  public void testChangedRootSearchedAgain() throws IOException {
+    File dir = new File(root, "foo");
+    dir.mkdir();
+    GenHeaderRootCache cache = new GenHeaderRootCache(cacheFile);
+    assertThat(cache.mayContainHeaders(root)).isFalse();
+    cache.save();
+
+    long lastModified = dir.lastModified();
+    new File(dir, "gen.h").createNewFile();
+    assertThat(dir.setLastModified(lastModified + 60_000)).isTrue();
+
+    assertThat(cache.mayContainHeaders(root)).isTrue();
+  }
+}
@@ -17,7 +17,6 @@ package com.google.idea.blaze.golang.run.producers;
 
 import com.goide.execution.GoRunUtil;
 import com.goide.psi.GoFile;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
@@ -107,7 +106,7 @@ class GoBinaryContextProvider implements BinaryContextProvider {
           // ignore these
       }
     }
-    ImmutableMultimap<TargetKey, TargetKey> rdeps = ReverseDependencyMap.get(project);
+    ReverseDependencyMap rdeps = ReverseDependencyMap.get(project);
     return libraryKeys.stream()
         .map(rdeps::get)
         .flatMap(Collection::stream)
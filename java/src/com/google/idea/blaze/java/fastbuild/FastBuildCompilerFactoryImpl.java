@@ -41,11 +41,13 @@ import com.google.idea.blaze.java.fastbuild.FastBuildLogDataScope.FastBuildLogOu
 import com.intellij.build.events.MessageEvent;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.serviceContainer.NonInjectable;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
@@ -60,9 +62,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import javax.tools.Diagnostic.Kind;
 
-final class FastBuildCompilerFactoryImpl implements FastBuildCompilerFactory {
+final class FastBuildCompilerFactoryImpl implements FastBuildCompilerFactory, Disposable {
 
   private static final Logger logger = Logger.getInstance(FastBuildCompilerFactoryImpl.class);
 
@@ -73,6 +76,7 @@ final class FastBuildCompilerFactoryImpl implements FastBuildCompilerFactory {
   private final BlazeProjectDataManager projectDataManager;
   private final Supplier<EventLoggingService> eventLoggerSupplier;
   private final Supplier<File> fastBuildJavacJarSupplier;
+  @Nullable private LoadedCompiler loadedCompiler;
 
   @NonInjectable
   private FastBuildCompilerFactoryImpl(
@@ -141,15 +145,85 @@ final class FastBuildCompilerFactoryImpl implements FastBuildCompilerFactory {
         throws FastBuildException;
   }
 
+  /** A compiler loaded from a particular set of jars, reused for as long as they're unchanged. */
+  private static final class LoadedCompiler {
+    private final ImmutableList<File> jars;
+    private final ImmutableList<Long> stamps;
+    private final URLClassLoader classLoader;
+    private final FastBuildJavac javac;
+
+    private LoadedCompiler(
+        ImmutableList<File> jars, URLClassLoader classLoader, FastBuildJavac javac) {
+      this.jars = jars;
+      this.stamps = stamp(jars);
+      this.classLoader = classLoader;
+      this.javac = javac;
+    }
+
+    private boolean isUpToDate(ImmutableList<File> jars) {
+      return this.jars.equals(jars) && stamps.equals(stamp(jars));
+    }
+
+    private static ImmutableList<Long> stamp(List<File> jars) {
+      ImmutableList.Builder<Long> stamps = ImmutableList.builder();
+      for (File jar : jars) {
+        stamps.add(jar.length()).add(jar.lastModified());
+      }
+      return stamps.build();
+    }
+
+    private void close() {
+      try {
+        javac.close();
+        classLoader.close();
+      } catch (IOException | RuntimeException e) {
+        logger.warn("Failed to close fast build compiler", e);
+      }
+    }
+  }
+
   private Javac createCompiler(List<File> javacJars) throws FastBuildException {
+    FastBuildJavac javaCompiler = getOrLoadCompiler(javacJars);
+    return (context, javacArgs, files) -> {
+      Stopwatch timer = Stopwatch.createStarted();
+      Object[] rawOutput = javaCompiler.compile(javacArgs, files);
+      CompilerOutput output = CompilerOutput.decode(rawOutput);
+      processDiagnostics(context, output);
+      boolean result = output.result;
+      Command command =
+          Command.builder()
+              .setExecutable("javac")
+              .setArguments(javacArgs)
+              .setExitCode(result ? 0 : 1)
+              .setSubcommandName("javac")
+              .setDuration(timer.elapsed())
+              .build();
+      eventLoggerSupplier.get().logCommand(getClass(), command);
+      return result;
+    };
+  }
+
+  /**
+   * Returns the compiler loaded by a previous call if the given jars haven't changed since, so that
+   * its classes and the classpath it has indexed stay warm. Otherwise loads a new one.
+   */
+  private synchronized FastBuildJavac getOrLoadCompiler(List<File> javacJars)
+      throws FastBuildException {
+    ImmutableList<File> jars =
+        ImmutableList.<File>builder()
+            .addAll(javacJars)
+            .add(fastBuildJavacJarSupplier.get())
+            .build();
+    if (loadedCompiler != null && loadedCompiler.isUpToDate(jars)) {
+      return loadedCompiler.javac;
+    }
+    if (loadedCompiler != null) {
+      loadedCompiler.close();
+      loadedCompiler = null;
+    }
     try {
-      Class<?> javacClass =
-          loadJavacClass(
-              FAST_BUILD_JAVAC_CLASS,
-              ImmutableList.<File>builder()
-                  .addAll(javacJars)
-                  .add(fastBuildJavacJarSupplier.get())
-                  .build());
+      URLClassLoader classLoader = createClassLoader(jars);
+      Class<?> javacClass = classLoader.loadClass(FAST_BUILD_JAVAC_CLASS);
 
       Constructor<?> createMethod = javacClass.getConstructor();
       Object javacInstance = createMethod.newInstance();
@@ -157,28 +231,21 @@ final class FastBuildCompilerFactoryImpl implements FastBuildCompilerFactory {
       FastBuildJavac javaCompiler =
           Reflection.newProxy(
               FastBuildJavac.class, new MatchingMethodInvocationHandler(javacClass, javacInstance));
-      return (context, javacArgs, files) -> {
-        Stopwatch timer = Stopwatch.createStarted();
-        Object[] rawOutput = javaCompiler.compile(javacArgs, files);
-        CompilerOutput output = CompilerOutput.decode(rawOutput);
-        processDiagnostics(context, output);
-        boolean result = output.result;
-        Command command =
-            Command.builder()
-                .setExecutable("javac")
-                .setArguments(javacArgs)
-                .setExitCode(result ? 0 : 1)
-                .setSubcommandName("javac")
-                .setDuration(timer.elapsed())
-                .build();
-        eventLoggerSupplier.get().logCommand(getClass(), command);
-        return result;
-      };
+      loadedCompiler = new LoadedCompiler(jars, classLoader, javaCompiler);
+      return javaCompiler;
     } catch (MalformedURLException | ReflectiveOperationException e) {
       throw new FastBuildIncrementalCompileException(e);
     }
   }
 
+  @Override
+  public synchronized void dispose() {
+    if (loadedCompiler != null) {
+      loadedCompiler.close();
+      loadedCompiler = null;
+    }
+  }
+
   private static File findFastBuildJavacJar() {
     IdeaPluginDescriptor blazePlugin =
         PluginManager.getPlugin(
@@ -188,14 +255,12 @@ final class FastBuildCompilerFactoryImpl implements FastBuildCompilerFactory {
         .toFile();
   }
 
-  private Class<?> loadJavacClass(String javaCompilerClass, List<File> jars)
-      throws MalformedURLException, ClassNotFoundException {
+  private static URLClassLoader createClassLoader(List<File> jars) throws MalformedURLException {
     URL[] urls = new URL[jars.size()];
     for (int i = 0; i < jars.size(); ++i) {
       urls[i] = jars.get(i).toURI().toURL();
     }
-    URLClassLoader urlClassLoader = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader());
-    return urlClassLoader.loadClass(javaCompilerClass);
+    return new URLClassLoader(urls, ClassLoader.getPlatformClassLoader());
   }
 
   private static class JavacRunner implements FastBuildCompiler {
@@ -25,14 +25,20 @@ import com.sun.tools.javac.util.JCDiagnostic;
 import com.sun.tools.javac.util.JavacMessages;
 import com.sun.tools.javac.util.Log;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
 
 /**
  * An implementation of {@link FastBuildJavac} that uses the OpenJDK compiler.
@@ -45,30 +51,173 @@ import javax.tools.JavaFileObject;
  * <p>So this class creates a compiler and captures the {@code Diagnostic} objects, attaching the
  * formatted message from the compiler before sending them on. This is the same approach that Blaze
  * uses in BlazeJavacMain.
+ *
+ * <p>An instance is kept for as long as its compiler jars are unchanged. It reuses its file manager
+ * between compiles, so that the (often very large) classpath only has to be indexed once. The file
+ * manager keeps the search paths of the previous compile, so they're all set again every time.
  */
 public final class FastBuildJavacImpl implements FastBuildJavac {
 
+  /** The separator used by {@code FastBuildCompilerFactoryImpl} to join paths. */
+  private static final String PATH_SEPARATOR = ":";
+
+  private static final Map<String, StandardLocation> PATH_OPTIONS =
+      Map.of(
+          "-cp", StandardLocation.CLASS_PATH,
+          "-classpath", StandardLocation.CLASS_PATH,
+          "--class-path", StandardLocation.CLASS_PATH,
+          "-bootclasspath", StandardLocation.PLATFORM_CLASS_PATH,
+          "-processorpath", StandardLocation.ANNOTATION_PROCESSOR_PATH);
+
+  private final JavacTool javacTool = JavacTool.create();
+  private final ForwardingDiagnosticListener fileManagerDiagnostics =
+      new ForwardingDiagnosticListener();
+
+  /**
+   * Kept between compiles, so that classpath jars are only opened and indexed once. Javac's {@link
+   * Context} (and with it the symbol table) can't be reused across compilations, but the file
+   * manager is explicitly allowed to be.
+   */
+  private JavacFileManager fileManager;
+
+  /** The size and modification time of every jar the file manager may have opened. */
+  private final Map<String, JarStamp> openedJars = new HashMap<>();
+
   @Override
-  public Object[] compile(List<String> args, Collection<File> sources) {
+  public synchronized Object[] compile(List<String> args, Collection<File> sources) {
     Context context = new Context();
     DiagnosticsCollector collector = new DiagnosticsCollector(context);
-    JavacTool javacTool = JavacTool.create();
-    JavacFileManager fileManager =
-        javacTool.getStandardFileManager(collector, Locale.ENGLISH, StandardCharsets.UTF_8);
-    Iterable<? extends JavaFileObject> filesToCompile =
-        fileManager.getJavaFileObjects(sources.toArray(new File[] {}));
-    JavacTask task =
-        javacTool.getTask(
-            /* writer (ignored if a diagnosticListener is set) */ null,
-            fileManager,
-            collector,
-            args,
-            /* classes= */ null,
-            filesToCompile,
-            context);
-    boolean result = task.call();
-    CompilerOutput results = new CompilerOutput(result, collector.diagnostics);
-    return results.encode();
+    Map<StandardLocation, List<File>> paths = getPaths(args);
+    JavacFileManager fileManager = getFileManager(paths);
+    fileManagerDiagnostics.delegate = collector;
+    try {
+      setPaths(fileManager, paths);
+      Iterable<? extends JavaFileObject> filesToCompile =
+          fileManager.getJavaFileObjects(sources.toArray(new File[] {}));
+      JavacTask task =
+          javacTool.getTask(
+              /* writer (ignored if a diagnosticListener is set) */ null,
+              fileManager,
+              collector,
+              args,
+              /* classes= */ null,
+              filesToCompile,
+              context);
+      boolean result = task.call();
+      CompilerOutput results = new CompilerOutput(result, collector.diagnostics);
+      return results.encode();
+    } finally {
+      fileManagerDiagnostics.delegate = null;
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    closeFileManager();
+  }
+
+  /**
+   * Returns the file manager from the previous compile, unless one of the jars it may have opened
+   * has changed since. The file manager has no way to drop a single jar, so it's replaced instead.
+   */
+  private JavacFileManager getFileManager(Map<StandardLocation, List<File>> paths) {
+    Map<String, JarStamp> jars = getJars(paths);
+    for (Map.Entry<String, JarStamp> jar : jars.entrySet()) {
+      JarStamp opened = openedJars.get(jar.getKey());
+      if (opened != null && !opened.equals(jar.getValue())) {
+        closeFileManager();
+        break;
+      }
+    }
+    if (fileManager == null) {
+      fileManager =
+          javacTool.getStandardFileManager(
+              fileManagerDiagnostics, Locale.ENGLISH, StandardCharsets.UTF_8);
+    }
+    openedJars.putAll(jars);
+    return fileManager;
+  }
+
+  private void closeFileManager() {
+    openedJars.clear();
+    if (fileManager == null) {
+      return;
+    }
+    try {
+      fileManager.close();
+    } catch (IOException e) {
+      // The jars are reopened by the next file manager anyway.
+    }
+    fileManager = null;
+  }
+
+  /**
+   * Sets every search path given by a {@link #PATH_OPTIONS} option, and resets those which aren't
+   * given to their defaults. Otherwise, e.g. a compile without a processor path would still use the
+   * previous compile's one.
+   */
+  private static void setPaths(
+      JavacFileManager fileManager, Map<StandardLocation, List<File>> paths) {
+    try {
+      for (StandardLocation location : PATH_OPTIONS.values()) {
+        // A null path restores the location's default.
+        fileManager.setLocation(location, paths.get(location));
+      }
+    } catch (IOException e) {
+      // Only thrown for output locations.
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Map<StandardLocation, List<File>> getPaths(List<String> args) {
+    Map<StandardLocation, List<File>> paths = new EnumMap<>(StandardLocation.class);
+    for (int i = 0; i < args.size() - 1; i++) {
+      StandardLocation location = PATH_OPTIONS.get(args.get(i));
+      if (location == null) {
+        continue;
+      }
+      List<File> files = new ArrayList<>();
+      for (String path : args.get(++i).split(PATH_SEPARATOR)) {
+        if (!path.isEmpty()) {
+          files.add(new File(path));
+        }
+      }
+      paths.put(location, files);
+    }
+    return paths;
+  }
+
+  private static Map<String, JarStamp> getJars(Map<StandardLocation, List<File>> paths) {
+    Map<String, JarStamp> jars = new HashMap<>();
+    for (List<File> files : paths.values()) {
+      for (File file : files) {
+        // Directories aren't indexed by the file manager, they're listed again on every compile.
+        if (file.isFile()) {
+          jars.put(file.getPath(), new JarStamp(file.length(), file.lastModified()));
+        }
+      }
+    }
+    return jars;
+  }
+
+  private record JarStamp(long size, long lastModified) {}
+
+  /**
+   * Passes diagnostics reported by the long-lived file manager (e.g. for an unreadable jar) on to
+   * the current compile.
+   */
+  @Trusted
+  private static final class ForwardingDiagnosticListener
+      implements DiagnosticListener<JavaFileObject> {
+
+    private DiagnosticListener<JavaFileObject> delegate;
+
+    @Override
+    public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+      if (delegate != null) {
+        delegate.report(diagnostic);
+      }
+    }
   }
 
   @Trusted
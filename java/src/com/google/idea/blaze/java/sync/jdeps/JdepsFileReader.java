@@ -41,17 +41,20 @@ import com.google.idea.blaze.base.scope.scopes.TimingScope.EventType;
 import com.google.idea.blaze.base.sync.SyncMode;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.common.PrintOutput;
+import com.google.idea.blaze.common.artifact.ArtifactState;
 import com.google.idea.blaze.common.artifact.BlazeArtifact;
 import com.google.idea.blaze.common.artifact.OutputArtifactWithoutDigest;
-import com.google.idea.blaze.java.sync.jdeps.JdepsState.JdepsData;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
@@ -60,6 +63,8 @@ import javax.annotation.Nullable;
 public class JdepsFileReader {
   private static final Logger logger = Logger.getInstance(JdepsFileReader.class);
 
+  private static final int MAX_BATCHES = 4 * Runtime.getRuntime().availableProcessors();
+
   private static class Result {
     OutputArtifactWithoutDigest output;
     TargetKey targetKey;
@@ -172,45 +177,39 @@ public class JdepsFileReader {
 
     AtomicLong totalSizeLoaded = new AtomicLong(0);
 
-    List<ListenableFuture<Result>> futures = Lists.newArrayList();
-    for (OutputArtifactWithoutDigest updatedFile : outputArtifacts) {
+    // Read the files in a few batches rather than one task each, there can be tens of thousands.
+    int batchSize = Math.max(1, (outputArtifacts.size() + MAX_BATCHES - 1) / MAX_BATCHES);
+    List<ListenableFuture<List<Result>>> futures = Lists.newArrayList();
+    for (List<OutputArtifactWithoutDigest> batch : Lists.partition(outputArtifacts, batchSize)) {
       futures.add(
           FetchExecutor.EXECUTOR.submit(
               () -> {
-                totalSizeLoaded.addAndGet(updatedFile.getLength());
-                try (InputStream inputStream = updatedFile.getInputStream()) {
-                  Deps.Dependencies dependencies = Deps.Dependencies.parseFrom(inputStream);
-                  if (dependencies == null) {
-                    return null;
+                List<Result> results = new ArrayList<>(batch.size());
+                for (OutputArtifactWithoutDigest updatedFile : batch) {
+                  totalSizeLoaded.addAndGet(updatedFile.getLength());
+                  Result result = readJdepsFile(updatedFile, fileToTargetMap.get(updatedFile));
+                  if (result != null) {
+                    results.add(result);
                   }
-                  List<String> deps =
-                      dependencies.getDependencyList().stream()
-                          .filter(dep -> relevantDep(dep))
-                          .map(Dependency::getPath)
-                          .collect(toImmutableList());
-                  TargetKey targetKey = fileToTargetMap.get(updatedFile);
-                  return new Result(updatedFile, targetKey, deps);
-                } catch (IOException e) {
-                  logger.info("Could not read jdeps file: " + updatedFile);
-                  return null;
                 }
+                return results;
               }));
     }
 
+    Set<String> changedArtifacts = new HashSet<>();
+    for (OutputArtifactWithoutDigest updated : diff.getUpdatedOutputs()) {
+      changedArtifacts.add(updated.toArtifactState().getKey());
+    }
+    for (ArtifactState removed : diff.getRemovedOutputs()) {
+      changedArtifacts.add(removed.getKey());
+    }
     JdepsState.Builder state = JdepsState.builder();
     if (oldState != null) {
-      state.list.addAll(oldState.data);
+      state.addAllExcept(oldState, changedArtifacts);
     }
-    state.removeArtifacts(
-        diff.getUpdatedOutputs().stream()
-            .map(OutputArtifactWithoutDigest::toArtifactState)
-            .collect(toImmutableList()));
-    state.removeArtifacts(diff.getRemovedOutputs());
-    for (Result result : Futures.allAsList(futures).get()) {
-      if (result != null) {
-        state.list.add(
-            JdepsData.create(
-                result.targetKey, result.dependencies, result.output.toArtifactState()));
+    for (List<Result> results : Futures.allAsList(futures).get()) {
+      for (Result result : results) {
+        state.add(result.targetKey, result.dependencies, result.output.toArtifactState());
       }
     }
     context.output(
@@ -221,6 +220,25 @@ public class JdepsFileReader {
     return state.build();
   }
 
+  @Nullable
+  private static Result readJdepsFile(OutputArtifactWithoutDigest file, TargetKey targetKey) {
+    try (InputStream inputStream = file.getInputStream()) {
+      Deps.Dependencies dependencies = Deps.Dependencies.parseFrom(inputStream);
+      if (dependencies == null) {
+        return null;
+      }
+      List<String> deps =
+          dependencies.getDependencyList().stream()
+              .filter(dep -> relevantDep(dep))
+              .map(Dependency::getPath)
+              .collect(toImmutableList());
+      return new Result(file, targetKey, deps);
+    } catch (IOException e) {
+      logger.info("Could not read jdeps file: " + file);
+      return null;
+    }
+  }
+
   private static boolean relevantDep(Deps.Dependency dep) {
     // we only want explicit or implicit deps that were actually resolved by the compiler, not ones
     // that are available for use in the same package
@@ -15,68 +15,129 @@
  */
 package com.google.idea.blaze.java.sync.jdeps;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
-import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
 import com.google.devtools.intellij.model.ProjectData;
 import com.google.idea.blaze.base.filecache.ArtifactStateProtoConverter;
 import com.google.idea.blaze.base.ideinfo.ProtoWrapper;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.model.SyncData;
 import com.google.idea.blaze.common.artifact.ArtifactState;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.Set;
 import javax.annotation.Nullable;
 
+/**
+ * The dependencies read from each target's jdeps file, kept between syncs so that only changed
+ * jdeps files have to be read again.
+ *
+ * <p>Stored column-wise: each distinct dependency path is kept once, and each target's dependencies
+ * are a range of indices into those paths.
+ */
 final class JdepsState implements SyncData<ProjectData.JdepsState> {
 
-  @AutoValue
-  abstract static class JdepsData {
-    abstract TargetKey getTargetKey();
+  /** Every distinct dependency path, referenced by index from {@link #deps}. */
+  private final ImmutableList<String> paths;
 
-    abstract ImmutableList<String> getJdeps();
+  private final ImmutableList<TargetKey> targets;
+  private final ImmutableList<ArtifactState> files;
 
-    abstract ArtifactState getFile();
+  /** Target {@code i} depends on {@code deps[offsets[i]]} up to {@code deps[offsets[i + 1]]}. */
+  private final int[] offsets;
 
-    static JdepsData create(TargetKey targetKey, List<String> jdeps, ArtifactState file) {
-      return new AutoValue_JdepsState_JdepsData(targetKey, ImmutableList.copyOf(jdeps), file);
-    }
-  }
+  private final int[] deps;
+
+  @Nullable private volatile ImmutableMap<TargetKey, List<String>> jdepsMap;
 
-  final ImmutableList<JdepsData> data;
+  private JdepsState(
+      ImmutableList<String> paths,
+      ImmutableList<TargetKey> targets,
+      ImmutableList<ArtifactState> files,
+      int[] offsets,
+      int[] deps) {
+    this.paths = paths;
+    this.targets = targets;
+    this.files = files;
+    this.offsets = offsets;
+    this.deps = deps;
+  }
 
-  private JdepsState(List<JdepsData> data) {
-    this.data = ImmutableList.copyOf(data);
+  private List<String> getDependencies(int target) {
+    return new DependencyList(paths, deps, offsets[target], offsets[target + 1]);
   }
 
+  /**
+   * Returns the dependencies of each target. The lists are views onto this state, created once, so
+   * that looking a target up doesn't allocate.
+   */
   Map<TargetKey, List<String>> getJdepsMap() {
-    return data.stream().collect(toImmutableMap(JdepsData::getTargetKey, JdepsData::getJdeps));
+    ImmutableMap<TargetKey, List<String>> map = jdepsMap;
+    if (map == null) {
+      ImmutableMap.Builder<TargetKey, List<String>> builder =
+          ImmutableMap.builderWithExpectedSize(targets.size());
+      for (int i = 0; i < targets.size(); i++) {
+        builder.put(targets.get(i), getDependencies(i));
+      }
+      map = builder.buildOrThrow();
+      jdepsMap = map;
+    }
+    return map;
   }
 
   ImmutableMap<String, ArtifactState> getArtifactState() {
-    return data.stream()
-        .collect(toImmutableMap(s -> s.getFile().getKey(), s -> s.getFile(), (a, b) -> a));
+    return files.stream().collect(toImmutableMap(ArtifactState::getKey, s -> s, (a, b) -> a));
+  }
+
+  /** A read-only view of a range of a target's dependency indices, as paths. */
+  private static final class DependencyList extends AbstractList<String> implements RandomAccess {
+    private final ImmutableList<String> paths;
+    private final int[] deps;
+    private final int start;
+    private final int end;
+
+    private DependencyList(ImmutableList<String> paths, int[] deps, int start, int end) {
+      this.paths = paths;
+      this.deps = deps;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public String get(int index) {
+      Objects.checkIndex(index, end - start);
+      return paths.get(deps[start + index]);
+    }
+
+    @Override
+    public int size() {
+      return end - start;
+    }
   }
 
   private static JdepsState fromNewProto(ProjectData.TargetToJdepsMap proto) {
-    ImmutableList<JdepsData> data =
-        proto.getEntriesList().stream()
-            .map(
-                e ->
-                    JdepsData.create(
-                        TargetKey.fromProto(e.getKey()),
-                        ProtoWrapper.internStrings(e.getValueList()),
-                        ArtifactStateProtoConverter.fromProto(e.getFile())))
-            .collect(toImmutableList());
-    return new JdepsState(data);
+    ImmutableList<String> paths = ProtoWrapper.internStrings(proto.getPathsList());
+    Builder builder = new Builder(paths);
+    for (ProjectData.TargetToJdepsMap.Entry e : proto.getEntriesList()) {
+      TargetKey key = TargetKey.fromProto(e.getKey());
+      ArtifactState file = ArtifactStateProtoConverter.fromProto(e.getFile());
+      if (e.getValueCount() > 0) {
+        // written by an older version, which stored the paths for each target
+        builder.add(key, e.getValueList(), file);
+      } else {
+        builder.addInitialIndices(key, Ints.toArray(e.getValueIndexList()), file);
+      }
+    }
+    return builder.build();
   }
 
   private static JdepsState fromProto(ProjectData.JdepsState proto) {
@@ -95,33 +156,29 @@ final class JdepsState implements SyncData<ProjectData.JdepsState> {
             .map(ArtifactStateProtoConverter::fromProto)
             .filter(Objects::nonNull)
             .collect(toImmutableMap(ArtifactState::getKey, s -> s, (a, b) -> a));
-    ImmutableList.Builder<JdepsData> data = ImmutableList.builder();
+    Builder builder = builder();
     for (ProjectData.TargetToJdepsMap.Entry e : proto.getTargetToJdeps().getEntriesList()) {
       TargetKey key = TargetKey.fromProto(e.getKey());
-      ImmutableList<String> jdeps = ProtoWrapper.internStrings(e.getValueList());
       String artifactKey = targetToArtifactKey.get(key);
       ArtifactState file = artifactKey != null ? artifacts.get(artifactKey) : null;
       if (file != null) {
-        data.add(JdepsData.create(key, jdeps, file));
+        builder.add(key, e.getValueList(), file);
       }
     }
-    return new JdepsState(data.build());
+    return builder.build();
   }
 
   @Override
   public ProjectData.JdepsState toProto() {
     ProjectData.TargetToJdepsMap.Builder proto =
-        ProjectData.TargetToJdepsMap.newBuilder()
-            .addAllEntries(
-                data.stream()
-                    .map(
-                        s ->
-                            ProjectData.TargetToJdepsMap.Entry.newBuilder()
-                                .setKey(s.getTargetKey().toProto())
-                                .setFile(ArtifactStateProtoConverter.toProto(s.getFile()))
-                                .addAllValue(s.getJdeps())
-                                .build())
-                    .collect(toImmutableList()));
+        ProjectData.TargetToJdepsMap.newBuilder().addAllPaths(paths);
+    for (int i = 0; i < targets.size(); i++) {
+      proto.addEntries(
+          ProjectData.TargetToJdepsMap.Entry.newBuilder()
+              .setKey(targets.get(i).toProto())
+              .setFile(ArtifactStateProtoConverter.toProto(files.get(i)))
+              .addAllValueIndex(Ints.asList(deps).subList(offsets[i], offsets[i + 1])));
+    }
     return ProjectData.JdepsState.newBuilder().setTargetToJdeps(proto).build();
   }
 
@@ -134,28 +191,122 @@ final class JdepsState implements SyncData<ProjectData.JdepsState> {
       return false;
     }
     JdepsState that = (JdepsState) o;
-    return Objects.equals(data, that.data);
+    if (!targets.equals(that.targets) || !files.equals(that.files)) {
+      return false;
+    }
+    for (int i = 0; i < targets.size(); i++) {
+      if (!getDependencies(i).equals(that.getDependencies(i))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(data);
+    return Objects.hash(targets, files);
   }
 
   static Builder builder() {
-    return new Builder();
+    return new Builder(ImmutableList.of());
   }
 
+  /**
+   * Collects the dependencies of each target, storing each distinct path once. Paths which end up
+   * unused (e.g. because the only target depending on them was removed) aren't kept.
+   */
   static class Builder {
-    final ArrayList<JdepsData> list = new ArrayList<>();
+    private final ImmutableList<String> initialPaths;
+    private final Map<String, Integer> pathIndices = new HashMap<>();
+    private final List<String> paths = new ArrayList<>();
+    /** Maps indices into {@link #initialPaths} to indices into {@link #paths}, or -1. */
+    private final int[] initialPathIndices;
 
-    JdepsState build() {
-      return new JdepsState(list);
+    private final List<TargetKey> targets = new ArrayList<>();
+    private final List<ArtifactState> files = new ArrayList<>();
+    private final List<int[]> deps = new ArrayList<>();
+
+    private Builder(ImmutableList<String> initialPaths) {
+      this.initialPaths = initialPaths;
+      this.initialPathIndices = new int[initialPaths.size()];
+      Arrays.fill(initialPathIndices, -1);
+    }
+
+    /** Adds a target's dependencies, as read from its jdeps file. */
+    void add(TargetKey target, List<String> dependencies, ArtifactState file) {
+      int[] indices = new int[dependencies.size()];
+      for (int i = 0; i < indices.length; i++) {
+        indices[i] = indexOf(dependencies.get(i));
+      }
+      addIndices(target, indices, file);
+    }
+
+    /** Adds a target's dependencies, as indices into the paths this builder was created with. */
+    private void addInitialIndices(TargetKey target, int[] initialIndices, ArtifactState file) {
+      int[] indices = new int[initialIndices.length];
+      for (int i = 0; i < indices.length; i++) {
+        int initial = initialIndices[i];
+        if (initialPathIndices[initial] < 0) {
+          initialPathIndices[initial] = indexOf(initialPaths.get(initial));
+        }
+        indices[i] = initialPathIndices[initial];
+      }
+      addIndices(target, indices, file);
     }
 
-    void removeArtifacts(Collection<ArtifactState> artifacts) {
-      Set<String> toRemove = artifacts.stream().map(a -> a.getKey()).collect(toImmutableSet());
-      list.removeIf(d -> toRemove.contains(d.getFile().getKey()));
+    /** Adds every target of {@code state}, except those whose jdeps file is excluded. */
+    void addAllExcept(JdepsState state, Set<String> excludedArtifactKeys) {
+      int[] stateIndices = new int[state.paths.size()];
+      Arrays.fill(stateIndices, -1);
+      for (int t = 0; t < state.targets.size(); t++) {
+        ArtifactState file = state.files.get(t);
+        if (excludedArtifactKeys.contains(file.getKey())) {
+          continue;
+        }
+        int start = state.offsets[t];
+        int[] indices = new int[state.offsets[t + 1] - start];
+        for (int i = 0; i < indices.length; i++) {
+          int old = state.deps[start + i];
+          if (stateIndices[old] < 0) {
+            stateIndices[old] = indexOf(state.paths.get(old));
+          }
+          indices[i] = stateIndices[old];
+        }
+        addIndices(state.targets.get(t), indices, file);
+      }
+    }
+
+    private int indexOf(String path) {
+      Integer index = pathIndices.get(path);
+      if (index == null) {
+        index = paths.size();
+        pathIndices.put(path, index);
+        paths.add(path);
+      }
+      return index;
+    }
+
+    private void addIndices(TargetKey target, int[] indices, ArtifactState file) {
+      targets.add(target);
+      files.add(file);
+      deps.add(indices);
+    }
+
+    JdepsState build() {
+      int[] offsets = new int[targets.size() + 1];
+      for (int i = 0; i < targets.size(); i++) {
+        offsets[i + 1] = offsets[i] + deps.get(i).length;
+      }
+      int[] allDeps = new int[offsets[targets.size()]];
+      for (int i = 0; i < targets.size(); i++) {
+        System.arraycopy(deps.get(i), 0, allDeps, offsets[i], deps.get(i).length);
+      }
+      return new JdepsState(
+          ImmutableList.copyOf(paths),
+          ImmutableList.copyOf(targets),
+          ImmutableList.copyOf(files),
+          offsets,
+          allDeps);
     }
   }
 
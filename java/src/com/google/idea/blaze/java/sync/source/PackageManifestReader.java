@@ -18,19 +18,26 @@ package com.google.idea.blaze.java.sync.source;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.devtools.intellij.aspect.Common;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo;
 import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.JavaSourcePackage;
 import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.PackageManifest;
+import com.google.devtools.intellij.model.ProjectData.LocalFileOrOutputArtifact;
 import com.google.idea.blaze.base.async.FutureUtil;
 import com.google.idea.blaze.base.command.buildresult.LocalFileArtifact;
 import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactStateProtoConverter;
 import com.google.idea.blaze.base.filecache.ArtifactsDiff;
 import com.google.idea.blaze.base.filecache.RemoteOutputsCache;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
@@ -43,46 +50,117 @@ import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.output.IssueOutput;
 import com.google.idea.blaze.base.scope.scopes.NetworkTrafficTrackingScope.NetworkTrafficUsedOutput;
 import com.google.idea.blaze.base.scope.scopes.TimingScope.EventType;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.blaze.common.AtomicFileWriter;
 import com.google.idea.blaze.common.artifact.ArtifactState;
 import com.google.idea.blaze.common.artifact.BlazeArtifact;
 import com.google.idea.blaze.common.artifact.OutputArtifactWithoutDigest;
+import com.google.idea.blaze.java.sync.model.BlazeSourceDirectory;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 
-/** Reads package manifests. */
+/**
+ * Reads package manifests, and keeps an index of the Java package of each source file they list.
+ *
+ * <p>The index is updated incrementally: only manifests whose artifact state (digest or timestamp)
+ * changed since the last call are parsed again. It is persisted in the project's cache directory,
+ * so that the first sync after an IDE restart doesn't need to read every manifest.
+ *
+ * <p>It also remembers the source directories calculated for each content root, so that {@link
+ * SourceDirectoryCalculator} can skip content roots whose sources and manifests are unchanged.
+ */
 public class PackageManifestReader {
   private static final Logger logger = Logger.getInstance(PackageManifestReader.class);
 
+  private static final String CACHE_FILE_NAME = "package_manifests.dat";
+  private static final int FORMAT_VERSION = 1;
+
   public static PackageManifestReader getInstance() {
     return ApplicationManager.getApplication().getService(PackageManifestReader.class);
   }
 
+  private final Function<Project, File> cacheFileProvider;
+  private final Interner<String> packageInterner = Interners.newWeakInterner();
+
+  /** The cache file the current state was loaded from or saved to. */
+  @Nullable private File stateFile;
+
   private ImmutableMap<String, ArtifactState> artifactState;
   private Map<ArtifactState, TargetKey> fileToLabelMap = new HashMap<>();
   private final Map<TargetKey, Map<ArtifactLocation, String>> manifestMap = Maps.newConcurrentMap();
 
+  /** Incremented by every read. */
+  private long generation;
+
+  /** The generation in which each target's manifest last changed. */
+  private final Map<TargetKey, Long> manifestChangedAt = new HashMap<>();
+
+  private final Map<File, ContentRootEntry> contentRoots = new HashMap<>();
+
+  /** The source directories of a content root, and the generation they were calculated in. */
+  private record ContentRootEntry(
+      long generation,
+      Set<Map.Entry<TargetKey, ArtifactLocation>> sources,
+      ImmutableList<BlazeSourceDirectory> sourceDirectories) {}
+
+  public PackageManifestReader() {
+    this(PackageManifestReader::getCacheFile);
+  }
+
+  @VisibleForTesting
+  PackageManifestReader(Function<Project, File> cacheFileProvider) {
+    this.cacheFileProvider = cacheFileProvider;
+  }
+
+  /** Returns a reader whose index isn't persisted. */
+  @VisibleForTesting
+  public static PackageManifestReader createInMemory() {
+    return new PackageManifestReader(project -> null);
+  }
+
+  @Nullable
+  private static File getCacheFile(Project project) {
+    BlazeImportSettings importSettings =
+        BlazeImportSettingsManager.getInstance(project).getImportSettings();
+    if (importSettings == null) {
+      return null;
+    }
+    return new File(BlazeDataStorage.getProjectCacheDir(project, importSettings), CACHE_FILE_NAME);
+  }
+
   /**
    * @return A map from java source absolute file path to declared package string.
    */
-  public Map<TargetKey, Map<ArtifactLocation, String>> readPackageManifestFiles(
+  public synchronized Map<TargetKey, Map<ArtifactLocation, String>> readPackageManifestFiles(
       Project project,
       BlazeContext context,
       ArtifactLocationDecoder decoder,
       Map<TargetKey, ArtifactLocation> javaPackageManifests,
       ListeningExecutorService executorService) {
+    loadState(project);
 
     Map<OutputArtifactWithoutDigest, TargetKey> fileToLabelMap = Maps.newHashMap();
     for (Map.Entry<TargetKey, ArtifactLocation> entry : javaPackageManifests.entrySet()) {
@@ -103,6 +181,11 @@ public class PackageManifestReader {
       IssueOutput.error("Updating package manifest files failed: " + e).submit(context);
       throw new AssertionError("Unhandled exception", e);
     }
+    // Invalidate content roots depending on these manifests now, in case reading them fails.
+    generation++;
+    for (OutputArtifactWithoutDigest file : diff.getUpdatedOutputs()) {
+      manifestChangedAt.put(fileToLabelMap.get(file), generation);
+    }
 
     // Find all not cached {@link RemoteOutputArtifact} and download them before parsing manifest
     // file
@@ -140,11 +223,12 @@ public class PackageManifestReader {
 
     List<ListenableFuture<Void>> futures = Lists.newArrayList();
     for (OutputArtifactWithoutDigest file : diff.getUpdatedOutputs()) {
+      TargetKey key = fileToLabelMap.get(file);
       futures.add(
           executorService.submit(
               () -> {
                 Map<ArtifactLocation, String> manifest = parseManifestFile(project, file);
-                manifestMap.put(fileToLabelMap.get(file), manifest);
+                manifestMap.put(key, manifest);
                 return null;
               }));
     }
@@ -152,6 +236,7 @@ public class PackageManifestReader {
       TargetKey key = this.fileToLabelMap.get(file);
       if (key != null) {
         manifestMap.remove(key);
+        manifestChangedAt.put(key, generation);
       }
     }
     this.fileToLabelMap =
@@ -170,9 +255,130 @@ public class PackageManifestReader {
       logger.error(e);
       throw new IllegalStateException("Could not read sources");
     }
+    if (!diff.getUpdatedOutputs().isEmpty() || !diff.getRemovedOutputs().isEmpty()) {
+      saveState();
+    }
     return manifestMap;
   }
 
+  /**
+   * Returns the source directories previously calculated for {@code contentRoot}, if it had the
+   * same sources then and none of their manifests changed since.
+   */
+  @Nullable
+  synchronized ImmutableList<BlazeSourceDirectory> getSourceDirectories(
+      File contentRoot, Collection<SourceArtifact> sources) {
+    ContentRootEntry entry = contentRoots.get(contentRoot);
+    if (entry == null || entry.sources().size() != sources.size()) {
+      return null;
+    }
+    for (SourceArtifact source : sources) {
+      Long changedAt = manifestChangedAt.get(source.originatingTarget);
+      if (changedAt != null && changedAt > entry.generation()) {
+        return null;
+      }
+    }
+    return entry.sources().equals(toKeys(sources)) ? entry.sourceDirectories() : null;
+  }
+
+  /**
+   * Remembers the source directories calculated for {@code contentRoot}. Only valid if the package
+   * of every source file was taken from its manifest, rather than e.g. from the file's content.
+   */
+  synchronized void putSourceDirectories(
+      File contentRoot,
+      Collection<SourceArtifact> sources,
+      ImmutableList<BlazeSourceDirectory> sourceDirectories) {
+    contentRoots.put(
+        contentRoot, new ContentRootEntry(generation, toKeys(sources), sourceDirectories));
+  }
+
+  private static Set<Map.Entry<TargetKey, ArtifactLocation>> toKeys(
+      Collection<SourceArtifact> sources) {
+    Set<Map.Entry<TargetKey, ArtifactLocation>> keys =
+        Sets.newHashSetWithExpectedSize(sources.size());
+    for (SourceArtifact source : sources) {
+      keys.add(Maps.immutableEntry(source.originatingTarget, source.artifactLocation));
+    }
+    return keys;
+  }
+
+  /** Loads the index persisted for {@code project}, unless it's already loaded. */
+  private void loadState(Project project) {
+    File file = cacheFileProvider.apply(project);
+    if (file == null || file.equals(stateFile)) {
+      return;
+    }
+    stateFile = file;
+    contentRoots.clear();
+    manifestChangedAt.clear();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        return;
+      }
+      Map<String, ArtifactState> artifacts = new HashMap<>();
+      Map<ArtifactState, TargetKey> targets = new HashMap<>();
+      Map<TargetKey, Map<ArtifactLocation, String>> manifests = new HashMap<>();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        ArtifactState state =
+            ArtifactStateProtoConverter.fromProto(
+                LocalFileOrOutputArtifact.parseDelimitedFrom(in));
+        TargetKey target = TargetKey.fromProto(IntellijIdeInfo.TargetKey.parseDelimitedFrom(in));
+        int sourceCount = in.readInt();
+        Map<ArtifactLocation, String> manifest = Maps.newHashMapWithExpectedSize(sourceCount);
+        for (int j = 0; j < sourceCount; j++) {
+          ArtifactLocation location =
+              ArtifactLocation.fromProto(Common.ArtifactLocation.parseDelimitedFrom(in));
+          manifest.put(location, packageInterner.intern(in.readUTF()));
+        }
+        // Manifests whose state can't be restored are simply read again.
+        if (state != null) {
+          artifacts.put(state.getKey(), state);
+          targets.put(state, target);
+          manifests.put(target, manifest);
+        }
+      }
+      artifactState = ImmutableMap.copyOf(artifacts);
+      fileToLabelMap = targets;
+      manifestMap.clear();
+      manifestMap.putAll(manifests);
+    } catch (NoSuchFileException e) {
+      // Nothing persisted yet.
+    } catch (IOException e) {
+      logger.warn("Failed to read package manifest index " + file, e);
+    }
+  }
+
+  private void saveState() {
+    File file = stateFile;
+    if (file == null) {
+      return;
+    }
+    try (AtomicFileWriter writer = AtomicFileWriter.create(file.toPath())) {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(writer.getOutputStream()));
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(fileToLabelMap.size());
+      for (Map.Entry<ArtifactState, TargetKey> e : fileToLabelMap.entrySet()) {
+        Map<ArtifactLocation, String> manifest =
+            manifestMap.getOrDefault(e.getValue(), ImmutableMap.of());
+        ArtifactStateProtoConverter.toProto(e.getKey()).writeDelimitedTo(out);
+        e.getValue().toProto().writeDelimitedTo(out);
+        out.writeInt(manifest.size());
+        for (Map.Entry<ArtifactLocation, String> source : manifest.entrySet()) {
+          source.getKey().toProto().writeDelimitedTo(out);
+          out.writeUTF(source.getValue());
+        }
+      }
+      out.flush();
+      writer.onWriteComplete();
+    } catch (IOException e) {
+      logger.warn("Failed to write package manifest index " + file, e);
+    }
+  }
+
   @Nullable
   private static File findArtifactInCache(
       Project project, OutputArtifactWithoutDigest outputArtifact) {
@@ -183,7 +389,7 @@ public class PackageManifestReader {
     return null;
   }
 
-  private static Map<ArtifactLocation, String> parseManifestFile(
+  private Map<ArtifactLocation, String> parseManifestFile(
       Project project, OutputArtifactWithoutDigest packageManifest) {
     Map<ArtifactLocation, String> outputMap = Maps.newHashMap();
     InputStreamProvider inputStreamProvider = InputStreamProvider.getInstance();
@@ -196,7 +402,9 @@ public class PackageManifestReader {
             : new BufferedInputStream(new FileInputStream(cachedFile))) {
       PackageManifest proto = PackageManifest.parseFrom(input);
       for (JavaSourcePackage source : proto.getSourcesList()) {
-        outputMap.put(fromProto(source.getArtifactLocation()), source.getPackageString());
+        outputMap.put(
+            ArtifactLocation.fromProto(source.getArtifactLocation()),
+            packageInterner.intern(source.getPackageString()));
       }
       return outputMap;
     } catch (IOException e) {
@@ -204,15 +412,4 @@ public class PackageManifestReader {
       return outputMap;
     }
   }
-
-  private static ArtifactLocation fromProto(Common.ArtifactLocation location) {
-    String relativePath = location.getRelativePath();
-    String rootExecutionPathFragment = location.getRootExecutionPathFragment();
-    return ArtifactLocation.builder()
-        .setRootExecutionPathFragment(rootExecutionPathFragment)
-        .setRelativePath(relativePath)
-        .setIsSource(location.getIsSource())
-        .setIsExternal(location.getIsExternal())
-        .build();
-  }
 }
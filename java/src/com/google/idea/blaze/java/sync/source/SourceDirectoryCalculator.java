@@ -55,6 +55,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -83,19 +84,19 @@ public final class SourceDirectoryCalculator {
       Collection<SourceArtifact> sources,
       Map<TargetKey, ArtifactLocation> javaPackageManifests) {
 
+    PackageManifestReader packageManifestReader = PackageManifestReader.getInstance();
     ManifestFilePackageReader manifestFilePackageReader =
         Scope.push(
             context,
             (childContext) -> {
               childContext.push(new TimingScope("ReadPackageManifests", EventType.Other));
               Map<TargetKey, Map<ArtifactLocation, String>> manifestMap =
-                  PackageManifestReader.getInstance()
-                      .readPackageManifestFiles(
-                          project,
-                          childContext,
-                          artifactLocationDecoder,
-                          javaPackageManifests,
-                          FetchExecutor.EXECUTOR);
+                  packageManifestReader.readPackageManifestFiles(
+                      project,
+                      childContext,
+                      artifactLocationDecoder,
+                      javaPackageManifests,
+                      FetchExecutor.EXECUTOR);
               return new ManifestFilePackageReader(manifestMap);
             });
 
@@ -116,18 +117,42 @@ public final class SourceDirectoryCalculator {
         context,
         (childContext) -> {
           childContext.push(new TimingScope("CalculateSourceDirectories", EventType.Other));
+          int unchangedContentRoots = 0;
           for (WorkspacePath workspacePath : importRoots.rootDirectories()) {
             File contentRoot = workspaceRoot.fileForPath(workspacePath);
+            Collection<SourceArtifact> contentRootSources =
+                sourcesUnderDirectoryRoot.get(workspacePath);
             ImmutableList<BlazeSourceDirectory> sourceDirectories =
-                calculateSourceDirectoriesForContentRoot(
-                    context,
-                    workspaceRoot,
-                    artifactLocationDecoder,
-                    workspacePath,
-                    sourcesUnderDirectoryRoot.get(workspacePath),
-                    javaPackageReaders);
+                packageManifestReader.getSourceDirectories(contentRoot, contentRootSources);
+            if (sourceDirectories != null) {
+              unchangedContentRoots++;
+            } else {
+              AtomicBoolean allPackagesFromManifests = new AtomicBoolean(true);
+              sourceDirectories =
+                  calculateSourceDirectoriesForContentRoot(
+                      context,
+                      workspaceRoot,
+                      artifactLocationDecoder,
+                      workspacePath,
+                      contentRootSources,
+                      javaPackageReaders,
+                      allPackagesFromManifests);
+              // Packages read from the source files themselves can change without any manifest
+              // changing, so only results based purely on manifests can be reused.
+              if (allPackagesFromManifests.get() && !context.isCancelled()) {
+                packageManifestReader.putSourceDirectories(
+                    contentRoot, contentRootSources, sourceDirectories);
+              }
+            }
             result.add(new BlazeContentEntry(contentRoot, sourceDirectories));
           }
+          if (unchangedContentRoots > 0) {
+            childContext.output(
+                PrintOutput.log(
+                    String.format(
+                        "Reused source directories of %d unchanged content roots",
+                        unchangedContentRoots)));
+          }
           result.sort(Comparator.comparing(lhs -> lhs.contentRoot));
         });
     return ImmutableList.copyOf(result);
@@ -176,7 +201,8 @@ public final class SourceDirectoryCalculator {
       ArtifactLocationDecoder artifactLocationDecoder,
       WorkspacePath directoryRoot,
       Collection<SourceArtifact> sourceArtifacts,
-      Collection<JavaPackageReader> javaPackageReaders) {
+      Collection<JavaPackageReader> javaPackageReaders,
+      AtomicBoolean allPackagesFromManifests) {
 
     // Split out java-like files
     Predicate<ArtifactLocation> isSourceFile = JavaLikeLanguage.getSourceFileMatcher();
@@ -197,6 +223,7 @@ public final class SourceDirectoryCalculator {
         directoryRoot,
         javaArtifacts,
         javaPackageReaders,
+        allPackagesFromManifests,
         result);
 
     if (result.isEmpty()) {
@@ -220,6 +247,7 @@ public final class SourceDirectoryCalculator {
       WorkspacePath directoryRoot,
       Collection<SourceArtifact> javaArtifacts,
       Collection<JavaPackageReader> javaPackageReaders,
+      AtomicBoolean allPackagesFromManifests,
       Collection<BlazeSourceDirectory> result) {
 
     List<SourceRoot> sourceRootsPerFile = Lists.newArrayList();
@@ -231,7 +259,11 @@ public final class SourceDirectoryCalculator {
           executorService.submit(
               () ->
                   sourceRootForJavaSource(
-                      context, artifactLocationDecoder, sourceArtifact, javaPackageReaders));
+                      context,
+                      artifactLocationDecoder,
+                      sourceArtifact,
+                      javaPackageReaders,
+                      allPackagesFromManifests));
       sourceRootFutures.add(future);
     }
     try {
@@ -434,16 +466,21 @@ public final class SourceDirectoryCalculator {
       BlazeContext context,
       ArtifactLocationDecoder decoder,
       SourceArtifact sourceArtifact,
-      Collection<JavaPackageReader> javaPackageReaders) {
+      Collection<JavaPackageReader> javaPackageReaders,
+      AtomicBoolean allPackagesFromManifests) {
 
     String declaredPackage = null;
     for (JavaPackageReader reader : javaPackageReaders) {
       declaredPackage = reader.getDeclaredPackageOfJavaFile(context, decoder, sourceArtifact);
       if (declaredPackage != null) {
+        if (!(reader instanceof ManifestFilePackageReader)) {
+          allPackagesFromManifests.set(false);
+        }
         break;
       }
     }
     if (declaredPackage == null) {
+      allPackagesFromManifests.set(false);
       context.output(
           PrintOutput.log(
               "Failed to inspect the package name of java source file: "
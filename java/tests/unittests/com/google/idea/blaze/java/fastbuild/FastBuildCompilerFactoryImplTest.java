@@ -48,6 +48,8 @@ import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -60,6 +62,19 @@ public final class FastBuildCompilerFactoryImplTest extends BlazeTestCase {
 
   private static final String AUTO_VALUE_PROCESSOR =
       "com.google.auto.value.processor.AutoValueProcessor";
+  private static final String AUTO_VALUE_CLASS =
+      ""
+          + "package com.google.idea.blaze.java.fastbuild;\n"
+          + "\n"
+          + "import com.google.auto.value.AutoValue;\n"
+          + "\n"
+          + "@AutoValue\n"
+          + "abstract class TestClass {\n"
+          + "  abstract String someString();\n"
+          + "  TestClass create(String someString) {\n"
+          + "    return new AutoValue_TestClass(someString);\n"
+          + "  }\n"
+          + "}\n";
   private static final File AUTO_VALUE_JAR = new File(System.getProperty("auto_value.jar"));
   private static final File AUTO_VALUE_PLUGIN_JAR =
       new File(System.getProperty("auto_value_plugin.jar"));
@@ -306,25 +321,12 @@ public final class FastBuildCompilerFactoryImplTest extends BlazeTestCase {
 
   @Test
   public void runsAnnotationProcessors() throws IOException, FastBuildException {
-    String java =
-        ""
-            + "package com.google.idea.blaze.java.fastbuild;\n"
-            + "\n"
-            + "import com.google.auto.value.AutoValue;\n"
-            + "\n"
-            + "@AutoValue\n"
-            + "abstract class TestClass {\n"
-            + "  abstract String someString();\n"
-            + "  TestClass create(String someString) {\n"
-            + "    return new AutoValue_TestClass(someString);\n"
-            + "  }\n"
-            + "}\n";
     StringWriter javacOutput = new StringWriter();
     FastBuildCompiler compiler = getCompiler();
     try {
       compiler.compile(
           createBlazeContext(javacOutput),
-          createCompileInstructions(java, AUTO_VALUE_JAR)
+          createCompileInstructions(AUTO_VALUE_CLASS, AUTO_VALUE_JAR)
               .annotationProcessorClasspath(ImmutableSet.of(AUTO_VALUE_PLUGIN_JAR))
               .annotationProcessorClassNames(ImmutableSet.of(AUTO_VALUE_PROCESSOR))
               .build());
@@ -333,6 +335,73 @@ public final class FastBuildCompilerFactoryImplTest extends BlazeTestCase {
     }
   }
 
+  @Test
+  public void testProcessorPathNotKeptForLaterCompiles() throws IOException, FastBuildException {
+    StringWriter javacOutput = new StringWriter();
+    try {
+      getCompiler()
+          .compile(
+              createBlazeContext(javacOutput),
+              createCompileInstructions(AUTO_VALUE_CLASS, AUTO_VALUE_JAR)
+                  .annotationProcessorClasspath(ImmutableSet.of(AUTO_VALUE_PLUGIN_JAR))
+                  .annotationProcessorClassNames(ImmutableSet.of(AUTO_VALUE_PROCESSOR))
+                  .build());
+      compile("package main;\nclass Main {}\n", javacOutput);
+    } catch (FastBuildIncrementalCompileException e) {
+      throw new AssertionError("Compilation failed:\n" + javacOutput, e);
+    }
+
+    // The compiler is kept between compiles, but without a processor path the processor must only
+    // be looked up on the (here empty) classpath.
+    try {
+      getCompiler()
+          .compile(
+              createBlazeContext(javacOutput),
+              createCompileInstructions("package main;\nclass Main {}\n")
+                  .annotationProcessorClassNames(ImmutableSet.of(AUTO_VALUE_PROCESSOR))
+                  .build());
+      fail("Should have thrown FastBuildIncrementalCompileException");
+    } catch (FastBuildIncrementalCompileException e) {
+      assertThat(javacOutput.toString()).contains("not found");
+    }
+  }
+
+  @Test
+  public void testRecompilesAgainstChangedClasspathJar() throws IOException, FastBuildException {
+    File depJar = Files.createTempFile("dep", ".jar").toFile();
+    depJar.deleteOnExit();
+    writeJar(depJar, "package dep;\npublic class Dep {\n  public static void foo() {}\n}\n");
+    StringWriter javacOutput = new StringWriter();
+    try {
+      compile(
+          "package main;\nclass Main {\n  void run() {\n    dep.Dep.foo();\n  }\n}\n",
+          javacOutput,
+          depJar);
+
+      // The compiler is kept between compiles, and must notice the jar changing.
+      long lastModified = depJar.lastModified();
+      writeJar(depJar, "package dep;\npublic class Dep {\n  public static void bar() {}\n}\n");
+      assertThat(depJar.setLastModified(lastModified + 60_000)).isTrue();
+      compile(
+          "package main;\nclass Main {\n  void run() {\n    dep.Dep.bar();\n  }\n}\n",
+          javacOutput,
+          depJar);
+    } catch (FastBuildIncrementalCompileException e) {
+      throw new AssertionError("Compilation failed:\n" + javacOutput, e);
+    }
+  }
+
+  private void writeJar(File jar, String source) throws IOException, FastBuildException {
+    CompileInstructions instructions = createCompileInstructions(source).build();
+    getCompiler().compile(createBlazeContext(new StringWriter()), instructions);
+    Path classFile = instructions.outputDirectory().toPath().resolve("dep/Dep.class");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+      out.putNextEntry(new JarEntry("dep/Dep.class"));
+      Files.copy(classFile, out);
+      out.closeEntry();
+    }
+  }
+
   private void compile(String source, Writer javacOutput, File... classpath)
       throws IOException, FastBuildException {
     getCompiler()
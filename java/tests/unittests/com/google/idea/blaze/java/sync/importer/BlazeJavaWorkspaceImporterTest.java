@@ -208,7 +208,8 @@ public class BlazeJavaWorkspaceImporterTest extends BlazeTestCase {
             return null;
           }
         });
-    applicationServices.register(PackageManifestReader.class, new PackageManifestReader());
+    applicationServices.register(
+        PackageManifestReader.class, PackageManifestReader.createInMemory());
     applicationServices.register(PrefetchService.class, new MockPrefetchService());
 
     context = BlazeContext.create();
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.jdeps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.base.filecache.LocalFileState;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.model.primitives.Label;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link JdepsState}. */
+@RunWith(JUnit4.class)
+public class JdepsStateTest {
+
+  private static final TargetKey FOO = TargetKey.forPlainTarget(Label.create("//pkg:foo"));
+  private static final TargetKey BAR = TargetKey.forPlainTarget(Label.create("//pkg:bar"));
+  private static final LocalFileState FOO_JDEPS = new LocalFileState("pkg/libfoo.jdeps", 1);
+  private static final LocalFileState BAR_JDEPS = new LocalFileState("pkg/libbar.jdeps", 1);
+
+  private static JdepsState createState() {
+    JdepsState.Builder builder = JdepsState.builder();
+    builder.add(FOO, ImmutableList.of("a.jar", "b.jar"), FOO_JDEPS);
+    builder.add(BAR, ImmutableList.of("b.jar", "c.jar", "a.jar"), BAR_JDEPS);
+    return builder.build();
+  }
+
+  @Test
+  public void testGetJdepsMap() {
+    JdepsState state = createState();
+
+    assertThat(state.getJdepsMap().get(FOO)).containsExactly("a.jar", "b.jar").inOrder();
+    assertThat(state.getJdepsMap().get(BAR)).containsExactly("b.jar", "c.jar", "a.jar").inOrder();
+    assertThat(state.getArtifactState().keySet())
+        .containsExactly("pkg/libfoo.jdeps", "pkg/libbar.jdeps");
+  }
+
+  @Test
+  public void testPathsStoredOnce() {
+    ProjectData.JdepsState proto = createState().toProto();
+
+    assertThat(proto.getTargetToJdeps().getPathsList())
+        .containsExactly("a.jar", "b.jar", "c.jar");
+  }
+
+  @Test
+  public void testProtoRoundTrip() {
+    JdepsState state = createState();
+
+    JdepsState restored =
+        new JdepsState.Extractor()
+            .extract(ProjectData.SyncState.newBuilder().setJdepsState(state.toProto()).build());
+
+    assertThat(restored).isEqualTo(state);
+    assertThat(restored.getJdepsMap().get(BAR)).containsExactly("b.jar", "c.jar", "a.jar");
+  }
+
+  @Test
+  public void testReadsPathsWrittenPerTarget() {
+    ProjectData.TargetToJdepsMap.Entry entry =
+        ProjectData.TargetToJdepsMap.Entry.newBuilder()
+            .setKey(FOO.toProto())
+            .setFile(FOO_JDEPS.serializeToProto())
+            .addValue("a.jar")
+            .addValue("b.jar")
+            .build();
+    ProjectData.JdepsState proto =
+        ProjectData.JdepsState.newBuilder()
+            .setTargetToJdeps(ProjectData.TargetToJdepsMap.newBuilder().addEntries(entry))
+            .build();
+
+    JdepsState state =
+        new JdepsState.Extractor()
+            .extract(ProjectData.SyncState.newBuilder().setJdepsState(proto).build());
+
+    assertThat(state.getJdepsMap().get(FOO)).containsExactly("a.jar", "b.jar").inOrder();
+  }
+
+  @Test
+  public void testAddAllExceptDropsChangedArtifactsAndUnusedPaths() {
+    JdepsState.Builder builder = JdepsState.builder();
+    builder.addAllExcept(createState(), ImmutableSet.of(BAR_JDEPS.getKey()));
+    builder.add(BAR, ImmutableList.of("d.jar"), BAR_JDEPS);
+    JdepsState state = builder.build();
+
+    assertThat(state.getJdepsMap().get(FOO)).containsExactly("a.jar", "b.jar").inOrder();
+    assertThat(state.getJdepsMap().get(BAR)).containsExactly("d.jar");
+    assertThat(state.toProto().getTargetToJdeps().getPathsList())
+        .containsExactly("a.jar", "b.jar", "d.jar");
+  }
+}
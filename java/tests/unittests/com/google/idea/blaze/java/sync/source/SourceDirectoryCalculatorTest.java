@@ -27,6 +27,8 @@ import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.async.executor.MockBlazeExecutor;
 import com.google.idea.blaze.base.command.info.BlazeInfo;
+import com.google.idea.blaze.base.filecache.ArtifactStateProtoConverter;
+import com.google.idea.blaze.base.filecache.LocalArtifactStateProtoConverter;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.io.FileOperationProvider;
@@ -61,18 +63,22 @@ import com.intellij.openapi.vfs.local.CoreLocalFileSystem;
 import java.io.File;
 import java.util.List;
 import java.util.Map;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 /** Test cases for {@link SourceDirectoryCalculator}. */
 @RunWith(JUnit4.class)
 public class SourceDirectoryCalculatorTest extends BlazeTestCase {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
 
   private static final ImmutableMap<TargetKey, ArtifactLocation> NO_MANIFESTS = ImmutableMap.of();
   private static final Label LABEL = Label.create("//fake:label");
 
   private MockInputStreamProvider mockInputStreamProvider;
+  private MockFileOperationProvider fileOperationProvider;
   private SourceDirectoryCalculator sourceDirectoryCalculator;
 
   private final BlazeContext context = BlazeContext.create();
@@ -95,8 +101,10 @@ public class SourceDirectoryCalculatorTest extends BlazeTestCase {
     mockInputStreamProvider = new MockInputStreamProvider();
     applicationServices.register(InputStreamProvider.class, mockInputStreamProvider);
     applicationServices.register(JavaSourcePackageReader.class, new JavaSourcePackageReader());
-    applicationServices.register(PackageManifestReader.class, new PackageManifestReader());
-    applicationServices.register(FileOperationProvider.class, new MockFileOperationProvider());
+    applicationServices.register(
+        PackageManifestReader.class, PackageManifestReader.createInMemory());
+    fileOperationProvider = new MockFileOperationProvider();
+    applicationServices.register(FileOperationProvider.class, fileOperationProvider);
 
     context.addOutputSink(IssueOutput.class, issues);
     sourceDirectoryCalculator = new SourceDirectoryCalculator();
@@ -114,6 +122,8 @@ public class SourceDirectoryCalculatorTest extends BlazeTestCase {
 
     registerExtensionPoint(JavaLikeLanguage.EP_NAME, JavaLikeLanguage.class)
         .registerExtension(new JavaLikeLanguage.Java());
+    registerExtensionPoint(ArtifactStateProtoConverter.EP_NAME, ArtifactStateProtoConverter.class)
+        .registerExtension(new LocalArtifactStateProtoConverter());
 
     registerExtensionPointByName("com.intellij.virtualFileManagerListener", VirtualFileManagerListener.class);
     applicationServices.register(VirtualFileManager.class, new VirtualFileManagerImpl(List.of(new CoreLocalFileSystem())));
@@ -1042,6 +1052,43 @@ public class SourceDirectoryCalculatorTest extends BlazeTestCase {
             "com.google");
   }
 
+  @Test
+  public void testManifestIndexPersisted() {
+    File cacheFile = new File(folder.getRoot(), "cache/package_manifests.dat");
+    setPackageManifest(
+        "/root/blaze-out/k8-opt/genfiles/java/com/test.manifest",
+        ImmutableList.of("java/com/google/Bla.java"),
+        ImmutableList.of("com.google"));
+    ImmutableMap<TargetKey, ArtifactLocation> manifests =
+        ImmutableMap.of(
+            TargetKey.forPlainTarget(LABEL),
+            ArtifactLocation.builder()
+                .setRelativePath("java/com/test.manifest")
+                .setRootExecutionPathFragment("blaze-out/k8-opt/genfiles")
+                .setIsSource(false)
+                .build());
+    readPackageManifestFiles(new PackageManifestReader(p -> cacheFile), manifests, getDecoder());
+    assertThat(cacheFile.exists()).isTrue();
+
+    // A new reader, as after an IDE restart, mustn't read the unchanged manifest again.
+    setPackageManifest(
+        "/root/blaze-out/k8-opt/genfiles/java/com/test.manifest",
+        ImmutableList.of("java/com/google/Bla.java"),
+        ImmutableList.of("com.google.different"));
+    Map<TargetKey, Map<ArtifactLocation, String>> manifestMap =
+        readPackageManifestFiles(
+            new PackageManifestReader(p -> cacheFile), manifests, getDecoder());
+
+    issues.assertNoIssues();
+    assertThat(manifestMap.get(TargetKey.forPlainTarget(LABEL)))
+        .containsExactly(
+            ArtifactLocation.builder()
+                .setRelativePath("java/com/google/Bla.java")
+                .setIsSource(true)
+                .build(),
+            "com.google");
+  }
+
   @Test
   public void testManifestRepeatedSources() {
     setPackageManifest(
@@ -1164,6 +1211,75 @@ public class SourceDirectoryCalculatorTest extends BlazeTestCase {
                 .build());
   }
 
+  @Test
+  public void testUnchangedContentRootReused() {
+    setPackageManifest(
+        "/root/blaze-out/k8-opt/genfiles/java/com/test.manifest",
+        ImmutableList.of("java/com/google/Bla.java"),
+        ImmutableList.of("com.google"));
+
+    ImmutableList<BlazeContentEntry> first = calculateContentEntriesForSingleManifest();
+    ImmutableList<BlazeContentEntry> second = calculateContentEntriesForSingleManifest();
+
+    issues.assertNoIssues();
+    assertThat(second).isEqualTo(first);
+    assertThat(second.get(0).sources).isSameInstanceAs(first.get(0).sources);
+  }
+
+  @Test
+  public void testContentRootRecalculatedAfterManifestChanged() {
+    setPackageManifest(
+        "/root/blaze-out/k8-opt/genfiles/java/com/test.manifest",
+        ImmutableList.of("java/com/google/Bla.java"),
+        ImmutableList.of("com.google"));
+    calculateContentEntriesForSingleManifest();
+
+    setPackageManifest(
+        "/root/blaze-out/k8-opt/genfiles/java/com/test.manifest",
+        ImmutableList.of("java/com/google/Bla.java"),
+        ImmutableList.of("com.google.different"));
+    fileOperationProvider.modifiedTime = 2;
+    ImmutableList<BlazeContentEntry> result = calculateContentEntriesForSingleManifest();
+
+    issues.assertNoIssues();
+    assertThat(result)
+        .containsExactly(
+            BlazeContentEntry.builder("/root/java/com/google")
+                .addSource(
+                    BlazeSourceDirectory.builder("/root/java/com/google")
+                        .setPackagePrefix("com.google.different")
+                        .build())
+                .build());
+  }
+
+  private ImmutableList<BlazeContentEntry> calculateContentEntriesForSingleManifest() {
+    ImmutableMap<TargetKey, ArtifactLocation> manifests =
+        ImmutableMap.of(
+            TargetKey.forPlainTarget(LABEL),
+            ArtifactLocation.builder()
+                .setRelativePath("java/com/test.manifest")
+                .setRootExecutionPathFragment("blaze-out/k8-opt/genfiles")
+                .setIsSource(false)
+                .build());
+    List<SourceArtifact> sourceArtifacts =
+        ImmutableList.of(
+            SourceArtifact.builder(TargetKey.forPlainTarget(LABEL))
+                .setArtifactLocation(
+                    ArtifactLocation.builder()
+                        .setRelativePath("java/com/google/Bla.java")
+                        .setIsSource(true))
+                .build());
+    return sourceDirectoryCalculator.calculateContentEntries(
+        project,
+        context,
+        workspaceRoot,
+        getDecoder(),
+        buildImportRoots(
+            ImmutableList.of(new WorkspacePath("java/com/google")), ImmutableList.of()),
+        sourceArtifacts,
+        manifests);
+  }
+
   private ImportRoots buildImportRoots(
       ImmutableList<WorkspacePath> roots, ImmutableList<WorkspacePath> excluded) {
     ImportRoots.Builder builder = ImportRoots.builder(workspaceRoot, BuildSystemName.Blaze);
@@ -1218,15 +1334,23 @@ public class SourceDirectoryCalculatorTest extends BlazeTestCase {
 
   private Map<TargetKey, Map<ArtifactLocation, String>> readPackageManifestFiles(
       Map<TargetKey, ArtifactLocation> manifests, ArtifactLocationDecoder decoder) {
-    return PackageManifestReader.getInstance()
-        .readPackageManifestFiles(
-            project, context, decoder, manifests, MoreExecutors.newDirectExecutorService());
+    return readPackageManifestFiles(PackageManifestReader.getInstance(), manifests, decoder);
+  }
+
+  private Map<TargetKey, Map<ArtifactLocation, String>> readPackageManifestFiles(
+      PackageManifestReader reader,
+      Map<TargetKey, ArtifactLocation> manifests,
+      ArtifactLocationDecoder decoder) {
+    return reader.readPackageManifestFiles(
+        project, context, decoder, manifests, MoreExecutors.newDirectExecutorService());
   }
 
   static class MockFileOperationProvider extends FileOperationProvider {
+    long modifiedTime = 1;
+
     @Override
     public long getFileModifiedTime(File file) {
-      return 1;
+      return modifiedTime;
     }
   }
 }
@@ -18,7 +18,6 @@ package com.google.idea.blaze.javascript.run.producers;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
@@ -128,7 +127,7 @@ public class BlazeJavaScriptTestRunLineMarkerContributor extends RunLineMarkerCo
             return Result.create(
                 ImmutableList.of(), BlazeSyncModificationTracker.getInstance(project));
           }
-          ImmutableMultimap<TargetKey, TargetKey> rdeps = ReverseDependencyMap.get(project);
+          ReverseDependencyMap rdeps = ReverseDependencyMap.get(project);
           TargetMap targetMap = projectData.getTargetMap();
           return Result.create(
               SourceToTargetFinder.findTargetsForSourceFile(
@@ -30,12 +30,14 @@ import com.google.idea.blaze.qsync.project.BuildGraphData;
 import com.google.idea.blaze.qsync.project.ProjectTarget;
 import com.google.idea.blaze.qsync.project.ProjectTarget.SourceType;
 import com.google.idea.blaze.qsync.project.QuerySyncLanguage;
+import com.google.idea.blaze.qsync.query.Query;
 import com.google.idea.blaze.qsync.query.QueryData;
 import com.google.idea.blaze.qsync.query.QuerySummary;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 /**
  * A class that parses the proto output from a `blaze query --output=streamed_proto` invocation, and
@@ -67,6 +69,13 @@ public class BlazeQueryParser {
           "aar_import",
           "java_import");
 
+  // Rule kinds and tags of rules whose sources are used in place of the rule when they appear in
+  // another rule's sources.
+  private static final ImmutableSet<String> SOURCE_EXPANDING_RULE_KINDS =
+      ImmutableSet.of("filegroup");
+  private static final ImmutableSet<String> SOURCE_EXPANDING_TAGS =
+      ImmutableSet.of("ij-ignore-source-transform");
+
   private final Context<?> context;
   private final SetView<String> alwaysBuildRuleKinds;
 
@@ -79,6 +88,16 @@ public class BlazeQueryParser {
   private final Set<Label> projectTargetsToBuild = new HashSet<>();
   // An aggregation of all the dependencies of java rules
   private final Set<Label> javaDeps = new HashSet<>();
+  // Labels of all the source files and rules seen so far while streaming the query summary
+  private final Set<Label> sourceFiles = new HashSet<>();
+  private final Set<Label> rules = new HashSet<>();
+  // The rules whose sources are expanded in place of the rule itself, see shouldExpandSourceLabel
+  private ImmutableMap<Label, QueryData.Rule> sourceExpandingRules = ImmutableMap.of();
+  // When parsing incrementally, the graph to reuse targets from and the packages that changed since
+  // it was created.
+  private BuildGraphData previousGraph = BuildGraphData.EMPTY;
+  private ImmutableSet<Path> affectedPackages = ImmutableSet.of();
+  private int reusedTargets = 0;
 
 
   public static class RuleVisitors {
@@ -144,58 +163,52 @@ public class BlazeQueryParser {
     this.query = query;
   }
 
+  /**
+   * Derives a new {@link BuildGraphData} from the query summary, reusing targets from a graph that
+   * was derived from an earlier version of the same query.
+   *
+   * <p>A target from {@code previousGraph} is reused as-is if neither its own package nor the
+   * package of any of its sources is in {@code affectedPackages}. Only the other rules, and the
+   * source files of the affected packages, are decoded from the query summary and derived as in
+   * {@link #parse()}. Rules are selected by the string indexes of their labels, so the cost of this
+   * depends mostly on the size of the change rather than on the size of the project.
+   *
+   * @param previousGraph the graph derived from the query that this query summary was derived from.
+   * @param affectedPackages the build packages that were added, removed or re-queried since then.
+   */
+  public BuildGraphData parseIncrementally(
+      BuildGraphData previousGraph, ImmutableSet<Path> affectedPackages) {
+    this.previousGraph = previousGraph;
+    this.affectedPackages = affectedPackages;
+    BuildGraphData graph = parse();
+    context.output(
+        PrintOutput.log(
+            "%-10d Targets reused from previous sync (%d affected packages)",
+            reusedTargets, affectedPackages.size()));
+    return graph;
+  }
+
   public BuildGraphData parse() {
     context.output(PrintOutput.log("Analyzing project structure..."));
 
     long now = System.nanoTime();
     final var visitors = new RuleVisitors();
-    for (Map.Entry<Label, QueryData.SourceFile> sourceFileEntry :
-        query.getSourceFilesMap().entrySet()) {
-      if (sourceFileEntry.getKey().getWorkspaceName().isEmpty()) {
-        graphBuilder
-            .sourceFileLabelsBuilder().add(sourceFileEntry.getKey());
-      } else {
-        context.output(
-            new PrintOutput(
-                "Skipping unsupported non-root workspace source: " + sourceFileEntry.getValue()));
-      }
-    }
-    for (Map.Entry<Label, QueryData.Rule> ruleEntry : query.getRulesMap().entrySet()) {
-      ProjectTarget.Builder targetBuilder = ProjectTarget.builder();
-
-      QueryData.Rule rule = ruleEntry.getValue();
-      targetBuilder.label(ruleEntry.getKey()).kind(rule.ruleClass());
-      if (!rule.testApp().isEmpty()) {
-        targetBuilder.testApp(Label.of(rule.testApp()));
-      }
-      if (!rule.instruments().isEmpty()) {
-        targetBuilder.instruments(Label.of(rule.instruments()));
-      }
-      if (!rule.customPackage().isEmpty()) {
-        targetBuilder.customPackage(rule.customPackage());
-      }
-      if (!rule.mainClass().isEmpty()) {
-        targetBuilder.mainClass(rule.mainClass());
-      }
-
-      visitors.visit(this, ruleEntry.getKey(), rule, targetBuilder);
-      if (alwaysBuildRuleKinds.contains(rule.ruleClass())) {
-        projectTargetsToBuild.add(ruleEntry.getKey());
-      }
-      targetBuilder.tags(rule.tags());
-      ProjectTarget target = targetBuilder.build();
-
-      for (Label thisSource : target.sourceLabels().values()) {
-        addProjectTargetsToBuildIfGenerated(target.label(), thisSource);
-      }
-
-      graphBuilder.targetMapBuilder().put(ruleEntry.getKey(), target);
+    // Rules and source files are decoded from the summary one at a time, rather than through the
+    // memoized maps of the summary, so that the decoded form of the query output is never held in
+    // memory all at once. Only the rules that may be referenced by other rules' sources are decoded
+    // up front.
+    sourceExpandingRules = query.getRulesMatching(SOURCE_EXPANDING_RULE_KINDS, SOURCE_EXPANDING_TAGS);
+    if (previousGraph.targetMap().isEmpty()) {
+      query.streamSourceFiles().forEach(this::visitSourceFile);
+      query.streamRules().forEach(rule -> visitRule(visitors, rule));
+    } else {
+      visitAffected(visitors);
     }
     int nTargets = query.getRulesCount();
 
     // Calculate all the dependencies outside the project.
     for (Label dep : javaDeps) {
-      if (!query.getRulesMap().containsKey(dep)) {
+      if (!rules.contains(dep)) {
         projectDeps.add(dep);
       }
     }
@@ -216,6 +229,123 @@ public class BlazeQueryParser {
     return graph;
   }
 
+  private void visitSourceFile(QueryData.SourceFile sourceFile) {
+    sourceFiles.add(sourceFile.label());
+    if (sourceFile.label().getWorkspaceName().isEmpty()) {
+      graphBuilder.sourceFileLabelsBuilder().add(sourceFile.label());
+    } else {
+      context.output(
+          new PrintOutput("Skipping unsupported non-root workspace source: " + sourceFile));
+    }
+  }
+
+  /**
+   * Visits the source files and rules of the affected packages, and the rules elsewhere that refer
+   * to them, and carries everything else over from the previous graph without decoding it.
+   */
+  private void visitAffected(RuleVisitors visitors) {
+    Predicate<Query.StoredLabel> affected = query.storedLabelInPackages(affectedPackages);
+    Predicate<Query.StoredLabel> expanding = query.storedLabelIn(sourceExpandingRules.keySet());
+
+    // An unaffected package wasn't queried again, so its source files and rules are unchanged.
+    for (Label sourceFile : previousGraph.sourceFileLabels()) {
+      if (!affectedPackages.contains(sourceFile.getPackage())) {
+        sourceFiles.add(sourceFile);
+        graphBuilder.sourceFileLabelsBuilder().add(sourceFile);
+      }
+    }
+    query.streamSourceFiles(s -> affected.test(s.getLabel())).forEach(this::visitSourceFile);
+
+    Set<Label> visited = new HashSet<>();
+    query
+        .streamRules(r -> isAffected(r, affected, expanding))
+        .forEach(
+            rule -> {
+              visited.add(rule.label());
+              visitRule(visitors, rule);
+            });
+    for (ProjectTarget target : previousGraph.targetMap().values()) {
+      Label label = target.label();
+      if (!affectedPackages.contains(label.getPackage()) && !visited.contains(label)) {
+        rules.add(label);
+        reuseTarget(target);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the target derived from a rule may depend on something that changed since the
+   * previous graph was created.
+   */
+  private static boolean isAffected(
+      Query.StoredRule rule,
+      Predicate<Query.StoredLabel> affected,
+      Predicate<Query.StoredLabel> expanding) {
+    if (affected.test(rule.getLabel())
+        || (rule.hasManifest() && affected.test(rule.getManifest()))) {
+      return true;
+    }
+    // Sources of a filegroup can be in other packages; just re-derive the target.
+    Predicate<Query.StoredLabel> affectedSource = affected.or(expanding);
+    return rule.getSourcesList().stream().anyMatch(affectedSource)
+        || rule.getResourceFilesList().stream().anyMatch(affectedSource)
+        || rule.getHdrsList().stream().anyMatch(affectedSource);
+  }
+
+  private void visitRule(RuleVisitors visitors, QueryData.Rule rule) {
+    Label label = rule.label();
+    rules.add(label);
+    ProjectTarget.Builder targetBuilder = ProjectTarget.builder();
+
+    targetBuilder.label(label).kind(rule.ruleClass());
+    if (!rule.testApp().isEmpty()) {
+      targetBuilder.testApp(Label.of(rule.testApp()));
+    }
+    if (!rule.instruments().isEmpty()) {
+      targetBuilder.instruments(Label.of(rule.instruments()));
+    }
+    if (!rule.customPackage().isEmpty()) {
+      targetBuilder.customPackage(rule.customPackage());
+    }
+    if (!rule.mainClass().isEmpty()) {
+      targetBuilder.mainClass(rule.mainClass());
+    }
+
+    visitors.visit(this, label, rule, targetBuilder);
+    if (alwaysBuildRuleKinds.contains(rule.ruleClass())) {
+      projectTargetsToBuild.add(label);
+    }
+    targetBuilder.tags(rule.tags());
+    ProjectTarget target = targetBuilder.build();
+
+    for (Label thisSource : target.sourceLabels().values()) {
+      addProjectTargetsToBuildIfGenerated(target.label(), thisSource);
+    }
+
+    graphBuilder.targetMapBuilder().put(label, target);
+  }
+
+  /**
+   * Adds a target from the previous graph, and its contribution to the graph wide state, as {@link
+   * #visitRule} would have done for the same rule.
+   */
+  private void reuseTarget(ProjectTarget target) {
+    reusedTargets++;
+    Label label = target.label();
+    if (!target.languages().isEmpty()) {
+      graphBuilder.allTargetsBuilder().add(label);
+    }
+    if (target.languages().contains(QuerySyncLanguage.JAVA)
+        || target.languages().contains(QuerySyncLanguage.PYTHON)) {
+      javaDeps.addAll(target.deps());
+    }
+    // A project target is only ever in projectDeps if it's one that we must build.
+    if (previousGraph.projectDeps().contains(label)) {
+      projectTargetsToBuild.add(label);
+    }
+    graphBuilder.targetMapBuilder().put(label, target);
+  }
+
   private void visitPythonRule(Label label, QueryData.Rule rule, ProjectTarget.Builder targetBuilder) {
     graphBuilder.allTargetsBuilder().add(label);
     targetBuilder.languagesBuilder().add(QuerySyncLanguage.PYTHON);
@@ -284,7 +414,7 @@ public class BlazeQueryParser {
 
   /** Require build step for targets with generated sources. */
   private void addProjectTargetsToBuildIfGenerated(Label label, Label source) {
-    if (!query.getSourceFilesMap().containsKey(source)) {
+    if (!sourceFiles.contains(source)) {
       projectTargetsToBuild.add(label);
     }
   }
@@ -304,7 +434,7 @@ public class BlazeQueryParser {
     Set<Label> visited = Sets.newHashSet();
     ImmutableSet.Builder<Label> result = ImmutableSet.builder();
 
-    for (Label source : requireNonNull(query.getRulesMap().get(label)).sources()) {
+    for (Label source : requireNonNull(sourceExpandingRules.get(label)).sources()) {
       if (visited.add(source)) {
         result.addAll(expandSourceLabel(source));
       }
@@ -314,20 +444,10 @@ public class BlazeQueryParser {
   }
 
   private boolean shouldExpandSourceLabel(Label label) {
-    QueryData.Rule rule = query.getRulesMap().get(label);
-    if (rule == null) {
-      return false;
-    }
-    if (rule.ruleClass().equals("filegroup")) {
-      return true;
-    }
-    if (rule.tags().contains("ij-ignore-source-transform")) {
-      // This rule has a tag asking us to skip some source transformation and use its sources
-      // directly instead - i.e. expand it as we would for a filegroup. This ensures that the IDE
-      // considers the workspace sources as the actual sources, rather than the generated
-      // (transformed) sources.
-      return true;
-    }
-    return false;
+    // sourceExpandingRules only contains filegroup rules, and rules with a tag asking us to skip
+    // some source transformation and use its sources directly instead - i.e. expand it as we would
+    // for a filegroup. This ensures that the IDE considers the workspace sources as the actual
+    // sources, rather than the generated (transformed) sources.
+    return sourceExpandingRules.containsKey(label);
   }
 }
@@ -88,6 +88,12 @@ class PartialProjectRefresh implements RefreshOperation {
         .setBazelVersion(bazelVersion)
         .setProjectDefinition(previousState.projectDefinition())
         .setQuerySummary(effectiveQuery)
+        .setAffectedPackages(
+            ImmutableSet.<Path>builder()
+                .addAll(modifiedPackages)
+                .addAll(deletedPackages)
+                .addAll(partialQuery.getPackages().asPathSet())
+                .build())
         .build();
   }
 
@@ -97,25 +103,20 @@ class PartialProjectRefresh implements RefreshOperation {
    */
   @VisibleForTesting
   QuerySummary applyDelta(QuerySummary partialQuery) {
-    // copy all unaffected rules / source files to result:
+    // copy all unaffected rules / source files to result. The previous summary is streamed rather
+    // than going through its memoized maps, so that they are not retained for its lifetime.
     Map<Label, QueryData.SourceFile> newSourceFiles = Maps.newHashMap();
-    for (Map.Entry<Label, QueryData.SourceFile> sfEntry :
-        previousState.querySummary().getSourceFilesMap().entrySet()) {
-      Path buildPackage = sfEntry.getKey().getPackage();
-      if (!(deletedPackages.contains(buildPackage)
-          || partialQuery.getPackages().contains(buildPackage))) {
-        newSourceFiles.put(sfEntry.getKey(), sfEntry.getValue());
-      }
-    }
+    previousState
+        .querySummary()
+        .streamSourceFiles()
+        .filter(sf -> isUnaffected(sf.label(), partialQuery))
+        .forEach(sf -> newSourceFiles.put(sf.label(), sf));
     Map<Label, QueryData.Rule> newRules = Maps.newHashMap();
-    for (Map.Entry<Label, QueryData.Rule> ruleEntry :
-        previousState.querySummary().getRulesMap().entrySet()) {
-      Path buildPackage = ruleEntry.getKey().getPackage();
-      if (!(deletedPackages.contains(buildPackage)
-          || partialQuery.getPackages().contains(buildPackage))) {
-        newRules.put(ruleEntry.getKey(), ruleEntry.getValue());
-      }
-    }
+    previousState
+        .querySummary()
+        .streamRules()
+        .filter(rule -> isUnaffected(rule.label(), partialQuery))
+        .forEach(rule -> newRules.put(rule.label(), rule));
     // now add all rules / source files from the delta
     newSourceFiles.putAll(partialQuery.getSourceFilesMap());
     newRules.putAll(partialQuery.getRulesMap());
@@ -125,4 +126,10 @@ class PartialProjectRefresh implements RefreshOperation {
         .putAllPackagesWithErrors(partialQuery.getPackagesWithErrors())
         .build();
   }
+
+  private boolean isUnaffected(Label label, QuerySummary partialQuery) {
+    Path buildPackage = label.getPackage();
+    return !(deletedPackages.contains(buildPackage)
+        || partialQuery.getPackages().contains(buildPackage));
+  }
 }
@@ -27,6 +27,7 @@ import com.google.idea.blaze.qsync.project.PostQuerySyncData;
 import com.google.idea.blaze.qsync.project.ProjectProto.Project;
 import com.google.idea.blaze.qsync.query.QuerySummary;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 /**
@@ -68,6 +69,30 @@ public class SnapshotBuilder {
       ArtifactTracker.State artifactTrackerState,
       ProjectProtoTransform projectProtoTransform)
       throws BuildException {
+    return createBlazeProjectSnapshot(
+        context,
+        postQuerySyncData,
+        artifactTrackerState,
+        projectProtoTransform,
+        Optional.empty());
+  }
+
+  /**
+   * As {@link #createBlazeProjectSnapshot(Context, PostQuerySyncData, ArtifactTracker.State,
+   * ProjectProtoTransform)}, but reuses as much as possible of the build graph of {@code
+   * previousSnapshot}.
+   *
+   * @param previousSnapshot the current snapshot. If {@code postQuerySyncData} was derived from its
+   *     query data by a partial refresh, only the affected packages are re-derived. If it has the
+   *     same query data, its build graph is reused as is.
+   */
+  public QuerySyncProjectSnapshot createBlazeProjectSnapshot(
+      Context<?> context,
+      PostQuerySyncData postQuerySyncData,
+      ArtifactTracker.State artifactTrackerState,
+      ProjectProtoTransform projectProtoTransform,
+      Optional<QuerySyncProjectSnapshot> previousSnapshot)
+      throws BuildException {
     Path effectiveWorkspaceRoot =
         postQuerySyncData.vcsState().flatMap(s -> s.workspaceSnapshotPath).orElse(workspaceRoot);
     WorkspaceResolvingPackageReader packageReader =
@@ -81,8 +106,7 @@ public class SnapshotBuilder {
             executor,
             useNewResDirLogic,
             guessAndroidResPackages);
-    QuerySummary querySummary = postQuerySyncData.querySummary();
-    BuildGraphData graph = new BlazeQueryParser(querySummary, context, handledRuleKinds).parse();
+    BuildGraphData graph = createBuildGraph(context, postQuerySyncData, previousSnapshot);
     Project project =
         projectProtoTransform.apply(
             graphToProjectConverter.createProject(graph), graph, artifactTrackerState, context);
@@ -93,4 +117,23 @@ public class SnapshotBuilder {
         .project(project)
         .build();
   }
+
+  private BuildGraphData createBuildGraph(
+      Context<?> context,
+      PostQuerySyncData postQuerySyncData,
+      Optional<QuerySyncProjectSnapshot> previousSnapshot) {
+    QuerySummary querySummary = postQuerySyncData.querySummary();
+    if (previousSnapshot.isPresent()) {
+      if (previousSnapshot.get().queryData().querySummary() == querySummary) {
+        // e.g. after a dependency build: the graph only depends on the query output.
+        return previousSnapshot.get().graph();
+      }
+      if (postQuerySyncData.affectedPackages().isPresent()) {
+        return new BlazeQueryParser(querySummary, context, handledRuleKinds)
+            .parseIncrementally(
+                previousSnapshot.get().graph(), postQuerySyncData.affectedPackages().get());
+      }
+    }
+    return new BlazeQueryParser(querySummary, context, handledRuleKinds).parse();
+  }
 }
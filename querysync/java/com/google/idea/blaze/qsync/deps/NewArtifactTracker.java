@@ -34,6 +34,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.errorprone.annotations.concurrent.GuardedBy;
+import com.google.idea.blaze.common.AtomicFileWriter;
 import com.google.idea.blaze.common.Context;
 import com.google.idea.blaze.common.Label;
 import com.google.idea.blaze.common.artifact.BuildArtifactCache;
@@ -51,11 +52,13 @@ import com.google.idea.blaze.qsync.java.cc.CcCompilationInfoOuterClass;
 import com.google.idea.blaze.qsync.java.cc.CcCompilationInfoOuterClass.CcTargetInfo;
 import com.google.idea.blaze.qsync.java.cc.CcCompilationInfoOuterClass.CcToolchainInfo;
 import com.google.protobuf.ExtensionRegistry;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.List;
 import java.util.Map;
@@ -83,6 +86,12 @@ public class NewArtifactTracker<C extends Context<C>> implements ArtifactTracker
 
   private static final Logger logger = Logger.getLogger(NewArtifactTracker.class.getName());
 
+  /**
+   * Number of incremental updates kept in the journal before the complete state is rewritten. This
+   * bounds both the size of the journal and the work needed to replay it on startup.
+   */
+  private static final int MAX_JOURNAL_ENTRIES = 20;
+
   private final BuildArtifactCache artifactCache;
   private final Function<
       TargetBuildInfo, ImmutableSetMultimap<BuildArtifact, ArtifactMetadata.Extractor<?>>>
@@ -90,17 +99,18 @@ public class NewArtifactTracker<C extends Context<C>> implements ArtifactTracker
   private final ArtifactMetadata.Factory metadataFactory;
   private final Executor executor;
   private final Path stateFile;
+  private final Path journalFile;
 
-  // Lock for making updates to the mutable state
+  // Lock serializing writers. Readers use the current value of {@link #state} without locking.
   private final Object stateLock = new Object();
 
   // TODO(mathewi) this state should really be owned by BlazeProjectSnapshot like all other state,
   //   and updated in lock step with it.
-  @GuardedBy("stateLock")
-  private final Map<Label, TargetBuildInfo> builtDeps = Maps.newHashMap();
+  private volatile State state = State.EMPTY;
 
+  /** Number of updates appended to {@link #journalFile} since {@link #stateFile} was written. */
   @GuardedBy("stateLock")
-  private final Map<String, CcToolchain> ccToolchainMap = Maps.newHashMap();
+  private int journalEntries = 0;
 
   public NewArtifactTracker(
       Path projectDirectory,
@@ -113,29 +123,26 @@ public class NewArtifactTracker<C extends Context<C>> implements ArtifactTracker
     this.targetToMetadataFn = targetToMetadataFn;
     this.metadataFactory = metadataFactory;
     this.stateFile = projectDirectory.resolve("artifact_state");
+    this.journalFile = projectDirectory.resolve("artifact_state.journal");
     this.executor = executor;
     loadState();
   }
 
   public ImmutableCollection<TargetBuildInfo> getBuiltDeps() {
-    synchronized (stateLock) {
-      return ImmutableList.copyOf(builtDeps.values());
-    }
+    return state.depsMap().values();
   }
 
   @Override
   public State getStateSnapshot() {
-    synchronized (stateLock) {
-      return State.create(ImmutableMap.copyOf(builtDeps), ImmutableMap.copyOf(ccToolchainMap));
-    }
+    return state;
   }
 
   @Override
   public void clear() throws IOException {
     synchronized (stateLock) {
-      builtDeps.clear();
+      state = State.create(ImmutableMap.of(), state.ccToolchainMap());
+      compactState();
     }
-    saveState();
   }
 
   record MetadataKey(BuildArtifact artifact, Class<? extends ArtifactMetadata> mdClass) {}
@@ -367,73 +374,180 @@ public class NewArtifactTracker<C extends Context<C>> implements ArtifactTracker
     }
 
     synchronized (stateLock) {
+      State previous = state;
+      Map<Label, TargetBuildInfo> changedDeps = Maps.newHashMap();
       for (TargetBuildInfo tbi : newTargetInfo.values()) {
-        builtDeps.put(tbi.label(), tbi);
+        changedDeps.put(tbi.label(), tbi);
       }
+      Map<String, CcToolchain> changedToolchains = Maps.newHashMap();
       for (CcToolchain toolchain : newToolchains) {
-        ccToolchainMap.put(toolchain.id(), toolchain);
+        changedToolchains.put(toolchain.id(), toolchain);
       }
 
       for (Label label : targets) {
-        if (!builtDeps.containsKey(label)) {
+        if (!changedDeps.containsKey(label) && !previous.depsMap().containsKey(label)) {
           logger.warning(
               "Target " + label + " was not built. If the target is an alias, this is expected");
-          builtDeps.put(
+          changedDeps.put(
               label,
               TargetBuildInfo.forJavaTarget(
                   JavaArtifactInfo.empty(label), outputInfo.getBuildContext()));
         }
       }
+
+      state =
+          State.create(
+              withChanges(previous.depsMap(), changedDeps),
+              withChanges(previous.ccToolchainMap(), changedToolchains));
+
+      try {
+        saveState(changedDeps, changedToolchains);
+      } catch (IOException e) {
+        throw new BuildException("Failed to write artifact state", e);
+      }
     }
+  }
 
-    try {
-      saveState();
-    } catch (IOException e) {
-      throw new BuildException("Failed to write artifact state", e);
+  /** Returns {@code previous} with the entries in {@code changes} added or replaced. */
+  private static <K, V> ImmutableMap<K, V> withChanges(
+      ImmutableMap<K, V> previous, Map<K, V> changes) {
+    if (changes.isEmpty()) {
+      return previous;
     }
+    ImmutableMap.Builder<K, V> builder =
+        ImmutableMap.builderWithExpectedSize(previous.size() + changes.size());
+    for (Map.Entry<K, V> entry : previous.entrySet()) {
+      if (!changes.containsKey(entry.getKey())) {
+        builder.put(entry);
+      }
+    }
+    return builder.putAll(changes).buildOrThrow();
   }
 
   @Override
   public ImmutableMap<String, ByteSource> getBugreportFiles() {
-    return ImmutableMap.of(stateFile.getFileName().toString(), MoreFiles.asByteSource(stateFile));
+    ImmutableMap.Builder<String, ByteSource> files = ImmutableMap.builder();
+    files.put(stateFile.getFileName().toString(), MoreFiles.asByteSource(stateFile));
+    if (Files.exists(journalFile)) {
+      files.put(journalFile.getFileName().toString(), MoreFiles.asByteSource(journalFile));
+    }
+    return files.buildOrThrow();
   }
 
-  private void saveState() throws IOException {
-    ArtifactTrackerStateSerializer serializer;
-    synchronized (stateLock) {
-      serializer =
-          new ArtifactTrackerStateSerializer()
-              .visitDepsMap(builtDeps)
-              .visitToolchainMap(ccToolchainMap);
+  /**
+   * Persists the given changes to the state, by appending them to the journal. Once the journal
+   * has {@link #MAX_JOURNAL_ENTRIES} entries, the complete state is written instead.
+   */
+  @GuardedBy("stateLock")
+  private void saveState(
+      Map<Label, TargetBuildInfo> changedDeps, Map<String, CcToolchain> changedToolchains)
+      throws IOException {
+    if (journalEntries >= MAX_JOURNAL_ENTRIES) {
+      compactState();
+      return;
     }
-    // TODO(b/328563748) write to a new file and then rename to avoid the risk of truncation.
-    try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(stateFile))) {
-      serializer.toProto().writeTo(stream);
+    ArtifactTrackerProto.ArtifactTrackerState delta =
+        new ArtifactTrackerStateSerializer()
+            .visitDepsMap(changedDeps)
+            .visitToolchainMap(changedToolchains)
+            .toProto();
+    try (OutputStream stream =
+        Files.newOutputStream(
+            journalFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      delta.writeDelimitedTo(stream);
     }
+    journalEntries++;
   }
 
-  private void loadState() {
-    if (!Files.exists(stateFile)) {
-      return;
+  /** Writes the complete state to {@link #stateFile} and discards the journal. */
+  @GuardedBy("stateLock")
+  private void compactState() throws IOException {
+    State current = state;
+    ArtifactTrackerProto.ArtifactTrackerState proto =
+        new ArtifactTrackerStateSerializer()
+            .visitDepsMap(current.depsMap())
+            .visitToolchainMap(current.ccToolchainMap())
+            .toProto();
+    try (AtomicFileWriter writer = AtomicFileWriter.create(stateFile)) {
+      try (OutputStream stream = new GZIPOutputStream(writer.getOutputStream())) {
+        proto.writeTo(stream);
+      }
+      writer.onWriteComplete();
     }
-    ArtifactTrackerProto.ArtifactTrackerState state;
-    try (InputStream stream = new GZIPInputStream(Files.newInputStream(stateFile))) {
-      state =
-          ProtoStringInterner.intern(
-              ArtifactTrackerProto.ArtifactTrackerState.parseFrom(
-                  stream, ExtensionRegistry.getEmptyRegistry()));
-    } catch (IOException e) {
-      logger.log(Level.WARNING, "Failed to read artifact tracker state from " + stateFile, e);
-      return;
+    // Replaying the journal on top of the new state file would be harmless, except after clear().
+    Files.deleteIfExists(journalFile);
+    journalEntries = 0;
+  }
+
+  private void loadState() {
+    Map<Label, TargetBuildInfo> builtDeps = Maps.newHashMap();
+    Map<String, CcToolchain> ccToolchainMap = Maps.newHashMap();
+    if (Files.exists(stateFile)) {
+      try (InputStream stream = new GZIPInputStream(Files.newInputStream(stateFile))) {
+        applyState(
+            ArtifactTrackerProto.ArtifactTrackerState.parseFrom(
+                stream, ExtensionRegistry.getEmptyRegistry()),
+            builtDeps,
+            ccToolchainMap);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to read artifact tracker state from " + stateFile, e);
+        // The journal holds changes to the unreadable state, so it cannot be applied on its own.
+        try {
+          Files.deleteIfExists(journalFile);
+        } catch (IOException deleteException) {
+          logger.log(
+              Level.WARNING,
+              "Failed to delete artifact tracker journal " + journalFile,
+              deleteException);
+        }
+        return;
+      }
     }
 
-    ArtifactTrackerStateDeserializer deserializer =
-        new ArtifactTrackerStateDeserializer(metadataFactory);
-    deserializer.visit(state);
+    int entries = 0;
+    boolean journalComplete = true;
+    if (Files.exists(journalFile)) {
+      try (InputStream stream = new BufferedInputStream(Files.newInputStream(journalFile))) {
+        ArtifactTrackerProto.ArtifactTrackerState delta;
+        while ((delta =
+                ArtifactTrackerProto.ArtifactTrackerState.parseDelimitedFrom(
+                    stream, ExtensionRegistry.getEmptyRegistry()))
+            != null) {
+          applyState(delta, builtDeps, ccToolchainMap);
+          entries++;
+        }
+      } catch (IOException e) {
+        // A truncated final entry is expected if the IDE exited while writing it.
+        logger.log(
+            Level.WARNING,
+            "Ignoring artifact tracker journal after " + entries + " entries in " + journalFile,
+            e);
+        journalComplete = false;
+      }
+    }
 
     synchronized (stateLock) {
-      builtDeps.putAll(deserializer.getBuiltDepsMap());
-      ccToolchainMap.putAll(deserializer.getCcToolchainMap());
+      state = State.create(ImmutableMap.copyOf(builtDeps), ImmutableMap.copyOf(ccToolchainMap));
+      journalEntries = entries;
+      if (!journalComplete) {
+        // Anything appended after a corrupt entry would be unreadable, so start a new journal.
+        try {
+          compactState();
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Failed to write artifact tracker state to " + stateFile, e);
+        }
+      }
     }
   }
+
+  private void applyState(
+      ArtifactTrackerProto.ArtifactTrackerState proto,
+      Map<Label, TargetBuildInfo> builtDeps,
+      Map<String, CcToolchain> ccToolchainMap) {
+    ArtifactTrackerStateDeserializer deserializer =
+        new ArtifactTrackerStateDeserializer(metadataFactory);
+    deserializer.visit(ProtoStringInterner.intern(proto));
+    builtDeps.putAll(deserializer.getBuiltDepsMap());
+    ccToolchainMap.putAll(deserializer.getCcToolchainMap());
+  }
 }
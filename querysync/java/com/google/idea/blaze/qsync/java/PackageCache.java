@@ -0,0 +1,132 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import com.google.idea.blaze.common.AtomicFileWriter;
+import com.google.idea.blaze.common.Interners;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of the packages of source files, keyed by path, modification time and size, which is
+ * persisted across IDE restarts.
+ *
+ * <p>Only entries that have been used since the cache was last saved are written out, so that
+ * entries for files that are no longer in the project are dropped.
+ */
+public class PackageCache {
+
+  private static final Logger logger = Logger.getLogger(PackageCache.class.getName());
+
+  private static final int VERSION = 1;
+
+  private record Entry(long modifiedMillis, long size, String pkg) {
+    boolean matches(BasicFileAttributes attributes) {
+      return modifiedMillis == attributes.lastModifiedTime().toMillis()
+          && size == attributes.size();
+    }
+  }
+
+  private final Path cacheFile;
+  private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<Path, Entry> used = new ConcurrentHashMap<>();
+
+  private PackageCache(Path cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  /** Loads the cache from {@code cacheFile}, or returns an empty cache if it cannot be read. */
+  public static PackageCache load(Path cacheFile) {
+    PackageCache cache = new PackageCache(cacheFile);
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(Files.newInputStream(cacheFile))))) {
+      if (in.readInt() != VERSION) {
+        return cache;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        Path path = Path.of(in.readUTF());
+        long modifiedMillis = in.readLong();
+        long size = in.readLong();
+        String pkg = Interners.STRING.intern(in.readUTF());
+        cache.entries.put(path, new Entry(modifiedMillis, size, pkg));
+      }
+    } catch (NoSuchFileException e) {
+      // First sync.
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to read package cache " + cacheFile, e);
+      cache.entries.clear();
+    }
+    return cache;
+  }
+
+  /**
+   * Returns the cached package of the file at {@code path}, or null if it is not cached or the file
+   * has changed since.
+   */
+  @Nullable
+  public String get(Path path, BasicFileAttributes attributes) {
+    Entry entry = entries.get(path);
+    if (entry == null || !entry.matches(attributes)) {
+      return null;
+    }
+    used.put(path, entry);
+    return entry.pkg();
+  }
+
+  public void put(Path path, BasicFileAttributes attributes, String pkg) {
+    Entry entry = new Entry(attributes.lastModifiedTime().toMillis(), attributes.size(), pkg);
+    entries.put(path, entry);
+    used.put(path, entry);
+  }
+
+  /** Writes the entries used since the last save to disk. */
+  public void save() throws IOException {
+    Map<Path, Entry> toSave = Map.copyOf(used);
+    used.clear();
+    try (AtomicFileWriter writer = AtomicFileWriter.create(cacheFile)) {
+      try (DataOutputStream out =
+          new DataOutputStream(
+              new BufferedOutputStream(new GZIPOutputStream(writer.getOutputStream())))) {
+        out.writeInt(VERSION);
+        out.writeInt(toSave.size());
+        for (Map.Entry<Path, Entry> e : toSave.entrySet()) {
+          out.writeUTF(e.getKey().toString());
+          out.writeLong(e.getValue().modifiedMillis());
+          out.writeLong(e.getValue().size());
+          out.writeUTF(e.getValue().pkg());
+        }
+      }
+      writer.onWriteComplete();
+    }
+    entries.keySet().retainAll(toSave.keySet());
+  }
+}
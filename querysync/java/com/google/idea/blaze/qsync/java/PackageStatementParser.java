@@ -18,11 +18,16 @@ package com.google.idea.blaze.qsync.java;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.BufferedReader;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,10 +38,42 @@ public class PackageStatementParser implements PackageReader {
   private static final Pattern SINGLE_LINE_PACKAGE_PATTERN =
       Pattern.compile("\\bpackage\\s+([^;]+);");
 
+  /**
+   * Number of bytes read from the start of each file. The package statement is almost always near
+   * the start of the file, so this usually avoids reading the rest of it.
+   */
+  private static final int HEAD_SIZE = 8 * 1024;
+
+  private static final ThreadLocal<ByteBuffer> headBuffer =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(HEAD_SIZE));
+
   @Override
   public String readPackage(Path path) throws IOException {
-    try (InputStream in = new FileInputStream(path.toFile())) {
-      return readPackage(in);
+    ByteBuffer head = headBuffer.get();
+    head.clear();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      while (head.hasRemaining() && channel.read(head) >= 0) {}
+      if (head.hasRemaining()) {
+        // We have the whole file.
+        return readPackage(new ByteArrayInputStream(head.array(), 0, head.position()));
+      }
+      // Only complete lines can be matched; a '\n' byte is never part of a multi-byte character.
+      int end = head.position();
+      while (end > 0 && head.get(end - 1) != '\n') {
+        end--;
+      }
+      BufferedReader lines =
+          new BufferedReader(new StringReader(new String(head.array(), 0, end, UTF_8)));
+      String line;
+      while ((line = lines.readLine()) != null) {
+        Matcher packageMatch = PACKAGE_PATTERN.matcher(line);
+        if (packageMatch.find()) {
+          return packageMatch.group(1);
+        }
+      }
+      // Fall back to reading the whole file.
+      channel.position(0);
+      return readPackage(Channels.newInputStream(channel));
     }
   }
 
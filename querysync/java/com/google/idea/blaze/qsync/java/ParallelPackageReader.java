@@ -15,42 +15,98 @@
  */
 package com.google.idea.blaze.qsync.java;
 
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-/** A {@link PackageReader} that parallelizes package reads of another {@link PackageReader}. */
+/**
+ * A {@link PackageReader} that parallelizes package reads of another {@link PackageReader}.
+ *
+ * <p>Paths are sorted so that files in the same directory are read by the same task, and are
+ * submitted to the executor in batches rather than one at a time. If a {@link PackageCache} is
+ * given, files whose modification time and size have not changed since they were last read are not
+ * read again.
+ */
 public class ParallelPackageReader implements PackageReader {
 
+  private static final Logger logger = Logger.getLogger(ParallelPackageReader.class.getName());
+
+  /** The number of files read by each task submitted to the executor. */
+  private static final int BATCH_SIZE = 64;
+
   private final PackageReader reader;
   private final ListeningExecutorService executor;
+  private final Optional<PackageCache> cache;
 
   public ParallelPackageReader(ListeningExecutorService executor, PackageReader reader) {
+    this(executor, reader, Optional.empty());
+  }
+
+  public ParallelPackageReader(
+      ListeningExecutorService executor, PackageReader reader, Optional<PackageCache> cache) {
     this.executor = executor;
     this.reader = reader;
+    this.cache = cache;
   }
 
   @Override
   public String readPackage(Path path) throws IOException {
-    return reader.readPackage(path);
+    if (cache.isEmpty()) {
+      return reader.readPackage(path);
+    }
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    String pkg = cache.get().get(path, attributes);
+    if (pkg == null) {
+      pkg = reader.readPackage(path);
+      cache.get().put(path, attributes, pkg);
+    }
+    return pkg;
   }
 
   @Override
   public List<String> readPackages(List<Path> paths) throws IOException {
-    ArrayList<ListenableFuture<String>> futures = new ArrayList<>();
-    for (Path path : paths) {
-      futures.add(executor.submit(() -> readPackage(path)));
+    Integer[] order = new Integer[paths.size()];
+    Arrays.setAll(order, i -> i);
+    Arrays.sort(order, Comparator.comparing(paths::get));
+    String[] packages = new String[paths.size()];
+
+    List<ListenableFuture<?>> futures = new ArrayList<>();
+    for (List<Integer> batch : Lists.partition(Arrays.asList(order), BATCH_SIZE)) {
+      futures.add(
+          executor.submit(
+              () -> {
+                for (int i : batch) {
+                  packages[i] = readPackage(paths.get(i));
+                }
+                return null;
+              }));
     }
     try {
-      return Uninterruptibles.getUninterruptibly(Futures.allAsList(futures));
+      Uninterruptibles.getUninterruptibly(Futures.allAsList(futures));
     } catch (ExecutionException e) {
       throw new IOException(e);
     }
+    if (cache.isPresent()) {
+      try {
+        cache.get().save();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to save package cache", e);
+      }
+    }
+    return Arrays.asList(packages);
   }
 }
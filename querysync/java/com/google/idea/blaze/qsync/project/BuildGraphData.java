@@ -148,13 +148,13 @@ public abstract class BuildGraphData {
   @Memoized
   public DepsGraph<Label> depsGraph() {
     DepsGraph.Builder<Label> builder = new DepsGraph.Builder<>();
-    targetMap().values().stream().forEach(target -> builder.add(target.label(),ImmutableSet.<Label>builder().addAll(target.deps()).addAll(target.runtimeDeps()).build()));
+    targetMap().values().stream().forEach(target -> builder.add(target.label(), ImmutableSet.<Label>builder().addAll(target.deps()).addAll(target.runtimeDeps()).build()));
     return builder.build();
   }
 
   @Memoized
   public ExternalTransitiveClosure<Label> transitiveExternalDeps() {
-    return new ExternalTransitiveClosure(depsGraph(), projectDeps());
+    return new ExternalTransitiveClosure<>(depsGraph(), projectDeps());
   }
 
   /**
@@ -169,9 +169,17 @@ public abstract class BuildGraphData {
       // filter the rdeps based on the languages, removing those that don't have a common
       // language. This ensures we don't follow reverse deps of (e.g.) a java target depending on
       // a cc target.
-      depsGraph().rdeps(target).stream()
-          .filter(d -> !Collections.disjoint(targetMap().get(d).languages(), targetLanguages))
-          .forEach(directRdeps::add);
+      DepsGraph<Label> graph = depsGraph();
+      int id = graph.nodeId(target);
+      if (id < 0) {
+        continue;
+      }
+      for (int i = 0; i < graph.rdepCount(id); i++) {
+        Label rdep = graph.node(graph.rdepId(id, i));
+        if (!Collections.disjoint(targetMap().get(rdep).languages(), targetLanguages)) {
+          directRdeps.add(rdep);
+        }
+      }
     }
     return directRdeps.build();
   }
@@ -15,11 +15,16 @@
  */
 package com.google.idea.blaze.qsync.project;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSetMultimap;
-import com.google.common.collect.Sets;
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -27,47 +32,265 @@ import java.util.Set;
  *
  * <p>This is a subset of guava's {@link com.google.common.graph.Graph} support, optimized for the
  * requirements of querysync.
+ *
+ * <p>Each node is assigned a dense integer id, in the order that nodes were first seen by the
+ * {@link Builder}. Forward and reverse edges are stored in compressed sparse row form: the deps of
+ * node {@code i} are {@code depIds[depOffsets[i]..depOffsets[i + 1])}, and likewise for rdeps. This
+ * keeps the cost of an edge down to two {@code int}s, and allows callers that need to traverse a
+ * large part of the graph to do so by id, without hashing any nodes. Each slice is sorted by id, so
+ * the deps and rdeps of a node are iterated in id order and membership is a binary search.
+ *
+ * <p>Nodes are looked up by an open addressing table of ids into the node array, rather than a map
+ * of boxed ids.
  */
 public class DepsGraph<N> {
 
-  private final ImmutableMap<N, ImmutableSet<N>> deps;
-  private final ImmutableSetMultimap<N, N> rdeps;
+  /** Open addressing hash table of {@code id + 1}, or 0 for an empty slot. */
+  private final int[] idTable;
+  private final Object[] nodes;
+  private final int[] depOffsets;
+  private final int[] depIds;
+  private final int[] rdepOffsets;
+  private final int[] rdepIds;
 
-  private DepsGraph(ImmutableMap<N, ImmutableSet<N>> deps, ImmutableSetMultimap<N, N> rdeps) {
-    this.deps = deps;
-    this.rdeps = rdeps;
+  private DepsGraph(
+      int[] idTable,
+      Object[] nodes,
+      int[] depOffsets,
+      int[] depIds,
+      int[] rdepOffsets,
+      int[] rdepIds) {
+    this.idTable = idTable;
+    this.nodes = nodes;
+    this.depOffsets = depOffsets;
+    this.depIds = depIds;
+    this.rdepOffsets = rdepOffsets;
+    this.rdepIds = rdepIds;
   }
 
   public Set<N> nodes() {
-    return Sets.union(deps.keySet(), rdeps.keySet());
+    return new AbstractSet<N>() {
+      @Override
+      public int size() {
+        return nodes.length;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return find(o) >= 0;
+      }
+
+      @Override
+      public Iterator<N> iterator() {
+        return new Iterator<N>() {
+          private int next = 0;
+
+          @Override
+          public boolean hasNext() {
+            return next < nodes.length;
+          }
+
+          @Override
+          public N next() {
+            if (next >= nodes.length) {
+              throw new NoSuchElementException();
+            }
+            return node(next++);
+          }
+        };
+      }
+    };
+  }
+
+  public Set<N> deps(N target) {
+    int id = find(target);
+    if (id < 0) {
+      return Set.of();
+    }
+    return new NodeSet(depIds, depOffsets[id], depOffsets[id + 1]);
   }
 
-  public ImmutableSet<N> deps(N target) {
-    ImmutableSet<N> r = deps.get(target);
-    if (r == null) {
-      r = ImmutableSet.of();
+  public Set<N> rdeps(N target) {
+    int id = find(target);
+    if (id < 0) {
+      return Set.of();
     }
-    return r;
+    return new NodeSet(rdepIds, rdepOffsets[id], rdepOffsets[id + 1]);
+  }
+
+  /** Returns the number of nodes in the graph; node ids are in the range {@code [0, nodeCount)}. */
+  public int nodeCount() {
+    return nodes.length;
+  }
+
+  /** Returns the id of the given node, or {@code -1} if it is not in the graph. */
+  public int nodeId(N node) {
+    return find(node);
+  }
+
+  /** Returns the first slot to probe for a node, spreading its hash code over the table. */
+  private static int spread(int hashCode) {
+    int h = hashCode * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private int find(Object node) {
+    if (node == null) {
+      return -1;
+    }
+    int mask = idTable.length - 1;
+    for (int slot = spread(node.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      int entry = idTable[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      if (nodes[entry - 1].equals(node)) {
+        return entry - 1;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public N node(int id) {
+    return (N) nodes[id];
+  }
+
+  public int depCount(int id) {
+    return depOffsets[id + 1] - depOffsets[id];
+  }
+
+  /** Returns the id of the {@code index}th dep of the node with the given id. */
+  public int depId(int id, int index) {
+    return depIds[depOffsets[id] + index];
   }
 
-  public ImmutableSet<N> rdeps(N target) {
-    return rdeps.get(target);
+  public int rdepCount(int id) {
+    return rdepOffsets[id + 1] - rdepOffsets[id];
+  }
+
+  /** Returns the id of the {@code index}th reverse dep of the node with the given id. */
+  public int rdepId(int id, int index) {
+    return rdepIds[rdepOffsets[id] + index];
+  }
+
+  /** An unmodifiable view of a range of one of the edge arrays, as a set of nodes. */
+  private class NodeSet extends AbstractSet<N> {
+    private final int[] edges;
+    private final int start;
+    private final int end;
+
+    NodeSet(int[] edges, int start, int end) {
+      this.edges = edges;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public int size() {
+      return end - start;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      int id = find(o);
+      return id >= 0 && Arrays.binarySearch(edges, start, end, id) >= 0;
+    }
+
+    @Override
+    public Iterator<N> iterator() {
+      return new Iterator<N>() {
+        private int next = start;
+
+        @Override
+        public boolean hasNext() {
+          return next < end;
+        }
+
+        @Override
+        public N next() {
+          if (next >= end) {
+            throw new NoSuchElementException();
+          }
+          return node(edges[next++]);
+        }
+      };
+    }
   }
 
   public static class Builder<N> {
 
-    private final ImmutableMap.Builder<N, ImmutableSet<N>> deps = ImmutableMap.builder();
-    private final ImmutableSetMultimap.Builder<N, N> rdeps = ImmutableSetMultimap.builder();
+    private final Map<N, Integer> ids = new LinkedHashMap<>();
+    private final BitSet added = new BitSet();
+    private int[] from = new int[16];
+    private int[] to = new int[16];
+    private int edgeCount = 0;
 
     @CanIgnoreReturnValue
-    public Builder add(N target, ImmutableSet<N> deps) {
-      this.deps.put(target, deps);
-      deps.forEach(dep -> this.rdeps.put(dep, target));
+    public Builder<N> add(N target, Set<N> deps) {
+      int targetId = id(target);
+      checkArgument(!added.get(targetId), "Duplicate node: %s", target);
+      added.set(targetId);
+      for (N dep : deps) {
+        addEdge(targetId, id(dep));
+      }
       return this;
     }
 
-    public DepsGraph build() {
-      return new DepsGraph(deps.build(), rdeps.build());
+    private int id(N node) {
+      return ids.computeIfAbsent(node, n -> ids.size());
+    }
+
+    private void addEdge(int fromId, int toId) {
+      if (edgeCount == from.length) {
+        from = Arrays.copyOf(from, edgeCount * 2);
+        to = Arrays.copyOf(to, edgeCount * 2);
+      }
+      from[edgeCount] = fromId;
+      to[edgeCount] = toId;
+      edgeCount++;
+    }
+
+    public DepsGraph<N> build() {
+      int nodeCount = ids.size();
+      int[] depOffsets = new int[nodeCount + 1];
+      int[] rdepOffsets = new int[nodeCount + 1];
+      for (int i = 0; i < edgeCount; i++) {
+        depOffsets[from[i] + 1]++;
+        rdepOffsets[to[i] + 1]++;
+      }
+      for (int i = 0; i < nodeCount; i++) {
+        depOffsets[i + 1] += depOffsets[i];
+        rdepOffsets[i + 1] += rdepOffsets[i];
+      }
+      int[] depIds = new int[edgeCount];
+      int[] rdepIds = new int[edgeCount];
+      int[] depFill = Arrays.copyOf(depOffsets, nodeCount);
+      int[] rdepFill = Arrays.copyOf(rdepOffsets, nodeCount);
+      for (int i = 0; i < edgeCount; i++) {
+        depIds[depFill[from[i]]++] = to[i];
+        rdepIds[rdepFill[to[i]]++] = from[i];
+      }
+      for (int i = 0; i < nodeCount; i++) {
+        Arrays.sort(depIds, depOffsets[i], depOffsets[i + 1]);
+        Arrays.sort(rdepIds, rdepOffsets[i], rdepOffsets[i + 1]);
+      }
+      Object[] nodes = ids.keySet().toArray();
+      return new DepsGraph<>(
+          buildIdTable(nodes), nodes, depOffsets, depIds, rdepOffsets, rdepIds);
+    }
+
+    private static int[] buildIdTable(Object[] nodes) {
+      // At most half full, so that probe sequences stay short.
+      int[] idTable = new int[Integer.highestOneBit(Math.max(nodes.length, 1)) * 4];
+      int mask = idTable.length - 1;
+      for (int id = 0; id < nodes.length; id++) {
+        int slot = spread(nodes[id].hashCode()) & mask;
+        while (idTable[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        idTable[slot] = id + 1;
+      }
+      return idTable;
     }
   }
 }
@@ -15,10 +15,13 @@
  */
 package com.google.idea.blaze.qsync.project;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.IntStream;
 
 /**
  * Provides the external dependencies of project targets.
@@ -35,38 +38,245 @@ import java.util.Map;
  *
  * <p>Calculating the entire transitive closure is much too slow for a large project, and we don't
  * need the entire transitive closure, only those that overlap with {@link
- * BuildGraphData#projectDeps()}. We perform this intersection as we build the transitive closure
- * for efficiency reasons, and memo-ize the result.
+ * BuildGraphData#projectDeps()}.
+ *
+ * <p>The closures of all nodes are calculated up front when an instance is created:
+ *
+ * <ul>
+ *   <li>The strongly connected components of the graph are found, so that dependency cycles are
+ *       handled and the nodes of a cycle share a single closure.
+ *   <li>Components are grouped by their height in the condensed graph, and each group is processed
+ *       in parallel once all the groups below it are done, since components of the same height
+ *       cannot depend on each other.
+ *   <li>Each closure is stored as a {@link BitSet} over the indexes of {@link
+ *       BuildGraphData#projectDeps()}, and equal bit sets are shared between components.
+ * </ul>
+ *
+ * After construction, instances are immutable and safe to use from multiple threads.
  */
 public class ExternalTransitiveClosure<N> {
 
+  /** Below this many components, the closures are calculated on the calling thread only. */
+  private static final int MIN_PARALLEL_COMPONENTS = 1024;
+
   private final DepsGraph<N> graph;
   private final ImmutableSet<N> externalDeps;
+  private final ImmutableList<N> externalDepsList;
 
-  private final Map<N, ImmutableSet<N>> reachableNodes = Maps.newHashMap();
+  // The closure of each graph node, indexed by node id. Equal closures share a BitSet instance.
+  private final BitSet[] closures;
+  private final ConcurrentMap<BitSet, ImmutableSet<N>> closureSets = new ConcurrentHashMap<>();
 
   public ExternalTransitiveClosure(DepsGraph<N> graph, ImmutableSet<N> externalDeps) {
     this.graph = graph;
     this.externalDeps = externalDeps;
+    this.externalDepsList = externalDeps.asList();
+    int[] externalIndexes = new int[graph.nodeCount()];
+    Arrays.fill(externalIndexes, -1);
+    for (int i = 0; i < externalDepsList.size(); i++) {
+      int id = graph.nodeId(externalDepsList.get(i));
+      if (id >= 0) {
+        externalIndexes[id] = i;
+      }
+    }
+    this.closures = new Closures(graph, externalIndexes).calculate();
   }
 
   public ImmutableSet<N> get(N node) {
-    return reachable(node);
+    int id = graph.nodeId(node);
+    if (id < 0) {
+      return externalDeps.contains(node) ? ImmutableSet.of(node) : ImmutableSet.of();
+    }
+    return closureSets.computeIfAbsent(closures[id], this::toSet);
   }
 
-  private ImmutableSet<N> reachable(N node) {
-    if (reachableNodes.containsKey(node)) {
-      return reachableNodes.get(node);
+  private ImmutableSet<N> toSet(BitSet closure) {
+    ImmutableSet.Builder<N> builder = ImmutableSet.builderWithExpectedSize(closure.cardinality());
+    closure.stream().mapToObj(externalDepsList::get).forEach(builder::add);
+    return builder.build();
+  }
+
+  /** Calculates the closures of all nodes of a graph. Instances are single use. */
+  private static class Closures {
+    private final DepsGraph<?> graph;
+    private final int[] externalIndexes;
+    private final int nodeCount;
+
+    // The strongly connected component of each node. Components are numbered in the order that
+    // they are completed, which is a reverse topological order: any component that a component
+    // depends on has a lower number.
+    private final int[] component;
+    private int componentCount = 0;
+
+    private final ConcurrentMap<BitSet, BitSet> interned = new ConcurrentHashMap<>();
+
+    Closures(DepsGraph<?> graph, int[] externalIndexes) {
+      this.graph = graph;
+      this.externalIndexes = externalIndexes;
+      this.nodeCount = graph.nodeCount();
+      this.component = new int[nodeCount];
     }
 
-    ImmutableSet.Builder<N> builder = ImmutableSet.builder();
-    if (externalDeps.contains(node)) {
-      builder.add(node);
+    BitSet[] calculate() {
+      findComponents();
+
+      // Group the nodes of each component together.
+      int[] memberOffsets = new int[componentCount + 1];
+      for (int node = 0; node < nodeCount; node++) {
+        memberOffsets[component[node] + 1]++;
+      }
+      for (int c = 0; c < componentCount; c++) {
+        memberOffsets[c + 1] += memberOffsets[c];
+      }
+      int[] members = new int[nodeCount];
+      int[] memberFill = Arrays.copyOf(memberOffsets, componentCount);
+      for (int node = 0; node < nodeCount; node++) {
+        members[memberFill[component[node]]++] = node;
+      }
+
+      // The height of each component in the condensed graph. Components of the same height are
+      // independent of each other.
+      int[] height = new int[componentCount];
+      int maxHeight = 0;
+      for (int c = 0; c < componentCount; c++) {
+        for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+          int node = members[m];
+          for (int i = 0; i < graph.depCount(node); i++) {
+            int depComponent = component[graph.depId(node, i)];
+            if (depComponent != c) {
+              height[c] = Math.max(height[c], height[depComponent] + 1);
+            }
+          }
+        }
+        maxHeight = Math.max(maxHeight, height[c]);
+      }
+      int[] levelOffsets = new int[maxHeight + 2];
+      for (int c = 0; c < componentCount; c++) {
+        levelOffsets[height[c] + 1]++;
+      }
+      for (int h = 0; h <= maxHeight; h++) {
+        levelOffsets[h + 1] += levelOffsets[h];
+      }
+      int[] levels = new int[componentCount];
+      int[] levelFill = Arrays.copyOf(levelOffsets, maxHeight + 1);
+      for (int c = 0; c < componentCount; c++) {
+        levels[levelFill[height[c]]++] = c;
+      }
+
+      BitSet[] componentClosures = new BitSet[componentCount];
+      for (int h = 0; h <= maxHeight; h++) {
+        IntStream level = IntStream.range(levelOffsets[h], levelOffsets[h + 1]).map(i -> levels[i]);
+        if (levelOffsets[h + 1] - levelOffsets[h] >= MIN_PARALLEL_COMPONENTS) {
+          level = level.parallel();
+        }
+        level.forEach(
+            c ->
+                componentClosures[c] =
+                    componentClosure(c, members, memberOffsets, componentClosures));
+      }
+
+      BitSet[] closures = new BitSet[nodeCount];
+      for (int node = 0; node < nodeCount; node++) {
+        closures[node] = componentClosures[component[node]];
+      }
+      return closures;
+    }
+
+    private BitSet componentClosure(
+        int c, int[] members, int[] memberOffsets, BitSet[] componentClosures) {
+      BitSet closure = new BitSet();
+      BitSet onlyDepClosure = null;
+      boolean single = true;
+      for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+        int node = members[m];
+        if (externalIndexes[node] >= 0) {
+          closure.set(externalIndexes[node]);
+          single = false;
+        }
+        for (int i = 0; i < graph.depCount(node); i++) {
+          int depComponent = component[graph.depId(node, i)];
+          if (depComponent != c) {
+            BitSet depClosure = componentClosures[depComponent];
+            if (onlyDepClosure == null) {
+              onlyDepClosure = depClosure;
+            } else if (onlyDepClosure != depClosure) {
+              single = false;
+            }
+            closure.or(depClosure);
+          }
+        }
+      }
+      if (single && onlyDepClosure != null) {
+        // Nothing to add to the closure of the only dependency, so share it.
+        return onlyDepClosure;
+      }
+      BitSet existing = interned.putIfAbsent(closure, closure);
+      return existing != null ? existing : closure;
+    }
+
+    /**
+     * Finds the strongly connected components of the graph using Tarjan's algorithm.
+     *
+     * <p>The depth first search uses an explicit stack, so that long dependency chains cannot
+     * overflow the thread's stack.
+     */
+    private void findComponents() {
+      int[] index = new int[nodeCount];
+      Arrays.fill(index, -1);
+      int[] lowLink = new int[nodeCount];
+      boolean[] onStack = new boolean[nodeCount];
+      int[] stack = new int[nodeCount];
+      int stackSize = 0;
+      // The search path, and the position in the deps of each node on it to continue from.
+      int[] path = new int[nodeCount];
+      int[] pathNextDep = new int[nodeCount];
+      int nextIndex = 0;
+
+      for (int root = 0; root < nodeCount; root++) {
+        if (index[root] >= 0) {
+          continue;
+        }
+        int pathSize = 0;
+        path[pathSize] = root;
+        pathNextDep[pathSize++] = 0;
+        index[root] = lowLink[root] = nextIndex++;
+        stack[stackSize++] = root;
+        onStack[root] = true;
+
+        while (pathSize > 0) {
+          int node = path[pathSize - 1];
+          int nextDep = pathNextDep[pathSize - 1];
+          if (nextDep < graph.depCount(node)) {
+            pathNextDep[pathSize - 1]++;
+            int dep = graph.depId(node, nextDep);
+            if (index[dep] < 0) {
+              index[dep] = lowLink[dep] = nextIndex++;
+              stack[stackSize++] = dep;
+              onStack[dep] = true;
+              path[pathSize] = dep;
+              pathNextDep[pathSize++] = 0;
+            } else if (onStack[dep]) {
+              lowLink[node] = Math.min(lowLink[node], index[dep]);
+            }
+            continue;
+          }
+          // All deps of node have been visited.
+          pathSize--;
+          if (pathSize > 0) {
+            int parent = path[pathSize - 1];
+            lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+          }
+          if (lowLink[node] == index[node]) {
+            int member;
+            do {
+              member = stack[--stackSize];
+              onStack[member] = false;
+              component[member] = componentCount;
+            } while (member != node);
+            componentCount++;
+          }
+        }
+      }
     }
-    builder.addAll(Sets.intersection(graph.deps(node), externalDeps));
-    graph.deps(node).stream().map(this::reachable).forEach(builder::addAll);
-    ImmutableSet<N> r = builder.build();
-    reachableNodes.put(node, r);
-    return r;
   }
 }
@@ -22,6 +22,7 @@ import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.idea.blaze.common.vcs.VcsState;
 import com.google.idea.blaze.qsync.query.Query;
 import com.google.idea.blaze.qsync.query.QuerySummary;
+import java.nio.file.Path;
 import java.util.Optional;
 
 /**
@@ -55,6 +56,14 @@ public abstract class PostQuerySyncData {
   /** The summarised output from the query. */
   public abstract QuerySummary querySummary();
 
+  /**
+   * The build packages that were added, removed or re-queried when this was derived from an earlier
+   * {@link PostQuerySyncData} by a partial refresh.
+   *
+   * <p>This is not persisted, and is empty after a full query.
+   */
+  public abstract Optional<ImmutableSet<Path>> affectedPackages();
+
   public static Builder builder() {
     return new AutoValue_PostQuerySyncData.Builder();
   }
@@ -74,6 +83,8 @@ public abstract class PostQuerySyncData {
 
     public abstract Builder setQuerySummary(QuerySummary value);
 
+    public abstract Builder setAffectedPackages(ImmutableSet<Path> value);
+
     @CanIgnoreReturnValue
     public Builder setQuerySummary(Query.Summary value) {
       return setQuerySummary(QuerySummary.create(value));
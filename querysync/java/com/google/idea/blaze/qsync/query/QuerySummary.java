@@ -52,6 +52,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -284,7 +285,7 @@ public abstract class QuerySummary {
     }
 
     public Label lookupLabel(Query.StoredLabel l) {
-      return new Label(lookupString(l.getWorkspace()), lookupString(l.getBuildPackage()), lookupString(l.getName()));
+      return Label.create(lookupString(l.getWorkspace()), lookupString(l.getBuildPackage()), lookupString(l.getName()));
     }
 
     public ImmutableList<Label> lookupLabels(Collection<Query.StoredLabel> ll) {
@@ -299,99 +300,117 @@ public abstract class QuerySummary {
   public static QuerySummary create(QuerySpec.QueryStrategy queryStrategy, InputStream protoInputStream) throws IOException {
     // IMPORTANT: when changing the logic herein, you should also update PROTO_VERSION above.
     // Failure to do so is likely to result in problems during a partial sync.
-    Map<Label, Query.StoredSourceFile> sourceFileMap = Maps.newHashMap();
-    Map<Label, Query.StoredRule> ruleMap = Maps.newHashMap();
+    //
+    // Targets are converted to their stored form as they are read, and added straight to the
+    // summary proto builder. Only the position of each target in the builder is kept on the side,
+    // so that a target appearing more than once in the output replaces its earlier entry.
+    Query.Summary.Builder summary = Query.Summary.newBuilder();
+    Map<Query.StoredLabel, Integer> sourceFilePositions = Maps.newHashMap();
+    Map<Query.StoredLabel, Integer> rulePositions = Maps.newHashMap();
     Set<String> packagesWithErrors = Sets.newHashSet();
     StringIndexer indexer = new StringIndexer();
     Build.Target target;
     while ((target = Target.parseDelimitedFrom(protoInputStream)) != null) {
       switch (target.getType()) {
         case SOURCE_FILE:
-          Label sourceFileLabel = Label.of(target.getSourceFile().getName());
           Query.StoredSourceFile sourceFile =
               Query.StoredSourceFile.newBuilder()
-                .setLabel(indexer.indexLabel(sourceFileLabel))
+                .setLabel(indexer.indexLabel(Label.of(target.getSourceFile().getName())))
                 .addAllSubinclude(indexer.indexStringsAsLabels(target.getSourceFile().getSubincludeList()))
                   .build();
-          sourceFileMap.put(sourceFileLabel, sourceFile);
+          Integer sourceFilePosition = sourceFilePositions.get(sourceFile.getLabel());
+          if (sourceFilePosition == null) {
+            sourceFilePositions.put(sourceFile.getLabel(), summary.getSourceFilesCount());
+            summary.addSourceFiles(sourceFile);
+          } else {
+            summary.setSourceFiles(sourceFilePosition, sourceFile);
+          }
           if (target.getSourceFile().getPackageContainsErrors()) {
             packagesWithErrors.add(intern(target.getSourceFile().getName()));
           }
           break;
         case RULE:
-          // TODO We don't need all rules types in the proto since many are not used later on.
-          //   We could filter the rules here, or even create rule-specific proto messages to
-          //   reduce the size of the output proto.
-          Query.StoredRule.Builder rule =
-              Query.StoredRule.newBuilder()
-                  .setRuleClass(indexer.index(target.getRule().getRuleClass()));
-          Label label = Label.of(target.getRule().getName());
-          rule.setLabel(indexer.indexLabel(label));
-          for (Build.Attribute a : target.getRule().getAttributeList()) {
-            String attributeName = intern(a.getName());
-            if (SRCS_ATTRIBUTES.contains(attributeName)) {
-              rule.addAllSources(indexer.indexStringsAsLabels(a.getStringListValueList()));
-            } else if (attributeName.equals("hdrs")) {
-              rule.addAllHdrs(indexer.indexStringsAsLabels(a.getStringListValueList()));
-            } else if (attributeIsTrackedDependency(attributeName, target)) {
-              if (a.hasStringValue()) {
-                if (!a.getStringValue().isEmpty()) {
-                  rule.addDeps(indexer.indexLabel(Label.of(a.getStringValue())));
-                }
-              } else {
-                rule.addAllDeps(indexer.indexStringsAsLabels(a.getStringListValueList()));
-              }
-            } else if (RUNTIME_DEP_ATTRIBUTES.contains(attributeName)) {
-              if (a.hasStringValue()) {
-                if (!a.getStringValue().isEmpty()) {
-                  rule.addRuntimeDeps(indexer.indexLabel(Label.of(a.getStringValue())));
-                }
-              } else {
-                rule.addAllRuntimeDeps(indexer.indexStringsAsLabels(a.getStringListValueList()));
-              }
-            } else if (attributeName.equals("idl_srcs")) {
-              rule.addAllIdlSources(indexer.indexStringsAsLabels(a.getStringListValueList()));
-            } else if (attributeName.equals("resource_files")) {
-              rule.addAllResourceFiles(indexer.indexStringsAsLabels(a.getStringListValueList()));
-            } else if (attributeName.equals("manifest")) {
-              if (!a.getStringValue().isEmpty()){
-                rule.setManifest(indexer.indexLabel(Label.of(a.getStringValue())));
-              }
-            } else if (attributeName.equals("custom_package")) {
-              rule.setCustomPackage(indexer.index((a.getStringValue())));
-            } else if (attributeName.equals("copts")) {
-              rule.addAllCopts(indexer.index(a.getStringListValueList()));
-            } else if (attributeName.equals("tags")) {
-              rule.addAllTags(indexer.index(a.getStringListValueList()));
-            } else if (attributeName.equals("main_class")) {
-              rule.setMainClass(indexer.index(a.getStringValue()));
-            }
-
-            if (attributeName.equals("test_app")) {
-              rule.setTestApp(indexer.index(a.getStringValue()));
-            } else if (attributeName.equals("instruments")) {
-              rule.setInstruments(indexer.index(a.getStringValue()));
-            } else if (attributeName.equals("imports")) {
-              rule.addAllImports(indexer.index(a.getStringListValueList()));
-            }
+          Query.StoredRule rule = ruleToStoredRule(indexer, target);
+          Integer rulePosition = rulePositions.get(rule.getLabel());
+          if (rulePosition == null) {
+            rulePositions.put(rule.getLabel(), summary.getStoredRulesCount());
+            summary.addStoredRules(rule);
+          } else {
+            summary.setStoredRules(rulePosition, rule);
           }
-          ruleMap.put(label, rule.build());
           break;
         default:
           break;
       }
     }
     return create(
-        Query.Summary.newBuilder()
+        summary
             .setQueryStrategy(convertQueryStrategy(queryStrategy))
             .setVersion(PROTO_VERSION)
-            .addAllSourceFiles(sourceFileMap.values())
-            .addAllStoredRules(ruleMap.values())
             .setStringStorage(Query.StringStorage.newBuilder().addAllIndexedStrings(indexer.list()))
             .addAllPackagesWithErrors(packagesWithErrors)
             .build());
   }
 
+  private static Query.StoredRule ruleToStoredRule(StringIndexer indexer, Build.Target target) {
+    // TODO We don't need all rules types in the proto since many are not used later on.
+    //   We could filter the rules here, or even create rule-specific proto messages to
+    //   reduce the size of the output proto.
+    Query.StoredRule.Builder rule =
+        Query.StoredRule.newBuilder()
+            .setRuleClass(indexer.index(target.getRule().getRuleClass()));
+    rule.setLabel(indexer.indexLabel(Label.of(target.getRule().getName())));
+    for (Build.Attribute a : target.getRule().getAttributeList()) {
+      String attributeName = intern(a.getName());
+      if (SRCS_ATTRIBUTES.contains(attributeName)) {
+        rule.addAllSources(indexer.indexStringsAsLabels(a.getStringListValueList()));
+      } else if (attributeName.equals("hdrs")) {
+        rule.addAllHdrs(indexer.indexStringsAsLabels(a.getStringListValueList()));
+      } else if (attributeIsTrackedDependency(attributeName, target)) {
+        if (a.hasStringValue()) {
+          if (!a.getStringValue().isEmpty()) {
+            rule.addDeps(indexer.indexLabel(Label.of(a.getStringValue())));
+          }
+        } else {
+          rule.addAllDeps(indexer.indexStringsAsLabels(a.getStringListValueList()));
+        }
+      } else if (RUNTIME_DEP_ATTRIBUTES.contains(attributeName)) {
+        if (a.hasStringValue()) {
+          if (!a.getStringValue().isEmpty()) {
+            rule.addRuntimeDeps(indexer.indexLabel(Label.of(a.getStringValue())));
+          }
+        } else {
+          rule.addAllRuntimeDeps(indexer.indexStringsAsLabels(a.getStringListValueList()));
+        }
+      } else if (attributeName.equals("idl_srcs")) {
+        rule.addAllIdlSources(indexer.indexStringsAsLabels(a.getStringListValueList()));
+      } else if (attributeName.equals("resource_files")) {
+        rule.addAllResourceFiles(indexer.indexStringsAsLabels(a.getStringListValueList()));
+      } else if (attributeName.equals("manifest")) {
+        if (!a.getStringValue().isEmpty()){
+          rule.setManifest(indexer.indexLabel(Label.of(a.getStringValue())));
+        }
+      } else if (attributeName.equals("custom_package")) {
+        rule.setCustomPackage(indexer.index((a.getStringValue())));
+      } else if (attributeName.equals("copts")) {
+        rule.addAllCopts(indexer.index(a.getStringListValueList()));
+      } else if (attributeName.equals("tags")) {
+        rule.addAllTags(indexer.index(a.getStringListValueList()));
+      } else if (attributeName.equals("main_class")) {
+        rule.setMainClass(indexer.index(a.getStringValue()));
+      }
+
+      if (attributeName.equals("test_app")) {
+        rule.setTestApp(indexer.index(a.getStringValue()));
+      } else if (attributeName.equals("instruments")) {
+        rule.setInstruments(indexer.index(a.getStringValue()));
+      } else if (attributeName.equals("imports")) {
+        rule.addAllImports(indexer.index(a.getStringListValueList()));
+      }
+    }
+    return rule.build();
+  }
+
   public QuerySpec.QueryStrategy getQueryStrategy() {
     switch (proto().getQueryStrategy()) {
       case QUERY_STRATEGY_FILTERING_TO_KNOWN_AND_USED_TARGETS -> {
@@ -462,6 +481,107 @@ public abstract class QuerySummary {
                 Function.identity()));
   }
 
+  /**
+   * Returns the source files included in the query output, decoding each one as it is consumed.
+   *
+   * <p>Unlike {@link #getSourceFilesMap()} the result is not memoized, so a single pass over the
+   * source files does not retain a decoded copy of them alongside the proto.
+   */
+  public Stream<QueryData.SourceFile> streamSourceFiles() {
+    StringLookup lookup = new StringLookup(proto().getStringStorage().getIndexedStringsList());
+    return proto().getSourceFilesList().stream().map(lookup::storedSourceFileToSourceFile);
+  }
+
+  /**
+   * Returns the rules included in the query output, decoding each one as it is consumed.
+   *
+   * <p>Unlike {@link #getRulesMap()} the result is not memoized, so a single pass over the rules
+   * does not retain a decoded copy of them alongside the proto.
+   */
+  public Stream<QueryData.Rule> streamRules() {
+    StringLookup lookup = new StringLookup(proto().getStringStorage().getIndexedStringsList());
+    return proto().getStoredRulesList().stream().map(lookup::storedRuleToRule);
+  }
+
+  /**
+   * Returns the rules for which {@code filter} is true, decoding only those.
+   *
+   * <p>Filters built with {@link #storedLabelInPackages} and {@link #storedLabelIn} work on string
+   * indexes, so rules that do not match are never decoded.
+   */
+  public Stream<QueryData.Rule> streamRules(Predicate<Query.StoredRule> filter) {
+    StringLookup lookup = new StringLookup(proto().getStringStorage().getIndexedStringsList());
+    return proto().getStoredRulesList().stream().filter(filter).map(lookup::storedRuleToRule);
+  }
+
+  /** Returns the source files for which {@code filter} is true, decoding only those. */
+  public Stream<QueryData.SourceFile> streamSourceFiles(
+      Predicate<Query.StoredSourceFile> filter) {
+    StringLookup lookup = new StringLookup(proto().getStringStorage().getIndexedStringsList());
+    return proto().getSourceFilesList().stream()
+        .filter(filter)
+        .map(lookup::storedSourceFileToSourceFile);
+  }
+
+  /** Returns a predicate matching the stored labels of this summary in one of {@code packages}. */
+  public Predicate<Query.StoredLabel> storedLabelInPackages(Set<Path> packages) {
+    if (packages.isEmpty()) {
+      return l -> false;
+    }
+    Set<String> packageStrings = packages.stream().map(Path::toString).collect(toImmutableSet());
+    List<String> strings = proto().getStringStorage().getIndexedStringsList();
+    Set<Integer> packageIndexes = Sets.newHashSet();
+    for (int i = 0; i < strings.size(); i++) {
+      if (packageStrings.contains(strings.get(i))) {
+        packageIndexes.add(i);
+      }
+    }
+    return l -> packageIndexes.contains(l.getBuildPackage());
+  }
+
+  /** Returns a predicate matching the stored labels of this summary that are in {@code labels}. */
+  public Predicate<Query.StoredLabel> storedLabelIn(Set<Label> labels) {
+    if (labels.isEmpty()) {
+      return l -> false;
+    }
+    StringLookup lookup = new StringLookup(proto().getStringStorage().getIndexedStringsList());
+    Predicate<Query.StoredLabel> inPackages =
+        storedLabelInPackages(labels.stream().map(Label::getPackage).collect(toImmutableSet()));
+    return l -> inPackages.test(l) && labels.contains(lookup.lookupLabel(l));
+  }
+
+  /**
+   * Returns the rules that have one of the given rule classes or tags.
+   *
+   * <p>The matching is done on the string indexes of the stored rules, so rules that do not match
+   * are never decoded.
+   */
+  public ImmutableMap<Label, QueryData.Rule> getRulesMatching(
+      Set<String> ruleClasses, Set<String> tags) {
+    List<String> strings = proto().getStringStorage().getIndexedStringsList();
+    Set<Integer> ruleClassIndexes = Sets.newHashSet();
+    Set<Integer> tagIndexes = Sets.newHashSet();
+    for (int i = 0; i < strings.size(); i++) {
+      if (ruleClasses.contains(strings.get(i))) {
+        ruleClassIndexes.add(i);
+      }
+      if (tags.contains(strings.get(i))) {
+        tagIndexes.add(i);
+      }
+    }
+    if (ruleClassIndexes.isEmpty() && tagIndexes.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    StringLookup lookup = new StringLookup(strings);
+    return proto().getStoredRulesList().stream()
+        .filter(
+            r ->
+                ruleClassIndexes.contains(r.getRuleClass())
+                    || r.getTagsList().stream().anyMatch(tagIndexes::contains))
+        .map(lookup::storedRuleToRule)
+        .collect(toImmutableMap(QueryData.Rule::label, Function.identity()));
+  }
+
   @Memoized
   public ImmutableSet<Path> getPackagesWithErrors() {
     return proto().getPackagesWithErrorsList().stream()
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.benchmark;
+
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
+import static com.google.idea.blaze.common.HeapUsage.usedHeap;
+import static com.google.idea.blaze.qsync.QuerySyncTestUtils.NOOP_CONTEXT;
+
+import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.qsync.BlazeQueryParser;
+import com.google.idea.blaze.qsync.DependenciesProjectProtoUpdater;
+import com.google.idea.blaze.qsync.GraphToProjectConverter;
+import com.google.idea.blaze.qsync.ProjectProtoTransform;
+import com.google.idea.blaze.qsync.deps.ArtifactTracker;
+import com.google.idea.blaze.qsync.project.BuildGraphData;
+import com.google.idea.blaze.qsync.project.ProjectPath;
+import com.google.idea.blaze.qsync.project.ProjectProto;
+import com.google.idea.blaze.qsync.query.QuerySpec;
+import com.google.idea.blaze.qsync.query.QuerySummary;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+
+/**
+ * Measures the phases of a query sync that turn query output into a project proto, on synthetic
+ * projects generated by {@link SyntheticQueryOutput}.
+ *
+ * <p>For each project size, the phases are run in order, each on the output of the previous one:
+ *
+ * <ul>
+ *   <li>{@code summary}: {@link QuerySummary#create(QuerySpec.QueryStrategy,
+ *       java.io.InputStream)} on the streamed query output.
+ *   <li>{@code parse}: {@link BlazeQueryParser#parse()}.
+ *   <li>{@code convert}: {@link GraphToProjectConverter#createProject(BuildGraphData)}.
+ *   <li>{@code transform}: the {@link ProjectProtoTransform} chain, with artifacts built for all of
+ *       the project's external dependencies.
+ * </ul>
+ *
+ * <p>Each phase is warmed up and then run repeatedly for a fixed time. This reports the throughput,
+ * the bytes allocated per operation and the resulting allocation rate, and the heap retained by the
+ * output of the phase. Allocations are summed over all live threads, so work done on short lived
+ * threads is not counted.
+ *
+ * <p>Run with {@code bazel run
+ * //querysync/javatests/com/google/idea/blaze/qsync/benchmark:SyncPhaseBenchmark -- [sizes]
+ * [seconds per phase]}, e.g. {@code -- 10000,100000 5}. Defaults to 10k, 100k and 1M targets and 10
+ * seconds per phase.
+ */
+public class SyncPhaseBenchmark {
+
+  private static final int MIN_ITERATIONS = 3;
+
+  private static final com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private final long phaseNanos;
+
+  private SyncPhaseBenchmark(long phaseNanos) {
+    this.phaseNanos = phaseNanos;
+  }
+
+  public static void main(String[] args) throws Exception {
+    ImmutableList<Integer> sizes =
+        Splitter.on(',')
+            .splitToStream(args.length > 0 ? args[0] : "10000,100000,1000000")
+            .map(Integer::parseInt)
+            .collect(ImmutableList.toImmutableList());
+    long phaseSeconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+
+    SyncPhaseBenchmark benchmark = new SyncPhaseBenchmark(phaseSeconds * 1_000_000_000L);
+    System.out.printf(
+        "%-10s %-10s %10s %12s %14s %12s %14s%n",
+        "targets", "phase", "ops/s", "ms/op", "alloc MB/op", "alloc MB/s", "retained MB");
+    for (int size : sizes) {
+      benchmark.run(new SyntheticQueryOutput(size));
+    }
+  }
+
+  private void run(SyntheticQueryOutput project) throws Exception {
+    byte[] queryOutput = project.generate();
+    int size = project.numTargets();
+
+    QuerySummary summary =
+        measure(
+            size,
+            "summary",
+            () ->
+                QuerySummary.create(
+                    QuerySpec.QueryStrategy.PLAIN, new ByteArrayInputStream(queryOutput)));
+
+    BuildGraphData graph =
+        measure(
+            size,
+            "parse",
+            () -> new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of()).parse());
+
+    GraphToProjectConverter converter =
+        new GraphToProjectConverter(
+            project.packageReader(),
+            Predicates.alwaysTrue(),
+            NOOP_CONTEXT,
+            project.projectDefinition(),
+            newDirectExecutorService());
+    ProjectProto.Project proto = measure(size, "convert", () -> converter.createProject(graph));
+
+    ProjectProtoTransform transform =
+        ProjectProtoTransform.compose(
+            ImmutableList.of(
+                new DependenciesProjectProtoUpdater(
+                    project.projectDefinition(),
+                    ProjectPath.Resolver.EMPTY_FOR_TESTING,
+                    () -> true)));
+    ArtifactTracker.State artifactState =
+        ArtifactTracker.State.forJavaLabels(project.externalDeps());
+    measure(
+        size,
+        "transform",
+        () -> transform.apply(proto, graph, artifactState, NOOP_CONTEXT));
+  }
+
+  /** Runs a phase repeatedly, prints its statistics and returns the output of the last run. */
+  private <T> T measure(int size, String phase, Callable<T> op) throws Exception {
+    // warm up for half the measurement time:
+    long end = System.nanoTime() + phaseNanos / 2;
+    for (int i = 0; i < MIN_ITERATIONS || System.nanoTime() < end; i++) {
+      op.call();
+    }
+
+    long baseline = usedHeap();
+    T result = null;
+    int iterations = 0;
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    end = start + phaseNanos;
+    while (iterations < MIN_ITERATIONS || System.nanoTime() < end) {
+      result = op.call();
+      iterations++;
+    }
+    long elapsed = System.nanoTime() - start;
+    allocated = allocatedBytes() - allocated;
+    long retained = usedHeap() - baseline;
+
+    double seconds = elapsed / 1e9;
+    System.out.printf(
+        "%-10d %-10s %10.2f %12.1f %14.1f %12.1f %14.1f%n",
+        size,
+        phase,
+        iterations / seconds,
+        elapsed / 1e6 / iterations,
+        allocated / 1048576.0 / iterations,
+        allocated / 1048576.0 / seconds,
+        retained / 1048576.0);
+    return result;
+  }
+
+  private static long allocatedBytes() {
+    long total = 0;
+    for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+      if (allocated > 0) {
+        total += allocated;
+      }
+    }
+    return total;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build;
+import com.google.idea.blaze.common.Label;
+import com.google.idea.blaze.qsync.java.PackageReader;
+import com.google.idea.blaze.qsync.project.ProjectDefinition;
+import com.google.idea.blaze.qsync.project.QuerySyncLanguage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Generates the output of {@code bazel query --output=streamed_proto} for a synthetic Java project
+ * of a given size.
+ *
+ * <p>The project consists of {@code java_library} targets in packages of {@link
+ * #TARGETS_PER_PACKAGE}, with one {@code java_test} per package. Each library has two sources,
+ * depends on a few libraries in nearby packages, like a real build graph does, and on one of {@link
+ * #EXTERNAL_DEPS} targets outside of the project. The output is deterministic for a given size.
+ */
+public class SyntheticQueryOutput {
+
+  static final int TARGETS_PER_PACKAGE = 20;
+  static final int DEPS_PER_TARGET = 4;
+  static final int EXTERNAL_DEPS = 500;
+
+  static final Path PROJECT_ROOT = Path.of("java/com/example");
+
+  private final int numTargets;
+
+  public SyntheticQueryOutput(int numTargets) {
+    this.numTargets = numTargets;
+  }
+
+  public int numTargets() {
+    return numTargets;
+  }
+
+  /** Returns the query output as a stream of length delimited {@link Build.Target} protos. */
+  public byte[] generate() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(numTargets * 512);
+    try {
+      for (int i = 0; i < numTargets; i++) {
+        Label label = label(i);
+        boolean isTest = i % TARGETS_PER_PACKAGE == TARGETS_PER_PACKAGE - 1;
+        ImmutableList<Label> srcs =
+            ImmutableList.of(
+                label.siblingWithName(className(i) + ".java"),
+                label.siblingWithName(className(i) + "Helper.java"));
+        ImmutableList.Builder<Label> deps = ImmutableList.builder();
+        for (int d = 1; d <= DEPS_PER_TARGET; d++) {
+          deps.add(label(Math.floorMod(i - d * 37, numTargets)));
+        }
+        deps.add(externalDep(i % EXTERNAL_DEPS));
+
+        Build.Rule.Builder rule =
+            Build.Rule.newBuilder()
+                .setName(label.toString())
+                .setRuleClass(isTest ? "java_test" : "java_library")
+                .addAttribute(stringList("srcs", Build.Attribute.Discriminator.LABEL_LIST, srcs))
+                .addAttribute(
+                    stringList("deps", Build.Attribute.Discriminator.LABEL_LIST, deps.build()))
+                .addAttribute(
+                    Build.Attribute.newBuilder()
+                        .setName("tags")
+                        .setType(Build.Attribute.Discriminator.STRING_LIST)
+                        .addStringListValue(isTest ? "small" : "manual"));
+        Build.Target.newBuilder()
+            .setType(Build.Target.Discriminator.RULE)
+            .setRule(rule)
+            .build()
+            .writeDelimitedTo(out);
+        for (Label src : srcs) {
+          sourceFile(src).writeDelimitedTo(out);
+        }
+        if (i % TARGETS_PER_PACKAGE == 0) {
+          sourceFile(label.siblingWithName("BUILD")).writeDelimitedTo(out);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /** Returns the targets outside of the project that project targets depend on. */
+  public ImmutableList<Label> externalDeps() {
+    ImmutableList.Builder<Label> deps = ImmutableList.builder();
+    for (int i = 0; i < Math.min(EXTERNAL_DEPS, numTargets); i++) {
+      deps.add(externalDep(i));
+    }
+    return deps.build();
+  }
+
+  public ProjectDefinition projectDefinition() {
+    return ProjectDefinition.builder()
+        .setProjectIncludes(ImmutableSet.of(PROJECT_ROOT))
+        .setLanguageClasses(ImmutableSet.of(QuerySyncLanguage.JAVA))
+        .build();
+  }
+
+  /** A package reader that derives the package from the path, without reading any files. */
+  public PackageReader packageReader() {
+    return path -> path.getParent().toString().substring("java/".length()).replace('/', '.');
+  }
+
+  private static Build.Attribute.Builder stringList(
+      String name, Build.Attribute.Discriminator type, ImmutableList<Label> values) {
+    Build.Attribute.Builder attribute = Build.Attribute.newBuilder().setName(name).setType(type);
+    values.forEach(v -> attribute.addStringListValue(v.toString()));
+    return attribute;
+  }
+
+  private static Build.Target sourceFile(Label label) {
+    return Build.Target.newBuilder()
+        .setType(Build.Target.Discriminator.SOURCE_FILE)
+        .setSourceFile(Build.SourceFile.newBuilder().setName(label.toString()))
+        .build();
+  }
+
+  private static String className(int i) {
+    return "Class" + i;
+  }
+
+  static Label label(int i) {
+    int pkg = i / TARGETS_PER_PACKAGE;
+    return Label.of(
+        String.format(
+            "//%s/area%d/module%d/pkg%d:target%d",
+            PROJECT_ROOT, pkg % 97, pkg % 1009, pkg, i % TARGETS_PER_PACKAGE));
+  }
+
+  static Label externalDep(int i) {
+    return Label.of(String.format("//third_party/java/lib%d:lib%d", i, i));
+  }
+}
@@ -45,7 +45,10 @@ import com.google.idea.blaze.qsync.java.ArtifactTrackerProto.Metadata;
 import com.google.idea.blaze.qsync.java.JavaArtifactMetadata;
 import com.google.idea.blaze.qsync.java.JavaTargetInfo.JavaArtifacts;
 import com.google.idea.blaze.qsync.java.JavaTargetInfo.JavaTargetArtifacts;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 import java.util.Optional;
 import org.junit.After;
@@ -79,13 +82,16 @@ public class NewArtifactTrackerTest {
 
   @Before
   public void createArtifactTracker() {
-    artifactTracker =
-        new NewArtifactTracker<>(
-            cacheDir.getRoot().toPath(),
-            cache,
-            t -> artifactMetadataMap.getOrDefault(t.label(), ImmutableSetMultimap.of()),
-            new JavaArtifactMetadata.Factory(),
-            MoreExecutors.directExecutor());
+    artifactTracker = newArtifactTracker();
+  }
+
+  private NewArtifactTracker<NoopContext> newArtifactTracker() {
+    return new NewArtifactTracker<>(
+        cacheDir.getRoot().toPath(),
+        cache,
+        t -> artifactMetadataMap.getOrDefault(t.label(), ImmutableSetMultimap.of()),
+        new JavaArtifactMetadata.Factory(),
+        MoreExecutors.directExecutor());
   }
 
   @After
@@ -590,4 +596,102 @@ public class NewArtifactTrackerTest {
         Label.of("//test:test_proto"))
     );
   }
+
+  private void buildJavaTarget(int index) throws BuildException {
+    String jar = "out/test" + index + ".jar";
+    artifactTracker.update(
+        ImmutableSet.of(Label.of("//test:test" + index)),
+        OutputInfo.builder()
+            .setOutputGroups(
+                ImmutableListMultimap.<OutputGroup, OutputArtifact>builder()
+                    .putAll(
+                        OutputGroup.JARS,
+                        TestOutputArtifact.builder()
+                            .setArtifactPath(Path.of(jar))
+                            .setDigest("jar_digest" + index)
+                            .build())
+                    .build())
+            .setArtifactInfo(
+                JavaArtifacts.newBuilder()
+                    .addArtifacts(
+                        JavaTargetArtifacts.newBuilder()
+                            .setTarget("//test:test" + index)
+                            .addJars(fileArtifact(jar))
+                            .build())
+                    .build())
+            .build(),
+        new NoopContext());
+  }
+
+  @Test
+  public void state_reloaded_from_journal() throws Exception {
+    when(cache.addAll(any(), any())).thenReturn(Futures.immediateFuture(null));
+    buildJavaTarget(1);
+    buildJavaTarget(2);
+    assertThat(Files.exists(cacheDir.getRoot().toPath().resolve("artifact_state.journal")))
+        .isTrue();
+
+    NewArtifactTracker<NoopContext> reloaded = newArtifactTracker();
+    assertThat(reloaded.getStateSnapshot().depsMap().keySet())
+        .containsExactly(Label.of("//test:test1"), Label.of("//test:test2"));
+    assertThat(
+            reloaded
+                .getStateSnapshot()
+                .depsMap()
+                .get(Label.of("//test:test2"))
+                .javaInfo()
+                .orElseThrow()
+                .jars())
+        .containsExactly(
+            BuildArtifact.create(
+                "jar_digest2", Path.of("out/test2.jar"), Label.of("//test:test2")));
+  }
+
+  @Test
+  public void journal_compacted() throws Exception {
+    when(cache.addAll(any(), any())).thenReturn(Futures.immediateFuture(null));
+    Path journal = cacheDir.getRoot().toPath().resolve("artifact_state.journal");
+    for (int i = 0; i < 21; i++) {
+      buildJavaTarget(i);
+    }
+    assertThat(Files.exists(journal)).isFalse();
+    assertThat(Files.exists(cacheDir.getRoot().toPath().resolve("artifact_state"))).isTrue();
+    buildJavaTarget(21);
+    assertThat(Files.exists(journal)).isTrue();
+
+    assertThat(newArtifactTracker().getStateSnapshot().depsMap()).hasSize(22);
+  }
+
+  @Test
+  public void truncated_journal_ignored() throws Exception {
+    when(cache.addAll(any(), any())).thenReturn(Futures.immediateFuture(null));
+    Path journal = cacheDir.getRoot().toPath().resolve("artifact_state.journal");
+    buildJavaTarget(1);
+    long firstEntryEnd = Files.size(journal);
+    buildJavaTarget(2);
+    try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+      channel.truncate(firstEntryEnd + 4);
+    }
+
+    NewArtifactTracker<NoopContext> reloaded = newArtifactTracker();
+    assertThat(reloaded.getStateSnapshot().depsMap().keySet())
+        .containsExactly(Label.of("//test:test1"));
+    assertThat(Files.exists(journal)).isFalse();
+  }
+
+  @Test
+  public void corrupt_state_discards_journal() throws Exception {
+    when(cache.addAll(any(), any())).thenReturn(Futures.immediateFuture(null));
+    Path stateFile = cacheDir.getRoot().toPath().resolve("artifact_state");
+    Path journal = cacheDir.getRoot().toPath().resolve("artifact_state.journal");
+    for (int i = 0; i < 22; i++) {
+      buildJavaTarget(i);
+    }
+    assertThat(Files.exists(journal)).isTrue();
+    Files.write(stateFile, new byte[] {1, 2, 3});
+
+    NewArtifactTracker<NoopContext> reloaded = newArtifactTracker();
+    assertThat(reloaded.getStateSnapshot().depsMap()).isEmpty();
+    assertThat(Files.exists(journal)).isFalse();
+  }
 }
@@ -21,13 +21,19 @@ import com.google.common.base.Joiner;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 @RunWith(JUnit4.class)
 public class PackageStatementParserTest {
 
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
   @Test
   public void basic_package_statement() throws IOException {
     PackageStatementParser psp = new PackageStatementParser();
@@ -124,4 +130,36 @@ public class PackageStatementParserTest {
                         .getBytes(StandardCharsets.UTF_8))))
         .isEqualTo("com.myorg.kotlinpackage");
   }
+
+  @Test
+  public void read_from_file() throws IOException {
+    Path file = tmpDir.newFile("MyClass.java").toPath();
+    Files.writeString(file, "package com.myorg.somepackage;\n\npublic class MyClass {}\n");
+    assertThat(new PackageStatementParser().readPackage(file)).isEqualTo("com.myorg.somepackage");
+  }
+
+  @Test
+  public void read_from_file_package_after_long_header() throws IOException {
+    Path file = tmpDir.newFile("MyClass.java").toPath();
+    Files.writeString(
+        file,
+        "/*\n"
+            + " * A long comment.\n".repeat(2000)
+            + " */\n"
+            + "package com.myorg.somepackage;\n\npublic class MyClass {}\n");
+    assertThat(new PackageStatementParser().readPackage(file)).isEqualTo("com.myorg.somepackage");
+  }
+
+  @Test
+  public void read_from_file_long_single_line_generated_file() throws IOException {
+    Path file = tmpDir.newFile("SomeClass.java").toPath();
+    Files.writeString(
+        file,
+        "/* This is a generated file */package com.myorg.package.generated;public final class"
+            + " SomeClass {"
+            + "public final static boolean GENERATED_THING = true;".repeat(500)
+            + "}");
+    assertThat(new PackageStatementParser().readPackage(file))
+        .isEqualTo("com.myorg.package.generated");
+  }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ParallelPackageReaderTest {
+
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  /** A package reader that records the files it reads. */
+  private static class RecordingReader implements PackageReader {
+    private final PackageStatementParser parser = new PackageStatementParser();
+    final List<Path> read = new ArrayList<>();
+
+    @Override
+    public synchronized String readPackage(Path path) throws IOException {
+      read.add(path);
+      return parser.readPackage(path);
+    }
+  }
+
+  private Path writeSource(String relativePath, String pkg) throws IOException {
+    Path file = tmpDir.getRoot().toPath().resolve(relativePath);
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, "package " + pkg + ";\n\nclass C {}\n");
+    return file;
+  }
+
+  private ParallelPackageReader newReader(PackageReader delegate) {
+    return new ParallelPackageReader(
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4)),
+        delegate,
+        Optional.of(PackageCache.load(tmpDir.getRoot().toPath().resolve("cache/packages.gz"))));
+  }
+
+  @Test
+  public void readPackages_preservesOrder() throws IOException {
+    List<Path> files = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      // Interleave directories so that sorting changes the order.
+      String pkg = "com.example.p" + (i % 7) + ".f" + i;
+      files.add(writeSource("src/p" + (i % 7) + "/f" + i + "/C.java", pkg));
+      expected.add(pkg);
+    }
+    assertThat(
+            new ParallelPackageReader(
+                    MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4)),
+                    new PackageStatementParser())
+                .readPackages(files))
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+  }
+
+  @Test
+  public void readPackages_cachedAcrossInstances() throws IOException {
+    Path a = writeSource("a/A.java", "com.example.a");
+    Path b = writeSource("b/B.java", "com.example.b");
+
+    RecordingReader first = new RecordingReader();
+    assertThat(newReader(first).readPackages(ImmutableList.of(a, b)))
+        .containsExactly("com.example.a", "com.example.b")
+        .inOrder();
+    assertThat(first.read).containsExactly(a, b);
+
+    RecordingReader second = new RecordingReader();
+    assertThat(newReader(second).readPackages(ImmutableList.of(a, b)))
+        .containsExactly("com.example.a", "com.example.b")
+        .inOrder();
+    assertThat(second.read).isEmpty();
+  }
+
+  @Test
+  public void readPackages_modifiedFileReread() throws IOException {
+    Path a = writeSource("a/A.java", "com.example.a");
+    Path b = writeSource("b/B.java", "com.example.b");
+    newReader(new RecordingReader()).readPackages(ImmutableList.of(a, b));
+
+    writeSource("b/B.java", "com.example.bee");
+    Files.setLastModifiedTime(
+        b, FileTime.fromMillis(Files.getLastModifiedTime(b).toMillis() + 1000));
+
+    RecordingReader reader = new RecordingReader();
+    assertThat(newReader(reader).readPackages(ImmutableList.of(a, b)))
+        .containsExactly("com.example.a", "com.example.bee")
+        .inOrder();
+    assertThat(reader.read).containsExactly(b);
+  }
+}
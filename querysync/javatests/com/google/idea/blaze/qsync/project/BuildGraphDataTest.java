@@ -19,14 +19,18 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.idea.blaze.qsync.QuerySyncTestUtils.NOOP_CONTEXT;
 import static com.google.idea.blaze.qsync.QuerySyncTestUtils.getQuerySummary;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.truth.Expect;
 import com.google.idea.blaze.common.Label;
 import com.google.idea.blaze.qsync.BlazeQueryParser;
+import com.google.idea.blaze.qsync.query.QueryData;
+import com.google.idea.blaze.qsync.query.QuerySummary;
 import com.google.idea.blaze.qsync.testdata.BuildGraphs;
 import com.google.idea.blaze.qsync.testdata.TestData;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Optional;
 import org.junit.Rule;
@@ -145,6 +149,86 @@ public class BuildGraphDataTest {
         .containsExactly(TestData.JAVA_LIBRARY_NO_DEPS_QUERY.getAssumedOnlyLabel());
   }
 
+  @Test
+  public void testParseIncrementally_reusesUnaffectedTargets() throws Exception {
+    QuerySummary summary = getQuerySummary(TestData.JAVA_LIBRARY_EXTERNAL_DEP_QUERY);
+    BuildGraphData full = new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of()).parse();
+    Label target = Label.of("//" + TESTDATA_ROOT + "/externaldep:externaldep");
+
+    BuildGraphData unaffected =
+        new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of())
+            .parseIncrementally(full, ImmutableSet.of());
+    assertThat(unaffected.targetMap().get(target)).isSameInstanceAs(full.targetMap().get(target));
+    assertThat(unaffected.targetMap()).isEqualTo(full.targetMap());
+    assertThat(unaffected.projectDeps()).isEqualTo(full.projectDeps());
+    assertThat(unaffected.allTargets()).containsExactlyElementsIn(full.allTargets());
+
+    BuildGraphData affected =
+        new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of())
+            .parseIncrementally(full, ImmutableSet.of(TESTDATA_ROOT.resolve("externaldep")));
+    assertThat(affected.targetMap().get(target))
+        .isNotSameInstanceAs(full.targetMap().get(target));
+    assertThat(affected.targetMap()).isEqualTo(full.targetMap());
+    assertThat(affected.projectDeps()).isEqualTo(full.projectDeps());
+  }
+
+  @Test
+  public void testParseIncrementally_rederivesChangedPackage() throws Exception {
+    QuerySummary before =
+        QuerySummary.newBuilder()
+            .putRules(javaLibrary("//a:a", ImmutableList.of("//a:A.java"), "//b:b"))
+            .putRules(javaLibrary("//b:b", ImmutableList.of("//b:B.java")))
+            .putRules(javaLibrary("//c:c", ImmutableList.of("//c:C.java")))
+            .putSourceFiles(sourceFile("//a:A.java"))
+            .putSourceFiles(sourceFile("//b:B.java"))
+            .putSourceFiles(sourceFile("//c:C.java"))
+            .build();
+    QuerySummary after =
+        QuerySummary.newBuilder()
+            .putRules(javaLibrary("//a:a", ImmutableList.of("//a:A.java"), "//b:b"))
+            .putRules(
+                javaLibrary("//b:b", ImmutableList.of("//b:B.java", "//b:Other.java"), "//c:c"))
+            .putRules(javaLibrary("//c:c", ImmutableList.of("//c:C.java")))
+            .putSourceFiles(sourceFile("//a:A.java"))
+            .putSourceFiles(sourceFile("//b:B.java"))
+            .putSourceFiles(sourceFile("//b:Other.java"))
+            .putSourceFiles(sourceFile("//c:C.java"))
+            .build();
+    BuildGraphData previous = new BlazeQueryParser(before, NOOP_CONTEXT, ImmutableSet.of()).parse();
+
+    BuildGraphData incremental =
+        new BlazeQueryParser(after, NOOP_CONTEXT, ImmutableSet.of())
+            .parseIncrementally(previous, ImmutableSet.of(Path.of("b")));
+
+    Label a = Label.of("//a:a");
+    Label b = Label.of("//b:b");
+    Label c = Label.of("//c:c");
+    assertThat(incremental.targetMap().get(a)).isSameInstanceAs(previous.targetMap().get(a));
+    assertThat(incremental.targetMap().get(c)).isSameInstanceAs(previous.targetMap().get(c));
+    assertThat(incremental.targetMap().get(b).deps()).containsExactly(c);
+    assertThat(incremental.targetMap().get(b).sourceLabels().values())
+        .containsExactly(Label.of("//b:B.java"), Label.of("//b:Other.java"));
+
+    BuildGraphData full = new BlazeQueryParser(after, NOOP_CONTEXT, ImmutableSet.of()).parse();
+    assertThat(incremental.targetMap()).isEqualTo(full.targetMap());
+    assertThat(incremental.sourceFileLabels()).containsExactlyElementsIn(full.sourceFileLabels());
+    assertThat(incremental.projectDeps()).isEqualTo(full.projectDeps());
+  }
+
+  private static QueryData.Rule javaLibrary(
+      String label, ImmutableList<String> sources, String... deps) {
+    return QueryData.Rule.builderForTests()
+        .label(Label.of(label))
+        .ruleClass("java_library")
+        .sources(sources.stream().map(Label::of).collect(ImmutableList.toImmutableList()))
+        .deps(Arrays.stream(deps).map(Label::of).collect(ImmutableList.toImmutableList()))
+        .build();
+  }
+
+  private static QueryData.SourceFile sourceFile(String label) {
+    return new QueryData.SourceFile(Label.of(label), ImmutableList.of());
+  }
+
   @Test
   public void testJavaLibraryInternalDep() throws Exception {
     BuildGraphData graph =
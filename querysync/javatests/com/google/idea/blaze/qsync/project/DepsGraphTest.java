@@ -16,6 +16,7 @@
 package com.google.idea.blaze.qsync.project;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 import com.google.common.collect.ImmutableSet;
 import org.junit.Test;
@@ -34,7 +35,7 @@ public class DepsGraphTest {
 
   @Test
   public void test_basics() {
-    DepsGraph<String> graph = new DepsGraph.Builder<>().add("a", ImmutableSet.of("b", "c")).build();
+    DepsGraph<String> graph = new DepsGraph.Builder<String>().add("a", ImmutableSet.of("b", "c")).build();
 
     assertThat(graph.nodes()).containsExactly("a", "b", "c");
     assertThat(graph.deps("a")).containsExactly("b", "c");
@@ -45,7 +46,7 @@ public class DepsGraphTest {
   @Test
   public void test_multi_rdeps() {
     DepsGraph<String> graph =
-        new DepsGraph.Builder<>()
+        new DepsGraph.Builder<String>()
             .add("a", ImmutableSet.of("c", "d"))
             .add("b", ImmutableSet.of("c"))
             .build();
@@ -58,7 +59,7 @@ public class DepsGraphTest {
   @Test
   public void test_transitive_deps() {
     DepsGraph<String> graph =
-        new DepsGraph.Builder<>()
+        new DepsGraph.Builder<String>()
             .add("a", ImmutableSet.of("b", "c"))
             .add("b", ImmutableSet.of("d"))
             .build();
@@ -67,4 +68,51 @@ public class DepsGraphTest {
     // deps is not transitive:
     assertThat(graph.deps("a")).containsExactly("b", "c");
   }
+
+  @Test
+  public void test_node_ids() {
+    DepsGraph<String> graph =
+        new DepsGraph.Builder<String>()
+            .add("a", ImmutableSet.of("b", "c"))
+            .add("b", ImmutableSet.of("c"))
+            .build();
+
+    assertThat(graph.nodeCount()).isEqualTo(3);
+    int a = graph.nodeId("a");
+    int c = graph.nodeId("c");
+    assertThat(graph.node(a)).isEqualTo("a");
+    assertThat(graph.nodeId("d")).isEqualTo(-1);
+    assertThat(graph.depCount(a)).isEqualTo(2);
+    assertThat(graph.node(graph.depId(a, 0))).isEqualTo("b");
+    assertThat(graph.node(graph.depId(a, 1))).isEqualTo("c");
+    assertThat(graph.rdepCount(c)).isEqualTo(2);
+    assertThat(graph.rdepCount(a)).isEqualTo(0);
+  }
+
+  @Test
+  public void test_contains() {
+    DepsGraph<String> graph =
+        new DepsGraph.Builder<String>()
+            .add("a", ImmutableSet.of("e", "d", "c", "b"))
+            .add("b", ImmutableSet.of("c"))
+            .add("d", ImmutableSet.of("c"))
+            .build();
+
+    assertThat(graph.deps("a")).contains("b");
+    assertThat(graph.deps("a")).contains("e");
+    assertThat(graph.deps("a")).doesNotContain("a");
+    assertThat(graph.deps("a")).doesNotContain("x");
+    assertThat(graph.deps("b")).doesNotContain("d");
+    assertThat(graph.rdeps("c")).containsExactly("a", "b", "d");
+    assertThat(graph.rdeps("c")).doesNotContain("e");
+    assertThat(graph.nodes()).contains("e");
+    assertThat(graph.nodes()).doesNotContain("x");
+  }
+
+  @Test
+  public void test_duplicate_node() {
+    DepsGraph.Builder<String> builder = new DepsGraph.Builder<String>().add("a", ImmutableSet.of("b"));
+
+    assertThrows(IllegalArgumentException.class, () -> builder.add("a", ImmutableSet.of("c")));
+  }
 }
@@ -78,4 +78,34 @@ public class ExternalTransitiveClosureTest {
 
     assertThat(etc.get("a")).containsExactly("a", "c");
   }
+
+  @Test
+  public void test_get_cycle() {
+    ExternalTransitiveClosure<String> etc =
+        new ExternalTransitiveClosure<>(
+            new DepsGraph.Builder<String>()
+                .add("a", ImmutableSet.of("b"))
+                .add("b", ImmutableSet.of("c", "d"))
+                .add("c", ImmutableSet.of("a"))
+                .build(),
+            ImmutableSet.of("a", "d"));
+
+    assertThat(etc.get("a")).containsExactly("a", "d");
+    assertThat(etc.get("b")).containsExactly("a", "d");
+    assertThat(etc.get("c")).containsExactly("a", "d");
+    assertThat(etc.get("d")).containsExactly("d");
+  }
+
+  @Test
+  public void test_get_deep_chain() {
+    DepsGraph.Builder<Integer> builder = new DepsGraph.Builder<>();
+    int length = 100000;
+    for (int i = 0; i < length - 1; i++) {
+      builder.add(i, ImmutableSet.of(i + 1));
+    }
+    ExternalTransitiveClosure<Integer> etc =
+        new ExternalTransitiveClosure<>(builder.build(), ImmutableSet.of(length - 1));
+
+    assertThat(etc.get(0)).containsExactly(length - 1);
+  }
 }
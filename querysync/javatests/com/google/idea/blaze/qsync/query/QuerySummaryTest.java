@@ -15,10 +15,13 @@
  */
 package com.google.idea.blaze.qsync.query;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.idea.blaze.qsync.query.QuerySummaryTestUtil.createProtoForPackages;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.truth.Truth8;
 import com.google.idea.blaze.common.Label;
 import com.google.idea.blaze.qsync.testdata.TestData;
@@ -74,6 +77,42 @@ public class QuerySummaryTest {
     assertThat(rule.copts()).containsExactly("-w");
   }
 
+  @Test
+  public void testStreamRules_matchesRulesMap() throws IOException {
+    QuerySummary qs =
+        QuerySummary.create(QuerySpec.QueryStrategy.PLAIN, TestData.CC_LIBRARY_QUERY.getQueryOutputPath().toFile());
+    assertThat(qs.streamRules().collect(toImmutableList()))
+        .containsExactlyElementsIn(qs.getRulesMap().values());
+    assertThat(qs.streamSourceFiles().collect(toImmutableList()))
+        .containsExactlyElementsIn(qs.getSourceFilesMap().values());
+  }
+
+  @Test
+  public void testGetRulesMatching() {
+    QuerySummary.Builder builder = QuerySummary.newBuilder();
+    QueryData.Rule filegroup =
+        QueryData.Rule.builderForTests()
+            .label(Label.of("//my/build/package:filegroup"))
+            .ruleClass("filegroup")
+            .build();
+    QueryData.Rule tagged =
+        QueryData.Rule.builderForTests()
+            .label(Label.of("//my/build/package:tagged"))
+            .ruleClass("java_library")
+            .tags(ImmutableList.of("manual", "my-tag"))
+            .build();
+    QueryData.Rule other =
+        QueryData.Rule.builderForTests()
+            .label(Label.of("//my/build/package:other"))
+            .ruleClass("java_library")
+            .build();
+    QuerySummary qs = builder.putRules(filegroup).putRules(tagged).putRules(other).build();
+
+    assertThat(qs.getRulesMatching(ImmutableSet.of("filegroup"), ImmutableSet.of("my-tag")))
+        .containsExactly(filegroup.label(), filegroup, tagged.label(), tagged);
+    assertThat(qs.getRulesMatching(ImmutableSet.of("cc_library"), ImmutableSet.of())).isEmpty();
+  }
+
   @Test
   public void testGetPackages_singleRule() {
     QuerySummary summary = QuerySummary.create(createProtoForPackages("//my/build/package:rule"));
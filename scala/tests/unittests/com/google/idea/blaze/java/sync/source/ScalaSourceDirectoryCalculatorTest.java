@@ -74,7 +74,8 @@ public class ScalaSourceDirectoryCalculatorTest extends BlazeTestCase {
     mockInputStreamProvider = new MockInputStreamProvider();
     applicationServices.register(InputStreamProvider.class, mockInputStreamProvider);
     applicationServices.register(JavaSourcePackageReader.class, new JavaSourcePackageReader());
-    applicationServices.register(PackageManifestReader.class, new PackageManifestReader());
+    applicationServices.register(
+        PackageManifestReader.class, PackageManifestReader.createInMemory());
     applicationServices.register(PrefetchService.class, new MockPrefetchService());
     applicationServices.register(FileOperationProvider.class, new FileOperationProvider());
     applicationServices.register(
@@ -115,7 +115,8 @@ public class BlazeScalaWorkspaceImporterTest extends BlazeTestCase {
     projectServices.register(BlazeImportSettingsManager.class, importSettingsManager);
 
     applicationServices.register(PrefetchService.class, new MockPrefetchService());
-    applicationServices.register(PackageManifestReader.class, new PackageManifestReader());
+    applicationServices.register(
+        PackageManifestReader.class, PackageManifestReader.createInMemory());
     applicationServices.register(ExperimentService.class, new MockExperimentService());
     applicationServices.register(
         FileOperationProvider.class,
@@ -28,6 +28,13 @@ public class Interners {
   public static final Interner<String> STRING =
       com.google.common.collect.Interners.newWeakInterner();
 
+  /**
+   * Canonical {@link Label} instances. Labels are interned by {@link Label#create} and {@link
+   * Label#of}, so there is normally no need to use this directly.
+   */
+  public static final Interner<Label> LABEL =
+      com.google.common.collect.Interners.newWeakInterner();
+
   public static final Interner<Path> PATH = com.google.common.collect.Interners.newWeakInterner();
 
   /** Returns an interned path from the given string. */
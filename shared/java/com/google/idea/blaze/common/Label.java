@@ -21,6 +21,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -33,13 +34,41 @@ import java.util.stream.StreamSupport;
  * <p>It can be considered equivalent to <a href="https://bazel.build/rules/lib/Label>Label</a> in
  * bazel.
  *
+ * <p>Instances are canonical: all factory methods return the instance held by {@link
+ * Interners#LABEL}, so that a label is only held in memory once no matter how many times it is
+ * parsed or loaded. The strings making up the label are interned too, which means that all labels
+ * in the same package share a single package string and package {@link Path}.
+ *
  * <p>Note that this class only supports labels in the current workspace, i.e. not labels of the
  * form {@code @repo//pkg/foo:abc}.
  */
-public record Label(String workspace, String buildPackage, String name) {
+public final class Label {
 
   public final static String ROOT_WORKSPACE = "";
 
+  private final String workspace;
+  private final String buildPackage;
+  private final String name;
+  private final int hashCode;
+  // Lazily calculated, shared between all labels in the same package.
+  private Path packagePath;
+
+  private Label(String workspace, String buildPackage, String name) {
+    this.workspace = workspace;
+    this.buildPackage = buildPackage;
+    this.name = name;
+    this.hashCode = Objects.hash(workspace, buildPackage, name);
+  }
+
+  /** Returns the canonical label for the given workspace, package and target name. */
+  public static Label create(String workspace, String buildPackage, String name) {
+    return Interners.LABEL.intern(
+        new Label(
+            Interners.STRING.intern(workspace),
+            Interners.STRING.intern(buildPackage),
+            Interners.STRING.intern(name)));
+  }
+
   public static Label of(String label) {
     Preconditions.checkArgument(!label.isBlank(), "Empty label");
     final var workspacePosition = label.startsWith("@") ? (label.startsWith("@@") ? 2 : 1) : 0;
@@ -53,7 +82,7 @@ public record Label(String workspace, String buildPackage, String name) {
     final var workspace = label.substring(workspacePosition, workspaceEnd);
     final var buildPackage = label.substring(buildPackagePosition, buildPackageEnd);
     final var name = label.substring(namePosition);
-    return new Label(Interners.STRING.intern(workspace), Interners.STRING.intern(buildPackage), Interners.STRING.intern(name));
+    return create(workspace, buildPackage, name);
   }
 
   public static Label fromWorkspacePackageAndName(String workspace, Path packagePath, Path name) {
@@ -76,8 +105,25 @@ public record Label(String workspace, String buildPackage, String name) {
     return labels.stream().map(Label::of).collect(toImmutableList());
   }
 
+  public String workspace() {
+    return workspace;
+  }
+
+  public String buildPackage() {
+    return buildPackage;
+  }
+
+  public String name() {
+    return name;
+  }
+
   public Path getPackage() {
-    return Path.of(buildPackage);
+    Path path = packagePath;
+    if (path == null) {
+      path = Interners.pathOf(buildPackage);
+      packagePath = path;
+    }
+    return path;
   }
 
   public Path getName() {
@@ -106,6 +152,26 @@ public record Label(String workspace, String buildPackage, String name) {
     return getPackage().resolve(getName());
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Label)) {
+      return false;
+    }
+    Label that = (Label) o;
+    return hashCode == that.hashCode
+        && workspace.equals(that.workspace)
+        && buildPackage.equals(that.buildPackage)
+        && name.equals(that.name);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
   @Override
   public String toString() {
     final var result = new StringBuilder(5 + workspace.length() + buildPackage.length() + name.length());
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2025 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.common.artifact;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import com.google.idea.blaze.common.AtomicFileWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * In-memory index of the size and last access time of each entry in a {@link
+ * BuildArtifactCacheDirectory}.
+ *
+ * <p>Lookups and access time updates are lock free. Additions and removals are appended to a journal
+ * file as they happen; access times are only written when {@link #flush()} is called, since losing
+ * some of them on a crash only affects the order in which entries are evicted. Entries whose access
+ * time changed since the last flush are tracked separately, so that a flush does not need to visit
+ * every entry. The journal is rewritten once it has grown to twice the size of the index.
+ *
+ * <p>On load, the index is reconciled with the contents of the cache directory, so that entries
+ * added or removed without being recorded in the journal are accounted for.
+ */
+final class ArtifactCacheIndex {
+
+  private static final Logger logger = Logger.getLogger(ArtifactCacheIndex.class.getName());
+
+  private static final int JOURNAL_VERSION = 1;
+  private static final byte OP_ADD = 'A';
+  private static final byte OP_ACCESS = 'T';
+  private static final byte OP_REMOVE = 'R';
+
+  /** Value of {@link Entry#lastAccessNanos} once an entry has been chosen for eviction. */
+  private static final long EVICTED = Long.MIN_VALUE;
+
+  /** An entry in the cache. */
+  static final class Entry {
+    final String digest;
+    final long size;
+    private final AtomicLong lastAccessNanos;
+
+    private Entry(String digest, long size, long lastAccessNanos) {
+      this.digest = digest;
+      this.size = size;
+      this.lastAccessNanos = new AtomicLong(lastAccessNanos);
+    }
+
+    long lastAccessNanos() {
+      return lastAccessNanos.get();
+    }
+
+    FileTime lastAccessTime() {
+      return FileTime.from(lastAccessNanos(), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private final Path journalFile;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong totalSize = new AtomicLong();
+
+  /** Entries whose access time has been updated since it was last written to the journal. */
+  private final Set<Entry> touched = ConcurrentHashMap.newKeySet();
+
+  private final Object journalLock = new Object();
+
+  @GuardedBy("journalLock")
+  @Nullable
+  private DataOutputStream journal;
+
+  @GuardedBy("journalLock")
+  private int journalRecords;
+
+  private ArtifactCacheIndex(Path journalFile) {
+    this.journalFile = journalFile;
+  }
+
+  /**
+   * Loads the index from {@code journalFile}, and reconciles it with the files in {@code cacheDir}
+   * whose names are returned by {@code digests}.
+   */
+  static ArtifactCacheIndex load(Path cacheDir, Path journalFile, Set<String> digests)
+      throws IOException {
+    ArtifactCacheIndex index = new ArtifactCacheIndex(journalFile);
+    boolean rewrite = !index.replayJournal();
+    for (String digest : digests) {
+      if (!index.entries.containsKey(digest)) {
+        // Not in the journal, e.g. because the cache was populated by an earlier version.
+        try {
+          BasicFileAttributes attributes =
+              Files.readAttributes(cacheDir.resolve(digest), BasicFileAttributes.class);
+          index.put(
+              new Entry(
+                  digest, attributes.size(), toNanos(attributes.lastAccessTime().toInstant())));
+          rewrite = true;
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Failed to read attributes of cache entry " + digest, e);
+        }
+      }
+    }
+    if (index.entries.keySet().retainAll(digests)) {
+      index.totalSize.set(index.entries.values().stream().mapToLong(e -> e.size).sum());
+      rewrite = true;
+    }
+    synchronized (index.journalLock) {
+      if (rewrite) {
+        index.compact();
+      } else {
+        index.openJournal();
+      }
+    }
+    return index;
+  }
+
+  /** Returns false if the journal could not be read completely. */
+  private boolean replayJournal() {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+      if (in.readInt() != JOURNAL_VERSION) {
+        return false;
+      }
+      int records = 0;
+      while (true) {
+        int op = in.read();
+        if (op == -1) {
+          break;
+        }
+        String digest = in.readUTF();
+        switch (op) {
+          case OP_ADD -> {
+            long size = in.readLong();
+            put(new Entry(digest, size, in.readLong()));
+          }
+          case OP_ACCESS -> {
+            long access = in.readLong();
+            Entry entry = entries.get(digest);
+            if (entry != null) {
+              entry.lastAccessNanos.set(access);
+            }
+          }
+          case OP_REMOVE -> {
+            Entry entry = entries.remove(digest);
+            if (entry != null) {
+              totalSize.addAndGet(-entry.size);
+            }
+          }
+          default -> throw new IOException("Bad journal record type " + op);
+        }
+        records++;
+      }
+      synchronized (journalLock) {
+        journalRecords = records;
+      }
+      return true;
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (EOFException e) {
+      logger.warning("Ignoring truncated cache journal " + journalFile);
+      return false;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to read cache journal " + journalFile, e);
+      return false;
+    }
+  }
+
+  private void put(Entry entry) {
+    Entry previous = entries.put(entry.digest, entry);
+    totalSize.addAndGet(entry.size - (previous == null ? 0 : previous.size));
+  }
+
+  private static long toNanos(Instant instant) {
+    return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+  }
+
+  @Nullable
+  Entry get(String digest) {
+    return entries.get(digest);
+  }
+
+  long totalSize() {
+    return totalSize.get();
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Records an access of the given entry, if it is present and not being evicted.
+   *
+   * @return true if the entry is present, in which case it will not be evicted unless it is older
+   *     than the eviction cut off again.
+   */
+  boolean touch(String digest, Instant accessTime) {
+    Entry entry = entries.get(digest);
+    if (entry == null) {
+      return false;
+    }
+    long access = toNanos(accessTime);
+    while (true) {
+      long current = entry.lastAccessNanos.get();
+      if (current == EVICTED) {
+        return false;
+      }
+      if (current >= access) {
+        return true;
+      }
+      if (entry.lastAccessNanos.compareAndSet(current, access)) {
+        touched.add(entry);
+        return true;
+      }
+    }
+  }
+
+  /** Adds an entry for a newly written file. */
+  void add(String digest, long size, Instant accessTime) throws IOException {
+    Entry entry = new Entry(digest, size, toNanos(accessTime));
+    synchronized (journalLock) {
+      put(entry);
+      DataOutputStream out = journal();
+      out.writeByte(OP_ADD);
+      out.writeUTF(digest);
+      out.writeLong(size);
+      out.writeLong(entry.lastAccessNanos());
+      journalRecords++;
+    }
+  }
+
+  /**
+   * Marks an entry as being evicted, if it has not been accessed after {@code cutoff}. Once this
+   * returns true, {@link #touch} will treat the entry as absent.
+   */
+  boolean tryEvict(Entry entry, Instant cutoff) {
+    long current = entry.lastAccessNanos.get();
+    return current != EVICTED
+        && current <= toNanos(cutoff)
+        && entry.lastAccessNanos.compareAndSet(current, EVICTED);
+  }
+
+  /** Removes an entry previously marked by {@link #tryEvict}. */
+  void remove(Entry entry) throws IOException {
+    synchronized (journalLock) {
+      if (!entries.remove(entry.digest, entry)) {
+        return;
+      }
+      totalSize.addAndGet(-entry.size);
+      touched.remove(entry);
+      DataOutputStream out = journal();
+      out.writeByte(OP_REMOVE);
+      out.writeUTF(entry.digest);
+      journalRecords++;
+    }
+  }
+
+  /** Returns entries that have not been accessed after {@code cutoff}, least recently used first. */
+  ImmutableList<Entry> entriesNotAccessedAfter(Instant cutoff) {
+    long cutoffNanos = toNanos(cutoff);
+    // Sort on a copy of the access times, since they may be updated concurrently.
+    record Candidate(Entry entry, long lastAccessNanos) {}
+    return entries.values().stream()
+        .map(e -> new Candidate(e, e.lastAccessNanos()))
+        .filter(c -> c.lastAccessNanos() != EVICTED && c.lastAccessNanos() <= cutoffNanos)
+        .sorted(Comparator.comparingLong(Candidate::lastAccessNanos))
+        .map(Candidate::entry)
+        .collect(toImmutableList());
+  }
+
+  ImmutableList<Entry> entries() {
+    return ImmutableList.copyOf(entries.values());
+  }
+
+  /** Writes updated access times to the journal, and compacts it if necessary. */
+  void flush() throws IOException {
+    synchronized (journalLock) {
+      if (journalRecords > 2 * entries.size() + 1000) {
+        compact();
+        return;
+      }
+      DataOutputStream out = journal();
+      for (Entry entry : touched) {
+        // Remove the entry before reading its access time, so that a concurrent touch marks it
+        // again and is written by the next flush.
+        touched.remove(entry);
+        long access = entry.lastAccessNanos();
+        if (access != EVICTED && entries.get(entry.digest) == entry) {
+          out.writeByte(OP_ACCESS);
+          out.writeUTF(entry.digest);
+          out.writeLong(access);
+          journalRecords++;
+        }
+      }
+      out.flush();
+    }
+  }
+
+  /** Forgets all entries, after the cache directory has been emptied. */
+  void clear() throws IOException {
+    synchronized (journalLock) {
+      entries.clear();
+      touched.clear();
+      totalSize.set(0);
+      compact();
+    }
+  }
+
+  @GuardedBy("journalLock")
+  private DataOutputStream journal() throws IOException {
+    if (journal == null) {
+      openJournal();
+    }
+    return journal;
+  }
+
+  @GuardedBy("journalLock")
+  private void openJournal() throws IOException {
+    if (journal != null) {
+      journal.close();
+    }
+    boolean exists = Files.exists(journalFile);
+    journal =
+        new DataOutputStream(
+            new BufferedOutputStream(
+                Files.newOutputStream(
+                    journalFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    if (!exists) {
+      journal.writeInt(JOURNAL_VERSION);
+    }
+  }
+
+  /** Rewrites the journal so that it contains a single record per entry. */
+  @GuardedBy("journalLock")
+  private void compact() throws IOException {
+    if (journal != null) {
+      journal.close();
+      journal = null;
+    }
+    touched.clear();
+    try (AtomicFileWriter writer = AtomicFileWriter.create(journalFile)) {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(writer.getOutputStream()));
+      out.writeInt(JOURNAL_VERSION);
+      for (Entry entry : entries.values()) {
+        long access = entry.lastAccessNanos();
+        if (access == EVICTED) {
+          continue;
+        }
+        out.writeByte(OP_ADD);
+        out.writeUTF(entry.digest);
+        out.writeLong(entry.size);
+        out.writeLong(access);
+      }
+      out.flush();
+      writer.onWriteComplete();
+    }
+    journalRecords = entries.size();
+    openJournal();
+  }
+}
@@ -25,10 +25,8 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
 import com.google.common.io.CharSource;
@@ -36,6 +34,8 @@ import com.google.common.io.MoreFiles;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Striped;
 import com.google.idea.blaze.common.Context;
 import com.google.idea.blaze.common.PrintOutput;
 import com.google.idea.blaze.common.artifact.ArtifactFetcher.ArtifactDestination;
@@ -43,23 +43,23 @@ import com.google.idea.blaze.exception.BuildException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Comparator;
 import java.util.Map;
 import java.util.Optional;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.StampedLock;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import javax.annotation.Nullable;
 
 /**
  * A cache of build artifacts.
@@ -71,7 +71,9 @@ import javax.annotation.Nullable;
  * Context)}, provides access to their contents as a local file via {@link #get(String)}.
  *
  * <p>Access times are updated when artifacts downloads are requested, and when the contents are
- * requested, to enable unused cache entries to be cleaned up later on.
+ * requested, to enable unused cache entries to be cleaned up later on. The size and access time of
+ * each entry is kept in an in-memory {@link ArtifactCacheIndex}, persisted alongside the cache
+ * entries, so that neither lookups nor cleaning need to access the file system metadata.
  *
  * <p>An instance of this class is expected to be the sole user of the provided cache directory.
  *
@@ -84,7 +86,9 @@ import javax.annotation.Nullable;
  * request is made.
  *
  * <p>This class will ensure that a clean request is never active while we are fetching new
- * artifacts into the cache.
+ * artifacts into the cache. Cleaning does not block other operations: entries are evicted one at a
+ * time, and a clean that is in progress when a new fetch starts stops early and is requested again
+ * once the fetch is done.
  */
 @VisibleForTesting
 public class BuildArtifactCacheDirectory implements BuildArtifactCache {
@@ -92,18 +96,27 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
   private static final Logger logger =
       Logger.getLogger(BuildArtifactCacheDirectory.class.getName());
 
+  /** Name of the index journal within the cache directory; must not be a valid digest. */
+  private static final String INDEX_FILE_NAME = ".index";
+
   private final Path cacheDir;
   private final ListeningExecutorService executor;
   private final ArtifactFetcher<OutputArtifact> fetcher;
   private final CleanRequest cleanRequest;
   volatile boolean needClean = false;
 
-  private final Map<String, ListenableFuture<?>> activeFetches;
+  private final ArtifactCacheIndex index;
+  private final Map<String, ListenableFuture<?>> activeFetches = new ConcurrentHashMap<>();
+
+  /**
+   * Per digest locks, serializing the decision to fetch an artifact with its eviction. Lookups do
+   * not need to acquire these.
+   */
+  private final Striped<Lock> digestLocks = Striped.lock(64);
 
   /**
    * Read-write lock where the "read" is also used to adding items to the cache. The write is only
-   * acquired for cleaning the cache which allows all other functionality to assume that cache items
-   * are never deleted.
+   * acquired for purging the cache.
    *
    * <p>Note, we use a {@link StampedLock} to allow the lock to be released from a different thread
    * from that it wac acquired by. This is necessary as the fetch operation uses a future and we use
@@ -121,7 +134,6 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
     this.fetcher = fetcher;
     this.executor = executor;
     this.cleanRequest = cleanRequest;
-    this.activeFetches = Maps.newHashMap();
 
     if (!Files.exists(cacheDir)) {
       try {
@@ -133,6 +145,13 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
     if (!Files.isDirectory(cacheDir)) {
       throw new BuildException("Cache dir is not a directory: " + cacheDir);
     }
+    try {
+      this.index =
+          ArtifactCacheIndex.load(
+              cacheDir, cacheDir.resolve(INDEX_FILE_NAME), ImmutableSet.copyOf(listDigests()));
+    } catch (IOException e) {
+      throw new BuildException("Failed to load the build cache index at " + cacheDir, e);
+    }
   }
 
   @VisibleForTesting
@@ -159,51 +178,23 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
   }
 
   /**
-   * Returns true if the given artifact is present in the cache. May return true even if the
-   * artifact is still being fetched (i.e. a true value does not mean the artifact is ready to be
-   * used).
-   */
-  private boolean contains(OutputArtifact artifact) {
-    return Files.exists(artifactPath(artifact));
-  }
-
-  /**
-   * Updates the metadata for a cache entry.
-   *
-   * <p>For now, we juse use the filesystem last access timestamp for this, in future we may
-   * consider adding an explicit metadata file if the timestamp alone proves insufficient.
+   * Adds newly fetched artifacts to the index.
    *
    * <p>Note we return Void to make this method easier to use with {@link
-   * java.util.concurrent.ExecutorService#submit(Callable)}. }
+   * java.util.concurrent.ExecutorService#submit(Callable)}.
    */
-  private Void updateMetadata(String digest, Instant lastAccess) throws IOException {
-    long stamp = lock.readLock();
-    try {
-      // note, when we pass null in here, the existing timestamps are left unchanged:
-      Files.getFileAttributeView(artifactPath(digest), BasicFileAttributeView.class)
-          .setTimes(
-              /* lastModifiedTime */ null,
-              /* lastAccessTime */ FileTime.from(lastAccess),
-              /* createTime */ null);
-      return null;
-    } finally {
-      lock.unlockRead(stamp);
+  private Void addToIndex(ImmutableCollection<OutputArtifact> artifacts, Instant accessTime)
+      throws IOException {
+    for (OutputArtifact artifact : artifacts) {
+      index.add(artifact.getDigest(), Files.size(artifactPath(artifact)), accessTime);
     }
+    index.flush();
+    return null;
   }
 
-  /**
-   * Updates metadata for a set of artifacts.
-   *
-   * @param artifacts The affected artifacts.
-   * @param lastAccess The last access time to set.
-   * @return A future of the update operation.
-   */
-  private ListenableFuture<?> updateMetadata(
-      ImmutableCollection<OutputArtifact> artifacts, Instant lastAccess) {
-    return Futures.allAsList(
-        artifacts.stream()
-            .map(a -> executor.submit(() -> updateMetadata(a.getDigest(), lastAccess)))
-            .collect(toImmutableList()));
+  private Void flushIndex() throws IOException {
+    index.flush();
+    return null;
   }
 
   /**
@@ -227,10 +218,12 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
                   .distinct()
                   .collect(toImmutableMap(Functions.identity(), this::artifactDestination)),
               context);
-      // when that's done, update their metadata:
+      // when that's done, add them to the index:
       done =
           Futures.transformAsync(
-              newFetch, unused -> updateMetadata(artifacts, accessTime), executor);
+              newFetch,
+              unused -> executor.submit(() -> addToIndex(artifacts, accessTime)),
+              executor);
       done.addListener(() -> lock.unlockRead(stamp), directExecutor());
     } finally {
       // failsafe to ensure we always release the lock:
@@ -257,92 +250,81 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
   @Override
   public ListenableFuture<?> addAll(
       ImmutableCollection<OutputArtifact> artifacts, Context<?> context) {
-    // acquire the read lock to ensure that no clean is ongoing:
+    // acquire the read lock to ensure that no purge is ongoing:
     long stamp = lock.readLock();
     try {
-      synchronized (activeFetches) {
-        Instant accessTime = Instant.now();
-        // filter out any duplicate artifacts, and those for which there is already a fetch pending:
-        ImmutableList<OutputArtifact> allArtifacts =
-            artifacts.stream()
-                .filter(distinctBy(OutputArtifact::getDigest))
-                .filter(a -> !activeFetches.containsKey(a.getDigest()))
-                .collect(toImmutableList());
-        long totalSize = allArtifacts.stream().collect(Collectors.summarizingLong(BlazeArtifact::getLength)).getSum();
-        context.output(PrintOutput.output("Fetching %d new artifacts (%,.2f MB) out of %d requested...",
-                                          allArtifacts.size(),
-                                          (totalSize / (1024f*1024)),
-                                          artifacts.size()));
-
-        // group them based on whether the artifact is already cached
-        ImmutableListMultimap<Boolean, OutputArtifact> artifactsByPresence =
-            Multimaps.index(allArtifacts, this::contains);
-
-        // Fetch absent artifacts
-        ListenableFuture<?> fetch = startFetch(artifactsByPresence.get(false), accessTime, context);
-        context.addCancellationHandler(() -> fetch.cancel(false));
-
-        // mark the  artifacts as being actively fetched. If they are requested in the meantime,
-        // the future will be used to wait until the fetch is complete.
-        // They are unmarked by the future listener above.
-        markAsActive(artifactsByPresence.get(false), fetch);
-        fetch.addListener(() -> {
-          context.output(PrintOutput.output("Downloading done."));
-          unmarkAsActive(artifactsByPresence.get(false));
-        }, directExecutor());
-
-        // Update metadata for present artifacts
-        ListenableFuture<?> metadataUpdate =
-            Futures.allAsList(
-                artifactsByPresence.get(true).stream()
-                    .map(OutputArtifact::getDigest)
-                    .map(digest -> executor.submit(() -> updateMetadata(digest, accessTime)))
-                    .collect(toImmutableList()));
-        context.addCancellationHandler(() -> metadataUpdate.cancel(false));
-
-        needClean = true;
-        return fetch;
+      Instant accessTime = Instant.now();
+      // Mark absent artifacts as being actively fetched. If they are requested in the meantime, the
+      // future will be used to wait until the fetch is complete. This is done under the lock for
+      // each digest, so that they cannot be evicted between us finding them in the index and
+      // updating their access time.
+      SettableFuture<Object> pendingFetch = SettableFuture.create();
+      ImmutableList.Builder<OutputArtifact> toFetchBuilder = ImmutableList.builder();
+      for (OutputArtifact artifact :
+          artifacts.stream()
+              .filter(distinctBy(OutputArtifact::getDigest))
+              .collect(toImmutableList())) {
+        String digest = artifact.getDigest();
+        Lock digestLock = digestLocks.get(digest);
+        digestLock.lock();
+        try {
+          // skip those for which there is already a fetch pending, or which are already cached:
+          if (!activeFetches.containsKey(digest) && !index.touch(digest, accessTime)) {
+            activeFetches.put(digest, pendingFetch);
+            toFetchBuilder.add(artifact);
+          }
+        } finally {
+          digestLock.unlock();
+        }
+      }
+      ImmutableList<OutputArtifact> toFetch = toFetchBuilder.build();
+      long totalSize =
+          toFetch.stream().collect(Collectors.summarizingLong(BlazeArtifact::getLength)).getSum();
+      context.output(
+          PrintOutput.output(
+              "Fetching %d new artifacts (%,.2f MB) out of %d requested...",
+              toFetch.size(), (totalSize / (1024f * 1024)), artifacts.size()));
+
+      // Persist the updated access times of the artifacts that are already present
+      ListenableFuture<?> metadataUpdate = executor.submit(this::flushIndex);
+      context.addCancellationHandler(() -> metadataUpdate.cancel(false));
+
+      needClean = true;
+      if (toFetch.isEmpty()) {
+        return Futures.immediateVoidFuture();
+      }
+      cleanRequest.cancel();
+
+      // Fetch absent artifacts. They are unmarked as active once they have been added to the index.
+      ListenableFuture<?> fetch;
+      try {
+        fetch = startFetch(toFetch, accessTime, context);
+      } catch (RuntimeException e) {
+        fetch = Futures.immediateFailedFuture(e);
       }
+      pendingFetch.setFuture(fetch);
+      context.addCancellationHandler(() -> pendingFetch.cancel(false));
+      pendingFetch.addListener(
+          () -> {
+            context.output(PrintOutput.output("Downloading done."));
+            unmarkAsActive(toFetch);
+          },
+          directExecutor());
+      return pendingFetch;
     } finally {
       lock.unlockRead(stamp);
     }
   }
 
-  private void markAsActive(Iterable<OutputArtifact> artifacts, ListenableFuture<?> future) {
-    synchronized (activeFetches) {
-      cleanRequest.cancel();
-      artifacts.forEach(a -> activeFetches.put(a.getDigest(), future));
-    }
-  }
-
   private void unmarkAsActive(ImmutableCollection<OutputArtifact> artifacts) {
-    boolean empty;
-    synchronized (activeFetches) {
-      activeFetches
-          .keySet()
-          .removeAll(artifacts.stream().map(OutputArtifact::getDigest).collect(toImmutableSet()));
-      empty = activeFetches.isEmpty();
-    }
-    if (empty && needClean) {
+    activeFetches
+        .keySet()
+        .removeAll(artifacts.stream().map(OutputArtifact::getDigest).collect(toImmutableSet()));
+    if (activeFetches.isEmpty() && needClean) {
       cleanRequest.request();
     }
   }
 
-  @Nullable
-  private Path getArtifactIfPresent(String digest) throws IOException {
-    long stamp = lock.readLock();
-    try {
-      Path artifactPath = artifactPath(digest);
-      if (!Files.exists(artifactPath)) {
-        return null;
-      }
-      updateMetadata(digest, Instant.now());
-      return artifactPath;
-    } finally {
-      lock.unlockRead(stamp);
-    }
-  }
-
   /**
    * Returns the path to an artifact that was previously added to the cache.
    *
@@ -352,18 +334,12 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
    */
   @Override
   public Optional<ListenableFuture<CachedArtifact>> get(String digest) {
-    ListenableFuture<?> activeFetch;
-    synchronized (activeFetches) {
-      activeFetch = activeFetches.get(digest);
-    }
+    ListenableFuture<?> activeFetch = activeFetches.get(digest);
     if (activeFetch == null) {
-      try {
-        return Optional.ofNullable(getArtifactIfPresent(digest))
-            .map(CachedArtifact::new)
-            .map(Futures::immediateFuture);
-      } catch (IOException e) {
-        return Optional.of(Futures.immediateFailedFuture(e));
+      if (!index.touch(digest, Instant.now())) {
+        return Optional.empty();
       }
+      return Optional.of(Futures.immediateFuture(new CachedArtifact(artifactPath(digest))));
     } else {
       Path artifactPath = artifactPath(digest);
       return Optional.of(
@@ -376,96 +352,101 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
   void insertForTest(InputStream content, String digest, Instant lastAccessTime)
       throws IOException {
     MoreFiles.asByteSink(artifactPath(digest)).writeFrom(content);
-    updateMetadata(digest, lastAccessTime);
-  }
-
-  private record Entry(Path path, FileTime lastAccessTime, long size) {}
-
-  private ImmutableList<Path> list() throws IOException {
-    return MoreFiles.listFiles(cacheDir);
+    index.add(digest, Files.size(artifactPath(digest)), lastAccessTime);
   }
 
   @VisibleForTesting
   ImmutableList<String> listDigests() throws IOException {
-    return list().stream().map(Path::getFileName).map(Path::toString).collect(toImmutableList());
+    return MoreFiles.listFiles(cacheDir).stream()
+        .map(Path::getFileName)
+        .map(Path::toString)
+        .filter(name -> !name.startsWith("."))
+        .collect(toImmutableList());
   }
 
   @VisibleForTesting
   FileTime readAccessTime(String digest) throws IOException {
-    return readAccessTime(artifactPath(digest));
-  }
-
-  private FileTime readAccessTime(Path entry) throws IOException {
-    return Files.getFileAttributeView(entry, BasicFileAttributeView.class)
-        .readAttributes()
-        .lastAccessTime();
+    ArtifactCacheIndex.Entry entry = index.get(digest);
+    if (entry == null) {
+      throw new NoSuchFileException(artifactPath(digest).toString());
+    }
+    return entry.lastAccessTime();
   }
 
   @Override
   public void clean(long maxTargetSizeBytes, Duration minKeepDuration) throws BuildException {
-    // Ensure that no artifacts are added or read from the cache while we're cleaning:
-    long stamp = lock.tryWriteLock();
-    if (stamp == 0) {
-      logger.warning("Failed to clean the build cache at " + cacheDir + " Failed to obtain the write lock");
-      return; // Just exit. WE will clean the cache next time.
-    }
+    needClean = false;
     try {
-      needClean = false;
       clean(maxTargetSizeBytes, Instant.now().minus(minKeepDuration));
     } catch (IOException e) {
       throw new BuildException("Failed to clean the build cache at " + cacheDir, e);
-    } finally {
-      lock.unlockWrite(stamp);
     }
   }
 
   @VisibleForTesting
   void clean(long maxTargetSize, Instant minAgeToDelete) throws IOException {
-    ImmutableList<Path> entries = list();
-    int failed = 0;
-    long totalSize = 0;
-    PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparing(Entry::lastAccessTime));
-    for (Path p : entries) {
-      try {
-        Entry e = new Entry(p, readAccessTime(p), Files.size(p));
-        queue.add(e);
-        totalSize += e.size();
-      } catch (IOException e) {
-        // If we fail read the attributes for a file, we just ignore it and clean up the rest of the
-        // cache as best we can.
-        failed += 1;
+    long remainingSize = index.totalSize();
+    logger.info("Cleaning cache " + cacheDir + "; current size = " + remainingSize);
+    int deleted = 0;
+    try {
+      for (ArtifactCacheIndex.Entry entry : index.entriesNotAccessedAfter(minAgeToDelete)) {
+        if (remainingSize <= maxTargetSize) {
+          break;
+        }
+        if (!activeFetches.isEmpty()) {
+          // Don't hold up the fetch; we'll continue once it's done.
+          needClean = true;
+          logger.info(
+              String.format(
+                  "Fetch started while cleaning; remaining cache size=%d; deleted %d entries",
+                  remainingSize, deleted));
+          return;
+        }
+        if (evict(entry, minAgeToDelete)) {
+          remainingSize -= entry.size;
+          deleted++;
+        }
       }
+    } finally {
+      index.flush();
     }
-    if (failed > 0) {
-      logger.warning("Failed to read attributes from " + failed + " cache files when cleaning");
+    if (remainingSize <= maxTargetSize) {
+      // size target reached
+      logger.info(
+          String.format(
+              "Reached target cache size: %d<=%d; deleted %d entries",
+              remainingSize, maxTargetSize, deleted));
+    } else {
+      // the oldest artifact is newer than the minimum age, so we stop deleting artifacts even
+      // though the cache is bigger than the max size.
+      logger.info(
+          String.format(
+              "Not deleting entries accessed since %s; remaining cache size=%d; deleted %d"
+                  + " entries",
+              minAgeToDelete, remainingSize, deleted));
     }
-    logger.info("Cleaning cache " + cacheDir + "; current size = " + totalSize);
-    long remainingSize = totalSize;
-    int deleted = 0;
-    while (!queue.isEmpty()) {
-      if (remainingSize <= maxTargetSize) {
-        // size target reached
-        logger.info(
-            String.format(
-                "Reached target cache size: %d<=%d; deleted %d entries",
-                remainingSize, maxTargetSize, deleted));
-        return;
+  }
+
+  /**
+   * Deletes a cache entry, unless it is being fetched or has been accessed after {@code cutoff}.
+   *
+   * @return true if the entry was deleted.
+   */
+  private boolean evict(ArtifactCacheIndex.Entry entry, Instant cutoff) throws IOException {
+    Lock digestLock = digestLocks.get(entry.digest);
+    digestLock.lock();
+    try {
+      if (activeFetches.containsKey(entry.digest) || !index.tryEvict(entry, cutoff)) {
+        return false;
       }
-      if (queue.peek().lastAccessTime().toInstant().isAfter(minAgeToDelete)) {
-        // the oldest artifact is newer than the minimum age, so we stop deleting artifacts even
-        // though the cache is bigger than the max size.
-        logger.info(
-            String.format(
-                "Not deleting entries accessed since %s; remaining cache size=%d; deleted %d"
-                    + " entries",
-                minAgeToDelete, remainingSize, deleted));
-        return;
+      try {
+        Files.deleteIfExists(artifactPath(entry.digest));
+      } finally {
+        index.remove(entry);
       }
-
-      Entry toDelete = queue.poll();
-      remainingSize -= toDelete.size();
-      deleted++;
-      Files.delete(toDelete.path());
+      return true;
+    } finally {
+      digestLock.unlock();
     }
   }
 
@@ -478,6 +459,7 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
     }
     try {
       MoreFiles.deleteDirectoryContents(cacheDir);
+      index.clear();
     } catch (IOException e) {
       throw new BuildException("Failed to purge the build artifact cache", e);
     } finally {
@@ -487,20 +469,16 @@ public class BuildArtifactCacheDirectory implements BuildArtifactCache {
 
   public ImmutableMap<String, ByteSource> getBugreportFiles() {
     StringBuilder contents = new StringBuilder();
-    try {
-      for (String digest : listDigests()) {
-        if (!contents.isEmpty()) {
-          contents.append("\n");
-        }
-        contents.append(digest).append(": ").append(readAccessTime(digest));
+    for (ArtifactCacheIndex.Entry entry :
+        ImmutableList.sortedCopyOf(
+            Comparator.comparing((ArtifactCacheIndex.Entry e) -> e.digest), index.entries())) {
+      if (!contents.isEmpty()) {
+        contents.append("\n");
       }
-      return ImmutableMap.of(
-          cacheDir.getFileName().toString() + ".cachecontents",
-          CharSource.wrap(contents).asByteSource(UTF_8));
-    } catch (IOException e) {
-      return ImmutableMap.of(
-          cacheDir.getFileName().toString() + ".cachecontents",
-          CharSource.wrap(e.toString()).asByteSource(UTF_8));
+      contents.append(entry.digest).append(": ").append(entry.lastAccessTime());
     }
+    return ImmutableMap.of(
+        cacheDir.getFileName().toString() + ".cachecontents",
+        CharSource.wrap(contents).asByteSource(UTF_8));
   }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.common;
+
+import static com.google.idea.blaze.common.HeapUsage.usedHeap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures the heap retained by a synthetic build graph of labels.
+ *
+ * <p>The graph has {@code numLabels} targets spread over packages of {@code targetsPerPackage}
+ * targets, each depending on {@code depsPerTarget} other targets. Every reference to a label is
+ * parsed from its string form independently, as happens when query output, the target tree and
+ * the artifact tracker state are each loaded separately. The retained heap is reported both for
+ * the labels as parsed by {@link Label#of} and for a plain string per reference, which is what an
+ * un-interned representation costs at a minimum.
+ *
+ * <p>Run with {@code bazel run //shared/javatests/com/google/idea/blaze/common:LabelHeapBenchmark
+ * -- [numLabels] [targetsPerPackage] [depsPerTarget]}. Defaults to 1M labels.
+ */
+public class LabelHeapBenchmark {
+
+  public static void main(String[] args) {
+    int numLabels = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int targetsPerPackage = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+    int depsPerTarget = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+    long baseline = usedHeap();
+    List<Object[]> strings = build(numLabels, targetsPerPackage, depsPerTarget, false);
+    long stringHeap = usedHeap() - baseline;
+    int stringRefs = strings.size();
+    strings = null;
+
+    baseline = usedHeap();
+    List<Object[]> labels = build(numLabels, targetsPerPackage, depsPerTarget, true);
+    long labelHeap = usedHeap() - baseline;
+    Set<Object> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Object[] node : labels) {
+      Collections.addAll(distinct, node);
+    }
+
+    System.out.printf(
+        "%,d targets, %,d label references, %,d distinct label instances%n",
+        numLabels, (long) stringRefs * (depsPerTarget + 1), distinct.size());
+    System.out.printf("Retained heap, string per reference: %,d MB%n", stringHeap >> 20);
+    System.out.printf("Retained heap, interned labels:      %,d MB%n", labelHeap >> 20);
+  }
+
+  private static List<Object[]> build(
+      int numLabels, int targetsPerPackage, int depsPerTarget, boolean parseLabels) {
+    List<Object[]> graph = new ArrayList<>(numLabels);
+    for (int i = 0; i < numLabels; i++) {
+      Object[] node = new Object[depsPerTarget + 1];
+      node[0] = label(i, targetsPerPackage, parseLabels);
+      for (int d = 1; d <= depsPerTarget; d++) {
+        // Mostly depend on targets in nearby packages, like a real build graph does.
+        int dep = Math.floorMod(i + d * 7919 % (targetsPerPackage * 20) + 1, numLabels);
+        node[d] = label(dep, targetsPerPackage, parseLabels);
+      }
+      graph.add(node);
+    }
+    return graph;
+  }
+
+  private static Object label(int i, int targetsPerPackage, boolean parseLabels) {
+    int pkg = i / targetsPerPackage;
+    String label =
+        String.format(
+            "//java/com/example/area%d/module%d/pkg%d:target%d",
+            pkg % 97, pkg % 1009, pkg, i % targetsPerPackage);
+    return parseLabels ? Label.of(label) : label;
+  }
+}
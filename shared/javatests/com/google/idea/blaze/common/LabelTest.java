@@ -141,4 +141,18 @@ public class LabelTest {
     assertThat(Label.of("@abc//some/path:def").siblingWithPathAndName("other/path:name"))
         .isEqualTo(Label.of("@@abc//some/path/other/path:name"));
   }
+
+  @Test
+  public void testOf_isCanonical() {
+    Label label = Label.of("//package/path:rule");
+    assertThat(Label.of(new String("//package/path:rule"))).isSameInstanceAs(label);
+    assertThat(Label.create("", "package/path", "rule")).isSameInstanceAs(label);
+    assertThat(Label.of("@@//package/path:rule")).isSameInstanceAs(label);
+  }
+
+  @Test
+  public void testGetPackage_sharedWithinPackage() {
+    assertThat(Label.of("//package/path:rule1").getPackage())
+        .isSameInstanceAs(Label.of("//package/path:rule2").getPackage());
+  }
 }
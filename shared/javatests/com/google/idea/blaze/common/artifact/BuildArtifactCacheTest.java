@@ -389,6 +389,52 @@ public class BuildArtifactCacheTest {
     assertThat(cache.listDigests()).containsExactly("a", "b", "c");
   }
 
+  @Test
+  public void clean_stops_when_fetch_starts() throws Exception {
+    Instant now = Instant.now();
+    cache.insertForTest(fileOfSize(10), "a", now.minus(Duration.ofMinutes(10)));
+    ListenableFuture<?> fetch =
+        cache.addAll(ImmutableList.of(TestOutputArtifact.forDigest("abc")), new NoopContext());
+
+    cache.clean(0, now.minus(Duration.ofMinutes(5)));
+    assertThat(cache.listDigests()).containsExactly("a");
+
+    artifactFetcher.executePendingTasks();
+    assertThat(cleanRequest.requestActive).isTrue();
+    cache.clean(0, now.minus(Duration.ofMinutes(5)));
+    assertThat(cache.listDigests()).containsExactly("abc");
+  }
+
+  @Test
+  public void index_reloaded() throws Exception {
+    Instant now = Instant.now();
+    cache.insertForTest(fileOfSize(10), "a", now.minus(Duration.ofMinutes(10)));
+    cache.insertForTest(fileOfSize(10), "b", now.minus(Duration.ofMinutes(20)));
+    cache.clean(10, now.minus(Duration.ofMinutes(5)));
+
+    BuildArtifactCacheDirectory reloaded =
+        new BuildArtifactCacheDirectory(
+            cacheDir.getRoot().toPath(), artifactFetcher, newDirectExecutorService(), cleanRequest);
+    assertThat(reloaded.listDigests()).containsExactly("a");
+    assertThat(reloaded.readAccessTime("a"))
+        .isEquivalentAccordingToCompareTo(FileTime.from(now.minus(Duration.ofMinutes(10))));
+    assertThat(reloaded.get("b")).isEmpty();
+  }
+
+  @Test
+  public void index_reconciled_with_directory() throws Exception {
+    Instant now = Instant.now();
+    cache.insertForTest(fileOfSize(10), "a", now.minus(Duration.ofMinutes(10)));
+    Files.delete(cache.artifactPath("a"));
+    Files.write(cache.artifactPath("b"), new byte[10]);
+
+    BuildArtifactCacheDirectory reloaded =
+        new BuildArtifactCacheDirectory(
+            cacheDir.getRoot().toPath(), artifactFetcher, newDirectExecutorService(), cleanRequest);
+    assertThat(reloaded.get("a")).isEmpty();
+    assertThat(reloaded.get("b")).isPresent();
+  }
+
   @Test
   public void purge() throws Exception {
     OutputArtifact artifact1 = TestOutputArtifact.forDigest("abc");